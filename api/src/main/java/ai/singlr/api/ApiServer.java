@@ -5,13 +5,33 @@
 
 package ai.singlr.api;
 
+import ai.singlr.api.auth.ChallengePool;
+import ai.singlr.api.auth.FairScheduler;
+import ai.singlr.api.auth.PasskeyProvider;
+import ai.singlr.api.auth.ProofOfWork;
+import ai.singlr.api.auth.TenantQuotas;
+import ai.singlr.api.auth.VerificationTokens;
+import ai.singlr.api.challenge.ChallengeSealer;
+import ai.singlr.api.challenge.ChallengeSnapshot;
+import ai.singlr.api.challenge.ChallengeStore;
+import ai.singlr.api.challenge.ChallengeStoreProvider;
+import ai.singlr.api.challenge.InMemoryChallengeStore;
+import ai.singlr.api.challenge.NodeAffinity;
+import ai.singlr.api.challenge.OutstandingChallenges;
 import ai.singlr.api.service.NoCaptchaService;
+import ai.singlr.api.traffic.ClientIpResolver;
+import ai.singlr.api.traffic.HeavyHitters;
+import ai.singlr.api.traffic.IpBlocklist;
+import ai.singlr.api.traffic.RateLimiter;
 import ai.singlr.core.Profile;
 import ai.singlr.core.Utils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
 import io.helidon.config.Config;
+import io.helidon.http.HeaderNames;
+import io.helidon.http.HeaderValues;
 import io.helidon.http.media.jackson.JacksonSupport;
 import io.helidon.http.media.multipart.MultiPartSupport;
 import io.helidon.webserver.WebServer;
@@ -20,8 +40,12 @@ import io.helidon.webserver.cors.CorsSupport;
 import io.helidon.webserver.http.HttpRouting;
 import io.helidon.webserver.staticcontent.StaticContentService;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -30,9 +54,27 @@ import java.util.logging.Logger;
 public class ApiServer {
 
   private static final String API_VERSION_V1 = "/v1";
+  private static final int DEFAULT_HEAVY_HITTERS = 20;
 
   private static final Logger LOGGER = Logger.getLogger(ApiServer.class.getName());
 
+  private PasskeyProvider passkeyProvider;
+  private ChallengeStore challengeStore;
+  private NodeAffinity affinity;
+  private OutstandingChallenges outstanding;
+  private ChallengePool pool;
+  private VerificationTokens tokens;
+  private TenantQuotas quotas;
+  private FairScheduler scheduler;
+  private RateLimiter rateLimiter;
+  private HeavyHitters heavyHitters;
+  private IpBlocklist blocklist;
+  private ClientIpResolver clientIps;
+  private ProofOfWork proofOfWork;
+  private ChallengeStore puzzles;
+  private Path snapshotPath;
+  private WebServer server;
+
   /**
    * Starts the web server.
    */
@@ -40,6 +82,9 @@ public class ApiServer {
     var objectMapper = new ObjectMapper();
     objectMapper.registerModule(new JavaTimeModule())
         .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    if (Config.global().get("json.blackbird.enabled").asBoolean().orElse(false)) {
+      objectMapper.registerModule(new BlackbirdModule());
+    }
     Utils.init(objectMapper);
     Profile profile = Utils.profile();
 
@@ -52,13 +97,140 @@ public class ApiServer {
       LOGGER.info("🔧 Configuration:\n" + printConfig);
     }
 
+    var config = Config.global();
+    var challengesConfig = config.get("challenges");
+    var sealingConfig = challengesConfig.get("sealing");
+    var sealer = sealingConfig.get("enabled").asBoolean().orElse(false)
+        ? ChallengeSealer.create(sealingConfig)
+        : null;
+    var affinityConfig = challengesConfig.get("affinity");
+    affinity = affinityConfig.get("enabled").asBoolean().orElse(false)
+        ? NodeAffinity.create(affinityConfig)
+        : null;
+    passkeyProvider = new PasskeyProvider(config.get("wan"), config.get("sites"), sealer, affinity);
+    challengeStore = ChallengeStoreProvider.load(challengesConfig, passkeyProvider.timeout());
+    if (sealer != null && !challengeStore.isShared()) {
+      LOGGER.warning("Sealed challenges are only claimed on the node completing them, so a ceremony can be replayed "
+          + "once on each other node within its TTL; use a shared store such as postgres on more than one node");
+    }
+    var dedupConfig = challengesConfig.get("dedup");
+    outstanding = dedupConfig.get("enabled").asBoolean().orElse(false)
+        ? new OutstandingChallenges(dedupConfig, passkeyProvider.timeout())
+        : null;
+    var tokensConfig = config.get("tokens");
+    tokens = tokensConfig.get("enabled").asBoolean().orElse(false)
+        ? VerificationTokens.create(tokensConfig)
+        : null;
+    if (tokens != null && tokens.spentTokens() != null && challengeStore.isShared()) {
+      LOGGER.warning("Spent tokens are remembered by the node that checked them, so a token can be redeemed once on "
+          + "each node within its TTL; send /siteverify for a site to a single node to accept each token only once");
+    }
+    var tenantsConfig = config.get("tenants");
+    quotas = tenantsConfig.get("quotas").get("enabled").asBoolean().orElse(false)
+        ? new TenantQuotas(passkeyProvider.sites())
+        : null;
+    var schedulingConfig = tenantsConfig.get("scheduling");
+    scheduler = schedulingConfig.get("enabled").asBoolean().orElse(false)
+        ? new FairScheduler(schedulingConfig, passkeyProvider.sites())
+        : null;
+    clientIps = new ClientIpResolver(config.get("client-ip"));
+    var rateLimitConfig = config.get("rate-limit");
+    rateLimiter = rateLimitConfig.get("enabled").asBoolean().orElse(false)
+        ? new RateLimiter(rateLimitConfig)
+        : null;
+    var heavyHittersConfig = config.get("heavy-hitters");
+    heavyHitters = heavyHittersConfig.get("enabled").asBoolean().orElse(false)
+        ? new HeavyHitters(heavyHittersConfig)
+        : null;
+    var blocklistConfig = config.get("blocklist");
+    blocklist = blocklistConfig.get("enabled").asBoolean().orElse(false)
+        ? new IpBlocklist(blocklistConfig)
+        : null;
+    var proofOfWorkConfig = config.get("proof-of-work");
+    proofOfWork = proofOfWorkConfig.get("enabled").asBoolean().orElse(false)
+        ? new ProofOfWork(proofOfWorkConfig, affinity)
+        : null;
+    // Puzzles cost a client nothing to ask for, so a store that evicts keeps them apart, where a flood of them can't
+    // push out passkey challenges or claims. A shared store doesn't evict, and lets any node check the answer.
+    puzzles = proofOfWork == null || challengeStore.isShared()
+        ? challengeStore
+        : new InMemoryChallengeStore(proofOfWorkConfig, passkeyProvider.timeout());
+    var poolConfig = challengesConfig.get("pool");
+    pool = poolConfig.get("enabled").asBoolean().orElse(false)
+        ? new ChallengePool(poolConfig, passkeyProvider)
+        : null;
+
+    // Restoring before the server starts keeps the readiness probe down until the pending challenges are back.
+    var snapshotConfig = challengesConfig.get("snapshot");
+    if (snapshotConfig.get("enabled").asBoolean().orElse(false)) {
+      if (snapshotConfig.get("path").exists()) {
+        snapshotPath = Path.of(snapshotConfig.get("path").asString().get());
+      } else {
+        throw new IllegalArgumentException("'path' must be specified");
+      }
+      restoreChallenges();
+    }
+
     startApiServer(objectMapper);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "nocaptcha-shutdown"));
+  }
+
+  /**
+   * Stops the web server, then snapshots the pending challenges if enabled.
+   */
+  public void stop() {
+    if (server != null && server.isRunning()) {
+      server.stop();
+    }
+
+    if (snapshotPath != null) {
+      try {
+        var saved = ChallengeSnapshot.save(challengeStore, snapshotPath);
+        LOGGER.info("💾 Saved " + saved + " pending challenges to " + snapshotPath);
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Unable to snapshot pending challenges", ex);
+      }
+    }
+    challengeStore.close();
+    if (puzzles != challengeStore) {
+      puzzles.close();
+    }
+    if (outstanding != null) {
+      outstanding.close();
+    }
+    if (pool != null) {
+      pool.close();
+    }
+    if (tokens != null) {
+      tokens.close();
+    }
+    if (scheduler != null) {
+      scheduler.close();
+    }
+    if (rateLimiter != null) {
+      rateLimiter.close();
+    }
+    if (blocklist != null) {
+      blocklist.close();
+    }
+  }
+
+  private void restoreChallenges() {
+    try {
+      var restored = ChallengeSnapshot.restore(challengeStore, snapshotPath, passkeyProvider.timeout(),
+          System.currentTimeMillis());
+      LOGGER.info("💾 Restored " + restored + " pending challenges from " + snapshotPath);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Unable to restore pending challenges", ex);
+    }
   }
 
   private void startApiServer(ObjectMapper objectMapper) {
     var serverConfig = Config.global().get("server");
-    WebServer server = WebServer.builder()
+    server = WebServer.builder()
         .config(serverConfig)
+        // stop() takes over, so the challenges are only snapshotted once the server no longer accepts requests.
+        .shutdownHook(false)
         .mediaContext(it -> it
             .mediaSupportsDiscoverServices(false)
             .addMediaSupport(MultiPartSupport.create(Config.global()))
@@ -71,6 +243,86 @@ public class ApiServer {
             .routing(routing -> routing
                 .get("/health/ready", (req, res) -> res.send("UP"))
                 .get("/health/live", (req, res) -> res.send("UP"))
+                .get("/metrics/challenges", (req, res) -> res
+                    .header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                    .send(challengeStore.stats()))
+                .get("/metrics/challenge-pool", (req, res) -> {
+                  if (pool == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(pool.stats());
+                })
+                .get("/metrics/spent-tokens", (req, res) -> {
+                  var spent = tokens == null ? null : tokens.spentTokens();
+                  if (spent == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(spent.stats());
+                })
+                .get("/metrics/tenant-quotas", (req, res) -> {
+                  if (quotas == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(quotas.stats());
+                })
+                .get("/metrics/tenant-queues", (req, res) -> {
+                  if (scheduler == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(scheduler.stats());
+                })
+                .get("/metrics/rate-limit", (req, res) -> {
+                  if (rateLimiter == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(rateLimiter.stats());
+                })
+                .get("/metrics/blocklist", (req, res) -> {
+                  if (blocklist == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(blocklist.stats());
+                })
+                .get("/metrics/proof-of-work", (req, res) -> {
+                  if (proofOfWork == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(proofOfWork.stats());
+                })
+                .get("/metrics/heavy-hitters", (req, res) -> {
+                  if (heavyHitters == null) {
+                    res.status(404).send();
+                    return;
+                  }
+                  var query = req.query();
+                  var window = HeavyHitters.Window.of(query.contains("window") ? query.get("window") : "1m");
+                  int limit;
+                  try {
+                    limit = query.contains("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_HEAVY_HITTERS;
+                  } catch (NumberFormatException ex) {
+                    limit = -1;
+                  }
+                  if (window == null || limit <= 0) {
+                    res.status(400).send();
+                    return;
+                  }
+                  res.header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
+                      .send(heavyHitters.report(window, limit));
+                })
                 .get()
             )
         )
@@ -83,16 +335,22 @@ public class ApiServer {
   private void setupApiRoutes(HttpRouting.Builder routing) {
     var config = Config.global();
     var corsConfig = config.get("restrictive-cors");
+    // Widgets of every site call the same routes, so the policy allows all their origins. /start then checks the
+    // origin against the site the widget names.
+    Set<String> allowOrigins = new LinkedHashSet<>(corsConfig.get("allow-origins").asList(String.class).get());
+    allowOrigins.addAll(passkeyProvider.sites().origins());
     var corsSupport = CorsSupport.builder()
         .allowMethods(corsConfig.get("allow-methods").asList(String.class).get().toArray(new String[0]))
-        .allowOrigins(corsConfig.get("allow-origins").asList(String.class).get().toArray(new String[0]))
+        .allowOrigins(allowOrigins.toArray(new String[0]))
         .allowCredentials(true)
+        .exposeHeaders(NodeAffinity.HEADER, NoCaptchaService.ACCEPT_HEADER)
         .build();
 
     routing.register(
         String.format("%s/nocaptcha", API_VERSION_V1),
         corsSupport,
-        new NoCaptchaService()
+        new NoCaptchaService(passkeyProvider, challengeStore, affinity, outstanding, pool, tokens, quotas, scheduler,
+            rateLimiter, heavyHitters, blocklist, clientIps, proofOfWork, puzzles)
     );
 
     routing.register("/", StaticContentService.builder("/dist")
@@ -17,4 +17,6 @@ public interface Constants {
   String USER = "user";
   String PUB_KEY_CRED_OPTS = "pubKeyCredOpts";
   String ID_TOKEN = "idToken";
+  String TOKEN = "token";
+  String POW = "pow";
 }
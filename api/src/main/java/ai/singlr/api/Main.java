@@ -66,7 +66,11 @@ public final class Main {
   private static Map<String, String> envAndSecrets(Profile profile) {
     Set<String> recognizedKeys = Set.of(
         "WAN_ID",
-        "WAN_ORIGINS"
+        "WAN_ORIGINS",
+        "CHALLENGES_SEALING_KEYS",
+        "CHALLENGES_POSTGRES_PASSWORD",
+        "CHALLENGES_AFFINITY_NODE",
+        "TOKENS_KEYS"
     );
 
     Map<String, String> finalConfig = new HashMap<>(recognizedKeys.size());
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import ai.singlr.api.challenge.Challenge;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.helidon.config.Config;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps challenges minted ahead of time, with their credential creation options already serialized, so that
+ * {@code /start} only has to dequeue one.
+ *
+ * <p>A virtual thread refills the pool every few milliseconds. The pool is sized to what is expected to be taken
+ * within {@code max-age-millis}, based on a moving average of the issuance rate, since any challenge older than that is
+ * dropped rather than served: its TTL started when it was minted. Only requests for the configured passkey name are
+ * served from the pool, anything else is a miss and minted on the spot.
+ */
+public final class ChallengePool implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(ChallengePool.class.getName());
+
+  private static final String DEFAULT_ID = "Anonymous";
+  private static final int DEFAULT_MIN_SIZE = 16;
+  private static final int DEFAULT_MAX_SIZE = 4096;
+  private static final long DEFAULT_MAX_AGE_MILLIS = 2000;
+  private static final long DEFAULT_REFILL_MILLIS = 50;
+  private static final double SMOOTHING = 0.2;
+
+  /**
+   * A challenge minted ahead of time.
+   *
+   * @param challenge the compact challenge to store.
+   * @param pubKeyCredOptions the serialized credential creation options to send.
+   */
+  public record Minted(Challenge challenge, String pubKeyCredOptions) {
+  }
+
+  /**
+   * Point-in-time counters of the pool.
+   *
+   * @param size the number of challenges ready to be served.
+   * @param target the size the producer currently fills the pool up to.
+   * @param hits the number of requests served from the pool.
+   * @param misses the number of requests that had to mint a challenge.
+   * @param stale the number of pooled challenges dropped because they got too old.
+   */
+  public record Stats(int size, int target, long hits, long misses, long stale) {
+  }
+
+  private final String id;
+  private final Supplier<Minted> minter;
+  private final ArrayBlockingQueue<Minted> pool;
+  private final int minSize;
+  private final int maxSize;
+  private final long maxAgeMillis;
+  private final long refillMillis;
+  private final LongSupplier clock;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder stale = new LongAdder();
+  private final LongAdder taken = new LongAdder();
+  private final ScheduledExecutorService producer;
+
+  private volatile int target;
+  private double ratePerMilli;
+
+  /**
+   * Creates a pool of challenges minted by the passkey provider and starts its producer.
+   *
+   * @param config the {@code challenges.pool} configuration node.
+   * @param passkeyProvider mints the challenges.
+   */
+  public ChallengePool(Config config, PasskeyProvider passkeyProvider) {
+    this(
+        config.get("id").asString().orElse(DEFAULT_ID),
+        minter(passkeyProvider, config.get("id").asString().orElse(DEFAULT_ID)),
+        config.get("min-size").asInt().orElse(DEFAULT_MIN_SIZE),
+        config.get("max-size").asInt().orElse(DEFAULT_MAX_SIZE),
+        config.get("max-age-millis").asLong().orElse(DEFAULT_MAX_AGE_MILLIS),
+        config.get("refill-millis").asLong().orElse(DEFAULT_REFILL_MILLIS),
+        System::currentTimeMillis,
+        true
+    );
+  }
+
+  ChallengePool(String id, Supplier<Minted> minter, int minSize, int maxSize, long maxAgeMillis, long refillMillis,
+                LongSupplier clock, boolean produce) {
+    if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+      throw new IllegalArgumentException("'min-size' and 'max-size' must satisfy 0 <= min-size <= max-size");
+    }
+    if (maxAgeMillis <= 0 || refillMillis <= 0) {
+      throw new IllegalArgumentException("'max-age-millis' and 'refill-millis' must be positive");
+    }
+
+    this.id = id;
+    this.minter = minter;
+    this.pool = new ArrayBlockingQueue<>(maxSize);
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.maxAgeMillis = maxAgeMillis;
+    this.refillMillis = refillMillis;
+    this.clock = clock;
+    this.target = minSize;
+
+    if (produce) {
+      producer = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("challenge-producer").factory());
+      producer.scheduleWithFixedDelay(this::produce, 0, refillMillis, TimeUnit.MILLISECONDS);
+    } else {
+      producer = null;
+    }
+  }
+
+  /**
+   * Takes a fresh challenge minted for the given passkey name.
+   *
+   * @param id the name of the passkey to mint.
+   * @return the challenge or {@code null} if none is ready, in which case the caller mints one.
+   */
+  public Minted take(String id) {
+    taken.increment();
+    if (this.id.equals(id)) {
+      var oldest = clock.getAsLong() - maxAgeMillis;
+      Minted minted;
+      while ((minted = pool.poll()) != null) {
+        if (minted.challenge().issuedAt() > oldest) {
+          hits.increment();
+          return minted;
+        }
+        stale.increment();
+      }
+    }
+
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Returns a point-in-time view of the pool counters.
+   */
+  public Stats stats() {
+    return new Stats(pool.size(), target, hits.sum(), misses.sum(), stale.sum());
+  }
+
+  @Override
+  public void close() {
+    if (producer != null) {
+      producer.shutdownNow();
+    }
+  }
+
+  /**
+   * Adapts the target size to the issuance rate since the last run, drops challenges about to go stale, then mints
+   * up to the target. Only the producer calls this.
+   */
+  void refill() {
+    ratePerMilli += SMOOTHING * ((double) taken.sumThenReset() / refillMillis - ratePerMilli);
+    target = (int) Math.min(maxSize, Math.max(minSize, Math.ceil(ratePerMilli * maxAgeMillis)));
+
+    // The queue is in minting order, so stale challenges are at its head.
+    var oldest = clock.getAsLong() - maxAgeMillis + refillMillis;
+    Minted head;
+    while ((head = pool.peek()) != null && head.challenge().issuedAt() <= oldest) {
+      if (pool.remove(head)) {
+        stale.increment();
+      }
+    }
+
+    while (pool.size() < target && pool.offer(minter.get())) {
+      // Keep minting until the pool reaches its target.
+    }
+  }
+
+  private void produce() {
+    try {
+      refill();
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to refill challenge pool", ex);
+    }
+  }
+
+  private static Supplier<Minted> minter(PasskeyProvider passkeyProvider, String id) {
+    return () -> {
+      var options = passkeyProvider.startCaptcha(id);
+      try {
+        return new Minted(passkeyProvider.toChallenge(options, Challenge.DEFAULT_TENANT),
+            options.toCredentialsCreateJson());
+      } catch (JsonProcessingException ex) {
+        throw new IllegalStateException("Unable to serialize credential creation options", ex);
+      }
+    };
+  }
+}
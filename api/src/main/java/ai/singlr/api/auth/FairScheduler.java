@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import io.helidon.config.Config;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the CPU-bound part of {@code /complete}, verifying attestations, on a fixed set of platform threads shared
+ * between sites in proportion to their weight.
+ *
+ * <p>Request threads are virtual, so without this a site under attack gets as much CPU as it sends requests and the
+ * latency of every other site grows with its queue. Here each verification is tagged with a virtual start time when
+ * it is queued, the later of the scheduler's virtual time and the finish time of the site's previous verification,
+ * which then moves {@code 1 / weight} forward. Workers always take the smallest start time, so a busy site only
+ * delays its own queue, a site that was idle starts at the current virtual time instead of cashing in the time it was
+ * idle, and when every site is busy each gets verifications done in proportion to its weight.
+ *
+ * <p>A site may only have {@code max-queued} verifications waiting, beyond which they are rejected right away rather
+ * than left to time out.
+ */
+public final class FairScheduler implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(FairScheduler.class.getName());
+
+  private static final double SMOOTHING = 0.1;
+  private static final Comparator<Task<?>> ORDER = Comparator.<Task<?>>comparingDouble(task -> task.start)
+      .thenComparingLong(task -> task.sequence);
+
+  /**
+   * Point-in-time counters of the verifications of one site.
+   *
+   * @param tenant the tenant of the site.
+   * @param weight the share of the workers the site gets when they are busy.
+   * @param queued the number of verifications waiting for a worker.
+   * @param completed the number of verifications run.
+   * @param rejected the number of verifications turned away because too many were queued.
+   * @param meanWaitMillis the average time verifications waited for a worker.
+   * @param recentWaitMillis the moving average of the time the latest verifications waited for a worker.
+   */
+  public record Stats(int tenant, int weight, int queued, long completed, long rejected, double meanWaitMillis,
+                      double recentWaitMillis) {
+  }
+
+  private final Lane[] lanes;
+  private final PriorityQueue<Task<?>> queue = new PriorityQueue<>(ORDER);
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition ready = lock.newCondition();
+  private final List<Thread> workers;
+
+  private double virtualTime;
+  private long sequence;
+  private boolean closed;
+
+  /**
+   * Starts the workers.
+   *
+   * @param config the {@code tenants.scheduling} configuration node.
+   * @param sites the sites, with their weights.
+   */
+  public FairScheduler(Config config, RelyingPartyRegistry sites) {
+    this(
+        sites.all().stream().collect(Collectors.toMap(Site::tenant, Site::limits)),
+        config.get("workers").asInt().orElse(0)
+    );
+  }
+
+  FairScheduler(Map<Integer, TenantLimits> limits, int workers) {
+    if (workers < 0) {
+      throw new IllegalArgumentException("'workers' must not be negative");
+    }
+    var count = workers == 0 ? Runtime.getRuntime().availableProcessors() : workers;
+
+    var length = limits.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+    this.lanes = new Lane[length];
+    limits.forEach((tenant, limit) -> lanes[tenant] = new Lane(tenant, limit.weight(), limit.maxQueued()));
+
+    var factory = Thread.ofPlatform().name("verifier-", 0).daemon().factory();
+    List<Thread> threads = new ArrayList<>(count);
+    for (var i = 0; i < count; i++) {
+      var thread = factory.newThread(this::work);
+      thread.start();
+      threads.add(thread);
+    }
+    this.workers = List.copyOf(threads);
+  }
+
+  /**
+   * Runs work of a site on a worker once its turn comes, blocking the calling thread until it is done.
+   *
+   * @param tenant the tenant of the site the work is done for.
+   * @param work the work, run inline if the tenant is unknown.
+   * @return the result of the work.
+   * @throws RejectedExecutionException if too many verifications of the site are queued or the scheduler is closed.
+   * @throws Exception if the work throws.
+   */
+  public <T> T call(int tenant, Callable<T> work) throws Exception {
+    var lane = tenant >= 0 && tenant < lanes.length ? lanes[tenant] : null;
+    if (lane == null) {
+      return work.call();
+    }
+
+    var task = new Task<>(lane, work, System.nanoTime());
+    lock.lock();
+    try {
+      if (closed) {
+        throw new RejectedExecutionException("Scheduler is closed");
+      }
+      if (lane.queued >= lane.maxQueued) {
+        lane.rejected.increment();
+        throw new RejectedExecutionException("Too many verifications queued for tenant " + tenant);
+      }
+      task.start = Math.max(virtualTime, lane.finish);
+      task.sequence = sequence++;
+      lane.finish = task.start + 1.0 / lane.weight;
+      lane.queued++;
+      queue.add(task);
+      ready.signal();
+    } finally {
+      lock.unlock();
+    }
+
+    try {
+      return task.get();
+    } catch (InterruptedException ex) {
+      // Leave the queued task to be skipped by its worker.
+      task.cancel(false);
+      throw ex;
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      if (ex.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Returns the counters of every site.
+   */
+  public List<Stats> stats() {
+    List<Stats> stats = new ArrayList<>();
+    for (var lane : lanes) {
+      if (lane != null) {
+        var completed = lane.completed.sum();
+        var meanWaitNanos = completed == 0 ? 0.0 : (double) lane.waitNanos.sum() / completed;
+        stats.add(new Stats(lane.tenant, lane.weight, lane.queued, completed, lane.rejected.sum(),
+            meanWaitNanos / 1_000_000, lane.recentWaitNanos / 1_000_000));
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Stops taking work, runs what is already queued and waits for the workers to finish.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      ready.signalAll();
+    } finally {
+      lock.unlock();
+    }
+
+    for (var worker : workers) {
+      try {
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void work() {
+    while (true) {
+      Task<?> task;
+      lock.lock();
+      try {
+        while ((task = queue.poll()) == null) {
+          if (closed) {
+            return;
+          }
+          ready.await();
+        }
+        virtualTime = task.start;
+        var lane = task.lane;
+        lane.queued--;
+        var waited = System.nanoTime() - task.queuedAt;
+        lane.waitNanos.add(waited);
+        lane.recentWaitNanos += SMOOTHING * (waited - lane.recentWaitNanos);
+      } catch (InterruptedException ex) {
+        return;
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        task.run();
+      } catch (RuntimeException ex) {
+        LOGGER.log(Level.SEVERE, "Verification worker failed", ex);
+      }
+    }
+  }
+
+  private static final class Lane {
+
+    private final int tenant;
+    private final int weight;
+    private final int maxQueued;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    // Only written under the scheduler's lock.
+    private double finish;
+    private volatile int queued;
+    private volatile double recentWaitNanos;
+
+    private Lane(int tenant, int weight, int maxQueued) {
+      this.tenant = tenant;
+      this.weight = weight;
+      this.maxQueued = maxQueued;
+    }
+  }
+
+  private static final class Task<T> extends FutureTask<T> {
+
+    private final Lane lane;
+    private final long queuedAt;
+    private double start;
+    private long sequence;
+
+    private Task(Lane lane, Callable<T> work, long queuedAt) {
+      // Counted before the outcome is set, which is what releases the caller, so that it sees its own verification.
+      super(() -> {
+        try {
+          return work.call();
+        } finally {
+          lane.completed.increment();
+        }
+      });
+      this.lane = lane;
+      this.queuedAt = queuedAt;
+    }
+  }
+}
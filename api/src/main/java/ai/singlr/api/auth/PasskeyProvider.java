@@ -5,6 +5,9 @@
 
 package ai.singlr.api.auth;
 
+import ai.singlr.api.challenge.Challenge;
+import ai.singlr.api.challenge.ChallengeSealer;
+import ai.singlr.api.challenge.NodeAffinity;
 import ai.singlr.core.DateTimeUtils;
 import ai.singlr.core.Utils;
 import ai.singlr.core.result.Result;
@@ -12,27 +15,18 @@ import com.yubico.webauthn.CredentialRepository;
 import com.yubico.webauthn.FinishRegistrationOptions;
 import com.yubico.webauthn.RegisteredCredential;
 import com.yubico.webauthn.RegistrationResult;
-import com.yubico.webauthn.RelyingParty;
-import com.yubico.webauthn.StartRegistrationOptions;
-import com.yubico.webauthn.data.AuthenticatorAttachment;
 import com.yubico.webauthn.data.AuthenticatorAttestationResponse;
-import com.yubico.webauthn.data.AuthenticatorSelectionCriteria;
 import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.ClientRegistrationExtensionOutputs;
 import com.yubico.webauthn.data.PublicKeyCredential;
 import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
-import com.yubico.webauthn.data.RelyingPartyIdentity;
-import com.yubico.webauthn.data.ResidentKeyRequirement;
 import com.yubico.webauthn.data.UserIdentity;
-import com.yubico.webauthn.data.UserVerificationRequirement;
-import com.yubico.webauthn.data.exception.Base64UrlException;
 import com.yubico.webauthn.exception.RegistrationFailedException;
 import io.helidon.config.Config;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.security.SecureRandom;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -46,34 +40,44 @@ public class PasskeyProvider implements CredentialRepository {
 
   private static final Logger LOGGER = Logger.getLogger(PasskeyProvider.class.getName());
 
-  private final RelyingParty rp;
+  // Same length as the challenges generated by the relying party.
+  private static final int CHALLENGE_LENGTH = 32;
+
+  private final RelyingPartyRegistry sites;
   private final long timeout;
+  private final ChallengeSealer sealer;
+  private final NodeAffinity affinity;
+  private final SecureRandom random = new SecureRandom();
 
   /**
    * Handles the webAuthN registration and assertion process.
    */
   public PasskeyProvider(Config wanConfig) {
-    Set<String> origins;
-    if (wanConfig.get("origins").exists()) {
-      var rawOrigins = wanConfig.get("origins").asString().get();
-      origins = Set.of(rawOrigins.split(","));
-    } else {
-      throw new IllegalArgumentException("'origins' must be specified");
-    }
+    this(wanConfig, null, null);
+  }
 
-    String id;
-    if (wanConfig.get("id").exists()) {
-      id = wanConfig.get("id").asString().get();
-    } else {
-      throw new IllegalArgumentException("'id' must be specified");
-    }
+  /**
+   * Handles the webAuthN registration and assertion process.
+   *
+   * @param wanConfig the {@code wan} configuration node.
+   * @param sealer seals challenges so that they don't need to be stored, or {@code null} to store them.
+   * @param affinity tags user handles with this node, or {@code null} if any node can complete a ceremony.
+   */
+  public PasskeyProvider(Config wanConfig, ChallengeSealer sealer, NodeAffinity affinity) {
+    this(wanConfig, null, sealer, affinity);
+  }
 
-    String name;
-    if (wanConfig.get("name").exists()) {
-      name = wanConfig.get("name").asString().get();
-    } else {
-      throw new IllegalArgumentException("'name' must be specified");
-    }
+  /**
+   * Handles the webAuthN registration and assertion process for several sites.
+   *
+   * @param wanConfig the {@code wan} configuration node, the default site.
+   * @param sitesConfig the {@code sites} configuration node, or {@code null} to only serve the default site.
+   * @param sealer seals challenges so that they don't need to be stored, or {@code null} to store them.
+   * @param affinity tags user handles with this node, or {@code null} if any node can complete a ceremony.
+   */
+  public PasskeyProvider(Config wanConfig, Config sitesConfig, ChallengeSealer sealer, NodeAffinity affinity) {
+    this.sealer = sealer;
+    this.affinity = affinity;
 
     if (wanConfig.get("timeout").exists()) {
       timeout = wanConfig.get("timeout").asLong().get();
@@ -81,16 +85,14 @@ public class PasskeyProvider implements CredentialRepository {
       timeout = 100000;
     }
 
-    RelyingPartyIdentity rpIdentity = RelyingPartyIdentity.builder()
-        .id(id)
-        .name(name)
-        .build();
+    sites = new RelyingPartyRegistry(wanConfig, sitesConfig, this, timeout);
+  }
 
-    rp = RelyingParty.builder()
-        .identity(rpIdentity)
-        .credentialRepository(this)
-        .origins(origins)
-        .build();
+  /**
+   * Returns the sites passkeys are created for.
+   */
+  public RelyingPartyRegistry sites() {
+    return sites;
   }
 
   /**
@@ -98,45 +100,143 @@ public class PasskeyProvider implements CredentialRepository {
    *
    * @return the newly minted {@link PublicKeyCredentialCreationOptions}.
    */
-  public PublicKeyCredentialCreationOptions startCaptcha(String id)
-      throws Base64UrlException {
-    var userHandle = Base64.getUrlEncoder().encodeToString(
-        DateTimeUtils.newId().toString().getBytes(StandardCharsets.UTF_8)
-    );
-    var identity = UserIdentity.builder()
-        .name(id)
-        .displayName(id)
-        .id(ByteArray.fromBase64Url(userHandle))
-        .build();
+  public PublicKeyCredentialCreationOptions startCaptcha(String id) {
+    return startCaptcha(id, Challenge.DEFAULT_TENANT);
+  }
+
+  /**
+   * Start registration process for CAPTCHA purposes, for the site of the given tenant.
+   *
+   * @param id the name shown for the disposable passkey.
+   * @param tenant the tenant of the site.
+   * @return the newly minted {@link PublicKeyCredentialCreationOptions}.
+   */
+  public PublicKeyCredentialCreationOptions startCaptcha(String id, int tenant) {
+    return reissueCaptcha(id, mintChallenge(tenant));
+  }
+
+  /**
+   * Mints a new challenge and user handle without building the options around them, for callers that render the
+   * options themselves.
+   *
+   * @param tenant the tenant the challenge is issued for.
+   * @return the compact challenge.
+   */
+  public Challenge mintChallenge(int tenant) {
+    var userHandle = DateTimeUtils.newBinaryId();
+    if (affinity != null) {
+      userHandle = affinity.tag(userHandle);
+    }
+
+    var issuedAt = System.currentTimeMillis();
+    byte[] challenge;
+    if (sealer != null) {
+      challenge = sealer.seal(userHandle, issuedAt, tenant);
+    } else {
+      challenge = new byte[CHALLENGE_LENGTH];
+      random.nextBytes(challenge);
+    }
+
+    return new Challenge(challenge, userHandle, issuedAt, tenant);
+  }
 
-    var options = StartRegistrationOptions.builder()
-        .user(identity)
-        .authenticatorSelection(AuthenticatorSelectionCriteria
-            .builder()
-            .authenticatorAttachment(AuthenticatorAttachment.PLATFORM)
-            .userVerification(UserVerificationRequirement.REQUIRED)
-            .residentKey(ResidentKeyRequirement.REQUIRED)
-            .build()
-        )
-        .timeout(timeout)
+  /**
+   * Rebuilds the options of a challenge minted earlier, so that a client asking again takes part in the same ceremony.
+   *
+   * @param id the name shown for the disposable passkey.
+   * @param challenge the pending challenge.
+   * @return the {@link PublicKeyCredentialCreationOptions} of the pending challenge.
+   */
+  public PublicKeyCredentialCreationOptions reissueCaptcha(String id, Challenge challenge) {
+    return site(challenge).creationTemplate().toBuilder()
+        .challenge(new ByteArray(challenge.challenge()))
+        .user(UserIdentity.builder()
+            .name(id)
+            .displayName(id)
+            .id(new ByteArray(challenge.userHandle()))
+            .build())
         .build();
+  }
+
+  /**
+   * Returns {@code true} if challenges are sealed into the ceremony instead of being stored.
+   */
+  public boolean isSealed() {
+    return sealer != null;
+  }
+
+  /**
+   * Reduces the minted options to the compact form kept while the ceremony is pending.
+   *
+   * @param options the options returned by {@link #startCaptcha(String)}.
+   * @param tenant the tenant the challenge was issued for.
+   * @return the compact challenge.
+   */
+  public Challenge toChallenge(PublicKeyCredentialCreationOptions options, int tenant) {
+    return new Challenge(
+        options.getChallenge().getBytes(),
+        options.getUser().getId().getBytes(),
+        System.currentTimeMillis(),
+        tenant
+    );
+  }
 
-    return rp.startRegistration(options);
+  /**
+   * Returns how long, in milliseconds, a minted challenge remains valid.
+   */
+  public long timeout() {
+    return timeout;
+  }
+
+  /**
+   * Parses the public key credential created by the client.
+   *
+   * @param pubKeyCredJsonFromClient the public key credential JSON.
+   * @return the parsed credential.
+   * @throws IOException if there is an error parsing the public key credential.
+   */
+  public static PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>
+      parseCredential(String pubKeyCredJsonFromClient) throws IOException {
+    return PublicKeyCredential.parseRegistrationResponseJson(pubKeyCredJsonFromClient);
+  }
+
+  /**
+   * Recovers the challenge sealed into the credential's client data.
+   *
+   * @param pkc the public key credential created by the client.
+   * @return the challenge or {@code null} if it is not authentic or has expired.
+   */
+  public Challenge unsealChallenge(
+      PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> pkc) {
+    var challenge = sealer.unseal(pkc.getResponse().getClientData().getChallenge().getBytes());
+    if (challenge == null) {
+      return null;
+    }
+
+    var now = System.currentTimeMillis();
+    if (challenge.issuedAt() + timeout <= now || challenge.issuedAt() > now + timeout) {
+      return null;
+    }
+
+    return challenge;
   }
 
   /**
    * Finish registration process.
    *
+   * @param pkc the public key credential created by the client.
+   * @param challenge the pending challenge the credential was created for.
    * @return the registration result.
-   * @throws IOException if there is an error parsing the public key credential.
    * @throws RegistrationFailedException if the registration fails.
    */
   public Result<RegistrationResult> completeCaptcha(
-      String pubKeyCredJsonFromClient,
-      PublicKeyCredentialCreationOptions pubKeyCredFromServer)
-      throws IOException, RegistrationFailedException {
-    PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> pkc =
-        PublicKeyCredential.parseRegistrationResponseJson(pubKeyCredJsonFromClient);
+      PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> pkc,
+      Challenge challenge)
+      throws RegistrationFailedException {
+    var site = sites.site(challenge.tenant());
+    if (site == null) {
+      return Result.invalid("Unknown site");
+    }
 
     // Handle android quirks.
     var clientOrigin = pkc.getResponse().getClientData().getOrigin();
@@ -144,7 +244,7 @@ public class PasskeyProvider implements CredentialRepository {
       // Recreate the clientJson with the regular origin.
       try {
         var collectedData = pkc.getResponse().getClientData();
-        setFieldValue(collectedData, "origin", rp.getOrigins().iterator().next());
+        setFieldValue(collectedData, "origin", site.relyingParty().getOrigins().iterator().next());
 
       } catch (NoSuchFieldException | IllegalAccessException ex) {
         LOGGER.log(Level.SEVERE, "Failed to set origin", ex);
@@ -152,13 +252,33 @@ public class PasskeyProvider implements CredentialRepository {
     }
 
     FinishRegistrationOptions options = FinishRegistrationOptions.builder()
-        .request(pubKeyCredFromServer)
+        .request(restoreOptions(site, challenge))
         .response(pkc)
         .build();
-    RegistrationResult result = rp.finishRegistration(options);
+    RegistrationResult result = site.relyingParty().finishRegistration(options);
     return Result.success(result);
   }
 
+  private PublicKeyCredentialCreationOptions restoreOptions(Site site, Challenge challenge) {
+    var userHandle = new ByteArray(challenge.userHandle());
+    return site.creationTemplate().toBuilder()
+        .challenge(new ByteArray(challenge.challenge()))
+        .user(UserIdentity.builder()
+            .name(userHandle.getBase64Url())
+            .displayName(userHandle.getBase64Url())
+            .id(userHandle)
+            .build())
+        .build();
+  }
+
+  private Site site(Challenge challenge) {
+    var site = sites.site(challenge.tenant());
+    if (site == null) {
+      throw new IllegalArgumentException("Unknown tenant: " + challenge.tenant());
+    }
+    return site;
+  }
+
   @Override
   public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String id) {
     // TODO: Introduce persistence if needed, although the concept here is disposable passkeys.
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import ai.singlr.api.challenge.Challenge;
+import ai.singlr.api.challenge.NodeAffinity;
+import ai.singlr.api.traffic.HeavyHitters;
+import ai.singlr.core.DateTimeUtils;
+import io.helidon.config.Config;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Mints and checks the proof-of-work puzzles offered to clients that cannot create a platform passkey.
+ *
+ * <p>A puzzle is a {@link Challenge} kept in the challenge store like any other, whose bytes are
+ * {@code magic (1) | difficulty (1) | random (22)}. The client searches for a nonce such that the SHA-256 hash of the
+ * puzzle followed by the nonce, as 8 big-endian bytes, starts with {@code difficulty} zero bits, which takes about
+ * {@code 2^difficulty} hashes. Checking it takes one, so under attack the cost falls on the clients.
+ *
+ * <p>The difficulty starts at the base difficulty and gains a bit, doubling the work, once the puzzles issued per
+ * second go past the busy rate and each time they double again. It gains bits the same way once the network of the
+ * client, its /24 or /48 for IPv6, asked for more than its free puzzles, a wrong answer counting as many puzzles.
+ * Both counts are kept in fixed memory, as counters halved every second and every minute respectively, each packed with
+ * the period it was last updated in so that updating one is a single compare-and-set. Networks whose counters collide
+ * share their counts, which can only make their puzzles harder.
+ */
+public final class ProofOfWork {
+
+  private static final byte MAGIC = 0x50;
+  private static final int LENGTH = 24;
+  private static final int MAX_DIFFICULTY = 32;
+  private static final int FAILURE_WEIGHT = 8;
+  private static final long SECOND_MILLIS = TimeUnit.SECONDS.toMillis(1);
+  private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final int COUNT_BITS = 32;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+  private static final int DEFAULT_BASE_DIFFICULTY = 14;
+  private static final int DEFAULT_MAX_DIFFICULTY = 22;
+  private static final int DEFAULT_BUSY_PER_SECOND = 200;
+  private static final int DEFAULT_FREE_PER_NETWORK = 10;
+  private static final int DEFAULT_NETWORKS = 1 << 16;
+
+  /**
+   * Point-in-time counters of the puzzles.
+   *
+   * @param baseDifficulty the difficulty of a puzzle while the service is idle.
+   * @param maxDifficulty the most a puzzle can be made harder to.
+   * @param loadDifficulty the difficulty a new client would get at the current load.
+   * @param issued the number of puzzles issued.
+   * @param solved the number of puzzles solved.
+   * @param failed the number of wrong answers.
+   */
+  public record Stats(int baseDifficulty, int maxDifficulty, int loadDifficulty, long issued, long solved,
+                      long failed) {
+  }
+
+  private final int baseDifficulty;
+  private final int maxDifficulty;
+  private final long busyPerSecond;
+  private final long freePerNetwork;
+  private final NodeAffinity affinity;
+  private final AtomicLongArray load = new AtomicLongArray(1);
+  private final AtomicLongArray networks;
+  private final long seed;
+  private final LongSupplier clock;
+  private final MessageDigest prototype;
+  private final SecureRandom random = new SecureRandom();
+  private final LongAdder issued = new LongAdder();
+  private final LongAdder solved = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  /**
+   * Creates the puzzles.
+   *
+   * @param config the {@code proof-of-work} configuration node.
+   * @param affinity the node puzzles are tied to, or {@code null} if any node can check them.
+   */
+  public ProofOfWork(Config config, NodeAffinity affinity) {
+    this(
+        config.get("base-difficulty").asInt().orElse(DEFAULT_BASE_DIFFICULTY),
+        config.get("max-difficulty").asInt().orElse(DEFAULT_MAX_DIFFICULTY),
+        config.get("busy-per-second").asInt().orElse(DEFAULT_BUSY_PER_SECOND),
+        config.get("free-per-network").asInt().orElse(DEFAULT_FREE_PER_NETWORK),
+        config.get("networks").asInt().orElse(DEFAULT_NETWORKS),
+        affinity,
+        new SecureRandom().nextLong(),
+        System::currentTimeMillis);
+  }
+
+  ProofOfWork(int baseDifficulty, int maxDifficulty, int busyPerSecond, int freePerNetwork, int networks,
+              NodeAffinity affinity, long seed, LongSupplier clock) {
+    if (baseDifficulty < 0 || maxDifficulty < baseDifficulty || maxDifficulty > MAX_DIFFICULTY) {
+      throw new IllegalArgumentException(
+          "'base-difficulty' and 'max-difficulty' must be ordered between 0 and " + MAX_DIFFICULTY);
+    }
+    if (busyPerSecond < 1 || freePerNetwork < 1) {
+      throw new IllegalArgumentException("'busy-per-second' and 'free-per-network' must be positive");
+    }
+    if (networks < 1 || Integer.bitCount(networks) != 1) {
+      throw new IllegalArgumentException("'networks' must be a power of two");
+    }
+
+    this.baseDifficulty = baseDifficulty;
+    this.maxDifficulty = maxDifficulty;
+    this.busyPerSecond = busyPerSecond;
+    this.freePerNetwork = freePerNetwork;
+    this.affinity = affinity;
+    this.networks = new AtomicLongArray(networks);
+    this.seed = seed;
+    this.clock = clock;
+    try {
+      this.prototype = MessageDigest.getInstance("SHA-256");
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException("SHA-256 is not available", ex);
+    }
+  }
+
+  /**
+   * Mints a puzzle, as hard as the current load and the recent requests of the client's network call for.
+   *
+   * @param tenant the tenant the puzzle is issued for.
+   * @param remoteIp the address of the client.
+   * @return the puzzle, to be stored until it is solved.
+   */
+  public Challenge mint(int tenant, String remoteIp) {
+    var now = clock.getAsLong();
+    var busy = add(load, 0, 1, now / SECOND_MILLIS);
+    var asked = add(networks, network(remoteIp), 1, now / MINUTE_MILLIS);
+    var difficulty = Math.min(maxDifficulty, baseDifficulty + bits(busy, busyPerSecond) + bits(asked, freePerNetwork));
+
+    var puzzle = new byte[LENGTH];
+    random.nextBytes(puzzle);
+    puzzle[0] = MAGIC;
+    puzzle[1] = (byte) difficulty;
+    var userHandle = DateTimeUtils.newBinaryId();
+    if (affinity != null) {
+      userHandle = affinity.tag(userHandle);
+    }
+    issued.increment();
+    return new Challenge(puzzle, userHandle, now, tenant);
+  }
+
+  /**
+   * Checks the answer to a puzzle with a single hash, counting a wrong one against the network of the client.
+   *
+   * @param puzzle the puzzle, already removed from the store so it cannot be answered twice.
+   * @param nonce the answer of the client.
+   * @param remoteIp the address of the client.
+   * @return {@code true} if the hash starts with enough zero bits.
+   */
+  public boolean verify(Challenge puzzle, long nonce, String remoteIp) {
+    MessageDigest digest;
+    try {
+      digest = (MessageDigest) prototype.clone();
+    } catch (CloneNotSupportedException ex) {
+      throw new IllegalStateException("SHA-256 digests cannot be cloned", ex);
+    }
+    digest.update(puzzle.challenge());
+    for (var shift = 56; shift >= 0; shift -= 8) {
+      digest.update((byte) (nonce >>> shift));
+    }
+
+    if (leadingZeros(digest.digest()) >= difficulty(puzzle)) {
+      solved.increment();
+      return true;
+    }
+    failed.increment();
+    add(networks, network(remoteIp), FAILURE_WEIGHT, clock.getAsLong() / MINUTE_MILLIS);
+    return false;
+  }
+
+  /**
+   * Returns {@code true} if a stored challenge is a puzzle rather than a passkey challenge.
+   */
+  public static boolean isPuzzle(Challenge challenge) {
+    var bytes = challenge.challenge();
+    return bytes.length == LENGTH && bytes[0] == MAGIC;
+  }
+
+  /**
+   * Returns the number of leading zero bits the hash of the answer to a puzzle must have.
+   */
+  public static int difficulty(Challenge puzzle) {
+    return puzzle.challenge()[1] & 0xff;
+  }
+
+  /**
+   * Returns a point-in-time view of the puzzles.
+   */
+  public Stats stats() {
+    var busy = read(load, 0, clock.getAsLong() / SECOND_MILLIS);
+    var loadDifficulty = Math.min(maxDifficulty, baseDifficulty + bits(busy, busyPerSecond));
+    return new Stats(baseDifficulty, maxDifficulty, loadDifficulty, issued.sum(), solved.sum(), failed.sum());
+  }
+
+  /**
+   * Returns the bits of difficulty a count adds: none up to the free count, then one more each time it doubles.
+   */
+  static int bits(long count, long free) {
+    return count <= free ? 0 : Long.SIZE - Long.numberOfLeadingZeros(count / free);
+  }
+
+  private static int leadingZeros(byte[] hash) {
+    var zeros = 0;
+    for (var b : hash) {
+      if (b != 0) {
+        return zeros + Integer.numberOfLeadingZeros(b & 0xff) - (Integer.SIZE - Byte.SIZE);
+      }
+      zeros += Byte.SIZE;
+    }
+    return zeros;
+  }
+
+  /**
+   * Adds to a counter halved every period and returns its new value. The counter keeps the period it was last updated
+   * in, in its high bits, so that the halvings it missed are applied on the next update.
+   */
+  private static long add(AtomicLongArray counters, int index, long weight, long period) {
+    while (true) {
+      var current = counters.get(index);
+      var last = current >>> COUNT_BITS;
+      var next = Math.min(COUNT_MASK, decay(current, period) + weight);
+      if (counters.compareAndSet(index, current, Math.max(last, period) << COUNT_BITS | next)) {
+        return next;
+      }
+    }
+  }
+
+  private static long read(AtomicLongArray counters, int index, long period) {
+    return decay(counters.get(index), period);
+  }
+
+  private static long decay(long counter, long period) {
+    // A period that went backwards, from a thread that read the clock earlier, leaves the count as it is.
+    var elapsed = Math.max(0, period - (counter >>> COUNT_BITS));
+    return elapsed >= COUNT_BITS ? 0 : (counter & COUNT_MASK) >>> elapsed;
+  }
+
+  private int network(String remoteIp) {
+    // 64-bit FNV-1a from a random basis, finished with a mixer, so that no network can aim at the counter of another.
+    var prefix = HeavyHitters.prefix(remoteIp);
+    var hash = 0xcbf29ce484222325L ^ seed;
+    for (var i = 0; i < prefix.length(); i++) {
+      hash ^= prefix.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return (int) hash & (networks.length() - 1);
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import ai.singlr.api.challenge.Challenge;
+import com.yubico.webauthn.CredentialRepository;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.StartRegistrationOptions;
+import com.yubico.webauthn.data.AuthenticatorAttachment;
+import com.yubico.webauthn.data.AuthenticatorSelectionCriteria;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.RelyingPartyIdentity;
+import com.yubico.webauthn.data.ResidentKeyRequirement;
+import com.yubico.webauthn.data.UserIdentity;
+import com.yubico.webauthn.data.UserVerificationRequirement;
+import io.helidon.config.Config;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The sites one process serves, each with its own relying party, origins and tenant.
+ *
+ * <p>The {@code wan} configuration is the default site, served to widgets that send no site key, with the default
+ * tenant. Every entry of {@code sites} adds a site with its own {@code key} and {@code tenant}. Tenants are stored
+ * with pending challenges and issued tokens, so a site must keep its tenant for as long as those live. Each site may
+ * also set {@code limits}, see {@link TenantLimits}.
+ *
+ * <p>Sites are resolved by key from a hash map and by tenant from an array, so resolving the site of a request or of
+ * a challenge does not allocate.
+ */
+public final class RelyingPartyRegistry {
+
+  static final int MAX_TENANT = 65_535;
+
+  private final Site defaultSite;
+  private final Map<String, Site> byKey;
+  private final Site[] byTenant;
+  private final Set<String> origins;
+  private final List<Site> all;
+
+  /**
+   * Builds the relying party of every site.
+   *
+   * @param wanConfig the {@code wan} configuration node, the default site.
+   * @param sitesConfig the {@code sites} configuration node, or {@code null} to only serve the default site.
+   * @param repository the credentials repository the relying parties look passkeys up in.
+   * @param timeout how long, in milliseconds, a minted challenge remains valid.
+   */
+  RelyingPartyRegistry(Config wanConfig, Config sitesConfig, CredentialRepository repository, long timeout) {
+    defaultSite = buildSite(wanConfig, wanConfig.get("site-key").asString().orElse(null), Challenge.DEFAULT_TENANT,
+        repository, timeout);
+
+    Map<String, Site> byKey = new HashMap<>();
+    Map<Integer, Site> byTenant = new HashMap<>();
+    byTenant.put(defaultSite.tenant(), defaultSite);
+    if (defaultSite.key() != null) {
+      byKey.put(defaultSite.key(), defaultSite);
+    }
+
+    var sitesConfigs = sitesConfig == null ? List.<Config>of() : sitesConfig.asNodeList().orElse(List.of());
+    for (var siteConfig : sitesConfigs) {
+      String key;
+      if (siteConfig.get("key").exists()) {
+        key = siteConfig.get("key").asString().get();
+      } else {
+        throw new IllegalArgumentException("'key' must be specified");
+      }
+
+      int tenant;
+      if (siteConfig.get("tenant").exists()) {
+        tenant = siteConfig.get("tenant").asInt().get();
+      } else {
+        throw new IllegalArgumentException("'tenant' must be specified");
+      }
+      if (tenant <= Challenge.DEFAULT_TENANT || tenant > MAX_TENANT) {
+        throw new IllegalArgumentException("'tenant' must be between 1 and " + MAX_TENANT);
+      }
+
+      var site = buildSite(siteConfig, key, tenant, repository, timeout);
+      if (byKey.putIfAbsent(key, site) != null) {
+        throw new IllegalArgumentException("Site key is used more than once: " + key);
+      }
+      if (byTenant.putIfAbsent(tenant, site) != null) {
+        throw new IllegalArgumentException("Tenant is used more than once: " + tenant);
+      }
+    }
+
+    this.byKey = Map.copyOf(byKey);
+    this.byTenant = new Site[byTenant.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1];
+    byTenant.forEach((tenant, site) -> this.byTenant[tenant] = site);
+    this.all = List.copyOf(byTenant.values());
+    this.origins = byTenant.values().stream()
+        .flatMap(site -> site.origins().stream())
+        .collect(Collectors.toUnmodifiableSet());
+  }
+
+  /**
+   * Resolves the site of a request.
+   *
+   * @param key the site key sent by the widget, or {@code null} for the default site.
+   * @return the site or {@code null} if the key is unknown.
+   */
+  public Site site(String key) {
+    return key == null ? defaultSite : byKey.get(key);
+  }
+
+  /**
+   * Resolves the site a challenge or a token was issued for.
+   *
+   * @param tenant the tenant of the challenge.
+   * @return the site or {@code null} if no site has this tenant.
+   */
+  public Site site(int tenant) {
+    return tenant >= 0 && tenant < byTenant.length ? byTenant[tenant] : null;
+  }
+
+  /**
+   * Returns the site configured by {@code wan}.
+   */
+  public Site defaultSite() {
+    return defaultSite;
+  }
+
+  /**
+   * Returns every site, the default one included.
+   */
+  public List<Site> all() {
+    return all;
+  }
+
+  /**
+   * Returns the origins of every site, for the CORS policy.
+   */
+  public Set<String> origins() {
+    return origins;
+  }
+
+  private static Site buildSite(Config config, String key, int tenant, CredentialRepository repository, long timeout) {
+    Set<String> origins;
+    if (config.get("origins").exists()) {
+      var rawOrigins = config.get("origins").asString().get();
+      origins = Arrays.stream(rawOrigins.split(","))
+          .map(String::trim)
+          .collect(Collectors.toCollection(HashSet::new));
+    } else {
+      throw new IllegalArgumentException("'origins' must be specified");
+    }
+
+    String id;
+    if (config.get("id").exists()) {
+      id = config.get("id").asString().get();
+    } else {
+      throw new IllegalArgumentException("'id' must be specified");
+    }
+
+    String name;
+    if (config.get("name").exists()) {
+      name = config.get("name").asString().get();
+    } else {
+      throw new IllegalArgumentException("'name' must be specified");
+    }
+
+    var rp = RelyingParty.builder()
+        .identity(RelyingPartyIdentity.builder()
+            .id(id)
+            .name(name)
+            .build())
+        .credentialRepository(repository)
+        .origins(origins)
+        .build();
+
+    // Everything but the challenge and the user is the same for every ceremony, so options are minted from this
+    // template, and pending challenges only keep those two and are rebuilt from it on completion.
+    var creationTemplate = rp.startRegistration(registrationOptions(UserIdentity.builder()
+        .name(name)
+        .displayName(name)
+        .id(new ByteArray(new byte[] {0}))
+        .build(), timeout));
+
+    var limits = TenantLimits.create(config.get("limits"));
+    return new Site(key, tenant, Set.copyOf(origins), limits, rp, creationTemplate);
+  }
+
+  private static StartRegistrationOptions registrationOptions(UserIdentity identity, long timeout) {
+    return StartRegistrationOptions.builder()
+        .user(identity)
+        .authenticatorSelection(AuthenticatorSelectionCriteria
+            .builder()
+            .authenticatorAttachment(AuthenticatorAttachment.PLATFORM)
+            .userVerification(UserVerificationRequirement.REQUIRED)
+            .residentKey(ResidentKeyRequirement.REQUIRED)
+            .build()
+        )
+        .timeout(timeout)
+        .build();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import java.util.Set;
+
+/**
+ * A site protected by the service, with the relying party its passkeys are created for.
+ *
+ * <p>The relying party and the options every ceremony of the site is minted from are built once, when the registry is
+ * created.
+ */
+public final class Site {
+
+  private final String key;
+  private final int tenant;
+  private final Set<String> origins;
+  private final TenantLimits limits;
+  private final RelyingParty relyingParty;
+  private final PublicKeyCredentialCreationOptions creationTemplate;
+
+  Site(String key, int tenant, Set<String> origins, TenantLimits limits, RelyingParty relyingParty,
+       PublicKeyCredentialCreationOptions creationTemplate) {
+    this.key = key;
+    this.tenant = tenant;
+    this.origins = origins;
+    this.limits = limits;
+    this.relyingParty = relyingParty;
+    this.creationTemplate = creationTemplate;
+  }
+
+  /**
+   * Returns the key the widget of this site sends, or {@code null} for the default site.
+   */
+  public String key() {
+    return key;
+  }
+
+  /**
+   * Returns the tenant challenges and tokens of this site are issued for.
+   */
+  public int tenant() {
+    return tenant;
+  }
+
+  /**
+   * Returns the origins the widget of this site may be embedded in.
+   */
+  public Set<String> origins() {
+    return origins;
+  }
+
+  /**
+   * Returns {@code true} if the widget of this site may be embedded in the given origin.
+   *
+   * @param origin the {@code Origin} header of a request.
+   */
+  public boolean allowsOrigin(String origin) {
+    return origins.contains(origin);
+  }
+
+  /**
+   * Returns how much of the node this site may use.
+   */
+  public TenantLimits limits() {
+    return limits;
+  }
+
+  RelyingParty relyingParty() {
+    return relyingParty;
+  }
+
+  PublicKeyCredentialCreationOptions creationTemplate() {
+    return creationTemplate;
+  }
+}
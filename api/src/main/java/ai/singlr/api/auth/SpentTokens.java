@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import io.helidon.config.Config;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers which verification tokens have been redeemed, in memory that does not grow with the number of tokens.
+ *
+ * <p>Tokens are kept in one Bloom filter per TTL-long window of expiry times. Tokens that are still valid expire
+ * within the current or the next window, so three filters suffice: while two of them take claims, a virtual thread
+ * clears the one of the window that just ended for the window that comes next. A token that expired is rejected by
+ * its signature check anyway, so forgetting it costs nothing.
+ *
+ * <p>The filters are blocked: every bit of a token lies in the same 64-bit word. A claim is a single compare-and-set
+ * of that word, which makes it lock-free and guarantees that concurrent redemptions of one token succeed only once.
+ * The price is a few more bits per token than a classic Bloom filter for the same false-positive rate, which is the
+ * rate of fresh tokens rejected as already spent. The filters are sized for {@code expected-tokens} per window at the
+ * configured {@code false-positive-rate}, which cannot go much below one in a million with a single word per token.
+ *
+ * <p>The index is local to the process. Nodes behind a load balancer each accept a token once, so tokens are only
+ * single-use across the cluster if they are all checked on the same node.
+ */
+public final class SpentTokens implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(SpentTokens.class.getName());
+
+  private static final int GENERATIONS = 3;
+  private static final int MAX_HASHES = 16;
+  private static final int MAX_BITS_PER_TOKEN = 128;
+  private static final long DEFAULT_EXPECTED_TOKENS = 1_000_000;
+  private static final double DEFAULT_FALSE_POSITIVE_RATE = 1e-4;
+
+  /**
+   * Point-in-time view of the index.
+   *
+   * @param expectedTokens the number of tokens per window the filters are sized for.
+   * @param falsePositiveRate the configured false-positive rate.
+   * @param sizedFalsePositiveRate the false-positive rate of a filter holding {@code expectedTokens}.
+   * @param currentFalsePositiveRate the false-positive rate of the fullest live filter.
+   * @param bitsPerToken the number of bits each filter has per expected token.
+   * @param hashes the number of bits set per token.
+   * @param bytes the memory held by the filters.
+   * @param redeemed the number of tokens redeemed.
+   * @param rejected the number of tokens rejected as already spent.
+   */
+  public record Stats(
+      long expectedTokens,
+      double falsePositiveRate,
+      double sizedFalsePositiveRate,
+      double currentFalsePositiveRate,
+      int bitsPerToken,
+      int hashes,
+      long bytes,
+      long redeemed,
+      long rejected) {
+  }
+
+  private final long windowMillis;
+  private final long expectedTokens;
+  private final double falsePositiveRate;
+  private final int bitsPerToken;
+  private final int hashes;
+  private final int words;
+  private final Generation[] generations = new Generation[GENERATIONS];
+  private final LongSupplier clock;
+  private final LongAdder redeemed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final ScheduledExecutorService sweeper;
+
+  /**
+   * Creates the index and starts rotating its filters.
+   *
+   * @param config the {@code tokens.single-use} configuration node.
+   * @param ttlMillis the time to live of the tokens.
+   */
+  public SpentTokens(Config config, long ttlMillis) {
+    this(
+        ttlMillis,
+        config.get("expected-tokens").asLong().orElse(DEFAULT_EXPECTED_TOKENS),
+        config.get("false-positive-rate").asDouble().orElse(DEFAULT_FALSE_POSITIVE_RATE),
+        System::currentTimeMillis,
+        true
+    );
+  }
+
+  SpentTokens(long windowMillis, long expectedTokens, double falsePositiveRate, LongSupplier clock, boolean sweep) {
+    if (windowMillis <= 0 || expectedTokens <= 0) {
+      throw new IllegalArgumentException("'expected-tokens' and the token TTL must be positive");
+    }
+    if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("'false-positive-rate' must be between 0 and 1");
+    }
+
+    // Pick the fewest bits per token, then the number of hashes, that meet the rate at the expected load.
+    var bits = 0;
+    var bestHashes = 0;
+    for (var b = 1; b <= MAX_BITS_PER_TOKEN && bestHashes == 0; b++) {
+      for (var k = 1; k <= MAX_HASHES; k++) {
+        if (falsePositiveRate(64.0 / b, k) <= falsePositiveRate) {
+          bits = b;
+          bestHashes = k;
+          break;
+        }
+      }
+    }
+    if (bestHashes == 0) {
+      throw new IllegalArgumentException("'false-positive-rate' is too low");
+    }
+
+    var totalWords = (expectedTokens * bits + 63) / 64;
+    if (totalWords > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("'expected-tokens' is too large");
+    }
+
+    this.windowMillis = windowMillis;
+    this.expectedTokens = expectedTokens;
+    this.falsePositiveRate = falsePositiveRate;
+    this.bitsPerToken = bits;
+    this.hashes = bestHashes;
+    this.words = (int) totalWords;
+    this.clock = clock;
+    for (var i = 0; i < GENERATIONS; i++) {
+      generations[i] = new Generation(words);
+    }
+    rotate();
+
+    if (sweep) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("spent-tokens-sweeper").factory());
+      var period = Math.max(1, windowMillis / 4);
+      sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    } else {
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Marks a token as spent.
+   *
+   * @param id the unique id of the token.
+   * @param expiresAt when the token expires, in epoch milliseconds.
+   * @return {@code true} if the token had not been spent yet, {@code false} if it had or its window is gone.
+   */
+  public boolean redeem(String id, long expiresAt) {
+    var window = Math.floorDiv(expiresAt, windowMillis);
+    var generation = generation(window);
+    if (generation == null) {
+      rejected.increment();
+      return false;
+    }
+
+    var h1 = hash(id);
+    var h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+    var index = (int) Long.remainderUnsigned(h1, words);
+    var mask = mask(h2, mix(h2 ^ 0xc2b2ae3d27d4eb4fL));
+
+    var bits = generation.bits;
+    while (true) {
+      var word = bits.get(index);
+      if ((word & mask) == mask) {
+        rejected.increment();
+        return false;
+      }
+      if (bits.compareAndSet(index, word, word | mask)) {
+        generation.count.increment();
+        redeemed.increment();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns a point-in-time view of the index.
+   */
+  public Stats stats() {
+    var window = Math.floorDiv(clock.getAsLong(), windowMillis);
+    long fullest = 0;
+    for (var w = window; w <= window + 1; w++) {
+      var generation = generations[(int) Math.floorMod(w, GENERATIONS)];
+      if (generation.window == w) {
+        fullest = Math.max(fullest, generation.count.sum());
+      }
+    }
+
+    return new Stats(
+        expectedTokens,
+        falsePositiveRate,
+        falsePositiveRate(64.0 / bitsPerToken, hashes),
+        fullest == 0 ? 0 : falsePositiveRate(64.0 * fullest / ((double) words * 64), hashes),
+        bitsPerToken,
+        hashes,
+        (long) words * Long.BYTES * GENERATIONS,
+        redeemed.sum(),
+        rejected.sum());
+  }
+
+  @Override
+  public void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  /**
+   * Makes sure the filters of the current, the next and the following window are ready, clearing the filter of an
+   * ended window for the one that follows. Only the sweeper calls this, except for the first call.
+   */
+  void rotate() {
+    var window = Math.floorDiv(clock.getAsLong(), windowMillis);
+    for (var w = window; w <= window + 2; w++) {
+      prepare(generations[(int) Math.floorMod(w, GENERATIONS)], w);
+    }
+  }
+
+  private Generation generation(long window) {
+    var generation = generations[(int) Math.floorMod(window, GENERATIONS)];
+    var current = generation.window;
+    if (current == window) {
+      return generation;
+    }
+    if (current > window) {
+      // The window ended and its filter has been reused.
+      return null;
+    }
+
+    // The sweeper is behind, so prepare the filter inline.
+    prepare(generation, window);
+    return generation.window == window ? generation : null;
+  }
+
+  private static void prepare(Generation generation, long window) {
+    if (generation.window >= window) {
+      return;
+    }
+    synchronized (generation) {
+      if (generation.window < window) {
+        for (var i = 0; i < generation.bits.length(); i++) {
+          generation.bits.set(i, 0);
+        }
+        generation.count.reset();
+        generation.window = window;
+      }
+    }
+  }
+
+  private void sweep() {
+    try {
+      rotate();
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to rotate spent tokens", ex);
+    }
+  }
+
+  private long mask(long h2, long h3) {
+    // Six bits pick a position in the word: ten positions from the second hash, the rest from the third.
+    long mask = 0;
+    for (var i = 0; i < hashes; i++) {
+      var source = i < 10 ? h2 >>> (i * 6) : h3 >>> ((i - 10) * 6);
+      mask |= 1L << (source & 63);
+    }
+    return mask;
+  }
+
+  /**
+   * The false-positive rate of a word-blocked Bloom filter whose words hold {@code load} tokens on average, each
+   * setting {@code k} bits of its word. The number of tokens per word follows a Poisson distribution.
+   */
+  static double falsePositiveRate(double load, int k) {
+    var rate = 0.0;
+    var probability = Math.exp(-load);
+    var limit = (int) Math.ceil(load * 4 + 64);
+    for (var j = 0; j <= limit; j++) {
+      if (j > 0) {
+        probability *= load / j;
+      }
+      var setBit = 1 - Math.pow(1 - 1.0 / 64, (double) j * k);
+      rate += probability * Math.pow(setBit, k);
+    }
+    return rate;
+  }
+
+  private static long hash(String id) {
+    // 64-bit FNV-1a, finished with a mixer since the words are picked from the low bits.
+    var hash = 0xcbf29ce484222325L;
+    for (var i = 0; i < id.length(); i++) {
+      hash ^= id.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb93fe1a85ec5L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  private static final class Generation {
+
+    private final AtomicLongArray bits;
+    private final LongAdder count = new LongAdder();
+    private volatile long window = Long.MIN_VALUE;
+
+    private Generation(int words) {
+      this.bits = new AtomicLongArray(words);
+    }
+  }
+}
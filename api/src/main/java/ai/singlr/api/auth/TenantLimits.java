@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import io.helidon.config.Config;
+
+/**
+ * How much of a shared node a site may use.
+ *
+ * @param issuePerSecond the challenges the site may mint per second, or {@code 0} for no limit.
+ * @param verifyPerSecond the attestations of the site that may be verified per second, or {@code 0} for no limit.
+ * @param burst how many requests above the rates are let through at once, after a quiet period.
+ * @param weight the share of the verification workers the site gets when they are busy, relative to other sites.
+ * @param maxQueued the most verifications of the site waiting for a worker, beyond which they are turned away.
+ */
+public record TenantLimits(double issuePerSecond, double verifyPerSecond, int burst, int weight, int maxQueued) {
+
+  private static final int DEFAULT_WEIGHT = 1;
+  private static final int DEFAULT_MAX_QUEUED = 256;
+
+  /**
+   * Limits of a site that configures none.
+   */
+  public static final TenantLimits UNLIMITED = new TenantLimits(0, 0, 0, DEFAULT_WEIGHT, DEFAULT_MAX_QUEUED);
+
+  /**
+   * Validates the limits.
+   */
+  public TenantLimits {
+    if (issuePerSecond < 0 || verifyPerSecond < 0 || burst < 0) {
+      throw new IllegalArgumentException("'issue-per-second', 'verify-per-second' and 'burst' must not be negative");
+    }
+    if (weight <= 0 || maxQueued <= 0) {
+      throw new IllegalArgumentException("'weight' and 'max-queued' must be positive");
+    }
+  }
+
+  /**
+   * Reads the limits of a site.
+   *
+   * @param config the {@code limits} configuration node of the site, which may be missing.
+   * @return the limits, unlimited rates with the default weight if none are configured.
+   */
+  public static TenantLimits create(Config config) {
+    if (!config.exists()) {
+      return UNLIMITED;
+    }
+    return new TenantLimits(
+        config.get("issue-per-second").asDouble().orElse(0.0),
+        config.get("verify-per-second").asDouble().orElse(0.0),
+        config.get("burst").asInt().orElse(0),
+        config.get("weight").asInt().orElse(DEFAULT_WEIGHT),
+        config.get("max-queued").asInt().orElse(DEFAULT_MAX_QUEUED)
+    );
+  }
+
+  /**
+   * Returns {@code true} if the issuance or the verification rate of the site is capped.
+   */
+  public boolean hasQuota() {
+    return issuePerSecond > 0 || verifyPerSecond > 0;
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Caps how fast each site may mint challenges and have attestations verified, so that a site under attack cannot use
+ * up the node shared with the others.
+ *
+ * <p>Every rate is enforced by a generic cell rate algorithm: a bucket only keeps the time at which it would be empty
+ * again, and admitting a request is a single compare-and-set that moves it one interval forward. A bucket lets
+ * {@code burst} requests through at once after a quiet period, one second worth of requests by default. Sites are
+ * looked up by tenant in an array, so checking a quota neither locks nor allocates.
+ */
+public final class TenantQuotas {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Point-in-time counters of the quotas of one site.
+   *
+   * @param tenant the tenant of the site.
+   * @param issuePerSecond the challenges the site may mint per second, {@code 0} for no limit.
+   * @param issued the number of challenges the site was allowed to mint.
+   * @param issueThrottled the number of {@code /start} requests turned away.
+   * @param verifyPerSecond the attestations of the site that may be verified per second, {@code 0} for no limit.
+   * @param verified the number of attestations the site was allowed to have verified.
+   * @param verifyThrottled the number of {@code /complete} requests turned away.
+   */
+  public record Stats(int tenant, double issuePerSecond, long issued, long issueThrottled, double verifyPerSecond,
+                      long verified, long verifyThrottled) {
+  }
+
+  private final Bucket[] issue;
+  private final Bucket[] verify;
+  private final LongSupplier nanoClock;
+
+  /**
+   * Creates the quotas of every site.
+   *
+   * @param sites the sites, with their limits.
+   */
+  public TenantQuotas(RelyingPartyRegistry sites) {
+    this(sites.all().stream().collect(Collectors.toMap(Site::tenant, Site::limits)), System::nanoTime);
+  }
+
+  TenantQuotas(Map<Integer, TenantLimits> limits, LongSupplier nanoClock) {
+    var length = limits.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+    this.issue = new Bucket[length];
+    this.verify = new Bucket[length];
+    this.nanoClock = nanoClock;
+    limits.forEach((tenant, limit) -> {
+      issue[tenant] = new Bucket(limit.issuePerSecond(), limit.burst());
+      verify[tenant] = new Bucket(limit.verifyPerSecond(), limit.burst());
+    });
+  }
+
+  /**
+   * Takes one challenge off the issuance quota of a site.
+   *
+   * @param tenant the tenant of the site.
+   * @return {@code true} if the site may mint a challenge, {@code false} if it is over its quota.
+   */
+  public boolean tryIssue(int tenant) {
+    return tryAcquire(issue, tenant);
+  }
+
+  /**
+   * Takes one attestation off the verification quota of a site.
+   *
+   * @param tenant the tenant of the site.
+   * @return {@code true} if the attestation may be verified, {@code false} if the site is over its quota.
+   */
+  public boolean tryVerify(int tenant) {
+    return tryAcquire(verify, tenant);
+  }
+
+  /**
+   * Returns the counters of every site.
+   */
+  public List<Stats> stats() {
+    List<Stats> stats = new ArrayList<>();
+    for (var tenant = 0; tenant < issue.length; tenant++) {
+      var issued = issue[tenant];
+      var verified = verify[tenant];
+      if (issued != null) {
+        stats.add(new Stats(tenant, issued.perSecond, issued.admitted.sum(), issued.throttled.sum(),
+            verified.perSecond, verified.admitted.sum(), verified.throttled.sum()));
+      }
+    }
+    return stats;
+  }
+
+  private boolean tryAcquire(Bucket[] buckets, int tenant) {
+    // An unknown tenant is turned away further down, by the site lookup.
+    var bucket = tenant >= 0 && tenant < buckets.length ? buckets[tenant] : null;
+    return bucket == null || bucket.tryAcquire(nanoClock.getAsLong());
+  }
+
+  private static final class Bucket {
+
+    private final double perSecond;
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong emptyAt = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    private Bucket(double perSecond, int burst) {
+      this.perSecond = perSecond;
+      if (perSecond > 0) {
+        this.interval = Math.max(1, (long) (NANOS_PER_SECOND / perSecond));
+        var size = burst > 0 ? burst : Math.max(1, (long) Math.ceil(perSecond));
+        this.tolerance = (size - 1) * interval;
+      } else {
+        this.interval = 0;
+        this.tolerance = 0;
+      }
+    }
+
+    private boolean tryAcquire(long now) {
+      if (interval == 0) {
+        admitted.increment();
+        return true;
+      }
+      while (true) {
+        var current = emptyAt.get();
+        var start = Math.max(current, now);
+        if (start - now > tolerance) {
+          throttled.increment();
+          return false;
+        }
+        if (emptyAt.compareAndSet(current, start + interval)) {
+          admitted.increment();
+          return true;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The outcome of checking a verification token, as returned by {@code /siteverify}.
+ *
+ * @param success whether the token is authentic, unexpired, of the site checking it and not spent if single use.
+ * @param error why the token was rejected, or {@code null} if it was accepted.
+ * @param id the unique id of the token.
+ * @param issuedAt when the CAPTCHA was completed.
+ * @param expiresAt when the token stops being accepted.
+ * @param tenant the tenant the CAPTCHA was completed for.
+ * @param amr how the CAPTCHA was completed, {@value #METHOD_PASSKEY} or {@value #METHOD_POW}, as listed by the
+ *     {@code amr} claim of the token.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TokenVerification(
+    boolean success,
+    String error,
+    String id,
+    Instant issuedAt,
+    Instant expiresAt,
+    Integer tenant,
+    List<String> amr) {
+
+  public static final String MISSING_TOKEN = "missing-token";
+  public static final String INVALID_TOKEN = "invalid-token";
+  public static final String EXPIRED_TOKEN = "expired-token";
+  public static final String SPENT_TOKEN = "spent-token";
+  public static final String WRONG_SITE = "wrong-site";
+
+  public static final String METHOD_PASSKEY = "passkey";
+  public static final String METHOD_POW = "pow";
+
+  /**
+   * Creates the outcome of a rejected token.
+   *
+   * @param error why the token was rejected.
+   * @return the outcome.
+   */
+  public static TokenVerification failure(String error) {
+    return new TokenVerification(false, error, null, null, null, null, null);
+  }
+}
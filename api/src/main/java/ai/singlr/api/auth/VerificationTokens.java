@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import ai.singlr.api.challenge.Challenge;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.helidon.config.Config;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Issues the short-lived signed tokens {@code /complete} hands out as proof that a CAPTCHA was passed, and checks them
+ * for {@code /siteverify}.
+ *
+ * <p>Tokens are JWTs carrying the id of the key that signed them. New tokens are signed with the active key while any
+ * of the configured keys is accepted, which allows keys to be rotated without rejecting tokens in flight. Algorithms
+ * and verifiers are built once per key and are thread safe, so a check only decodes the token and checks one
+ * signature.
+ *
+ * <p>Tokens are signed with shared HS256 secrets by default. With {@code algorithm: ES256} they are signed with P-256
+ * key pairs instead, whose public halves are published as a JSON Web Key Set so that backends can check tokens
+ * without calling {@code /siteverify}.
+ *
+ * <p>With {@code single-use} enabled, a token is only accepted the first time it is checked, see {@link SpentTokens}.
+ */
+public final class VerificationTokens implements AutoCloseable {
+
+  static final String TENANT_CLAIM = "ten";
+  static final String METHOD_CLAIM = "amr";
+  static final String HS256 = "HS256";
+  static final String ES256 = "ES256";
+  private static final int MIN_SECRET_LENGTH = 32;
+  private static final int EC_COORDINATE_LENGTH = 32;
+  private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+  // Below this many tokens, handing them to other cores costs more than the signature checks.
+  private static final int PARALLEL_THRESHOLD = 8;
+
+  private final String activeKeyId;
+  private final Algorithm signer;
+  private final Map<String, JWTVerifier> verifiers;
+  private final byte[] jwks;
+  private final String issuer;
+  private final long ttlMillis;
+  private final Clock clock;
+  private final SpentTokens spent;
+  private final int maxBatchSize;
+
+  VerificationTokens(Map<String, byte[]> secrets, String activeKeyId, String issuer, long ttlMillis, Clock clock) {
+    this(secrets, activeKeyId, issuer, ttlMillis, clock, null, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  VerificationTokens(Map<String, byte[]> secrets, String activeKeyId, String issuer, long ttlMillis, Clock clock,
+                     SpentTokens spent, int maxBatchSize) {
+    this(hmac(secrets), null, activeKeyId, issuer, ttlMillis, clock, spent, maxBatchSize);
+  }
+
+  private VerificationTokens(Map<String, Algorithm> algorithms, byte[] jwks, String activeKeyId, String issuer,
+                             long ttlMillis, Clock clock, SpentTokens spent, int maxBatchSize) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("'max-batch-size' must be positive");
+    }
+    if (!algorithms.containsKey(activeKeyId)) {
+      throw new IllegalArgumentException("'active-key' must be one of the configured keys");
+    }
+
+    Map<String, JWTVerifier> verifiers = new HashMap<>();
+    for (var algorithm : algorithms.entrySet()) {
+      verifiers.put(algorithm.getKey(), JWT.require(algorithm.getValue())
+          .withIssuer(issuer)
+          .build());
+    }
+
+    this.activeKeyId = activeKeyId;
+    this.signer = algorithms.get(activeKeyId);
+    this.verifiers = Map.copyOf(verifiers);
+    this.jwks = jwks;
+    this.issuer = issuer;
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+    this.spent = spent;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Creates tokens signed with P-256 key pairs.
+   *
+   * @param keyPairs the key pairs by key id.
+   * @param activeKeyId the id of the key new tokens are signed with.
+   * @param issuer the issuer of the tokens.
+   * @param ttlMillis how long tokens are accepted for.
+   * @param clock the source of the issuance time.
+   * @return the tokens.
+   */
+  static VerificationTokens ecdsa(Map<String, KeyPair> keyPairs, String activeKeyId, String issuer, long ttlMillis,
+                                  Clock clock) {
+    return ecdsa(keyPairs, activeKeyId, issuer, ttlMillis, clock, null, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  private static VerificationTokens ecdsa(Map<String, KeyPair> keyPairs, String activeKeyId, String issuer,
+                                          long ttlMillis, Clock clock, SpentTokens spent, int maxBatchSize) {
+    Map<String, Algorithm> algorithms = new HashMap<>();
+    List<Map<String, String>> keys = new ArrayList<>();
+    for (var keyPair : keyPairs.entrySet()) {
+      if (!(keyPair.getValue().getPublic() instanceof ECPublicKey publicKey)
+          || !(keyPair.getValue().getPrivate() instanceof ECPrivateKey privateKey)
+          || publicKey.getParams().getCurve().getField().getFieldSize() != 256) {
+        throw new IllegalArgumentException("ES256 token keys must be P-256 key pairs");
+      }
+      algorithms.put(keyPair.getKey(), Algorithm.ECDSA256(publicKey, privateKey));
+
+      Map<String, String> key = new LinkedHashMap<>();
+      key.put("kty", "EC");
+      key.put("crv", "P-256");
+      key.put("use", "sig");
+      key.put("alg", ES256);
+      key.put("kid", keyPair.getKey());
+      key.put("x", coordinate(publicKey.getW().getAffineX()));
+      key.put("y", coordinate(publicKey.getW().getAffineY()));
+      keys.add(key);
+    }
+
+    byte[] jwks;
+    try {
+      jwks = new ObjectMapper().writeValueAsBytes(Map.of("keys", keys));
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unable to write the token key set", ex);
+    }
+    return new VerificationTokens(algorithms, jwks, activeKeyId, issuer, ttlMillis, clock, spent, maxBatchSize);
+  }
+
+  /**
+   * Creates the tokens from the {@code tokens} configuration.
+   *
+   * @param config the tokens configuration node.
+   * @return the tokens.
+   */
+  public static VerificationTokens create(Config config) {
+    String rawKeys;
+    if (config.get("keys").exists()) {
+      rawKeys = config.get("keys").asString().get();
+    } else {
+      throw new IllegalArgumentException("'keys' must be specified");
+    }
+
+    String activeKeyId;
+    if (config.get("active-key").exists()) {
+      activeKeyId = config.get("active-key").asString().get();
+    } else {
+      throw new IllegalArgumentException("'active-key' must be specified");
+    }
+
+    var algorithm = config.get("algorithm").asString().orElse(HS256);
+    var issuer = config.get("issuer").asString().orElse("nocaptcha");
+    var ttlMillis = config.get("ttl-seconds").asLong().orElse(120L) * 1000;
+    var singleUseConfig = config.get("single-use");
+    var spent = singleUseConfig.get("enabled").asBoolean().orElse(false)
+        ? new SpentTokens(singleUseConfig, ttlMillis)
+        : null;
+    var maxBatchSize = config.get("max-batch-size").asInt().orElse(DEFAULT_MAX_BATCH_SIZE);
+
+    if (HS256.equals(algorithm)) {
+      Map<String, byte[]> secrets = new HashMap<>();
+      for (var rawKey : rawKeys.split(",")) {
+        var parts = rawKey.trim().split(":", 2);
+        if (parts.length != 2) {
+          throw new IllegalArgumentException("'keys' must be a list of <id>:<base64 secret> pairs");
+        }
+        secrets.put(parts[0].trim(), Base64.getDecoder().decode(parts[1].trim()));
+      }
+      return new VerificationTokens(secrets, activeKeyId, issuer, ttlMillis, Clock.systemUTC(), spent, maxBatchSize);
+    }
+
+    if (ES256.equals(algorithm)) {
+      Map<String, KeyPair> keyPairs = new HashMap<>();
+      for (var rawKey : rawKeys.split(",")) {
+        var parts = rawKey.trim().split(":", 3);
+        if (parts.length != 3) {
+          throw new IllegalArgumentException(
+              "'keys' must be a list of <id>:<base64 PKCS#8 private key>:<base64 X.509 public key> triples");
+        }
+        keyPairs.put(parts[0].trim(), keyPair(parts[1].trim(), parts[2].trim()));
+      }
+      return ecdsa(keyPairs, activeKeyId, issuer, ttlMillis, Clock.systemUTC(), spent, maxBatchSize);
+    }
+
+    throw new IllegalArgumentException("'algorithm' must be HS256 or ES256");
+  }
+
+  /**
+   * Returns the JSON Web Key Set of the public keys tokens are checked with, or {@code null} if tokens are signed
+   * with shared secrets.
+   */
+  public byte[] jwks() {
+    return jwks;
+  }
+
+  /**
+   * Returns the number of tokens {@link #verifyAll(List, int)} accepts at once.
+   */
+  public int maxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Returns the index of redeemed tokens, or {@code null} if tokens can be checked more than once.
+   */
+  public SpentTokens spentTokens() {
+    return spent;
+  }
+
+  /**
+   * Issues a token for a completed CAPTCHA. Its {@code amr} claim tells a passkey from a solved puzzle, so that
+   * backends can ask more of the clients that only spent CPU time.
+   *
+   * @param challenge the challenge the CAPTCHA was completed with.
+   * @return the signed token.
+   */
+  public String issue(Challenge challenge) {
+    var now = clock.instant();
+    return JWT.create()
+        .withKeyId(activeKeyId)
+        .withIssuer(issuer)
+        .withJWTId(UUID.randomUUID().toString())
+        .withIssuedAt(now)
+        .withExpiresAt(now.plusMillis(ttlMillis))
+        .withClaim(TENANT_CLAIM, challenge.tenant())
+        .withArrayClaim(METHOD_CLAIM, new String[] {
+            ProofOfWork.isPuzzle(challenge) ? TokenVerification.METHOD_POW : TokenVerification.METHOD_PASSKEY})
+        .sign(signer);
+  }
+
+  /**
+   * Checks a token for a site. A token issued for another site is rejected before it is redeemed, so that it stays
+   * good for its own site.
+   *
+   * @param token the token handed to the client by {@code /complete}.
+   * @param tenant the tenant of the site the token is checked for.
+   * @return the outcome, never {@code null}.
+   */
+  public TokenVerification verify(String token, int tenant) {
+    if (token == null || token.isBlank()) {
+      return TokenVerification.failure(TokenVerification.MISSING_TOKEN);
+    }
+
+    try {
+      // Decoding once to find the key lets the verifier reuse the decoded token instead of parsing it again.
+      var decoded = JWT.decode(token);
+      var keyId = decoded.getKeyId();
+      var verifier = keyId == null ? null : verifiers.get(keyId);
+      if (verifier == null) {
+        return TokenVerification.failure(TokenVerification.INVALID_TOKEN);
+      }
+
+      var verified = verifier.verify(decoded);
+      var issuedFor = verified.getClaim(TENANT_CLAIM).asInt();
+      if (issuedFor == null || issuedFor != tenant) {
+        return TokenVerification.failure(TokenVerification.WRONG_SITE);
+      }
+      var expiresAt = verified.getExpiresAtAsInstant();
+      if (spent != null && !spent.redeem(verified.getId(), expiresAt.toEpochMilli())) {
+        return TokenVerification.failure(TokenVerification.SPENT_TOKEN);
+      }
+      return new TokenVerification(
+          true,
+          null,
+          verified.getId(),
+          verified.getIssuedAtAsInstant(),
+          expiresAt,
+          issuedFor,
+          verified.getClaim(METHOD_CLAIM).asList(String.class));
+    } catch (TokenExpiredException ex) {
+      return TokenVerification.failure(TokenVerification.EXPIRED_TOKEN);
+    } catch (JWTVerificationException ex) {
+      return TokenVerification.failure(TokenVerification.INVALID_TOKEN);
+    }
+  }
+
+  /**
+   * Checks several tokens, spreading the checks across cores.
+   *
+   * <p>Each token is checked once, however often it is listed. If tokens are single use, only the first occurrence
+   * of a token can succeed and the others are reported as spent, otherwise all occurrences get the same outcome.
+   *
+   * @param tokens the tokens to check, at most {@link #maxBatchSize()}.
+   * @param tenant the tenant of the site the tokens are checked for.
+   * @return the outcomes, in the order of the tokens.
+   */
+  public TokenVerification[] verifyAll(List<String> tokens, int tenant) {
+    if (tokens.size() > maxBatchSize) {
+      throw new IllegalArgumentException("At most " + maxBatchSize + " tokens can be checked at once");
+    }
+
+    var results = new TokenVerification[tokens.size()];
+    var firsts = new int[tokens.size()];
+    Map<String, Integer> seen = new HashMap<>();
+    for (var i = 0; i < firsts.length; i++) {
+      var index = i;
+      firsts[i] = seen.computeIfAbsent(tokens.get(i), token -> index);
+    }
+
+    var checks = IntStream.range(0, firsts.length).filter(i -> firsts[i] == i);
+    if (seen.size() >= PARALLEL_THRESHOLD) {
+      checks = checks.parallel();
+    }
+    checks.forEach(i -> results[i] = verify(tokens.get(i), tenant));
+
+    for (var i = 0; i < firsts.length; i++) {
+      if (firsts[i] != i) {
+        var first = results[firsts[i]];
+        results[i] = spent != null && first.success()
+            ? TokenVerification.failure(TokenVerification.SPENT_TOKEN)
+            : first;
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public void close() {
+    if (spent != null) {
+      spent.close();
+    }
+  }
+
+  private static Map<String, Algorithm> hmac(Map<String, byte[]> secrets) {
+    Map<String, Algorithm> algorithms = new HashMap<>();
+    for (var secret : secrets.entrySet()) {
+      if (secret.getValue().length < MIN_SECRET_LENGTH) {
+        throw new IllegalArgumentException("Token keys must be at least 32 bytes");
+      }
+      algorithms.put(secret.getKey(), Algorithm.HMAC256(secret.getValue()));
+    }
+    return algorithms;
+  }
+
+  private static KeyPair keyPair(String privateKey, String publicKey) {
+    try {
+      var factory = KeyFactory.getInstance("EC");
+      return new KeyPair(
+          factory.generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(publicKey))),
+          factory.generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(privateKey))));
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalArgumentException("ES256 token keys must be P-256 key pairs", ex);
+    }
+  }
+
+  /**
+   * Encodes an affine coordinate as the fixed-length unsigned big-endian base64url string JSON Web Keys use.
+   */
+  private static String coordinate(BigInteger value) {
+    var bytes = value.toByteArray();
+    var fixed = new byte[EC_COORDINATE_LENGTH];
+    var length = Math.min(bytes.length, EC_COORDINATE_LENGTH);
+    System.arraycopy(bytes, bytes.length - length, fixed, EC_COORDINATE_LENGTH - length, length);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+  }
+}
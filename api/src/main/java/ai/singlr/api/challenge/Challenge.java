@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import ai.singlr.core.StringUtils;
+
+/**
+ * Compact representation of a pending challenge. Everything else needed to verify the ceremony is identical for
+ * every challenge and is rebuilt from a shared template.
+ *
+ * @param challenge the random challenge bytes sent to the authenticator.
+ * @param userHandle the disposable user handle, also used as the lookup key.
+ * @param issuedAt when the challenge was issued, in epoch milliseconds.
+ * @param tenant the tenant the challenge was issued for.
+ */
+public record Challenge(byte[] challenge, byte[] userHandle, long issuedAt, int tenant) {
+
+  public static final int DEFAULT_TENANT = 0;
+
+  /**
+   * Returns the base64url encoded user handle under which the challenge is stored.
+   */
+  public String key() {
+    return StringUtils.base64UrlEncode(userHandle);
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import io.helidon.config.Config;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Seals everything needed to verify a ceremony into the WebAuthn challenge itself, so that {@code /complete} can be
+ * served by any node without a server-side lookup.
+ *
+ * <p>A sealed challenge is laid out as
+ * {@code version (1) | key id (1) | tenant (4) | issuedAt (8) | nonce (16) | handle length (1) | handle | HMAC (32)},
+ * where the HMAC-SHA256 covers every preceding byte. New challenges are sealed with the active key while any of the
+ * configured keys is accepted for verification, which allows keys to be rotated without dropping ceremonies in flight.
+ * The sealer only vouches for integrity; callers decide whether the recovered challenge is still fresh.
+ */
+public final class ChallengeSealer {
+
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final byte VERSION = 1;
+  private static final int NONCE_LENGTH = 16;
+  private static final int MAC_LENGTH = 32;
+  private static final int HEADER_LENGTH = 1 + 1 + 4 + 8 + NONCE_LENGTH + 1;
+  private static final int MIN_SECRET_LENGTH = 32;
+
+  private final Mac[] macs = new Mac[256];
+  private final int activeKeyId;
+  private final SecureRandom random = new SecureRandom();
+
+  ChallengeSealer(Map<Integer, byte[]> secrets, int activeKeyId) {
+    if (!secrets.containsKey(activeKeyId)) {
+      throw new IllegalArgumentException("'active-key' must be one of the configured keys");
+    }
+
+    for (var secret : secrets.entrySet()) {
+      var keyId = secret.getKey();
+      if (keyId < 0 || keyId > 255) {
+        throw new IllegalArgumentException("Key ids must be between 0 and 255");
+      }
+      if (secret.getValue().length < MIN_SECRET_LENGTH) {
+        throw new IllegalArgumentException("Sealing keys must be at least 32 bytes");
+      }
+      try {
+        var mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(secret.getValue(), ALGORITHM));
+        macs[keyId] = mac;
+      } catch (GeneralSecurityException ex) {
+        throw new IllegalStateException("HMAC-SHA256 is not available", ex);
+      }
+    }
+
+    this.activeKeyId = activeKeyId;
+  }
+
+  /**
+   * Creates a sealer from the {@code challenges.sealing} configuration.
+   *
+   * @param config the sealing configuration node.
+   * @return the sealer.
+   */
+  public static ChallengeSealer create(Config config) {
+    String rawKeys;
+    if (config.get("keys").exists()) {
+      rawKeys = config.get("keys").asString().get();
+    } else {
+      throw new IllegalArgumentException("'keys' must be specified");
+    }
+
+    Map<Integer, byte[]> secrets = new HashMap<>();
+    for (var rawKey : rawKeys.split(",")) {
+      var parts = rawKey.trim().split(":", 2);
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("'keys' must be a list of <id>:<base64 secret> pairs");
+      }
+      secrets.put(Integer.parseInt(parts[0].trim()), Base64.getDecoder().decode(parts[1].trim()));
+    }
+
+    int activeKeyId;
+    if (config.get("active-key").exists()) {
+      activeKeyId = config.get("active-key").asInt().get();
+    } else {
+      throw new IllegalArgumentException("'active-key' must be specified");
+    }
+
+    return new ChallengeSealer(secrets, activeKeyId);
+  }
+
+  /**
+   * Seals a new challenge with the active key.
+   *
+   * @param userHandle the disposable user handle.
+   * @param issuedAt when the challenge is issued, in epoch milliseconds.
+   * @param tenant the tenant the challenge is issued for.
+   * @return the sealed challenge bytes to send to the authenticator.
+   */
+  public byte[] seal(byte[] userHandle, long issuedAt, int tenant) {
+    if (userHandle.length > 255) {
+      throw new IllegalArgumentException("User handle is too long");
+    }
+
+    var nonce = new byte[NONCE_LENGTH];
+    random.nextBytes(nonce);
+
+    var sealed = ByteBuffer.allocate(HEADER_LENGTH + userHandle.length + MAC_LENGTH)
+        .put(VERSION)
+        .put((byte) activeKeyId)
+        .putInt(tenant)
+        .putLong(issuedAt)
+        .put(nonce)
+        .put((byte) userHandle.length)
+        .put(userHandle)
+        .array();
+
+    var mac = newMac(activeKeyId);
+    mac.update(sealed, 0, sealed.length - MAC_LENGTH);
+    try {
+      mac.doFinal(sealed, sealed.length - MAC_LENGTH);
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException("Unable to seal challenge", ex);
+    }
+
+    return sealed;
+  }
+
+  /**
+   * Verifies a sealed challenge and recovers the pending challenge from it.
+   *
+   * @param sealed the challenge bytes echoed back by the authenticator.
+   * @return the challenge or {@code null} if it is malformed, forged or sealed with an unknown key.
+   */
+  public Challenge unseal(byte[] sealed) {
+    if (sealed == null || sealed.length < HEADER_LENGTH + MAC_LENGTH || sealed[0] != VERSION) {
+      return null;
+    }
+
+    var buffer = ByteBuffer.wrap(sealed);
+    var keyId = buffer.get(1) & 0xff;
+    var handleLength = buffer.get(HEADER_LENGTH - 1) & 0xff;
+    if (macs[keyId] == null || sealed.length != HEADER_LENGTH + handleLength + MAC_LENGTH) {
+      return null;
+    }
+
+    var mac = newMac(keyId);
+    mac.update(sealed, 0, sealed.length - MAC_LENGTH);
+    var expected = mac.doFinal();
+    var actual = new byte[MAC_LENGTH];
+    buffer.get(sealed.length - MAC_LENGTH, actual);
+    if (!MessageDigest.isEqual(expected, actual)) {
+      return null;
+    }
+
+    var userHandle = new byte[handleLength];
+    buffer.get(HEADER_LENGTH, userHandle);
+    return new Challenge(sealed, userHandle, buffer.getLong(6), buffer.getInt(2));
+  }
+
+  private Mac newMac(int keyId) {
+    // Mac instances are not thread safe, but cloning an initialized one is far cheaper than initializing a new one.
+    try {
+      return (Mac) macs[keyId].clone();
+    } catch (CloneNotSupportedException ex) {
+      throw new IllegalStateException("HMAC-SHA256 provider does not support cloning", ex);
+    }
+  }
+}
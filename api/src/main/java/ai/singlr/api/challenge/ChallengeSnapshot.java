@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Carries pending challenges over a restart, so that ceremonies in flight during a rolling deploy still complete.
+ *
+ * <p>A snapshot is a memory-mapped file laid out as {@code magic (4) | count (4)} followed by one
+ * {@code issuedAt (8) | tenant (4) | challenge length (2) | user handle length (2) | challenge | user handle} record
+ * per challenge. It is written next to its final path and moved into place, so a crash mid-write never leaves a
+ * truncated snapshot behind.
+ */
+public final class ChallengeSnapshot {
+
+  private static final int MAGIC = 0x4e435331;
+  private static final int HEADER_LENGTH = 4 + 4;
+  private static final int RECORD_HEADER_LENGTH = 8 + 4 + 2 + 2;
+
+  private ChallengeSnapshot() {}
+
+  /**
+   * Writes the unexpired challenges held by the store.
+   *
+   * @param store the store to snapshot.
+   * @param path the snapshot file, replaced if it exists.
+   * @return the number of challenges written.
+   * @throws IOException if the snapshot can't be written.
+   */
+  public static int save(ChallengeStore store, Path path) throws IOException {
+    var challenges = store.snapshot();
+    var size = (long) HEADER_LENGTH;
+    for (var challenge : challenges) {
+      size += RECORD_HEADER_LENGTH + challenge.challenge().length + challenge.userHandle().length;
+    }
+
+    var temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.putInt(MAGIC).putInt(challenges.size());
+      for (var challenge : challenges) {
+        buffer.putLong(challenge.issuedAt())
+            .putInt(challenge.tenant())
+            .putShort((short) challenge.challenge().length)
+            .putShort((short) challenge.userHandle().length)
+            .put(challenge.challenge())
+            .put(challenge.userHandle());
+      }
+      buffer.force();
+    }
+
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return challenges.size();
+  }
+
+  /**
+   * Puts the challenges of a snapshot that are still valid back into the store, then deletes the snapshot so it is
+   * never restored twice.
+   *
+   * @param store the store to restore into.
+   * @param path the snapshot file.
+   * @param ttlMillis how long a challenge remains valid.
+   * @param now the current time in epoch milliseconds.
+   * @return the number of challenges restored, {@code 0} if there is no snapshot.
+   * @throws IOException if the snapshot can't be read or is corrupt.
+   */
+  public static int restore(ChallengeStore store, Path path, long ttlMillis, long now) throws IOException {
+    if (!Files.exists(path)) {
+      return 0;
+    }
+
+    var restored = 0;
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+        throw new IOException("Not a challenge snapshot: " + path);
+      }
+
+      var count = buffer.getInt();
+      for (var i = 0; i < count; i++) {
+        var issuedAt = buffer.getLong();
+        var tenant = buffer.getInt();
+        var challenge = new byte[Short.toUnsignedInt(buffer.getShort())];
+        var userHandle = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(challenge).get(userHandle);
+        if (issuedAt + ttlMillis > now) {
+          store.put(new Challenge(challenge, userHandle, issuedAt, tenant));
+          restored++;
+        }
+      }
+    } catch (BufferUnderflowException ex) {
+      throw new IOException("Truncated challenge snapshot: " + path, ex);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+
+    return restored;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import java.util.List;
+
+/**
+ * Holds pending challenges between {@code /start} and {@code /complete}.
+ */
+public interface ChallengeStore extends AutoCloseable {
+
+  /**
+   * Stores the challenge under its {@link Challenge#key()}, replacing any previous one.
+   *
+   * @param challenge the challenge to store.
+   */
+  void put(Challenge challenge);
+
+  /**
+   * Removes and returns the challenge stored under the given key.
+   *
+   * @param key the base64url encoded user handle, possibly {@code null} or malformed as sent by the client.
+   * @return the challenge or {@code null} if it is unknown or has already expired.
+   */
+  Challenge remove(String key);
+
+  /**
+   * Returns {@code true} if an unexpired challenge is stored under the given key, leaving it in place. A challenge the
+   * store evicted to stay within its capacity is gone, even though its client may still hold it.
+   *
+   * @param key the base64url encoded user handle.
+   * @return whether {@link #remove(String)} would currently return the challenge.
+   */
+  boolean contains(String key);
+
+  /**
+   * Records a challenge as used until it expires, so a verified ceremony can't be replayed. Stateless (sealed)
+   * challenges are never {@linkplain #put(Challenge) put}, and this is the only state they leave behind.
+   *
+   * @param challenge the challenge that has just been verified.
+   * @return {@code true} if this is the first use of the challenge, {@code false} if it was already used.
+   */
+  boolean claim(Challenge challenge);
+
+  /**
+   * Returns {@code true} if every node reads and writes the same content, so that a challenge claimed on one node is
+   * claimed on all of them. Claims in a store local to the process only guard the node that made them.
+   */
+  default boolean isShared() {
+    return false;
+  }
+
+  /**
+   * Returns the unexpired challenges currently held, so they can be carried over a restart. Stores whose content
+   * outlives the process return an empty list.
+   */
+  default List<Challenge> snapshot() {
+    return List.of();
+  }
+
+  /**
+   * Returns a point-in-time view of the store counters.
+   */
+  ChallengeStoreStats stats();
+
+  @Override
+  void close();
+}
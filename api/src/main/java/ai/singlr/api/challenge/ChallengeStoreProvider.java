@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import io.helidon.config.Config;
+import java.util.ServiceLoader;
+
+/**
+ * Creates a {@link ChallengeStore}. Implementations are discovered with {@link ServiceLoader} and selected by their
+ * {@link #name()} through the {@code challenges.store} setting, so a deployment can bring its own store by dropping a
+ * jar on the class path.
+ */
+public interface ChallengeStoreProvider {
+
+  /**
+   * The name used to select this provider in {@code challenges.store}.
+   */
+  String name();
+
+  /**
+   * Creates a new store.
+   *
+   * @param config the {@code challenges} configuration node.
+   * @param ttlMillis how long a challenge remains valid, typically the {@code wan.timeout}.
+   * @return the store.
+   */
+  ChallengeStore create(Config config, long ttlMillis);
+
+  /**
+   * Creates the store selected by {@code challenges.store}, the in-memory store if it is not set.
+   *
+   * @param config the {@code challenges} configuration node.
+   * @param ttlMillis how long a challenge remains valid, typically the {@code wan.timeout}.
+   * @return the store.
+   */
+  static ChallengeStore load(Config config, long ttlMillis) {
+    var name = config.get("store").asString().orElse("memory");
+    for (var provider : ServiceLoader.load(ChallengeStoreProvider.class)) {
+      if (provider.name().equals(name)) {
+        return provider.create(config, ttlMillis);
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown challenge store '" + name + "'");
+  }
+}
@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+/**
+ * Point-in-time counters of a challenge store, used to size nodes.
+ *
+ * @param live the number of challenges currently held.
+ * @param capacity the maximum number of challenges the store holds before evicting, or -1 if it is unbounded.
+ * @param evictions the number of challenges dropped to stay within capacity.
+ * @param expirations the number of challenges dropped because their TTL passed.
+ */
+public record ChallengeStoreStats(int live, int capacity, long evictions, long expirations) {
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import io.helidon.config.Config;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded, concurrent store for pending challenges.
+ *
+ * <p>Lookups go through a {@link ConcurrentHashMap}. Every entry is also linked into a hashed timer wheel whose
+ * buckets are individually locked, so expiring or evicting an entry never blocks the whole store. Entries expire once
+ * the TTL has passed and, when the hard capacity is reached, the entries closest to expiry are evicted first.
+ */
+public class InMemoryChallengeStore implements ChallengeStore {
+
+  private static final Logger LOGGER = Logger.getLogger(InMemoryChallengeStore.class.getName());
+
+  private static final int DEFAULT_CAPACITY = 100_000;
+  private static final long DEFAULT_TICK_MILLIS = 1000;
+
+  private final ConcurrentHashMap<String, Entry> entries;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final int capacity;
+  private final long ttlMillis;
+  private final long tickMillis;
+  private final LongSupplier clock;
+  private final AtomicInteger live = new AtomicInteger();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final ScheduledExecutorService sweeper;
+
+  private volatile long cursorTick;
+
+  /**
+   * Creates a store that sweeps expired entries in the background.
+   *
+   * @param config the {@code challenges} configuration node.
+   * @param ttlMillis how long a challenge remains valid, typically the {@code wan.timeout}.
+   */
+  public InMemoryChallengeStore(Config config, long ttlMillis) {
+    this(
+        config.get("capacity").asInt().orElse(DEFAULT_CAPACITY),
+        ttlMillis,
+        config.get("tick-millis").asLong().orElse(DEFAULT_TICK_MILLIS),
+        System::currentTimeMillis,
+        true
+    );
+  }
+
+  InMemoryChallengeStore(int capacity, long ttlMillis, long tickMillis, LongSupplier clock, boolean sweep) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("'capacity' must be positive");
+    }
+    if (ttlMillis <= 0 || tickMillis <= 0) {
+      throw new IllegalArgumentException("'ttlMillis' and 'tickMillis' must be positive");
+    }
+
+    this.capacity = capacity;
+    this.ttlMillis = ttlMillis;
+    this.tickMillis = tickMillis;
+    this.clock = clock;
+    this.entries = new ConcurrentHashMap<>(Math.min(capacity, 1024));
+
+    // A single rotation must span the whole TTL so that live deadlines never share a bucket with a later lap.
+    var size = Integer.highestOneBit((int) Math.min(ttlMillis / tickMillis + 2, 1 << 20) * 2 - 1);
+    this.wheel = new Bucket[size];
+    for (var i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.cursorTick = clock.getAsLong() / tickMillis;
+
+    if (sweep) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("challenge-sweeper").factory());
+      sweeper.scheduleAtFixedRate(this::sweep, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    } else {
+      sweeper = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc} If the store is full, the entry closest to expiry is evicted.
+   */
+  @Override
+  public void put(Challenge challenge) {
+    var entry = new Entry(challenge.key(), challenge, challenge.issuedAt() + ttlMillis);
+    var previous = entries.put(entry.key, entry);
+    link(entry);
+
+    if (previous != null) {
+      unlink(previous);
+    } else if (live.incrementAndGet() > capacity) {
+      evictOldest();
+    }
+  }
+
+  @Override
+  public boolean claim(Challenge challenge) {
+    var entry = new Entry(challenge.key(), challenge, challenge.issuedAt() + ttlMillis);
+    if (entries.putIfAbsent(entry.key, entry) != null) {
+      return false;
+    }
+
+    link(entry);
+    if (live.incrementAndGet() > capacity) {
+      evictOldest();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean contains(String key) {
+    if (key == null) {
+      return false;
+    }
+
+    var entry = entries.get(key);
+    return entry != null && entry.deadline > clock.getAsLong();
+  }
+
+  @Override
+  public Challenge remove(String key) {
+    if (key == null) {
+      return null;
+    }
+
+    var entry = entries.remove(key);
+    if (entry == null) {
+      return null;
+    }
+
+    live.decrementAndGet();
+    unlink(entry);
+    if (entry.deadline <= clock.getAsLong()) {
+      expirations.increment();
+      return null;
+    }
+
+    return entry.value;
+  }
+
+  @Override
+  public List<Challenge> snapshot() {
+    var now = clock.getAsLong();
+    List<Challenge> challenges = new ArrayList<>(live.get());
+    for (var entry : entries.values()) {
+      if (entry.deadline > now) {
+        challenges.add(entry.value);
+      }
+    }
+    return challenges;
+  }
+
+  @Override
+  public ChallengeStoreStats stats() {
+    return new ChallengeStoreStats(live.get(), capacity, evictions.sum(), expirations.sum());
+  }
+
+  @Override
+  public void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  /**
+   * Expires every entry whose deadline is at or before {@code now}. Only the sweeper calls this.
+   */
+  void expire(long now) {
+    var nowTick = now / tickMillis;
+    var from = Math.max(cursorTick, nowTick - mask);
+    for (var tick = from; tick <= nowTick; tick++) {
+      var expired = wheel[(int) (tick & mask)].detachExpired(now);
+      while (expired != null) {
+        var next = expired.next;
+        expired.next = null;
+        if (entries.remove(expired.key, expired)) {
+          live.decrementAndGet();
+          expirations.increment();
+        }
+        expired = next;
+      }
+    }
+
+    // The current tick is revisited next time, as it may still hold entries that expire later within the tick.
+    cursorTick = nowTick;
+  }
+
+  private void sweep() {
+    try {
+      expire(clock.getAsLong());
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to expire challenges", ex);
+    }
+  }
+
+  private void evictOldest() {
+    var start = cursorTick;
+    for (var tick = start; tick <= start + mask; tick++) {
+      var bucket = wheel[(int) (tick & mask)];
+      Entry oldest;
+      while ((oldest = bucket.pollFirst()) != null) {
+        if (entries.remove(oldest.key, oldest)) {
+          live.decrementAndGet();
+          evictions.increment();
+          return;
+        }
+      }
+    }
+  }
+
+  private void link(Entry entry) {
+    wheel[(int) ((entry.deadline / tickMillis) & mask)].append(entry);
+  }
+
+  private static void unlink(Entry entry) {
+    var bucket = entry.bucket;
+    if (bucket != null) {
+      bucket.remove(entry);
+    }
+  }
+
+  private static final class Entry {
+    private final String key;
+    private final Challenge value;
+    private final long deadline;
+
+    private volatile Bucket bucket;
+    private Entry prev;
+    private Entry next;
+
+    private Entry(String key, Challenge value, long deadline) {
+      this.key = key;
+      this.value = value;
+      this.deadline = deadline;
+    }
+  }
+
+  /**
+   * A doubly linked list of entries guarded by its own lock.
+   */
+  private static final class Bucket {
+    private final ReentrantLock lock = new ReentrantLock();
+    private Entry head;
+    private Entry tail;
+
+    private void append(Entry entry) {
+      lock.lock();
+      try {
+        entry.bucket = this;
+        entry.prev = tail;
+        if (tail == null) {
+          head = entry;
+        } else {
+          tail.next = entry;
+        }
+        tail = entry;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void remove(Entry entry) {
+      lock.lock();
+      try {
+        if (entry.bucket == this) {
+          unlinkLocked(entry);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private Entry pollFirst() {
+      lock.lock();
+      try {
+        var first = head;
+        if (first != null) {
+          unlinkLocked(first);
+        }
+        return first;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Unlinks the entries that expire at or before {@code now} and returns them chained through {@code next}.
+     */
+    private Entry detachExpired(long now) {
+      lock.lock();
+      try {
+        Entry expired = null;
+        var entry = head;
+        while (entry != null) {
+          var next = entry.next;
+          if (entry.deadline <= now) {
+            unlinkLocked(entry);
+            entry.next = expired;
+            expired = entry;
+          }
+          entry = next;
+        }
+        return expired;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void unlinkLocked(Entry entry) {
+      if (entry.prev == null) {
+        head = entry.next;
+      } else {
+        entry.prev.next = entry.next;
+      }
+      if (entry.next == null) {
+        tail = entry.prev;
+      } else {
+        entry.next.prev = entry.prev;
+      }
+      entry.prev = null;
+      entry.next = null;
+      entry.bucket = null;
+    }
+  }
+
+  /**
+   * Registers this store as {@code memory}.
+   */
+  public static final class Provider implements ChallengeStoreProvider {
+
+    @Override
+    public String name() {
+      return "memory";
+    }
+
+    @Override
+    public ChallengeStore create(Config config, long ttlMillis) {
+      return new InMemoryChallengeStore(config, ttlMillis);
+    }
+  }
+}
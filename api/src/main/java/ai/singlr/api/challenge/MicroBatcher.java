@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Groups concurrent requests into batches executed by a single virtual thread, so that many callers share one
+ * round trip. While a batch is in flight new requests queue up and form the next batch, so batches grow with load
+ * and a lone request is not delayed unless a linger time is configured.
+ *
+ * @param <R> the type of a request.
+ * @param <T> the type of a result.
+ */
+final class MicroBatcher<R, T> implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(MicroBatcher.class.getName());
+
+  /**
+   * Executes a batch of requests.
+   */
+  @FunctionalInterface
+  interface Handler<R, T> {
+
+    /**
+     * Executes the requests and returns one result per request, in the same order.
+     */
+    List<T> handle(List<R> requests) throws Exception;
+  }
+
+  private final LinkedBlockingQueue<Pending<R, T>> queue;
+  private final int maxBatch;
+  private final long lingerNanos;
+  private final Handler<R, T> handler;
+  private final Thread worker;
+
+  private volatile boolean running = true;
+
+  MicroBatcher(String name, int maxBatch, long lingerNanos, int maxPending, Handler<R, T> handler) {
+    this.queue = new LinkedBlockingQueue<>(maxPending);
+    this.maxBatch = maxBatch;
+    this.lingerNanos = lingerNanos;
+    this.handler = handler;
+    this.worker = Thread.ofVirtual().name(name).start(this::run);
+  }
+
+  /**
+   * Submits the request and waits for its result.
+   *
+   * @throws IllegalStateException if the batcher is overloaded or closed, or the batch failed.
+   */
+  T submit(R request) {
+    var pending = new Pending<R, T>(request, new CompletableFuture<>());
+    if (!running || !queue.offer(pending)) {
+      throw new IllegalStateException("Too many pending requests");
+    }
+
+    try {
+      return pending.result.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the batch", ex);
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException("Batch failed", ex.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    worker.interrupt();
+  }
+
+  private void run() {
+    List<Pending<R, T>> batch = new ArrayList<>(maxBatch);
+    try {
+      while (running) {
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatch - 1);
+        if (lingerNanos > 0) {
+          var deadline = System.nanoTime() + lingerNanos;
+          while (batch.size() < maxBatch) {
+            var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+              break;
+            }
+            batch.add(next);
+          }
+        }
+
+        execute(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    queue.drainTo(batch);
+    var closed = new IllegalStateException("Batcher has been closed");
+    batch.forEach(pending -> pending.result.completeExceptionally(closed));
+  }
+
+  private void execute(List<Pending<R, T>> batch) {
+    List<R> requests = new ArrayList<>(batch.size());
+    for (var pending : batch) {
+      requests.add(pending.request);
+    }
+
+    try {
+      var results = handler.handle(requests);
+      for (var i = 0; i < batch.size(); i++) {
+        batch.get(i).result.complete(results.get(i));
+      }
+    } catch (Exception ex) {
+      LOGGER.log(Level.WARNING, "Batch of " + batch.size() + " requests failed", ex);
+      batch.forEach(pending -> pending.result.completeExceptionally(ex));
+    }
+  }
+
+  private record Pending<R, T>(R request, CompletableFuture<T> result) {
+  }
+}
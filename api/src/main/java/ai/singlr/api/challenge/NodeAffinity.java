@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import io.helidon.config.Config;
+
+/**
+ * Ties challenges to the node that issued them, for deployments where each node keeps its own challenge store.
+ *
+ * <p>The user handle of every challenge starts with {@code shard (1) | node (2)}, and the same pair is exposed as a
+ * route such as {@code 3.12} in the {@value #HEADER} header. Load balancers hash on that header to send
+ * {@code /complete} back to the issuing node, and a node that still receives a foreign challenge can tell which node
+ * it belongs to without a lookup.
+ */
+public final class NodeAffinity {
+
+  /**
+   * The header carrying the route, set on {@code /start} responses and echoed back by the widget on
+   * {@code /complete}.
+   */
+  public static final String HEADER = "X-NoCaptcha-Route";
+
+  private static final int PREFIX_LENGTH = 3;
+
+  private final int shard;
+  private final int node;
+  private final String route;
+
+  NodeAffinity(int shard, int node) {
+    if (shard < 0 || shard > 0xff) {
+      throw new IllegalArgumentException("'shard' must be between 0 and 255");
+    }
+    if (node < 0 || node > 0xffff) {
+      throw new IllegalArgumentException("'node' must be between 0 and 65535");
+    }
+
+    this.shard = shard;
+    this.node = node;
+    this.route = shard + "." + node;
+  }
+
+  /**
+   * Creates the affinity of this node from the {@code challenges.affinity} configuration.
+   *
+   * @param config the affinity configuration node.
+   * @return the affinity.
+   */
+  public static NodeAffinity create(Config config) {
+    int node;
+    if (config.get("node").exists()) {
+      node = config.get("node").asInt().get();
+    } else {
+      throw new IllegalArgumentException("'node' must be specified");
+    }
+
+    return new NodeAffinity(config.get("shard").asInt().orElse(0), node);
+  }
+
+  /**
+   * Returns the route of this node.
+   */
+  public String route() {
+    return route;
+  }
+
+  /**
+   * Prefixes a user handle with the shard and node of this node.
+   *
+   * @param id the random part of the user handle.
+   * @return the user handle to mint the challenge with.
+   */
+  public byte[] tag(byte[] id) {
+    var handle = new byte[PREFIX_LENGTH + id.length];
+    handle[0] = (byte) shard;
+    handle[1] = (byte) (node >>> 8);
+    handle[2] = (byte) node;
+    System.arraycopy(id, 0, handle, PREFIX_LENGTH, id.length);
+    return handle;
+  }
+
+  /**
+   * Returns {@code true} if the user handle was issued by this node.
+   */
+  public boolean isLocal(byte[] handle) {
+    return handle.length > PREFIX_LENGTH
+        && (handle[0] & 0xff) == shard
+        && ((handle[1] & 0xff) << 8 | handle[2] & 0xff) == node;
+  }
+
+  /**
+   * Returns the route of the node that issued the user handle.
+   *
+   * @param handle the user handle.
+   * @return the route or {@code null} if the handle carries none.
+   */
+  public static String routeOf(byte[] handle) {
+    if (handle.length <= PREFIX_LENGTH) {
+      return null;
+    }
+    return (handle[0] & 0xff) + "." + ((handle[1] & 0xff) << 8 | handle[2] & 0xff);
+  }
+}
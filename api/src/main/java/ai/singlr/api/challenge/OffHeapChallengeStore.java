@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import io.helidon.config.Config;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Challenge store that keeps every challenge in a fixed-size slot of direct memory, so that millions of outstanding
+ * challenges add nothing for the garbage collector to trace.
+ *
+ * <p>The slots are split into independently locked segments, each an open-addressing table with linear probing and
+ * backward-shift deletion. Expired slots are reclaimed on access and by a background sweep. When a segment is full, a
+ * clock hand samples a few slots and evicts the oldest one.
+ */
+public class OffHeapChallengeStore implements ChallengeStore {
+
+  private static final Logger LOGGER = Logger.getLogger(OffHeapChallengeStore.class.getName());
+
+  static final int MAX_CHALLENGE_LENGTH = 32;
+  static final int MAX_USER_HANDLE_LENGTH = 64;
+
+  // Slot layout: issuedAt (8) | tenant (4) | challenge length (1) | user handle length (1) | padding (2) |
+  //              challenge (32) | user handle (64). A zero user handle length marks an empty slot.
+  private static final int ISSUED_AT = 0;
+  private static final int TENANT = 8;
+  private static final int CHALLENGE_LENGTH = 12;
+  private static final int HANDLE_LENGTH = 13;
+  private static final int CHALLENGE = 16;
+  private static final int HANDLE = CHALLENGE + MAX_CHALLENGE_LENGTH;
+  static final int SLOT_SIZE = HANDLE + MAX_USER_HANDLE_LENGTH;
+
+  private static final int DEFAULT_CAPACITY = 100_000;
+  private static final int DEFAULT_SEGMENTS = 64;
+  private static final long DEFAULT_TICK_MILLIS = 1000;
+  private static final int EVICTION_SAMPLE = 8;
+  private static final byte[] NO_CHALLENGE = new byte[0];
+
+  private final Segment[] segments;
+  private final int segmentMask;
+  private final int segmentBits;
+  private final int capacity;
+  private final long ttlMillis;
+  private final LongSupplier clock;
+  private final AtomicInteger live = new AtomicInteger();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final ScheduledExecutorService sweeper;
+
+  /**
+   * Creates a store that sweeps expired entries in the background.
+   *
+   * @param config the {@code challenges} configuration node.
+   * @param ttlMillis how long a challenge remains valid, typically the {@code wan.timeout}.
+   */
+  public OffHeapChallengeStore(Config config, long ttlMillis) {
+    this(
+        config.get("capacity").asInt().orElse(DEFAULT_CAPACITY),
+        config.get("segments").asInt().orElse(DEFAULT_SEGMENTS),
+        ttlMillis,
+        config.get("tick-millis").asLong().orElse(DEFAULT_TICK_MILLIS),
+        System::currentTimeMillis,
+        true
+    );
+  }
+
+  OffHeapChallengeStore(int capacity, int segmentCount, long ttlMillis, long tickMillis, LongSupplier clock,
+                        boolean sweep) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("'capacity' must be positive");
+    }
+    if (segmentCount <= 0 || Integer.bitCount(segmentCount) != 1) {
+      throw new IllegalArgumentException("'segments' must be a power of two");
+    }
+    if (ttlMillis <= 0 || tickMillis <= 0) {
+      throw new IllegalArgumentException("'ttlMillis' and 'tickMillis' must be positive");
+    }
+
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+    this.segmentMask = segmentCount - 1;
+    this.segmentBits = Integer.numberOfTrailingZeros(segmentCount);
+
+    // Keep each segment at most 3/4 full so probe sequences stay short.
+    var maxLive = (capacity + segmentCount - 1) / segmentCount;
+    var slots = Integer.highestOneBit(Math.max(maxLive * 4 / 3 + 1, 2) * 2 - 1);
+    this.segments = new Segment[segmentCount];
+    for (var i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment(slots, maxLive);
+    }
+    this.capacity = maxLive * segmentCount;
+
+    if (sweep) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("challenge-sweeper").factory());
+      sweeper.scheduleAtFixedRate(this::sweep, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    } else {
+      sweeper = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc} If the segment the challenge hashes to is full, an older challenge is evicted.
+   */
+  @Override
+  public void put(Challenge challenge) {
+    var handle = challenge.userHandle();
+    if (handle.length == 0 || handle.length > MAX_USER_HANDLE_LENGTH) {
+      throw new IllegalArgumentException("User handle must be between 1 and 64 bytes");
+    }
+    if (challenge.challenge().length > MAX_CHALLENGE_LENGTH) {
+      throw new IllegalArgumentException("Challenge must be at most 32 bytes");
+    }
+
+    var hash = hash(handle);
+    var segment = segments[hash & segmentMask];
+    segment.lock.lock();
+    try {
+      segment.put(challenge, hash >>> segmentBits, clock.getAsLong());
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean claim(Challenge challenge) {
+    var handle = challenge.userHandle();
+    if (handle.length == 0 || handle.length > MAX_USER_HANDLE_LENGTH) {
+      throw new IllegalArgumentException("User handle must be between 1 and 64 bytes");
+    }
+
+    // Only the key and the expiry matter for a claim; sealed challenges wouldn't fit in a slot anyway.
+    var marker = new Challenge(NO_CHALLENGE, handle, challenge.issuedAt(), challenge.tenant());
+    var hash = hash(handle);
+    var segment = segments[hash & segmentMask];
+    segment.lock.lock();
+    try {
+      var now = clock.getAsLong();
+      var home = (hash >>> segmentBits) & segment.slotMask;
+      var slot = segment.indexOf(handle, home);
+      if (slot >= 0 && !segment.isExpired(slot, now)) {
+        return false;
+      }
+      segment.put(marker, hash >>> segmentBits, now);
+      return true;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public Challenge remove(String key) {
+    var handle = handle(key);
+    if (handle == null) {
+      return null;
+    }
+
+    var hash = hash(handle);
+    var segment = segments[hash & segmentMask];
+    segment.lock.lock();
+    try {
+      return segment.remove(handle, hash >>> segmentBits, clock.getAsLong());
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(String key) {
+    var handle = handle(key);
+    if (handle == null) {
+      return false;
+    }
+
+    var hash = hash(handle);
+    var segment = segments[hash & segmentMask];
+    segment.lock.lock();
+    try {
+      var slot = segment.indexOf(handle, (hash >>> segmentBits) & segment.slotMask);
+      return slot >= 0 && !segment.isExpired(slot, clock.getAsLong());
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public List<Challenge> snapshot() {
+    var now = clock.getAsLong();
+    List<Challenge> challenges = new ArrayList<>(live.get());
+    for (var segment : segments) {
+      segment.lock.lock();
+      try {
+        for (var slot = 0; slot <= segment.slotMask; slot++) {
+          if (!segment.isEmpty(slot) && !segment.isExpired(slot, now)) {
+            challenges.add(segment.read(slot));
+          }
+        }
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return challenges;
+  }
+
+  @Override
+  public ChallengeStoreStats stats() {
+    return new ChallengeStoreStats(live.get(), capacity, evictions.sum(), expirations.sum());
+  }
+
+  @Override
+  public void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  /**
+   * Removes every expired challenge, one segment at a time.
+   */
+  void expire(long now) {
+    for (var segment : segments) {
+      segment.lock.lock();
+      try {
+        segment.expire(now);
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Decodes a key sent by a client, returning {@code null} if it can't be the handle of a stored challenge.
+   */
+  private static byte[] handle(String key) {
+    if (key == null) {
+      return null;
+    }
+
+    byte[] handle;
+    try {
+      handle = Base64.getUrlDecoder().decode(key);
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+    return handle.length == 0 || handle.length > MAX_USER_HANDLE_LENGTH ? null : handle;
+  }
+
+  private void sweep() {
+    try {
+      expire(clock.getAsLong());
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to expire challenges", ex);
+    }
+  }
+
+  private static int hash(byte[] handle) {
+    var hash = 1;
+    for (var b : handle) {
+      hash = 31 * hash + b;
+    }
+    return mix(hash);
+  }
+
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * An open-addressing table over a single direct buffer. Every method must be called with the lock held.
+   */
+  private final class Segment {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer slots;
+    private final int slotMask;
+    private final int maxLive;
+    private int size;
+    private int hand;
+
+    private Segment(int slotCount, int maxLive) {
+      this.slots = ByteBuffer.allocateDirect(slotCount * SLOT_SIZE).order(ByteOrder.nativeOrder());
+      this.slotMask = slotCount - 1;
+      this.maxLive = maxLive;
+    }
+
+    private void put(Challenge challenge, int hash, long now) {
+      var home = hash & slotMask;
+      var slot = indexOf(challenge.userHandle(), home);
+      if (slot >= 0) {
+        write(slot, challenge);
+        return;
+      }
+
+      if (size >= maxLive) {
+        evictOne(now);
+      }
+
+      // An expired slot can be reused in place, since it is already part of the probe sequence.
+      slot = home;
+      while (!isEmpty(slot)) {
+        if (isExpired(slot, now)) {
+          expirations.increment();
+          write(slot, challenge);
+          return;
+        }
+        slot = (slot + 1) & slotMask;
+      }
+
+      write(slot, challenge);
+      size++;
+      live.incrementAndGet();
+    }
+
+    private Challenge remove(byte[] handle, int hash, long now) {
+      var slot = indexOf(handle, hash & slotMask);
+      if (slot < 0) {
+        return null;
+      }
+
+      var expired = isExpired(slot, now);
+      var challenge = expired ? null : read(slot);
+      delete(slot);
+      if (expired) {
+        expirations.increment();
+      }
+      return challenge;
+    }
+
+    private void expire(long now) {
+      var slot = 0;
+      while (slot <= slotMask) {
+        if (!isEmpty(slot) && isExpired(slot, now)) {
+          // Deleting shifts the next entry of the cluster into this slot, so check it again.
+          delete(slot);
+          expirations.increment();
+        } else {
+          slot++;
+        }
+      }
+    }
+
+    private void evictOne(long now) {
+      var victim = -1;
+      var oldest = Long.MAX_VALUE;
+      var sampled = 0;
+      for (var probes = 0; probes <= slotMask && sampled < EVICTION_SAMPLE; probes++) {
+        var slot = hand;
+        hand = (hand + 1) & slotMask;
+        if (isEmpty(slot)) {
+          continue;
+        }
+        sampled++;
+        var issuedAt = slots.getLong(slot * SLOT_SIZE + ISSUED_AT);
+        if (issuedAt < oldest) {
+          oldest = issuedAt;
+          victim = slot;
+        }
+      }
+
+      if (victim >= 0) {
+        var expired = isExpired(victim, now);
+        delete(victim);
+        if (expired) {
+          expirations.increment();
+        } else {
+          evictions.increment();
+        }
+      }
+    }
+
+    private int indexOf(byte[] handle, int home) {
+      var slot = home;
+      while (!isEmpty(slot)) {
+        if (matches(slot, handle)) {
+          return slot;
+        }
+        slot = (slot + 1) & slotMask;
+      }
+      return -1;
+    }
+
+    private void delete(int slot) {
+      var hole = slot;
+      var next = slot;
+      while (true) {
+        next = (next + 1) & slotMask;
+        if (isEmpty(next)) {
+          break;
+        }
+        // Move the entry back only if the hole sits between its home slot and its current slot.
+        var home = homeOf(next);
+        if (((next - home) & slotMask) >= ((next - hole) & slotMask)) {
+          slots.put(hole * SLOT_SIZE, slots, next * SLOT_SIZE, SLOT_SIZE);
+          hole = next;
+        }
+      }
+      slots.put(hole * SLOT_SIZE + HANDLE_LENGTH, (byte) 0);
+      size--;
+      live.decrementAndGet();
+    }
+
+    private int homeOf(int slot) {
+      var base = slot * SLOT_SIZE;
+      var length = slots.get(base + HANDLE_LENGTH);
+      var hash = 1;
+      for (var i = 0; i < length; i++) {
+        hash = 31 * hash + slots.get(base + HANDLE + i);
+      }
+      return (mix(hash) >>> segmentBits) & slotMask;
+    }
+
+    private boolean isEmpty(int slot) {
+      return slots.get(slot * SLOT_SIZE + HANDLE_LENGTH) == 0;
+    }
+
+    private boolean isExpired(int slot, long now) {
+      return slots.getLong(slot * SLOT_SIZE + ISSUED_AT) + ttlMillis <= now;
+    }
+
+    private boolean matches(int slot, byte[] handle) {
+      var base = slot * SLOT_SIZE;
+      if (slots.get(base + HANDLE_LENGTH) != handle.length) {
+        return false;
+      }
+      for (var i = 0; i < handle.length; i++) {
+        if (slots.get(base + HANDLE + i) != handle[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void write(int slot, Challenge challenge) {
+      var base = slot * SLOT_SIZE;
+      slots.putLong(base + ISSUED_AT, challenge.issuedAt());
+      slots.putInt(base + TENANT, challenge.tenant());
+      slots.put(base + CHALLENGE_LENGTH, (byte) challenge.challenge().length);
+      slots.put(base + HANDLE_LENGTH, (byte) challenge.userHandle().length);
+      slots.put(base + CHALLENGE, challenge.challenge());
+      slots.put(base + HANDLE, challenge.userHandle());
+    }
+
+    private Challenge read(int slot) {
+      var base = slot * SLOT_SIZE;
+      var challenge = new byte[slots.get(base + CHALLENGE_LENGTH)];
+      var handle = new byte[slots.get(base + HANDLE_LENGTH)];
+      slots.get(base + CHALLENGE, challenge);
+      slots.get(base + HANDLE, handle);
+      return new Challenge(challenge, handle, slots.getLong(base + ISSUED_AT), slots.getInt(base + TENANT));
+    }
+  }
+
+  /**
+   * Registers this store as {@code off-heap}.
+   */
+  public static final class Provider implements ChallengeStoreProvider {
+
+    @Override
+    public String name() {
+      return "off-heap";
+    }
+
+    @Override
+    public ChallengeStore create(Config config, long ttlMillis) {
+      return new OffHeapChallengeStore(config, ttlMillis);
+    }
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import io.helidon.config.Config;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks the challenges each client holds between {@code /start} and {@code /complete}, so that a widget instance
+ * asking again, after a double click, a retry or a reload, gets its pending challenge back instead of a new one, and
+ * so that a single client can't hold more than a handful of challenges at once.
+ *
+ * <p>A client is identified by its tenant and IP address, and a widget instance by the random id the widget keeps for
+ * the browser session. The cap is checked before minting and enforced after, so concurrent requests of a client may
+ * briefly overshoot it by a few challenges.
+ *
+ * <p>Both are picked by the client, so at most {@code max-clients} clients are tracked at once, each holding at most
+ * {@code max-per-client} challenges, and expired challenges are swept. Clients showing up while the index is full are
+ * neither deduplicated nor capped until a tracked client's challenges expire or complete, and are counted as untracked.
+ */
+public final class OutstandingChallenges implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(OutstandingChallenges.class.getName());
+
+  private static final int DEFAULT_MAX_PER_CLIENT = 32;
+  private static final int DEFAULT_MAX_CLIENTS = 65_536;
+
+  private final ConcurrentHashMap<String, List<Pending>> clients = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, String> owners = new ConcurrentHashMap<>();
+  private final int maxPerClient;
+  private final int maxClients;
+  private final LongAdder untracked = new LongAdder();
+  private final long ttlMillis;
+  private final LongSupplier clock;
+  private final ScheduledExecutorService sweeper;
+
+  /**
+   * Creates the index from the {@code challenges.dedup} configuration.
+   *
+   * @param config the deduplication configuration node.
+   * @param ttlMillis how long a challenge remains valid, typically the {@code wan.timeout}.
+   */
+  public OutstandingChallenges(Config config, long ttlMillis) {
+    this(
+        config.get("max-per-client").asInt().orElse(DEFAULT_MAX_PER_CLIENT),
+        config.get("max-clients").asInt().orElse(DEFAULT_MAX_CLIENTS),
+        ttlMillis,
+        System::currentTimeMillis,
+        true
+    );
+  }
+
+  OutstandingChallenges(int maxPerClient, int maxClients, long ttlMillis, LongSupplier clock, boolean sweep) {
+    if (maxPerClient <= 0 || maxClients <= 0) {
+      throw new IllegalArgumentException("'max-per-client' and 'max-clients' must be positive");
+    }
+
+    this.maxPerClient = maxPerClient;
+    this.maxClients = maxClients;
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+
+    if (sweep) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("outstanding-sweeper").factory());
+      var period = Math.max(ttlMillis / 4, 1000);
+      sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    } else {
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Returns the pending challenge of a widget instance, as long as at least half of its TTL remains so the user still
+   * has time to complete the ceremony.
+   *
+   * @param client the tenant and IP address of the client.
+   * @param instance the widget instance id, may be {@code null}.
+   * @return the challenge or {@code null} if a new one should be minted.
+   */
+  public Challenge reuse(String client, String instance) {
+    if (instance == null) {
+      return null;
+    }
+
+    var pending = clients.get(client);
+    if (pending == null) {
+      return null;
+    }
+
+    var freshUntil = clock.getAsLong() + ttlMillis / 2;
+    for (var entry : pending) {
+      if (instance.equals(entry.instance) && entry.deadline > freshUntil) {
+        return entry.challenge;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns {@code true} if the client may be issued another challenge.
+   */
+  public boolean hasRoom(String client) {
+    var pending = clients.get(client);
+    if (pending == null) {
+      return true;
+    }
+
+    var now = clock.getAsLong();
+    var live = 0;
+    for (var entry : pending) {
+      if (entry.deadline > now) {
+        live++;
+      }
+    }
+    return live < maxPerClient;
+  }
+
+  /**
+   * Records a newly minted challenge, replacing the previous one of the same widget instance.
+   *
+   * @param client the tenant and IP address of the client.
+   * @param instance the widget instance id, may be {@code null}.
+   * @param challenge the new challenge.
+   */
+  public void add(String client, String instance, Challenge challenge) {
+    // Concurrent new clients may overshoot the bound by a few entries, which is harmless.
+    if (clients.mappingCount() >= maxClients && !clients.containsKey(client)) {
+      untracked.increment();
+      return;
+    }
+
+    var entry = new Pending(challenge.key(), instance, challenge, challenge.issuedAt() + ttlMillis);
+    owners.put(entry.key, client);
+    var now = clock.getAsLong();
+    clients.compute(client, (key, pending) -> {
+      List<Pending> updated = new ArrayList<>(pending == null ? 1 : Math.min(pending.size() + 1, maxPerClient));
+      if (pending != null) {
+        for (var i = 0; i < pending.size(); i++) {
+          var previous = pending.get(i);
+          // Concurrent requests may overshoot the cap, so the oldest challenges beyond it stop being tracked.
+          if (previous.deadline > now && (instance == null || !instance.equals(previous.instance))
+              && pending.size() - i < maxPerClient) {
+            updated.add(previous);
+          } else {
+            owners.remove(previous.key, key);
+          }
+        }
+      }
+      updated.add(entry);
+      return updated;
+    });
+  }
+
+  /**
+   * Forgets a challenge once {@code /complete} has consumed it, whether or not the ceremony succeeded.
+   *
+   * @param key the {@link Challenge#key()} of the challenge.
+   */
+  public void forget(String key) {
+    var client = owners.remove(key);
+    if (client == null) {
+      return;
+    }
+
+    clients.computeIfPresent(client, (ignored, pending) -> {
+      List<Pending> updated = new ArrayList<>(pending.size());
+      for (var entry : pending) {
+        if (!entry.key.equals(key)) {
+          updated.add(entry);
+        }
+      }
+      return updated.isEmpty() ? null : updated;
+    });
+  }
+
+  /**
+   * Returns the number of clients currently holding at least one challenge.
+   */
+  public int clients() {
+    return clients.size();
+  }
+
+  /**
+   * Returns the number of challenges that were not tracked because the index was full.
+   */
+  public long untracked() {
+    return untracked.sum();
+  }
+
+  @Override
+  public void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  /**
+   * Drops every challenge whose deadline is at or before {@code now}.
+   */
+  void expire(long now) {
+    for (var client : clients.keySet()) {
+      clients.computeIfPresent(client, (key, pending) -> {
+        List<Pending> updated = new ArrayList<>(pending.size());
+        for (var entry : pending) {
+          if (entry.deadline > now) {
+            updated.add(entry);
+          } else {
+            owners.remove(entry.key, key);
+          }
+        }
+        return updated.isEmpty() ? null : updated;
+      });
+    }
+  }
+
+  private void sweep() {
+    try {
+      expire(clock.getAsLong());
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to expire outstanding challenges", ex);
+    }
+  }
+
+  private record Pending(String key, String instance, Challenge challenge, long deadline) {
+  }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import io.helidon.config.Config;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Challenge store shared by every node through PostgreSQL.
+ *
+ * <p>Challenges live in an {@code UNLOGGED} table, range partitioned on the expiry time, since losing pending
+ * challenges on a database crash only costs users a retry. Concurrent inserts, claims, deletes and lookups are each
+ * grouped into micro-batches and sent as a single prepared statement over array parameters, so the number of round
+ * trips grows with the number of batches rather than requests. Expired rows are never deleted one by one: whole
+ * partitions are dropped once everything in them has expired.
+ */
+public class PostgresChallengeStore implements ChallengeStore {
+
+  private static final Logger LOGGER = Logger.getLogger(PostgresChallengeStore.class.getName());
+
+  static final String TABLE = "nocaptcha_challenges";
+
+  private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+      + "handle bytea NOT NULL, "
+      + "challenge bytea NOT NULL, "
+      + "issued_at bigint NOT NULL, "
+      + "tenant integer NOT NULL, "
+      + "expires_at bigint NOT NULL, "
+      + "PRIMARY KEY (handle, expires_at)"
+      + ") PARTITION BY RANGE (expires_at)";
+
+  private static final String CREATE_PARTITION = "CREATE UNLOGGED TABLE IF NOT EXISTS %s PARTITION OF " + TABLE
+      + " FOR VALUES FROM (%d) TO (%d)";
+
+  private static final String LIST_PARTITIONS = "SELECT c.relname, c.reltuples FROM pg_inherits i "
+      + "JOIN pg_class c ON c.oid = i.inhrelid "
+      + "JOIN pg_class p ON p.oid = i.inhparent "
+      + "WHERE p.relname = '" + TABLE + "'";
+
+  private static final String ROWS = "unnest(?::bytea[], ?::bytea[], ?::int8[], ?::int4[], ?::int8[])";
+
+  // The key of a partitioned table must include its partition key, so a handle can't be unique on its own. A put
+  // deletes the rows of the handle in other partitions and replaces the one in its own, in a single statement.
+  private static final String INSERT = "WITH input (handle, challenge, issued_at, tenant, expires_at) AS ("
+      + "SELECT * FROM " + ROWS + "), "
+      + "replaced AS (DELETE FROM " + TABLE + " t USING input i "
+      + "WHERE t.handle = i.handle AND t.expires_at <> i.expires_at) "
+      + "INSERT INTO " + TABLE + " (handle, challenge, issued_at, tenant, expires_at) "
+      + "SELECT * FROM input "
+      + "ON CONFLICT (handle, expires_at) DO UPDATE SET "
+      + "challenge = EXCLUDED.challenge, issued_at = EXCLUDED.issued_at, tenant = EXCLUDED.tenant";
+
+  private static final String CLAIM = "INSERT INTO " + TABLE
+      + " (handle, challenge, issued_at, tenant, expires_at) "
+      + "SELECT * FROM " + ROWS + " "
+      + "ON CONFLICT DO NOTHING RETURNING handle";
+
+  private static final String DELETE = "DELETE FROM " + TABLE
+      + " WHERE handle = ANY(?::bytea[]) AND expires_at > ? "
+      + "RETURNING handle, challenge, issued_at, tenant";
+
+  private static final String SELECT = "SELECT handle FROM " + TABLE
+      + " WHERE handle = ANY(?::bytea[]) AND expires_at > ?";
+
+  private static final int DEFAULT_BATCH_SIZE = 256;
+  private static final int DEFAULT_MAX_PENDING = 10_000;
+  private static final long DEFAULT_PARTITION_MILLIS = 60_000;
+  private static final byte[] NO_CHALLENGE = new byte[0];
+
+  private final String url;
+  private final String username;
+  private final String password;
+  private final long ttlMillis;
+  private final long partitionMillis;
+  private final LongSupplier clock;
+  private final MicroBatcher<Challenge, Boolean> inserts;
+  private final MicroBatcher<Challenge, Boolean> claims;
+  private final MicroBatcher<byte[], Challenge> deletes;
+  private final MicroBatcher<byte[], Boolean> lookups;
+  private final ScheduledExecutorService maintenance;
+  private final LongAdder expirations = new LongAdder();
+
+  private volatile int liveEstimate;
+
+  /**
+   * Connects to PostgreSQL, creates the table if needed and starts the partition maintenance.
+   *
+   * @param config the {@code challenges.postgres} configuration node.
+   * @param ttlMillis how long a challenge remains valid, typically the {@code wan.timeout}.
+   */
+  public PostgresChallengeStore(Config config, long ttlMillis) {
+    this(
+        requireString(config, "url"),
+        config.get("username").asString().orElse(null),
+        config.get("password").asString().orElse(null),
+        ttlMillis,
+        config.get("partition-millis").asLong().orElse(DEFAULT_PARTITION_MILLIS),
+        config.get("batch-size").asInt().orElse(DEFAULT_BATCH_SIZE),
+        TimeUnit.MICROSECONDS.toNanos(config.get("linger-micros").asLong().orElse(0L)),
+        config.get("max-pending").asInt().orElse(DEFAULT_MAX_PENDING),
+        System::currentTimeMillis,
+        true
+    );
+  }
+
+  PostgresChallengeStore(String url, String username, String password, long ttlMillis, long partitionMillis,
+                         int batchSize, long lingerNanos, int maxPending, LongSupplier clock, boolean maintain) {
+    if (ttlMillis <= 0 || partitionMillis <= 0) {
+      throw new IllegalArgumentException("'ttlMillis' and 'partition-millis' must be positive");
+    }
+
+    this.url = url;
+    this.username = username;
+    this.password = password;
+    this.ttlMillis = ttlMillis;
+    this.partitionMillis = partitionMillis;
+    this.clock = clock;
+
+    try (var connection = connect(); var statement = connection.createStatement()) {
+      statement.execute(CREATE_TABLE);
+    } catch (SQLException ex) {
+      throw new IllegalStateException("Unable to create the challenge table", ex);
+    }
+    maintain(clock.getAsLong());
+
+    var insertStatement = new BatchStatement(INSERT);
+    var claimStatement = new BatchStatement(CLAIM);
+    var deleteStatement = new BatchStatement(DELETE);
+    this.inserts = new MicroBatcher<>("challenge-inserts", batchSize, lingerNanos, maxPending,
+        batch -> insert(insertStatement, batch));
+    this.claims = new MicroBatcher<>("challenge-claims", batchSize, lingerNanos, maxPending,
+        batch -> claim(claimStatement, batch));
+    this.deletes = new MicroBatcher<>("challenge-deletes", batchSize, lingerNanos, maxPending,
+        batch -> delete(deleteStatement, batch));
+    var selectStatement = new BatchStatement(SELECT);
+    this.lookups = new MicroBatcher<>("challenge-lookups", batchSize, lingerNanos, maxPending,
+        batch -> select(selectStatement, batch));
+
+    if (maintain) {
+      maintenance = Executors.newSingleThreadScheduledExecutor(
+          Thread.ofVirtual().name("challenge-partitions").factory());
+      var period = Math.max(partitionMillis / 4, 1000);
+      maintenance.scheduleAtFixedRate(() -> maintain(clock.getAsLong()), period, period, TimeUnit.MILLISECONDS);
+    } else {
+      maintenance = null;
+    }
+  }
+
+  @Override
+  public void put(Challenge challenge) {
+    inserts.submit(challenge);
+  }
+
+  @Override
+  public boolean claim(Challenge challenge) {
+    return claims.submit(new Challenge(NO_CHALLENGE, challenge.userHandle(), challenge.issuedAt(),
+        challenge.tenant()));
+  }
+
+  private List<Boolean> claim(BatchStatement statement, List<Challenge> batch) throws SQLException {
+    var inserted = statement.execute(ps -> {
+      bindChallenges(ps, batch);
+      var handles = new HashSet<ByteBuffer>();
+      try (var rows = ps.executeQuery()) {
+        while (rows.next()) {
+          handles.add(ByteBuffer.wrap(rows.getBytes(1)));
+        }
+      }
+      return handles;
+    });
+
+    // Only the first claim of a handle within a batch wins, even though the database reports it once.
+    List<Boolean> results = new ArrayList<>(batch.size());
+    for (var challenge : batch) {
+      results.add(inserted.remove(ByteBuffer.wrap(challenge.userHandle())));
+    }
+    return results;
+  }
+
+  @Override
+  public boolean isShared() {
+    return true;
+  }
+
+  @Override
+  public Challenge remove(String key) {
+    var handle = handle(key);
+    return handle == null ? null : deletes.submit(handle);
+  }
+
+  @Override
+  public boolean contains(String key) {
+    var handle = handle(key);
+    return handle != null && lookups.submit(handle);
+  }
+
+  /**
+   * {@inheritDoc} The live count is PostgreSQL's estimate and the store has no capacity bound.
+   */
+  @Override
+  public ChallengeStoreStats stats() {
+    return new ChallengeStoreStats(liveEstimate, -1, 0, expirations.sum());
+  }
+
+  @Override
+  public void close() {
+    if (maintenance != null) {
+      maintenance.shutdownNow();
+    }
+    inserts.close();
+    claims.close();
+    deletes.close();
+    lookups.close();
+  }
+
+  /**
+   * Creates the partitions needed to hold challenges issued from now until the next run and drops the partitions in
+   * which every challenge has expired.
+   */
+  void maintain(long now) {
+    try (var connection = connect(); var statement = connection.createStatement()) {
+      var current = now / partitionMillis;
+      var last = (now + ttlMillis) / partitionMillis + 1;
+      for (var bucket = current; bucket <= last; bucket++) {
+        try {
+          statement.execute(String.format(CREATE_PARTITION, partitionName(bucket), bucket * partitionMillis,
+              (bucket + 1) * partitionMillis));
+        } catch (SQLException ex) {
+          // Another node may have created it at the same time.
+          LOGGER.fine("Unable to create partition " + partitionName(bucket) + ": " + ex.getMessage());
+        }
+      }
+
+      List<String> expired = new ArrayList<>();
+      var live = 0L;
+      try (var partitions = statement.executeQuery(LIST_PARTITIONS)) {
+        while (partitions.next()) {
+          var name = partitions.getString(1);
+          var rows = Math.max(0L, (long) partitions.getFloat(2));
+          var bucket = bucketOf(name);
+          if (bucket >= 0 && (bucket + 1) * partitionMillis <= now) {
+            expired.add(name);
+            expirations.add(rows);
+          } else {
+            live += rows;
+          }
+        }
+      }
+      liveEstimate = (int) Math.min(live, Integer.MAX_VALUE);
+
+      for (var name : expired) {
+        statement.execute("DROP TABLE IF EXISTS " + name);
+      }
+    } catch (SQLException | RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to maintain challenge partitions", ex);
+    }
+  }
+
+  private List<Boolean> insert(BatchStatement statement, List<Challenge> batch) throws SQLException {
+    // A row can't be updated twice by one statement, so only the last put of a handle within a batch is sent.
+    var latest = new LinkedHashMap<ByteBuffer, Challenge>();
+    for (var challenge : batch) {
+      latest.put(ByteBuffer.wrap(challenge.userHandle()), challenge);
+    }
+    statement.execute(ps -> {
+      bindChallenges(ps, List.copyOf(latest.values()));
+      ps.executeUpdate();
+      return null;
+    });
+    List<Boolean> results = new ArrayList<>(batch.size());
+    batch.forEach(challenge -> results.add(Boolean.TRUE));
+    return results;
+  }
+
+  private List<Challenge> delete(BatchStatement statement, List<byte[]> batch) throws SQLException {
+    var deleted = statement.execute(ps -> {
+      ps.setArray(1, ps.getConnection().createArrayOf("bytea", batch.toArray(new byte[0][])));
+      ps.setLong(2, clock.getAsLong());
+      var challenges = new HashMap<ByteBuffer, Challenge>();
+      try (var rows = ps.executeQuery()) {
+        while (rows.next()) {
+          var challenge = new Challenge(rows.getBytes(2), rows.getBytes(1), rows.getLong(3), rows.getInt(4));
+          // Concurrent puts of a handle in different partitions may both land, the latest one is the pending one.
+          challenges.merge(ByteBuffer.wrap(challenge.userHandle()), challenge,
+              (a, b) -> a.issuedAt() >= b.issuedAt() ? a : b);
+        }
+      }
+      return challenges;
+    });
+
+    List<Challenge> results = new ArrayList<>(batch.size());
+    for (var handle : batch) {
+      results.add(deleted.remove(ByteBuffer.wrap(handle)));
+    }
+    return results;
+  }
+
+  private List<Boolean> select(BatchStatement statement, List<byte[]> batch) throws SQLException {
+    var found = statement.execute(ps -> {
+      ps.setArray(1, ps.getConnection().createArrayOf("bytea", batch.toArray(new byte[0][])));
+      ps.setLong(2, clock.getAsLong());
+      var handles = new HashSet<ByteBuffer>();
+      try (var rows = ps.executeQuery()) {
+        while (rows.next()) {
+          handles.add(ByteBuffer.wrap(rows.getBytes(1)));
+        }
+      }
+      return handles;
+    });
+
+    List<Boolean> results = new ArrayList<>(batch.size());
+    for (var handle : batch) {
+      results.add(found.contains(ByteBuffer.wrap(handle)));
+    }
+    return results;
+  }
+
+  private void bindChallenges(PreparedStatement ps, List<Challenge> batch) throws SQLException {
+    var size = batch.size();
+    var handles = new byte[size][];
+    var challenges = new byte[size][];
+    var issuedAt = new Long[size];
+    var tenants = new Integer[size];
+    var expiresAt = new Long[size];
+    for (var i = 0; i < size; i++) {
+      var challenge = batch.get(i);
+      handles[i] = challenge.userHandle();
+      challenges[i] = challenge.challenge();
+      issuedAt[i] = challenge.issuedAt();
+      tenants[i] = challenge.tenant();
+      expiresAt[i] = challenge.issuedAt() + ttlMillis;
+    }
+
+    var connection = ps.getConnection();
+    ps.setArray(1, connection.createArrayOf("bytea", handles));
+    ps.setArray(2, connection.createArrayOf("bytea", challenges));
+    ps.setArray(3, connection.createArrayOf("int8", issuedAt));
+    ps.setArray(4, connection.createArrayOf("int4", tenants));
+    ps.setArray(5, connection.createArrayOf("int8", expiresAt));
+  }
+
+  /**
+   * Decodes a key sent by a client, returning {@code null} if it is not base64url.
+   */
+  private static byte[] handle(String key) {
+    if (key == null) {
+      return null;
+    }
+
+    try {
+      return Base64.getUrlDecoder().decode(key);
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection(url, username, password);
+  }
+
+  static String partitionName(long bucket) {
+    return TABLE + "_p" + bucket;
+  }
+
+  static long bucketOf(String partitionName) {
+    var prefix = TABLE + "_p";
+    if (!partitionName.startsWith(prefix)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(partitionName.substring(prefix.length()));
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  private static String requireString(Config config, String key) {
+    if (config.get(key).exists()) {
+      return config.get(key).asString().get();
+    }
+    throw new IllegalArgumentException("'" + key + "' must be specified");
+  }
+
+  /**
+   * A prepared statement on a dedicated connection, used only by the batcher's thread. The connection is reopened
+   * after a failure.
+   */
+  private final class BatchStatement {
+    private final String sql;
+    private Connection connection;
+    private PreparedStatement statement;
+
+    private BatchStatement(String sql) {
+      this.sql = sql;
+    }
+
+    private <T> T execute(SqlFunction<T> work) throws SQLException {
+      if (statement == null) {
+        connection = connect();
+        statement = connection.prepareStatement(sql);
+      }
+
+      try {
+        return work.apply(statement);
+      } catch (SQLException ex) {
+        reset();
+        throw ex;
+      }
+    }
+
+    private void reset() {
+      try {
+        connection.close();
+      } catch (SQLException ex) {
+        LOGGER.log(Level.FINE, "Unable to close connection", ex);
+      }
+      connection = null;
+      statement = null;
+    }
+  }
+
+  @FunctionalInterface
+  private interface SqlFunction<T> {
+    T apply(PreparedStatement statement) throws SQLException;
+  }
+
+  /**
+   * Registers this store as {@code postgres}.
+   */
+  public static final class Provider implements ChallengeStoreProvider {
+
+    @Override
+    public String name() {
+      return "postgres";
+    }
+
+    @Override
+    public ChallengeStore create(Config config, long ttlMillis) {
+      return new PostgresChallengeStore(config.get("postgres"), ttlMillis);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.request;
+
+import com.yubico.webauthn.data.AuthenticatorAttestationResponse;
+import com.yubico.webauthn.data.ClientRegistrationExtensionOutputs;
+import com.yubico.webauthn.data.PublicKeyCredential;
+
+/**
+ * A request completing a passkey based CAPTCHA, with the credential already parsed.
+ *
+ * @param id the id of the challenge, if the client sent one.
+ * @param credential the disposable passkey created by the client.
+ */
+public record PasskeyCaptcha(
+    String id,
+    PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential) {
+}
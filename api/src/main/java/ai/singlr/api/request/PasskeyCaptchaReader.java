@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.request;
+
+import ai.singlr.api.Constants;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yubico.webauthn.data.AuthenticatorAttachment;
+import com.yubico.webauthn.data.AuthenticatorAttestationResponse;
+import com.yubico.webauthn.data.AuthenticatorTransport;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.ClientRegistrationExtensionOutputs;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialType;
+import com.yubico.webauthn.data.exception.Base64UrlException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads a {@code /complete} request in a single pass over the body.
+ *
+ * <p>The credential is bound straight from the token stream with a mapper configured like the one
+ * {@link PublicKeyCredential#parseRegistrationResponseJson(String)} uses, rather than going through a tree and a
+ * string first. The parser enforces limits on the size of the body, its strings and its nesting, so an oversized or
+ * malformed request fails as soon as the offending token is read instead of after it has been buffered.
+ *
+ * <p>A CBOR body has the same layout as a JSON one, except that {@code rawId}, {@code clientDataJSON} and
+ * {@code attestationObject} are byte strings instead of base64url text. The credential is then assembled from the
+ * raw bytes, which yields the same credential the JSON body would.
+ */
+public final class PasskeyCaptchaReader {
+
+  /**
+   * A registration response is a few KB even with an attestation certificate chain.
+   */
+  static final long MAX_BODY_LENGTH = 64 * 1024;
+  static final int MAX_STRING_LENGTH = 32 * 1024;
+  static final int MAX_NESTING_DEPTH = 16;
+  static final int MAX_ID_LENGTH = 64;
+
+  private static final TypeReference<
+      PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>> CREDENTIAL =
+      new TypeReference<>() {};
+
+  /**
+   * Configured like the mapper of {@link PublicKeyCredential#parseRegistrationResponseJson(String)}, which lives in an
+   * internal package of the library.
+   */
+  private static final ObjectMapper CODECS = JsonMapper.builder()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+      .serializationInclusion(JsonInclude.Include.NON_ABSENT)
+      .defaultBase64Variant(Base64Variants.MODIFIED_FOR_URL)
+      .addModule(new Jdk8Module())
+      .addModule(new JavaTimeModule())
+      .build();
+
+  private final JsonFactory factory;
+  private final boolean binary;
+
+  PasskeyCaptchaReader(JsonFactory factory, boolean binary) {
+    factory.setStreamReadConstraints(StreamReadConstraints.builder()
+        .maxDocumentLength(MAX_BODY_LENGTH)
+        .maxStringLength(MAX_STRING_LENGTH)
+        .maxNestingDepth(MAX_NESTING_DEPTH)
+        .build());
+    this.factory = factory;
+    this.binary = binary;
+  }
+
+  /**
+   * Creates a reader of JSON bodies.
+   *
+   * @return the reader.
+   */
+  public static PasskeyCaptchaReader json() {
+    return new PasskeyCaptchaReader(new JsonFactory(), false);
+  }
+
+  /**
+   * Creates a reader of CBOR bodies.
+   *
+   * @return the reader.
+   */
+  public static PasskeyCaptchaReader cbor() {
+    return new PasskeyCaptchaReader(new CBORFactory(), true);
+  }
+
+  /**
+   * Reads the request.
+   *
+   * @param body the request body.
+   * @return the request.
+   * @throws IOException if the body is not well-formed or exceeds a limit.
+   * @throws IllegalArgumentException if the body is well-formed but not a valid request.
+   */
+  public PasskeyCaptcha read(InputStream body) throws IOException {
+    try (var parser = factory.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException(binary ? "A CBOR map must be specified" : "A JSON object must be specified");
+      }
+
+      String id = null;
+      PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        var field = parser.currentName();
+        var token = parser.nextToken();
+        if ("id".equals(field)) {
+          id = readId(parser, token);
+        } else if (Constants.PUB_KEY_CRED_OPTS.equals(field)) {
+          if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Public key credential must be an object");
+          }
+          credential = binary ? readBinaryCredential(parser) : CODECS.readValue(parser, CREDENTIAL);
+        } else {
+          parser.skipChildren();
+        }
+      }
+
+      if (credential == null) {
+        throw new IllegalArgumentException("Public key credential is required");
+      }
+      return new PasskeyCaptcha(id, credential);
+    }
+  }
+
+  private static String readId(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (token != JsonToken.VALUE_STRING) {
+      throw new IllegalArgumentException("ID must be a string");
+    }
+    if (parser.getTextLength() > MAX_ID_LENGTH) {
+      throw new IllegalArgumentException("ID is too long");
+    }
+    return parser.getText();
+  }
+
+  private PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>
+      readBinaryCredential(JsonParser parser) throws IOException {
+    byte[] rawId = null;
+    byte[] clientDataJson = null;
+    byte[] attestationObject = null;
+    Set<AuthenticatorTransport> transports = null;
+    AuthenticatorAttachment attachment = null;
+    var extensions = ClientRegistrationExtensionOutputs.builder().build();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      var field = parser.currentName();
+      var token = parser.nextToken();
+      switch (field) {
+        case "rawId" -> rawId = readBytes(parser, token, field);
+        case "type" -> {
+          if (token != JsonToken.VALUE_STRING || !"public-key".equals(parser.getText())) {
+            throw new IllegalArgumentException("Public key credential type must be public-key");
+          }
+        }
+        case "authenticatorAttachment" ->
+            attachment = token == JsonToken.VALUE_STRING ? attachment(parser.getText()) : null;
+        case "clientExtensionResults" ->
+            extensions = CODECS.readValue(parser, ClientRegistrationExtensionOutputs.class);
+        case "response" -> {
+          if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Response must be a map");
+          }
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var responseField = parser.currentName();
+            var responseToken = parser.nextToken();
+            switch (responseField) {
+              case "clientDataJSON" -> clientDataJson = readBytes(parser, responseToken, responseField);
+              case "attestationObject" -> attestationObject = readBytes(parser, responseToken, responseField);
+              case "transports" -> transports = readTransports(parser, responseToken);
+              default -> parser.skipChildren();
+            }
+          }
+        }
+        default -> parser.skipChildren();
+      }
+    }
+
+    if (rawId == null || clientDataJson == null || attestationObject == null) {
+      throw new IllegalArgumentException("rawId, clientDataJSON and attestationObject are required");
+    }
+
+    var response = AuthenticatorAttestationResponse.builder()
+        .attestationObject(new ByteArray(attestationObject))
+        .clientDataJSON(new ByteArray(clientDataJson));
+    if (transports != null) {
+      response.transports(transports);
+    }
+
+    try {
+      return PublicKeyCredential.<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>builder()
+          .id(new ByteArray(rawId))
+          .response(response.build())
+          .clientExtensionResults(extensions)
+          .authenticatorAttachment(attachment)
+          .type(PublicKeyCredentialType.PUBLIC_KEY)
+          .build();
+    } catch (Base64UrlException ex) {
+      throw new IllegalArgumentException("Client data is malformed", ex);
+    }
+  }
+
+  /**
+   * Returns the attachment of the value, or {@code null} if it is unknown, as the JSON mapper does.
+   */
+  private static AuthenticatorAttachment attachment(String value) {
+    for (var attachment : AuthenticatorAttachment.values()) {
+      if (attachment.getValue().equals(value)) {
+        return attachment;
+      }
+    }
+    return null;
+  }
+
+  private static byte[] readBytes(JsonParser parser, JsonToken token, String field) throws IOException {
+    if (token != JsonToken.VALUE_EMBEDDED_OBJECT) {
+      throw new IllegalArgumentException(field + " must be a byte string");
+    }
+    return parser.getBinaryValue();
+  }
+
+  private static Set<AuthenticatorTransport> readTransports(JsonParser parser, JsonToken token) throws IOException {
+    if (token != JsonToken.START_ARRAY) {
+      throw new IllegalArgumentException("transports must be an array");
+    }
+    Set<AuthenticatorTransport> transports = new HashSet<>();
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (parser.currentToken() != JsonToken.VALUE_STRING) {
+        throw new IllegalArgumentException("transports must be strings");
+      }
+      transports.add(AuthenticatorTransport.of(parser.getText()));
+    }
+    return transports;
+  }
+}
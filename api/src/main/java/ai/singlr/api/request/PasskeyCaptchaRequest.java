@@ -25,7 +25,7 @@ public record PasskeyCaptchaRequest(
   @JsonIgnore
   public String credsAsString() {
     try {
-      return Utils.mapper().writeValueAsString(pubKeyCredOpts);
+      return Utils.writer(JsonNode.class).writeValueAsString(pubKeyCredOpts);
     } catch (JsonProcessingException ignored) {
       return null;
     }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.request;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Simple record to handle requests starting a passkey based CAPTCHA.
+ *
+ * @param id the name shown for the disposable passkey.
+ * @param instance the random id the widget keeps for the browser session, if any.
+ * @param format {@code object} to receive the credential creation options as a nested JSON object rather than as a
+ *     JSON encoded string.
+ * @param type {@code pow} to receive a proof-of-work puzzle instead, for clients without a platform authenticator.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record PasskeyStartRequest(
+    String id,
+    String instance,
+    String format,
+    String type) {
+
+  /**
+   * The format of the credential creation options that existing widgets parse a second time.
+   */
+  public static final String FORMAT_STRING = "string";
+
+  /**
+   * The format of the credential creation options that is nested into the response.
+   */
+  public static final String FORMAT_OBJECT = "object";
+
+  /**
+   * The type of challenge asked for by clients that cannot create a platform passkey.
+   */
+  public static final String TYPE_PROOF_OF_WORK = "pow";
+
+  /**
+   * Whether the credential creation options are requested as a nested JSON object.
+   */
+  public boolean nested() {
+    return FORMAT_OBJECT.equals(format);
+  }
+
+  /**
+   * Whether a proof-of-work puzzle is requested instead of a passkey ceremony.
+   */
+  public boolean proofOfWork() {
+    return TYPE_PROOF_OF_WORK.equals(type);
+  }
+}
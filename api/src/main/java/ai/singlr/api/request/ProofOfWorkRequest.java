@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.request;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Simple record to handle requests answering a proof-of-work puzzle.
+ *
+ * @param id the id of the puzzle returned by {@code /start}.
+ * @param nonce the nonce whose hash with the puzzle starts with enough zero bits.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ProofOfWorkRequest(
+    String id,
+    Long nonce) {
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.request;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.List;
+
+/**
+ * Simple record to handle requests checking several verification tokens at once.
+ *
+ * @param tokens the tokens the clients received from {@code /complete}, in the order to answer them.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SiteVerifyBatchRequest(
+    List<String> tokens) {
+}
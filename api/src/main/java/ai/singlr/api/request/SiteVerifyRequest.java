@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.request;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Simple record to handle requests checking a verification token.
+ *
+ * @param token the token the client received from {@code /complete}.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SiteVerifyRequest(
+    String token) {
+}
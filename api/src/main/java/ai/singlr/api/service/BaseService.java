@@ -5,6 +5,7 @@
 
 package ai.singlr.api.service;
 
+import ai.singlr.api.traffic.ClientIpResolver;
 import ai.singlr.core.ErrorCode;
 import ai.singlr.core.StringUtils;
 import ai.singlr.core.Utils;
@@ -12,14 +13,12 @@ import ai.singlr.core.result.Result;
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import io.helidon.http.HeaderName;
 import io.helidon.http.HeaderNames;
 import io.helidon.http.HeaderValues;
-import io.helidon.http.media.jackson.JacksonRuntimeException;
 import io.helidon.webserver.http.HttpService;
 import io.helidon.webserver.http.ServerRequest;
 import io.helidon.webserver.http.ServerResponse;
-import java.util.List;
+import java.io.IOException;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.logging.Level;
@@ -30,18 +29,17 @@ import java.util.logging.Logger;
  */
 public abstract class BaseService implements HttpService {
 
-  private static final List<HeaderName> IP_HEADER_NAMES = List.of(
-      HeaderNames.X_FORWARDED_FOR,
-      HeaderNames.create("Proxy-Client-IP"),
-      HeaderNames.create("WL-Proxy-Client-IP"),
-      HeaderNames.create("HTTP_CLIENT_IP"),
-      HeaderNames.create("HTTP_X_FORWARDED_FOR")
-  );
+  static final ErrorResponse INVALID_JSON = new ErrorResponse(ErrorCode.INVALID, "A valid JSON should be specified");
+  static final ErrorResponse INTERNAL_ERROR =
+      new ErrorResponse(ErrorCode.INTERNAL, "Sorry, something went wrong. Please try later.");
+  static final ErrorResponse NOT_AUTHORIZED = new ErrorResponse(ErrorCode.NOT_AUTHORIZED, "UnAuthorized");
 
   final Logger logger;
+  private final ClientIpResolver clientIps;
 
-  public BaseService(Logger logger) {
+  public BaseService(Logger logger, ClientIpResolver clientIps) {
     this.logger = logger;
+    this.clientIps = clientIps;
   }
 
   void traceRequest(String remoteIp, String reqType, String message) {
@@ -55,21 +53,11 @@ public abstract class BaseService implements HttpService {
     );
   }
 
-  String bestGuessRemoteIp(ServerRequest req) {
-    var remoteHeader = IP_HEADER_NAMES.stream()
-        .filter(headerName -> req.headers().contains(headerName))
-        .map(headerName -> req.headers().get(headerName))
-        .filter(ip -> {
-          var fullValues = ip.values();
-          return fullValues != null && !fullValues.isEmpty();
-        })
-        .findFirst();
-
-    if (remoteHeader.isPresent()) {
-      return remoteHeader.get().values();
-    }
-
-    return req.remotePeer().host();
+  /**
+   * Returns the address of the client, in its canonical text form.
+   */
+  String remoteIp(ServerRequest req) {
+    return clientIps.remoteIp(req);
   }
 
   void processResult(Result<?> result, ServerResponse resp, String logMessagePrefix) {
@@ -139,33 +127,33 @@ public abstract class BaseService implements HttpService {
 
   protected static <D> Optional<D> decodeAs(ServerRequest req, ServerResponse resp, Class<D> clazz) {
     try {
-      D value = req.content().as(clazz);
+      D value = Utils.reader(clazz).readValue(req.content().inputStream());
       return Optional.of(value);
 
-    } catch (JacksonRuntimeException | NullPointerException ex) {
-      sendInvalidError(resp, "A valid JSON should be specified");
+    } catch (IOException | NullPointerException ex) {
+      INVALID_JSON.send(resp);
       return Optional.empty();
     }
   }
 
   protected static <D> Optional<D> decodeAs(JsonNode json, ServerResponse resp, Class<D> clazz) {
     try {
-      D value = Utils.mapper().convertValue(json, clazz);
+      D value = Utils.reader(clazz).readValue(json);
       return Optional.of(value);
 
-    } catch (JacksonRuntimeException | NullPointerException | IllegalArgumentException ex) {
-      sendInvalidError(resp, "A valid JSON should be specified");
+    } catch (IOException | NullPointerException | IllegalArgumentException ex) {
+      INVALID_JSON.send(resp);
       return Optional.empty();
     }
   }
 
   protected static <D> Optional<D> decodeAs(String json, ServerResponse resp, Class<D> clazz) {
     try {
-      D value = Utils.mapper().readValue(json, clazz);
+      D value = Utils.reader(clazz).readValue(json);
       return Optional.of(value);
 
-    } catch (JacksonRuntimeException | NullPointerException | JsonProcessingException ex) {
-      sendInvalidError(resp, "A valid JSON should be specified");
+    } catch (IOException | NullPointerException ex) {
+      INVALID_JSON.send(resp);
       return Optional.empty();
     }
   }
@@ -179,10 +167,7 @@ public abstract class BaseService implements HttpService {
   }
 
   protected static void sendSuccess(ServerResponse resp, int code) {
-    resp
-        .status(code)
-        .header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
-        .send(Result.success(true));
+    sendResult(resp, code, Result.success(true));
   }
 
   protected static void sendInvalidError(ServerResponse resp, String message) {
@@ -194,22 +179,40 @@ public abstract class BaseService implements HttpService {
   }
 
   static void sendInternalError(ServerResponse resp) {
-    sendError(resp, "Sorry, something went wrong. Please try later.", ErrorCode.INTERNAL);
+    INTERNAL_ERROR.send(resp);
   }
 
   static void sendNotAuthorizedError(ServerResponse resp) {
-    sendError(resp, "UnAuthorized", ErrorCode.NOT_AUTHORIZED);
+    NOT_AUTHORIZED.send(resp);
   }
 
   static void sendNotAuthorizedError(ServerResponse resp, String message) {
     sendError(resp, message, ErrorCode.NOT_AUTHORIZED);
   }
 
+  /**
+   * Sends the error with its generic message.
+   */
+  static void sendError(ServerResponse resp, ErrorCode errorCode) {
+    ErrorResponse.of(errorCode).send(resp);
+  }
+
   static void sendError(ServerResponse resp, String message, ErrorCode errorCode) {
+    sendResult(resp, errorCode.httpCode(), new Result<>(errorCode, message, null));
+  }
+
+  private static void sendResult(ServerResponse resp, int code, Result<?> result) {
+    byte[] body;
+    try {
+      body = Utils.writer(Result.class).writeValueAsBytes(result);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unable to serialize the result", ex);
+    }
+
     resp
-        .status(errorCode.httpCode())
+        .status(code)
         .header(HeaderNames.CONTENT_TYPE, HeaderValues.CONTENT_TYPE_JSON.values())
-        .send(new Result<>(errorCode, message, null));
+        .send(body);
   }
 
   protected Optional<UUID> tryParseId(ServerResponse resp, String id, String errorMessage) {
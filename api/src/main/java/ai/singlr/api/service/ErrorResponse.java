@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.service;
+
+import ai.singlr.core.ErrorCode;
+import ai.singlr.core.result.Result;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.helidon.http.HeaderValues;
+import io.helidon.webserver.http.ServerResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An error response encoded once, so that sending it only writes its bytes. Rejecting a request with a constant
+ * error then neither allocates a {@link Result} nor serializes its {@link ErrorCode} again.
+ */
+final class ErrorResponse {
+
+  // Result and ErrorCode are plain annotated types, so a private mapper encodes them exactly like the shared one and
+  // the constants don't depend on when Utils is initialized.
+  private static final ObjectWriter WRITER = new ObjectMapper().writerFor(Result.class);
+  private static final Map<ErrorCode, ErrorResponse> DEFAULTS = new ConcurrentHashMap<>();
+
+  static {
+    for (var errorCode : ErrorCode.registered()) {
+      DEFAULTS.put(errorCode, new ErrorResponse(errorCode, errorCode.message()));
+    }
+  }
+
+  private final int status;
+  private final byte[] body;
+
+  /**
+   * Encodes the response.
+   *
+   * @param errorCode the error code.
+   * @param message a user-friendly error message that can be displayed.
+   */
+  ErrorResponse(ErrorCode errorCode, String message) {
+    this.status = errorCode.httpCode();
+    try {
+      this.body = WRITER.writeValueAsBytes(new Result<>(errorCode, message, null));
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unable to encode the error response", ex);
+    }
+  }
+
+  /**
+   * Returns the response of an error code with its generic message.
+   */
+  static ErrorResponse of(ErrorCode errorCode) {
+    return DEFAULTS.computeIfAbsent(errorCode, code -> new ErrorResponse(code, code.message()));
+  }
+
+  /**
+   * Sends the response.
+   */
+  void send(ServerResponse resp) {
+    resp
+        .status(status)
+        .header(HeaderValues.CONTENT_TYPE_JSON)
+        .send(body);
+  }
+
+  byte[] body() {
+    return body;
+  }
+}
@@ -6,17 +6,46 @@
 package ai.singlr.api.service;
 
 import ai.singlr.api.Constants;
+import ai.singlr.api.auth.ChallengePool;
+import ai.singlr.api.auth.FairScheduler;
 import ai.singlr.api.auth.PasskeyProvider;
-import ai.singlr.api.request.PasskeyCaptchaRequest;
+import ai.singlr.api.auth.ProofOfWork;
+import ai.singlr.api.auth.Site;
+import ai.singlr.api.auth.TenantQuotas;
+import ai.singlr.api.auth.TokenVerification;
+import ai.singlr.api.auth.VerificationTokens;
+import ai.singlr.api.challenge.Challenge;
+import ai.singlr.api.challenge.ChallengeStore;
+import ai.singlr.api.challenge.NodeAffinity;
+import ai.singlr.api.challenge.OutstandingChallenges;
+import ai.singlr.api.request.PasskeyCaptcha;
+import ai.singlr.api.request.PasskeyCaptchaReader;
+import ai.singlr.api.request.PasskeyStartRequest;
+import ai.singlr.api.request.ProofOfWorkRequest;
+import ai.singlr.api.request.SiteVerifyBatchRequest;
+import ai.singlr.api.request.SiteVerifyRequest;
+import ai.singlr.api.traffic.ClientIpResolver;
+import ai.singlr.api.traffic.HeavyHitters;
+import ai.singlr.api.traffic.IpBlocklist;
+import ai.singlr.api.traffic.RateLimiter;
+import ai.singlr.core.ErrorCode;
 import ai.singlr.core.StringUtils;
 import ai.singlr.core.Utils;
-import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
-import io.helidon.config.Config;
+import ai.singlr.core.result.Result;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.yubico.webauthn.RegistrationResult;
+import io.helidon.http.Header;
+import io.helidon.http.HeaderName;
+import io.helidon.http.HeaderNames;
+import io.helidon.http.HeaderValues;
 import io.helidon.webserver.http.HttpRules;
 import io.helidon.webserver.http.ServerRequest;
 import io.helidon.webserver.http.ServerResponse;
+import java.io.IOException;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,47 +55,245 @@ import java.util.logging.Logger;
 public class NoCaptchaService extends BaseService {
 
   private static final Logger LOGGER = Logger.getLogger(NoCaptchaService.class.getName());
+  private static final HeaderName ROUTE_HEADER = HeaderNames.create(NodeAffinity.HEADER);
+  private static final int MAX_INSTANCE_LENGTH = 64;
+  private static final String CBOR_MEDIA_TYPE = "application/cbor";
+
+  /**
+   * Lists the media types {@code /complete} accepts, so that widgets only send CBOR to nodes that read it.
+   */
+  public static final String ACCEPT_HEADER = "X-NoCaptcha-Accept";
+  private static final HeaderName ACCEPT_HEADER_NAME = HeaderNames.create(ACCEPT_HEADER);
+  private static final String ACCEPTED_MEDIA_TYPES = CBOR_MEDIA_TYPE + ", application/json";
+
+  /**
+   * Carries the key of the site the widget is embedded in, absent for the default site.
+   */
+  public static final String SITE_HEADER = "X-NoCaptcha-Site";
+  private static final HeaderName SITE_HEADER_NAME = HeaderNames.create(SITE_HEADER);
+
+  private static final Header KEYS_CACHE_CONTROL = HeaderValues.createCached(HeaderNames.CACHE_CONTROL, "max-age=300");
+  private static final Header RETRY_AFTER = HeaderValues.createCached(HeaderNames.RETRY_AFTER, 1);
+
+  private static final ErrorResponse ID_REQUIRED = new ErrorResponse(ErrorCode.INVALID, "ID is required.");
+  private static final ErrorResponse INSTANCE_TOO_LONG = new ErrorResponse(ErrorCode.INVALID, "Instance is too long.");
+  private static final ErrorResponse TOO_MANY_PENDING =
+      new ErrorResponse(ErrorCode.TOO_MANY_REQUESTS, "Too many pending challenges");
+  private static final ErrorResponse INVALID_CBOR =
+      new ErrorResponse(ErrorCode.INVALID, "A valid CBOR should be specified");
+  private static final ErrorResponse UNRECOGNIZED =
+      new ErrorResponse(ErrorCode.INVALID, "Unable to recognize temporary passkey");
+  private static final ErrorResponse ALREADY_USED =
+      new ErrorResponse(ErrorCode.INVALID, "Temporary passkey has already been used");
+  private static final ErrorResponse TOKENS_DISABLED =
+      new ErrorResponse(ErrorCode.NOT_FOUND, "Verification tokens are not enabled");
+  private static final ErrorResponse NO_PUBLIC_KEYS =
+      new ErrorResponse(ErrorCode.NOT_FOUND, "Verification tokens are signed with shared secrets");
+  private static final ErrorResponse TOKENS_REQUIRED = new ErrorResponse(ErrorCode.INVALID, "Tokens are required.");
+  private static final ErrorResponse UNKNOWN_SITE = new ErrorResponse(ErrorCode.INVALID, "Unknown site key");
+  private static final ErrorResponse FORBIDDEN_ORIGIN =
+      new ErrorResponse(ErrorCode.FORBIDDEN, "Origin is not allowed for this site");
+  private static final ErrorResponse RATE_LIMITED =
+      new ErrorResponse(ErrorCode.TOO_MANY_REQUESTS, "Too many requests from this address");
+  private static final ErrorResponse BLOCKED_NETWORK =
+      new ErrorResponse(ErrorCode.FORBIDDEN, "Requests from this network are not allowed");
+  private static final ErrorResponse ISSUE_QUOTA_EXCEEDED =
+      new ErrorResponse(ErrorCode.TOO_MANY_REQUESTS, "Too many challenges requested for this site");
+  private static final ErrorResponse VERIFY_QUOTA_EXCEEDED =
+      new ErrorResponse(ErrorCode.TOO_MANY_REQUESTS, "Too many verifications for this site");
+  private static final ErrorResponse TOO_MANY_QUEUED =
+      new ErrorResponse(ErrorCode.TOO_MANY_REQUESTS, "Too many verifications are waiting for this site");
+  private static final ErrorResponse POW_DISABLED =
+      new ErrorResponse(ErrorCode.NOT_FOUND, "Proof-of-work challenges are not enabled");
+  private static final ErrorResponse POW_ANSWER_REQUIRED =
+      new ErrorResponse(ErrorCode.INVALID, "ID and nonce are required.");
+  private static final ErrorResponse UNRECOGNIZED_PUZZLE =
+      new ErrorResponse(ErrorCode.INVALID, "Unable to recognize proof-of-work challenge");
+  private static final ErrorResponse WRONG_ANSWER =
+      new ErrorResponse(ErrorCode.INVALID, "Proof-of-work answer is wrong");
+  private static final ErrorResponse MISDIRECTED =
+      new ErrorResponse(ErrorCode.MISDIRECTED, "Temporary passkey was issued by another node");
 
   private final PasskeyProvider passkeyProvider;
+  private final ChallengeStore challengeStore;
+  private final NodeAffinity affinity;
+  private final OutstandingChallenges outstanding;
+  private final ChallengePool pool;
+  private final VerificationTokens tokens;
+  private final TenantQuotas quotas;
+  private final FairScheduler scheduler;
+  private final RateLimiter rateLimiter;
+  private final HeavyHitters heavyHitters;
+  private final IpBlocklist blocklist;
+  private final ProofOfWork proofOfWork;
+  private final ChallengeStore puzzles;
+  private final Map<Site, StartResponseTemplate> templates;
+  private final PasskeyCaptchaReader jsonReader = PasskeyCaptchaReader.json();
+  private final PasskeyCaptchaReader cborReader = PasskeyCaptchaReader.cbor();
 
-  // TODO: Clean-up this map after a certain time.
-  //       This is a naive way of handling temporary time-based, passkeys
-  private final Map<String, PublicKeyCredentialCreationOptions> passkeyCaptchaMap;
-  
   /**
    * Create a new instance of the service.
+   *
+   * @param passkeyProvider mints and verifies the disposable passkeys.
+   * @param challengeStore holds the challenges between {@code /start} and {@code /complete}.
+   * @param affinity the node minted challenges are tied to, or {@code null} if any node can complete them.
+   * @param outstanding deduplicates and caps the challenges of each client, or {@code null} to mint on every request.
+   * @param pool serves challenges minted ahead of time, or {@code null} to mint them on the request thread.
+   * @param tokens issues and checks the proof of a completed CAPTCHA, or {@code null} to issue none.
+   * @param quotas caps the issuance and verification rates of each site, or {@code null} for no caps.
+   * @param scheduler shares attestation checks between sites, or {@code null} to run them on the request thread.
+   * @param rateLimiter throttles {@code /start} and {@code /complete} per client IP, or {@code null} to not throttle.
+   * @param heavyHitters tracks the clients sending the most requests, or {@code null} to not track them.
+   * @param blocklist turns away {@code /start} requests from blocked networks, or {@code null} to block none.
+   * @param clientIps finds the address of the client behind the proxies in front of the service.
+   * @param proofOfWork issues puzzles to clients without a platform authenticator, or {@code null} to issue none.
+   * @param puzzles holds the puzzles between {@code /start} and {@code /complete/pow}, possibly the challenge store.
    */
-  public NoCaptchaService() {
-    super(LOGGER);
-    this.passkeyProvider = new PasskeyProvider(Config.global().get("wan"));
-    this.passkeyCaptchaMap = new HashMap<>(100);
+  public NoCaptchaService(
+      PasskeyProvider passkeyProvider,
+      ChallengeStore challengeStore,
+      NodeAffinity affinity,
+      OutstandingChallenges outstanding,
+      ChallengePool pool,
+      VerificationTokens tokens,
+      TenantQuotas quotas,
+      FairScheduler scheduler,
+      RateLimiter rateLimiter,
+      HeavyHitters heavyHitters,
+      IpBlocklist blocklist,
+      ClientIpResolver clientIps,
+      ProofOfWork proofOfWork,
+      ChallengeStore puzzles) {
+    super(LOGGER, clientIps);
+    this.passkeyProvider = passkeyProvider;
+    this.challengeStore = challengeStore;
+    this.affinity = affinity;
+    this.outstanding = outstanding;
+    this.pool = pool;
+    this.tokens = tokens;
+    this.quotas = quotas;
+    this.scheduler = scheduler;
+    this.rateLimiter = rateLimiter;
+    this.heavyHitters = heavyHitters;
+    this.blocklist = blocklist;
+    this.proofOfWork = proofOfWork;
+    this.puzzles = puzzles;
+    Map<Site, StartResponseTemplate> templates = new HashMap<>();
+    for (var site : passkeyProvider.sites().all()) {
+      templates.put(site, StartResponseTemplate.create(passkeyProvider, site.tenant()));
+    }
+    this.templates = Map.copyOf(templates);
   }
 
   @Override
   public void routing(HttpRules rules) {
     rules.post("/start", this::passkeyStartHandler);
     rules.put("/complete", this::passkeyCompleteHandler);
+    rules.put("/complete/pow", this::proofOfWorkCompleteHandler);
+    rules.post("/siteverify", this::siteVerifyHandler);
+    rules.post("/siteverify/batch", this::siteVerifyBatchHandler);
+    rules.get("/keys", this::keysHandler);
   }
 
   private void passkeyStartHandler(ServerRequest req, ServerResponse resp) {
-    var reqOpt = decodeAs(req, resp, PasskeyCaptchaRequest.class);
+    var remoteIp = remoteIp(req);
+    if (isRateLimited(remoteIp, resp)) {
+      return;
+    }
+    if (blocklist != null && blocklist.isBlocked(remoteIp)) {
+      BLOCKED_NETWORK.send(resp);
+      return;
+    }
+
+    var reqOpt = decodeAs(req, resp, PasskeyStartRequest.class);
     if (reqOpt.isEmpty()) {
       return;
     }
 
     if (StringUtils.isBlank(reqOpt.get().id())) {
-      sendInvalidError(resp, "ID is required.");
+      ID_REQUIRED.send(resp);
       return;
     }
 
     var passkeyReq = reqOpt.get();
+    var instance = passkeyReq.instance();
+    if (StringUtils.isBlank(instance)) {
+      instance = null;
+    } else if (instance.length() > MAX_INSTANCE_LENGTH) {
+      INSTANCE_TOO_LONG.send(resp);
+      return;
+    }
+    if (heavyHitters != null) {
+      heavyHitters.recordInstance(instance);
+    }
+
+    var site = site(req, resp);
+    if (site == null) {
+      return;
+    }
+    // Browsers always send the origin of cross-origin calls, so a missing one is a server calling on its own behalf.
+    var origin = req.headers().value(HeaderNames.ORIGIN);
+    if (origin.isPresent() && !site.allowsOrigin(origin.get())) {
+      FORBIDDEN_ORIGIN.send(resp);
+      return;
+    }
+    var tenant = site.tenant();
+    if (passkeyReq.proofOfWork()) {
+      startProofOfWork(tenant, remoteIp, resp);
+      return;
+    }
+    var template = templates.get(site);
 
-    String pubKeyCredOptions;
+    var client = outstanding == null ? null : tenant + "/" + remoteIp;
+
+    var nested = passkeyReq.nested();
+    String pubKeyCredOptions = null;
+    byte[] body = null;
     try {
-      var credentialCreationOptions = passkeyProvider.startCaptcha(passkeyReq.id());
-      pubKeyCredOptions = credentialCreationOptions.toCredentialsCreateJson();
-      passkeyCaptchaMap.put(credentialCreationOptions.getUser().getId().getBase64Url(), credentialCreationOptions);
-      passkeyCaptchaMap.keySet().forEach(LOGGER::info);
+      var pending = outstanding == null ? null : outstanding.reuse(client, instance);
+      // The store may have evicted the challenge or another node completed it, so only hand back what is still there.
+      if (pending != null && !passkeyProvider.isSealed() && !challengeStore.contains(pending.key())) {
+        outstanding.forget(pending.key());
+        pending = null;
+      }
+      if (pending != null) {
+        if (nested) {
+          body = template.render(passkeyReq.id(), pending);
+        } else {
+          pubKeyCredOptions = passkeyProvider.reissueCaptcha(passkeyReq.id(), pending).toCredentialsCreateJson();
+        }
+      } else if (outstanding != null && !outstanding.hasRoom(client)) {
+        TOO_MANY_PENDING.send(resp);
+        return;
+      } else if (quotas != null && !quotas.tryIssue(tenant)) {
+        ISSUE_QUOTA_EXCEEDED.send(resp);
+        return;
+      } else {
+        // The pool only mints for the default site.
+        var minted = pool == null || tenant != Challenge.DEFAULT_TENANT ? null : pool.take(passkeyReq.id());
+        Challenge challenge;
+        if (minted != null) {
+          challenge = minted.challenge();
+          if (nested) {
+            body = template.wrap(minted.pubKeyCredOptions());
+          } else {
+            pubKeyCredOptions = minted.pubKeyCredOptions();
+          }
+        } else if (nested) {
+          challenge = passkeyProvider.mintChallenge(tenant);
+          body = template.render(passkeyReq.id(), challenge);
+        } else {
+          var credentialCreationOptions = passkeyProvider.startCaptcha(passkeyReq.id(), tenant);
+          pubKeyCredOptions = credentialCreationOptions.toCredentialsCreateJson();
+          challenge = passkeyProvider.toChallenge(credentialCreationOptions, tenant);
+        }
+        if (!passkeyProvider.isSealed()) {
+          challengeStore.put(challenge);
+        }
+        if (outstanding != null) {
+          outstanding.add(client, instance, challenge);
+        }
+      }
 
     } catch (Exception ex) {
       LOGGER.log(Level.INFO, "Unable to create public key credential options", ex);
@@ -74,37 +301,114 @@ public class NoCaptchaService extends BaseService {
       return;
     }
 
-    var json = Utils.newJson()
-        .put(Constants.PUB_KEY_CRED_OPTS, pubKeyCredOptions);
+    if (affinity != null) {
+      resp.header(ROUTE_HEADER, affinity.route());
+    }
+    resp.header(ACCEPT_HEADER_NAME, ACCEPTED_MEDIA_TYPES);
 
     // TODO: Add policy headers
+    if (nested) {
+      // The template is already JSON, so skip the entity writer and send the bytes as they are.
+      resp.header(HeaderValues.CONTENT_TYPE_JSON);
+      resp.status(201).send(body);
+      return;
+    }
+
+    var json = Utils.newJson()
+        .put(Constants.PUB_KEY_CRED_OPTS, pubKeyCredOptions);
     resp.status(201).send(json);
   }
 
   private void passkeyCompleteHandler(ServerRequest req, ServerResponse resp) {
-    var reqOpt = decodeAs(req, resp, PasskeyCaptchaRequest.class);
-    if (reqOpt.isEmpty()) {
+    if (isRateLimited(remoteIp(req), resp)) {
+      return;
+    }
+
+    // Both bodies yield the same credential, CBOR only spares the base64url encoding of its binary fields.
+    var cbor = req.headers().value(HeaderNames.CONTENT_TYPE)
+        .filter(type -> type.regionMatches(true, 0, CBOR_MEDIA_TYPE, 0, CBOR_MEDIA_TYPE.length()))
+        .isPresent();
+
+    PasskeyCaptcha captcha;
+    try {
+      captcha = (cbor ? cborReader : jsonReader).read(req.content().inputStream());
+    } catch (IllegalArgumentException ex) {
+      sendInvalidError(resp, ex.getMessage());
+      return;
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, "Unable to read captcha", ex);
+      (cbor ? INVALID_CBOR : INVALID_JSON).send(resp);
+      return;
+    }
+
+    // Sealed challenges are recovered from the credential, stored ones are looked up by the id.
+    if (!passkeyProvider.isSealed() && StringUtils.isBlank(captcha.id())) {
+      ID_REQUIRED.send(resp);
+      return;
+    }
+    if (isForeign(captcha.id(), resp)) {
+      return;
+    }
+    // Checked before the challenge is taken, so that a request turned away leaves it to a later attempt.
+    var site = site(req, resp);
+    if (site == null) {
+      return;
+    }
+    if (quotas != null && !quotas.tryVerify(site.tenant())) {
+      VERIFY_QUOTA_EXCEEDED.send(resp);
       return;
     }
 
     try {
-      var pubKeyCredJsonFromServer = passkeyCaptchaMap.remove(reqOpt.get().id());
-      if (pubKeyCredJsonFromServer == null) {
-        sendInvalidError(resp, "Unable to recognize temporary passkey");
+      var credential = captcha.credential();
+      var challenge = passkeyProvider.isSealed()
+          ? passkeyProvider.unsealChallenge(credential)
+          : challengeStore.remove(captcha.id());
+      if (challenge == null) {
+        UNRECOGNIZED.send(resp);
+        return;
+      }
+      if (challenge.tenant() != site.tenant()) {
+        // Not this site's to use up, so the ceremony can still complete on its own site.
+        if (!passkeyProvider.isSealed()) {
+          challengeStore.put(challenge);
+        }
+        UNRECOGNIZED.send(resp);
         return;
       }
 
-      var registerResult = passkeyProvider.completeCaptcha(
-          reqOpt.get().credsAsString(),
-          pubKeyCredJsonFromServer
-      );
+      Result<RegistrationResult> registerResult;
+      try {
+        registerResult = scheduler == null
+            ? passkeyProvider.completeCaptcha(credential, challenge)
+            : scheduler.call(challenge.tenant(), () -> passkeyProvider.completeCaptcha(credential, challenge));
+      } catch (RejectedExecutionException ex) {
+        // Turned away before the attestation was looked at, so the ceremony can complete on a later attempt.
+        if (!passkeyProvider.isSealed()) {
+          challengeStore.put(challenge);
+        }
+        TOO_MANY_QUEUED.send(resp);
+        return;
+      }
+      if (outstanding != null) {
+        outstanding.forget(challenge.key());
+      }
 
       if (registerResult.isFailure()) {
         sendInvalidError(resp, registerResult.errorMessage());
         return;
       }
 
+      // Sealed challenges are not removed from anywhere, so guard against replaying them within their TTL.
+      if (passkeyProvider.isSealed() && !challengeStore.claim(challenge)) {
+        ALREADY_USED.send(resp);
+        return;
+      }
+
       var json = Utils.newJson();
+      if (tokens != null) {
+        json.put(Constants.TOKEN, tokens.issue(challenge));
+      }
       resp.status(202).send(json);
 
     } catch (Exception ex) {
@@ -112,4 +416,229 @@ public class NoCaptchaService extends BaseService {
       sendInternalError(resp);
     }
   }
+
+  /**
+   * Issues a puzzle instead of a passkey ceremony. Puzzles are always stored, even when passkey challenges are sealed,
+   * which is what makes each of them good for one answer.
+   */
+  private void startProofOfWork(int tenant, String remoteIp, ServerResponse resp) {
+    if (proofOfWork == null) {
+      POW_DISABLED.send(resp);
+      return;
+    }
+    if (quotas != null && !quotas.tryIssue(tenant)) {
+      ISSUE_QUOTA_EXCEEDED.send(resp);
+      return;
+    }
+
+    var puzzle = proofOfWork.mint(tenant, remoteIp);
+    puzzles.put(puzzle);
+    if (affinity != null) {
+      resp.header(ROUTE_HEADER, affinity.route());
+    }
+
+    var json = Utils.newJson();
+    json.putObject(Constants.POW)
+        .put("id", puzzle.key())
+        .put("challenge", StringUtils.base64UrlEncode(puzzle.challenge()))
+        .put("difficulty", ProofOfWork.difficulty(puzzle))
+        .put("algorithm", "SHA-256");
+    resp.status(201).send(json);
+  }
+
+  private void proofOfWorkCompleteHandler(ServerRequest req, ServerResponse resp) {
+    var remoteIp = remoteIp(req);
+    if (isRateLimited(remoteIp, resp)) {
+      return;
+    }
+    if (proofOfWork == null) {
+      POW_DISABLED.send(resp);
+      return;
+    }
+
+    var reqOpt = decodeAs(req, resp, ProofOfWorkRequest.class);
+    if (reqOpt.isEmpty()) {
+      return;
+    }
+    var answer = reqOpt.get();
+    if (StringUtils.isBlank(answer.id()) || answer.nonce() == null) {
+      POW_ANSWER_REQUIRED.send(resp);
+      return;
+    }
+    if (isMisdirected(answer.id(), resp)) {
+      return;
+    }
+    // Checked before the puzzle is taken, so that a request turned away leaves it to a later answer.
+    var site = site(req, resp);
+    if (site == null) {
+      return;
+    }
+    if (quotas != null && !quotas.tryVerify(site.tenant())) {
+      VERIFY_QUOTA_EXCEEDED.send(resp);
+      return;
+    }
+
+    // Removed before checking, so that a puzzle takes a single answer, right or wrong.
+    var puzzle = puzzles.remove(answer.id());
+    if (puzzle == null || !ProofOfWork.isPuzzle(puzzle)) {
+      UNRECOGNIZED_PUZZLE.send(resp);
+      return;
+    }
+    if (puzzle.tenant() != site.tenant()) {
+      // Not an answer for this site, so the puzzle stays good for its own.
+      puzzles.put(puzzle);
+      UNRECOGNIZED_PUZZLE.send(resp);
+      return;
+    }
+    if (!proofOfWork.verify(puzzle, answer.nonce(), remoteIp)) {
+      WRONG_ANSWER.send(resp);
+      return;
+    }
+
+    var json = Utils.newJson();
+    if (tokens != null) {
+      json.put(Constants.TOKEN, tokens.issue(puzzle));
+    }
+    resp.status(202).send(json);
+  }
+
+  private void siteVerifyHandler(ServerRequest req, ServerResponse resp) {
+    if (tokens == null) {
+      TOKENS_DISABLED.send(resp);
+      return;
+    }
+
+    var site = site(req, resp);
+    if (site == null) {
+      return;
+    }
+    var reqOpt = decodeAs(req, resp, SiteVerifyRequest.class);
+    if (reqOpt.isEmpty()) {
+      return;
+    }
+
+    sendVerification(resp, TokenVerification.class, tokens.verify(reqOpt.get().token(), site.tenant()));
+  }
+
+  private void siteVerifyBatchHandler(ServerRequest req, ServerResponse resp) {
+    if (tokens == null) {
+      TOKENS_DISABLED.send(resp);
+      return;
+    }
+
+    var site = site(req, resp);
+    if (site == null) {
+      return;
+    }
+    var reqOpt = decodeAs(req, resp, SiteVerifyBatchRequest.class);
+    if (reqOpt.isEmpty()) {
+      return;
+    }
+
+    var batch = reqOpt.get().tokens();
+    if (batch == null || batch.isEmpty()) {
+      TOKENS_REQUIRED.send(resp);
+      return;
+    }
+    if (batch.size() > tokens.maxBatchSize()) {
+      sendError(resp, "At most " + tokens.maxBatchSize() + " tokens can be checked at once.", ErrorCode.INVALID);
+      return;
+    }
+
+    sendVerification(resp, TokenVerification[].class, tokens.verifyAll(batch, site.tenant()));
+  }
+
+  private void keysHandler(ServerRequest req, ServerResponse resp) {
+    if (tokens == null) {
+      TOKENS_DISABLED.send(resp);
+      return;
+    }
+    if (tokens.jwks() == null) {
+      NO_PUBLIC_KEYS.send(resp);
+      return;
+    }
+
+    // Clients refresh on their own schedule and on unknown key ids, so a short cache lifetime is enough.
+    resp.header(HeaderValues.CONTENT_TYPE_JSON);
+    resp.header(KEYS_CACHE_CONTROL);
+    resp.status(200).send(tokens.jwks());
+  }
+
+  private <T> void sendVerification(ServerResponse resp, Class<T> type, T verification) {
+    byte[] body;
+    try {
+      body = Utils.writer(type).writeValueAsBytes(verification);
+    } catch (JsonProcessingException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to write token verification", ex);
+      sendInternalError(resp);
+      return;
+    }
+
+    resp.header(HeaderValues.CONTENT_TYPE_JSON);
+    resp.status(200).send(body);
+  }
+
+  /**
+   * Counts the request towards the heavy hitters, then turns it away, before its body is even read, if its client is
+   * over its rate.
+   */
+  private boolean isRateLimited(String remoteIp, ServerResponse resp) {
+    if (heavyHitters != null) {
+      heavyHitters.recordAddress(remoteIp);
+    }
+    if (rateLimiter == null || rateLimiter.tryAcquire(remoteIp)) {
+      return false;
+    }
+    resp.header(RETRY_AFTER);
+    RATE_LIMITED.send(resp);
+    return true;
+  }
+
+  /**
+   * Resolves the site the request names, the default one if it names none, or turns the request away if the site key
+   * is unknown. Challenges and tokens are only accepted for the site they were issued for, which keeps a ceremony
+   * started on one site from passing a CAPTCHA for another.
+   *
+   * @return the site or {@code null} if the response has been sent.
+   */
+  private Site site(ServerRequest req, ServerResponse resp) {
+    var site = passkeyProvider.sites().site(req.headers().value(SITE_HEADER_NAME).orElse(null));
+    if (site == null) {
+      UNKNOWN_SITE.send(resp);
+    }
+    return site;
+  }
+
+  /**
+   * Turns away a stored challenge issued by another node with a {@code 421} naming its route, so the client or the
+   * load balancer can retry against the right node instead of failing the ceremony.
+   */
+  private boolean isForeign(String id, ServerResponse resp) {
+    return !passkeyProvider.isSealed() && isMisdirected(id, resp);
+  }
+
+  /**
+   * Turns away a puzzle or stored challenge issued by another node, whether passkey challenges are sealed or not.
+   */
+  private boolean isMisdirected(String id, ServerResponse resp) {
+    if (affinity == null || StringUtils.isBlank(id)) {
+      return false;
+    }
+
+    byte[] handle;
+    try {
+      handle = Base64.getUrlDecoder().decode(id);
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+
+    var route = NodeAffinity.routeOf(handle);
+    if (route == null || affinity.isLocal(handle)) {
+      return false;
+    }
+
+    resp.header(ROUTE_HEADER, route);
+    MISDIRECTED.send(resp);
+    return true;
+  }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.service;
+
+import ai.singlr.api.Constants;
+import ai.singlr.api.auth.PasskeyProvider;
+import ai.singlr.api.challenge.Challenge;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Renders the {@code /start} response with the credential creation options as a nested JSON object, rather than as a
+ * JSON string the widget has to parse a second time.
+ *
+ * <p>Everything but the challenge, the user handle and the passkey name is the same for every ceremony, so the
+ * response is serialized once with markers in their place and cut into byte literals. Rendering only base64url
+ * encodes the two ids and copies the literals and values into a single array of the exact size.
+ */
+public final class StartResponseTemplate {
+
+  private static final String CHALLENGE_MARKER = "challengeMarker0";
+  private static final String HANDLE_MARKER = "userHandleMarker";
+  private static final String NAME_MARKER = "@@name@@";
+  private static final String DISPLAY_NAME_MARKER = "@@displayName@@";
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+  private enum Slot { CHALLENGE, HANDLE, NAME }
+
+  private final byte[][] literals;
+  private final Slot[] slots;
+  private final byte[] prefix;
+  private final byte[] suffix;
+
+  /**
+   * Cuts the template out of options serialized with markers in place of the per-request values.
+   *
+   * @param createJson the options as returned by {@code toCredentialsCreateJson()}, with the markers.
+   */
+  StartResponseTemplate(String createJson) {
+    this.prefix = ("{\"" + Constants.PUB_KEY_CRED_OPTS + "\":").getBytes(StandardCharsets.UTF_8);
+    this.suffix = "}".getBytes(StandardCharsets.UTF_8);
+
+    var json = new String(prefix, StandardCharsets.UTF_8) + createJson + new String(suffix, StandardCharsets.UTF_8);
+    List<byte[]> literals = new ArrayList<>();
+    List<Slot> slots = new ArrayList<>();
+    var from = 0;
+    while (true) {
+      var next = -1;
+      String marker = null;
+      Slot slot = null;
+      for (var candidate : new String[] {CHALLENGE_MARKER, HANDLE_MARKER, NAME_MARKER, DISPLAY_NAME_MARKER}) {
+        var index = json.indexOf(candidate, from);
+        if (index >= 0 && (next < 0 || index < next)) {
+          next = index;
+          marker = candidate;
+          slot = switch (candidate) {
+            case CHALLENGE_MARKER -> Slot.CHALLENGE;
+            case HANDLE_MARKER -> Slot.HANDLE;
+            default -> Slot.NAME;
+          };
+        }
+      }
+      if (next < 0) {
+        break;
+      }
+
+      literals.add(json.substring(from, next).getBytes(StandardCharsets.UTF_8));
+      slots.add(slot);
+      from = next + marker.length();
+    }
+    literals.add(json.substring(from).getBytes(StandardCharsets.UTF_8));
+
+    if (!slots.contains(Slot.CHALLENGE) || !slots.contains(Slot.HANDLE) || !slots.contains(Slot.NAME)) {
+      throw new IllegalStateException("Credential creation options don't contain every marker");
+    }
+
+    this.literals = literals.toArray(new byte[0][]);
+    this.slots = slots.toArray(new Slot[0]);
+  }
+
+  /**
+   * Creates the template of the options minted by the passkey provider.
+   *
+   * @param passkeyProvider mints the options.
+   * @return the template.
+   */
+  public static StartResponseTemplate create(PasskeyProvider passkeyProvider) {
+    return create(passkeyProvider, Challenge.DEFAULT_TENANT);
+  }
+
+  /**
+   * Creates the template of the options minted by the passkey provider for the site of a tenant.
+   *
+   * @param passkeyProvider mints the options.
+   * @param tenant the tenant of the site.
+   * @return the template.
+   */
+  public static StartResponseTemplate create(PasskeyProvider passkeyProvider, int tenant) {
+    var decoder = Base64.getUrlDecoder();
+    var markers = new Challenge(decoder.decode(CHALLENGE_MARKER), decoder.decode(HANDLE_MARKER), 0, tenant);
+    try {
+      // The display name gets its own marker so the template also holds if it ever differs from the name.
+      var options = passkeyProvider.reissueCaptcha(NAME_MARKER, markers).toCredentialsCreateJson();
+      return new StartResponseTemplate(options.replaceFirst(
+          "(\"displayName\"\\s*:\\s*\")" + NAME_MARKER, "$1" + DISPLAY_NAME_MARKER));
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unable to serialize credential creation options", ex);
+    }
+  }
+
+  /**
+   * Renders the response for a challenge.
+   *
+   * @param name the name shown for the disposable passkey.
+   * @param challenge the challenge to complete.
+   * @return the UTF-8 encoded JSON response.
+   */
+  public byte[] render(String name, Challenge challenge) {
+    var encodedChallenge = ENCODER.encode(challenge.challenge());
+    var encodedHandle = ENCODER.encode(challenge.userHandle());
+    var encodedName = jsonString(name);
+
+    var size = 0;
+    for (var literal : literals) {
+      size += literal.length;
+    }
+    for (var slot : slots) {
+      size += value(slot, encodedChallenge, encodedHandle, encodedName).length;
+    }
+
+    var response = new byte[size];
+    var offset = 0;
+    for (var i = 0; i < slots.length; i++) {
+      System.arraycopy(literals[i], 0, response, offset, literals[i].length);
+      offset += literals[i].length;
+      var value = value(slots[i], encodedChallenge, encodedHandle, encodedName);
+      System.arraycopy(value, 0, response, offset, value.length);
+      offset += value.length;
+    }
+    var last = literals[literals.length - 1];
+    System.arraycopy(last, 0, response, offset, last.length);
+    return response;
+  }
+
+  /**
+   * Wraps options that are already serialized, e.g. by the challenge pool, into the response.
+   *
+   * @param createJson the options as returned by {@code toCredentialsCreateJson()}.
+   * @return the UTF-8 encoded JSON response.
+   */
+  public byte[] wrap(String createJson) {
+    var options = createJson.getBytes(StandardCharsets.UTF_8);
+    var response = new byte[prefix.length + options.length + suffix.length];
+    System.arraycopy(prefix, 0, response, 0, prefix.length);
+    System.arraycopy(options, 0, response, prefix.length, options.length);
+    System.arraycopy(suffix, 0, response, prefix.length + options.length, suffix.length);
+    return response;
+  }
+
+  private static byte[] value(Slot slot, byte[] challenge, byte[] handle, byte[] name) {
+    return switch (slot) {
+      case CHALLENGE -> challenge;
+      case HANDLE -> handle;
+      case NAME -> name;
+    };
+  }
+
+  private static byte[] jsonString(String value) {
+    StringBuilder escaped = null;
+    for (var i = 0; i < value.length(); i++) {
+      var c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') {
+        if (escaped != null) {
+          escaped.append(c);
+        }
+        continue;
+      }
+
+      if (escaped == null) {
+        escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+      }
+      switch (c) {
+        case '"' -> escaped.append("\\\"");
+        case '\\' -> escaped.append("\\\\");
+        case '\n' -> escaped.append("\\n");
+        case '\r' -> escaped.append("\\r");
+        case '\t' -> escaped.append("\\t");
+        default -> escaped.append(String.format("\\u%04x", (int) c));
+      }
+    }
+    return (escaped == null ? value : escaped.toString()).getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a text blocklist, one CIDR range or address per line with {@code #} comments, into the file
+ * {@link IpBlocklist} maps.
+ *
+ * <pre>
+ * java -cp api.jar ai.singlr.api.traffic.BlocklistCompiler blocklist.txt blocklist.bin
+ * </pre>
+ *
+ * <p>The file is written next to the target and moved over it, so a running service picks up the new version without
+ * ever reading a partly written one.
+ */
+public final class BlocklistCompiler {
+
+  private BlocklistCompiler() {
+  }
+
+  /**
+   * Compiles the blocklist given as first argument into the file given as second argument.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: BlocklistCompiler <blocklist.txt> <blocklist.bin>");
+      System.exit(2);
+    }
+
+    var target = Path.of(args[1]).toAbsolutePath();
+    var ranges = compile(Path.of(args[0]), target);
+    System.out.println("Compiled " + ranges + " ranges into " + target);
+  }
+
+  /**
+   * Compiles a text blocklist, replacing the target atomically.
+   *
+   * @param source the text blocklist.
+   * @param target the file to write.
+   * @return the number of ranges written, after dropping the ones covered by others.
+   * @throws IOException if a file cannot be read or written.
+   */
+  public static int compile(Path source, Path target) throws IOException {
+    List<String> cidrs = new ArrayList<>();
+    try (var lines = Files.lines(source)) {
+      lines.forEach(line -> {
+        var comment = line.indexOf('#');
+        var cidr = (comment < 0 ? line : line.substring(0, comment)).trim();
+        if (!cidr.isEmpty()) {
+          cidrs.add(cidr);
+        }
+      });
+    }
+
+    var staging = target.resolveSibling(target.getFileName() + ".tmp");
+    var ranges = PrefixTrie.write(cidrs, staging);
+    Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return ranges;
+  }
+}
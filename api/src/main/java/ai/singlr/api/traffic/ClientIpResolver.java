@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import io.helidon.config.Config;
+import io.helidon.http.HeaderName;
+import io.helidon.http.HeaderNames;
+import io.helidon.webserver.http.ServerRequest;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Finds the address of the client behind a request, the key rate limiting, blocklists and heavy hitters count by.
+ *
+ * <p>Only the peer of the connection cannot be spoofed. When it is one of the trusted proxies, the forwarding header
+ * is walked from the right, each proxy having appended the address it received the request from, and the first
+ * address that is not a trusted proxy is the client. Anything further left was written by the client itself and is
+ * ignored, as is the header on requests that do not come from a trusted proxy. When an entry cannot be parsed, the
+ * last address reached is used.
+ *
+ * <p>Requests on a keep-alive connection share its peer and, unless a proxy multiplexes clients over it, its header,
+ * so the result is kept per connection in a fixed table and reused while both are unchanged.
+ */
+public final class ClientIpResolver {
+
+  private static final String DEFAULT_HEADER = "X-Forwarded-For";
+  private static final int DEFAULT_CONNECTIONS = 4096;
+  private static final long IPV4_MAPPED = 0xffff_0000_0000L;
+
+  private record Entry(String server, String socket, SocketAddress peer, boolean trusted, List<String> forwarded,
+      InetAddress address, String ip) {
+  }
+
+  private final PrefixTrie trustedProxies;
+  private final HeaderName header;
+  private final AtomicReferenceArray<Entry> connections;
+  private final int mask;
+
+  /**
+   * Creates the resolver.
+   *
+   * @param config the {@code client-ip} configuration node.
+   */
+  public ClientIpResolver(Config config) {
+    this(
+        config.get("trusted-proxies").asList(String.class).orElse(List.of()),
+        config.get("header").asString().orElse(DEFAULT_HEADER),
+        config.get("connections").asInt().orElse(DEFAULT_CONNECTIONS));
+  }
+
+  ClientIpResolver(List<String> trustedProxies, String header, int connections) {
+    if (connections < 1 || Integer.bitCount(connections) != 1) {
+      throw new IllegalArgumentException("'connections' must be a power of two");
+    }
+    this.trustedProxies = PrefixTrie.of(trustedProxies);
+    this.header = HeaderNames.create(header);
+    this.connections = new AtomicReferenceArray<>(connections);
+    this.mask = connections - 1;
+  }
+
+  /**
+   * Returns the address of the client behind a request.
+   *
+   * @param req the request.
+   */
+  public InetAddress resolve(ServerRequest req) {
+    return entry(req).address;
+  }
+
+  /**
+   * Returns the address of the client behind a request, in its canonical text form.
+   *
+   * @param req the request.
+   */
+  public String remoteIp(ServerRequest req) {
+    return entry(req).ip;
+  }
+
+  private Entry entry(ServerRequest req) {
+    var server = req.serverSocketId();
+    var socket = req.socketId();
+    var peer = req.remotePeer().address();
+    var slot = slot(server, socket);
+    var cached = connections.get(slot);
+    var known = cached != null && cached.socket.equals(socket) && cached.server.equals(server)
+        && cached.peer.equals(peer);
+
+    // Connections are TCP, so their peer is always an address.
+    var peerAddress = ((InetSocketAddress) peer).getAddress();
+    var trusted = known ? cached.trusted : isTrusted(peerAddress);
+    var forwarded = trusted ? req.headers().all(header, List::of) : List.<String>of();
+    if (known && cached.forwarded.equals(forwarded)) {
+      return cached;
+    }
+
+    var address = trusted ? walk(peerAddress, forwarded) : peerAddress;
+    var entry = new Entry(server, socket, peer, trusted, forwarded, address, address.getHostAddress());
+    connections.set(slot, entry);
+    return entry;
+  }
+
+  /**
+   * Walks a forwarding header from the right, starting at the peer of the connection.
+   *
+   * @param peer the peer of the connection.
+   * @param forwarded the values of the header, in the order they were received.
+   * @return the first address that is not a trusted proxy, or the last one that could be parsed.
+   */
+  InetAddress walk(InetAddress peer, List<String> forwarded) {
+    var key = key(peer);
+    if (!trustedProxies.contains(key[0], key[1])) {
+      return peer;
+    }
+
+    var hop = new long[2];
+    for (var i = forwarded.size() - 1; i >= 0; i--) {
+      var value = forwarded.get(i);
+      var end = value.length();
+      while (end > 0) {
+        var comma = value.lastIndexOf(',', end - 1);
+        var entry = value.substring(comma + 1, end).trim();
+        end = comma;
+        if (entry.isEmpty()) {
+          continue;
+        }
+        if (!parseHop(entry, hop)) {
+          return address(key);
+        }
+        key[0] = hop[0];
+        key[1] = hop[1];
+        if (!trustedProxies.contains(key[0], key[1])) {
+          return address(key);
+        }
+      }
+    }
+    return address(key);
+  }
+
+  /**
+   * Parses an entry of a forwarding header, which some proxies write with the port of the client.
+   *
+   * @param hop an address such as {@code 192.0.2.1}, {@code 192.0.2.1:443}, {@code 2001:db8::1} or
+   *     {@code [2001:db8::1]:443}.
+   * @param key receives the address, as {@link PrefixTrie#parse(String, long[])} does.
+   * @return {@code false} if the entry is not an address, such as {@code unknown}.
+   */
+  static boolean parseHop(String hop, long[] key) {
+    if (hop.startsWith("[")) {
+      var close = hop.indexOf(']');
+      return close > 0 && PrefixTrie.parse(hop.substring(1, close), key);
+    }
+    var colon = hop.indexOf(':');
+    if (colon > 0 && colon == hop.lastIndexOf(':')) {
+      return PrefixTrie.parse(hop.substring(0, colon), key);
+    }
+    return PrefixTrie.parse(hop, key);
+  }
+
+  private boolean isTrusted(InetAddress address) {
+    var key = key(address);
+    return trustedProxies.contains(key[0], key[1]);
+  }
+
+  private int slot(String server, String socket) {
+    var hash = 31 * server.hashCode() + socket.hashCode();
+    return (hash ^ hash >>> 16) & mask;
+  }
+
+  private static long[] key(InetAddress address) {
+    var bytes = ByteBuffer.wrap(address.getAddress());
+    return bytes.capacity() == 4
+        ? new long[] {0, IPV4_MAPPED | Integer.toUnsignedLong(bytes.getInt(0))}
+        : new long[] {bytes.getLong(0), bytes.getLong(8)};
+  }
+
+  private static InetAddress address(long[] key) {
+    var bytes = ByteBuffer.allocate(16).putLong(key[0]).putLong(key[1]).array();
+    try {
+      // Sixteen bytes are always an address, IPv4-mapped ones coming back as IPv4 addresses.
+      return InetAddress.getByAddress(bytes);
+    } catch (UnknownHostException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
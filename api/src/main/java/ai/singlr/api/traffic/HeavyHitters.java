@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import io.helidon.config.Config;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the addresses, address prefixes and widget instances sending the most requests, over the last minute, five
+ * minutes and hour.
+ *
+ * <p>Each of them keeps a ring of one {@link SpaceSaving} summary per minute over the last hour, so memory is fixed by
+ * {@code capacity} however many keys are seen. A summary is split in shards by the hash of the key, each behind its own
+ * lock, so concurrent requests rarely wait on each other. A view of the last minutes merges their summaries, with the
+ * minute that only partly overlaps the view weighted by the overlap. Counts are upper bounds: the error of a key is how
+ * much of its count may have been inherited from keys it evicted, or missed while it was not tracked.
+ */
+public final class HeavyHitters {
+
+  private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final int SHARDS = 8;
+  private static final int DEFAULT_CAPACITY = 256;
+
+  /**
+   * The periods the heavy hitters are reported over.
+   */
+  public enum Window {
+    ONE_MINUTE("1m", 1),
+    FIVE_MINUTES("5m", 5),
+    ONE_HOUR("1h", 60);
+
+    private final String label;
+    private final int minutes;
+
+    Window(String label, int minutes) {
+      this.label = label;
+      this.minutes = minutes;
+    }
+
+    /**
+     * Returns the window of a label, {@code 1m}, {@code 5m} or {@code 1h}.
+     *
+     * @param label the label.
+     * @return the window or {@code null} if the label is unknown.
+     */
+    public static Window of(String label) {
+      for (var window : values()) {
+        if (window.label.equals(label)) {
+          return window;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns the label of the window.
+     */
+    public String label() {
+      return label;
+    }
+  }
+
+  /**
+   * A key among the heaviest.
+   *
+   * @param key the address, prefix or instance.
+   * @param count the number of requests seen, at most {@code error} too many.
+   * @param error how much the count may be overestimated by.
+   */
+  public record Hitter(String key, long count, long error) {
+  }
+
+  /**
+   * The heaviest keys of a window, heaviest first.
+   *
+   * @param window the label of the window.
+   * @param addresses the client addresses.
+   * @param prefixes the /24 networks of IPv4 addresses and /48 networks of IPv6 addresses.
+   * @param instances the widget instances.
+   */
+  public record Report(String window, List<Hitter> addresses, List<Hitter> prefixes, List<Hitter> instances) {
+  }
+
+  private final int capacity;
+  private final Ring addresses;
+  private final Ring prefixes;
+  private final Ring instances;
+  private final LongSupplier clock;
+
+  /**
+   * Creates the tracker.
+   *
+   * @param config the {@code heavy-hitters} configuration node.
+   */
+  public HeavyHitters(Config config) {
+    this(config.get("capacity").asInt().orElse(DEFAULT_CAPACITY), System::currentTimeMillis);
+  }
+
+  HeavyHitters(int capacity, LongSupplier clock) {
+    if (capacity < SHARDS) {
+      throw new IllegalArgumentException("'capacity' must be at least " + SHARDS);
+    }
+    this.capacity = capacity;
+    this.addresses = new Ring(capacity);
+    this.prefixes = new Ring(capacity);
+    this.instances = new Ring(capacity);
+    this.clock = clock;
+  }
+
+  /**
+   * Counts a request from a client address.
+   *
+   * @param remoteIp the address of the client.
+   */
+  public void recordAddress(String remoteIp) {
+    var now = clock.getAsLong();
+    addresses.add(remoteIp, now);
+    prefixes.add(prefix(remoteIp), now);
+  }
+
+  /**
+   * Counts a request from a widget instance.
+   *
+   * @param instance the instance id the widget sent, ignored if {@code null}.
+   */
+  public void recordInstance(String instance) {
+    if (instance != null) {
+      instances.add(instance, clock.getAsLong());
+    }
+  }
+
+  /**
+   * Returns the heaviest keys of a window.
+   *
+   * @param window the period to report over.
+   * @param limit the most keys to report of each kind, at most the capacity.
+   * @return the report.
+   */
+  public Report report(Window window, int limit) {
+    var now = clock.getAsLong();
+    var top = Math.max(0, Math.min(limit, capacity));
+    return new Report(
+        window.label(),
+        addresses.top(window.minutes, now, top),
+        prefixes.top(window.minutes, now, top),
+        instances.top(window.minutes, now, top));
+  }
+
+  /**
+   * Returns the network of an address: the /24 of an IPv4 address and the /48 of an IPv6 one, or the value itself if
+   * it is not an address.
+   */
+  public static String prefix(String address) {
+    if (address.indexOf(':') < 0) {
+      var dot = address.lastIndexOf('.');
+      return dot < 0 ? address : address.substring(0, dot) + ".0/24";
+    }
+
+    var groups = new String[8];
+    Arrays.fill(groups, "0");
+    var compressed = address.indexOf("::");
+    var head = compressed < 0 ? address : address.substring(0, compressed);
+    var headGroups = head.isEmpty() ? new String[0] : head.split(":");
+    if (headGroups.length > 8) {
+      return address;
+    }
+    System.arraycopy(headGroups, 0, groups, 0, headGroups.length);
+    if (compressed >= 0) {
+      var tail = address.substring(compressed + 2);
+      var tailGroups = tail.isEmpty() ? new String[0] : tail.split(":");
+      // An embedded IPv4 address takes two groups, which never reach into the first three.
+      var tailLength = tailGroups.length + (tail.indexOf('.') >= 0 ? 1 : 0);
+      if (headGroups.length + tailLength > 7) {
+        return address;
+      }
+      for (var i = 0; i < tailGroups.length && 8 - tailLength + i < 3; i++) {
+        groups[8 - tailLength + i] = tailGroups[i];
+      }
+    }
+
+    var prefix = new StringBuilder();
+    for (var i = 0; i < 3; i++) {
+      try {
+        prefix.append(Integer.toHexString(Integer.parseInt(groups[i], 16))).append(':');
+      } catch (NumberFormatException ex) {
+        return address;
+      }
+    }
+    return prefix.append(":/48").toString();
+  }
+
+  /**
+   * One summary per minute of the last hour, plus the current minute.
+   */
+  private static final class Ring {
+
+    private final Minute[] minutes = new Minute[Window.ONE_HOUR.minutes + 1];
+
+    private Ring(int capacity) {
+      for (var i = 0; i < minutes.length; i++) {
+        minutes[i] = new Minute(capacity / SHARDS);
+      }
+    }
+
+    private void add(String key, long now) {
+      var minute = Math.floorDiv(now, MINUTE_MILLIS);
+      var slot = minutes[(int) Math.floorMod(minute, minutes.length)];
+      if (slot.minute != minute) {
+        slot.reset(minute);
+      }
+      var shard = slot.shards[shard(key)];
+      synchronized (shard) {
+        shard.add(key);
+      }
+    }
+
+    private List<Hitter> top(int span, long now, int limit) {
+      var current = Math.floorDiv(now, MINUTE_MILLIS);
+      var overlap = 1 - (double) Math.floorMod(now, MINUTE_MILLIS) / MINUTE_MILLIS;
+
+      // The floor of a shard is the most a key it does not track may have been seen in that minute.
+      var floors = new double[SHARDS];
+      Map<String, double[]> merged = new HashMap<>();
+      for (var age = 0; age <= span; age++) {
+        var slot = minutes[(int) Math.floorMod(current - age, minutes.length)];
+        if (slot.minute != current - age) {
+          continue;
+        }
+        var weight = age < span ? 1 : overlap;
+        for (var s = 0; s < SHARDS; s++) {
+          var shard = slot.shards[s];
+          synchronized (shard) {
+            var floor = shard.floor() * weight;
+            floors[s] += floor;
+            shard.forEach((key, count, error) -> {
+              // Count, error, and the floors of the minutes the key was tracked in.
+              var totals = merged.computeIfAbsent(key, k -> new double[3]);
+              totals[0] += count * weight;
+              totals[1] += error * weight;
+              totals[2] += floor;
+            });
+          }
+        }
+      }
+
+      List<Hitter> hitters = new ArrayList<>(merged.size());
+      merged.forEach((key, totals) -> {
+        var missed = floors[shard(key)] - totals[2];
+        hitters.add(new Hitter(key, Math.round(totals[0] + missed), Math.round(totals[1] + missed)));
+      });
+      hitters.sort(Comparator.comparingLong(Hitter::count).reversed());
+      return List.copyOf(hitters.subList(0, Math.min(limit, hitters.size())));
+    }
+
+    private static int shard(String key) {
+      var hash = key.hashCode();
+      return (hash ^ hash >>> 16) & (SHARDS - 1);
+    }
+  }
+
+  private static final class Minute {
+
+    private final SpaceSaving[] shards = new SpaceSaving[SHARDS];
+    private volatile long minute = Long.MIN_VALUE;
+
+    private Minute(int capacity) {
+      for (var i = 0; i < SHARDS; i++) {
+        shards[i] = new SpaceSaving(capacity);
+      }
+    }
+
+    private synchronized void reset(long minute) {
+      if (this.minute >= minute) {
+        return;
+      }
+      for (var shard : shards) {
+        synchronized (shard) {
+          shard.clear();
+        }
+      }
+      this.minute = minute;
+    }
+  }
+}
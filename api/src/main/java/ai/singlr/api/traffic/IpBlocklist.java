@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import io.helidon.config.Config;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Turns away clients from blocked networks, such as hosting providers and known botnets, before any challenge is
+ * minted for them.
+ *
+ * <p>The networks are read from a {@link PrefixTrie} file written by {@link BlocklistCompiler}, which is mapped rather
+ * than loaded. A virtual thread checks the file every few seconds and, once it changed, maps the new version and swaps
+ * it in with a single volatile write, so lookups never wait. Replace the file by moving the new version over it: the
+ * old mapping keeps reading the old file until the last lookup on it is done, while overwriting the file in place
+ * would change it under that mapping.
+ */
+public final class IpBlocklist implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(IpBlocklist.class.getName());
+
+  private static final long DEFAULT_RELOAD_SECONDS = 30;
+
+  /**
+   * Point-in-time view of the blocklist.
+   *
+   * @param path the file the networks are read from.
+   * @param ranges the number of networks.
+   * @param bytes the size of the mapped file.
+   * @param loadedAt when the file in use was mapped, or {@code null} if none could be.
+   * @param lookups the number of addresses checked.
+   * @param blocked the number of addresses found in a blocked network.
+   */
+  public record Stats(String path, int ranges, long bytes, Instant loadedAt, long lookups, long blocked) {
+  }
+
+  private record Version(PrefixTrie trie, long modified, long size, Instant loadedAt) {
+  }
+
+  private final Path path;
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder blocked = new LongAdder();
+  private final ScheduledExecutorService watcher;
+
+  private volatile Version current;
+
+  /**
+   * Maps the blocklist and starts watching it for new versions.
+   *
+   * @param config the {@code blocklist} configuration node.
+   */
+  public IpBlocklist(Config config) {
+    this(path(config), config.get("reload-seconds").asLong().orElse(DEFAULT_RELOAD_SECONDS));
+  }
+
+  IpBlocklist(Path path, long reloadSeconds) {
+    this.path = path;
+    // A missing or broken file leaves nothing blocked rather than failing the start, and is picked up once fixed.
+    reload();
+    if (reloadSeconds > 0) {
+      watcher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("blocklist-watcher").factory());
+      watcher.scheduleWithFixedDelay(this::watch, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+    } else {
+      watcher = null;
+    }
+  }
+
+  /**
+   * Returns {@code true} if an address lies in a blocked network.
+   *
+   * @param remoteIp the address of the client.
+   */
+  public boolean isBlocked(String remoteIp) {
+    lookups.increment();
+    var version = current;
+    if (version != null && version.trie.contains(remoteIp)) {
+      blocked.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns a point-in-time view of the blocklist.
+   */
+  public Stats stats() {
+    var version = current;
+    return new Stats(
+        path.toString(),
+        version == null ? 0 : version.trie.ranges(),
+        version == null ? 0 : version.trie.bytes(),
+        version == null ? null : version.loadedAt,
+        lookups.sum(),
+        blocked.sum());
+  }
+
+  @Override
+  public void close() {
+    if (watcher != null) {
+      watcher.shutdownNow();
+    }
+  }
+
+  /**
+   * Maps the file if it changed since it was last mapped.
+   *
+   * @return {@code true} if a new version was swapped in.
+   */
+  boolean reload() {
+    try {
+      var modified = Files.getLastModifiedTime(path).toMillis();
+      var size = Files.size(path);
+      var version = current;
+      if (version != null && version.modified == modified && version.size == size) {
+        return false;
+      }
+
+      var trie = PrefixTrie.map(path);
+      current = new Version(trie, modified, size, Instant.now());
+      LOGGER.info("🚫 Loaded " + trie.ranges() + " blocked networks from " + path);
+      return true;
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Unable to load the blocklist from " + path, ex);
+      return false;
+    }
+  }
+
+  private void watch() {
+    try {
+      reload();
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to reload the blocklist", ex);
+    }
+  }
+
+  private static Path path(Config config) {
+    if (config.get("path").exists()) {
+      return Path.of(config.get("path").asString().get());
+    }
+    throw new IllegalArgumentException("'path' must be specified");
+  }
+}
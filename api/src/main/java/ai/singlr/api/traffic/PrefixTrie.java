@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A read-only set of CIDR ranges, kept as a path-compressed binary trie in a memory-mapped file, so that millions of
+ * ranges take no heap and are shared with the page cache. Short lists, such as trusted proxies, are built on the heap
+ * in the same layout.
+ *
+ * <p>Keys are 128 bits, IPv4 addresses being mapped into {@code ::ffff:0:0/96}. Ranges covered by a wider range are
+ * dropped when the file is written, so every leaf is a range and every inner node has two children: a lookup compares
+ * the bits a node skips, then follows the next bit of the address, and stops at the first leaf. The file starts with
+ * a header of four ints, magic, version, node count and range count, followed by 32-byte nodes in pre-order: the
+ * prefix in two longs, the prefix length with a flag for leaves, and the indexes of the two children.
+ */
+public final class PrefixTrie {
+
+  static final int MAGIC = 0x4e43424c;
+  static final int VERSION = 1;
+
+  private static final int HEADER_BYTES = 16;
+  private static final int NODE_BYTES = 32;
+  private static final int LEAF = 0x100;
+  private static final int LENGTH_MASK = 0xff;
+  private static final long IPV4_MAPPED = 0xffff_0000_0000L;
+
+  private final ByteBuffer buffer;
+  private final int nodes;
+  private final int ranges;
+
+  private PrefixTrie(ByteBuffer buffer, int nodes, int ranges) {
+    this.buffer = buffer;
+    this.nodes = nodes;
+    this.ranges = ranges;
+  }
+
+  /**
+   * Maps a file written by {@link #write(List, Path)}, checking that every node only points at nodes after it.
+   *
+   * @param path the file.
+   * @return the trie, reading from the mapped file.
+   * @throws IOException if the file cannot be read or is not a valid trie.
+   */
+  public static PrefixTrie map(Path path) throws IOException {
+    ByteBuffer buffer;
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var size = channel.size();
+      if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+        throw new IOException("Invalid blocklist size: " + size);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("Not a blocklist of version " + VERSION + ": " + path);
+    }
+    var nodes = buffer.getInt(8);
+    var ranges = buffer.getInt(12);
+    if (nodes < 0 || (long) HEADER_BYTES + (long) nodes * NODE_BYTES != buffer.capacity()
+        || nodes != Math.max(0, 2 * ranges - 1)) {
+      throw new IOException("Truncated blocklist: " + path);
+    }
+    // Lookups then always move forward and end, whatever the file holds.
+    for (var node = 0; node < nodes; node++) {
+      var offset = HEADER_BYTES + node * NODE_BYTES;
+      var meta = buffer.getInt(offset + 16);
+      if ((meta & LEAF) == 0) {
+        var left = buffer.getInt(offset + 20);
+        var right = buffer.getInt(offset + 24);
+        if (left <= node || right <= node || left >= nodes || right >= nodes || (meta & LENGTH_MASK) >= 128) {
+          throw new IOException("Corrupt blocklist node " + node + ": " + path);
+        }
+      } else if ((meta & LENGTH_MASK) > 128) {
+        throw new IOException("Corrupt blocklist node " + node + ": " + path);
+      }
+    }
+    return new PrefixTrie(buffer, nodes, ranges);
+  }
+
+  /**
+   * Returns {@code true} if an address lies in one of the ranges.
+   *
+   * @param address an IPv4 or IPv6 address literal.
+   * @return {@code false} if it does not, or if it is not an address.
+   */
+  public boolean contains(String address) {
+    var v4 = parseIpv4(address, 0, address.length());
+    if (v4 >= 0) {
+      return contains(0, IPV4_MAPPED | v4);
+    }
+    var key = new long[2];
+    return parse(address, key) && contains(key[0], key[1]);
+  }
+
+  /**
+   * Returns {@code true} if an address lies in one of the ranges.
+   *
+   * @param hi the first 64 bits of the address, IPv4 addresses being mapped into {@code ::ffff:0:0/96}.
+   * @param lo the last 64 bits of the address.
+   */
+  public boolean contains(long hi, long lo) {
+    if (nodes == 0) {
+      return false;
+    }
+    var offset = HEADER_BYTES;
+    while (true) {
+      var meta = buffer.getInt(offset + 16);
+      var length = meta & LENGTH_MASK;
+      if (!matches(buffer.getLong(offset), buffer.getLong(offset + 8), length, hi, lo)) {
+        return false;
+      }
+      if ((meta & LEAF) != 0) {
+        return true;
+      }
+      var bit = length < 64 ? (hi >>> (63 - length)) & 1 : (lo >>> (127 - length)) & 1;
+      offset = HEADER_BYTES + buffer.getInt(offset + (bit == 0 ? 20 : 24)) * NODE_BYTES;
+    }
+  }
+
+  /**
+   * Returns the number of ranges, after dropping the ones covered by others.
+   */
+  public int ranges() {
+    return ranges;
+  }
+
+  /**
+   * Returns the number of nodes.
+   */
+  public int nodes() {
+    return nodes;
+  }
+
+  /**
+   * Returns the size of the mapped file.
+   */
+  public long bytes() {
+    return buffer.capacity();
+  }
+
+  /**
+   * Builds a trie of CIDR ranges on the heap, for lists small enough not to need a file.
+   *
+   * @param cidrs ranges such as {@code 192.0.2.0/24} or {@code 2001:db8::/32}; a bare address is a range of one.
+   * @return the trie.
+   * @throws IllegalArgumentException if a range is invalid.
+   */
+  public static PrefixTrie of(List<String> cidrs) {
+    var buffer = build(cidrs);
+    return new PrefixTrie(buffer, buffer.getInt(8), buffer.getInt(12));
+  }
+
+  /**
+   * Writes a trie of CIDR ranges to a file, replacing it.
+   *
+   * @param cidrs ranges such as {@code 192.0.2.0/24} or {@code 2001:db8::/32}; a bare address is a range of one.
+   * @param path the file to write.
+   * @return the number of ranges written, after dropping the ones covered by others.
+   * @throws IllegalArgumentException if a range is invalid.
+   * @throws IOException if the file cannot be written.
+   */
+  public static int write(List<String> cidrs, Path path) throws IOException {
+    var buffer = build(cidrs);
+    try (OutputStream out = Files.newOutputStream(path)) {
+      out.write(buffer.array());
+    }
+    return buffer.getInt(12);
+  }
+
+  /**
+   * Parses an IPv4 or IPv6 address literal, without ever resolving a name.
+   *
+   * @param address the literal, IPv6 ones may carry a zone after {@code %}.
+   * @param key receives the first and the last 64 bits of the address, IPv4 ones mapped into {@code ::ffff:0:0/96}.
+   * @return {@code false} if the value is not an address.
+   */
+  static boolean parse(String address, long[] key) {
+    var v4 = parseIpv4(address, 0, address.length());
+    if (v4 >= 0) {
+      key[0] = 0;
+      key[1] = IPV4_MAPPED | v4;
+      return true;
+    }
+
+    var end = address.indexOf('%');
+    if (end < 0) {
+      end = address.length();
+    }
+    var groups = new int[8];
+    var count = 0;
+    var gap = -1;
+    var i = 0;
+    if (address.startsWith("::")) {
+      gap = 0;
+      i = 2;
+    }
+    while (i < end) {
+      var next = address.indexOf(':', i);
+      if (next < 0 || next > end) {
+        next = end;
+      }
+      if (next == end && address.indexOf('.', i) >= 0 && address.indexOf('.', i) < end) {
+        // An IPv4 address in the last two groups.
+        var embedded = parseIpv4(address, i, end);
+        if (embedded < 0 || count > 6) {
+          return false;
+        }
+        groups[count++] = (int) (embedded >>> 16);
+        groups[count++] = (int) (embedded & 0xffff);
+        i = end;
+        break;
+      }
+      if (next == i || next - i > 4 || count == 8) {
+        return false;
+      }
+      var group = 0;
+      for (var j = i; j < next; j++) {
+        var digit = Character.digit(address.charAt(j), 16);
+        if (digit < 0) {
+          return false;
+        }
+        group = group << 4 | digit;
+      }
+      groups[count++] = group;
+      i = next + 1;
+      if (next < end - 1 && address.charAt(i) == ':') {
+        if (gap >= 0) {
+          return false;
+        }
+        gap = count;
+        i++;
+      } else if (next == end - 1) {
+        // A trailing single colon.
+        return false;
+      }
+    }
+
+    if (gap < 0 ? count != 8 : count > 7) {
+      return false;
+    }
+    if (gap >= 0) {
+      var missing = 8 - count;
+      System.arraycopy(groups, gap, groups, gap + missing, count - gap);
+      Arrays.fill(groups, gap, gap + missing, 0);
+    }
+    long hi = 0;
+    long lo = 0;
+    for (var g = 0; g < 4; g++) {
+      hi = hi << 16 | groups[g];
+      lo = lo << 16 | groups[g + 4];
+    }
+    key[0] = hi;
+    key[1] = lo;
+    return true;
+  }
+
+  /**
+   * Parses a CIDR range into its first 64 bits, its last 64 bits and its prefix length, host bits cleared.
+   */
+  static long[] parseCidr(String cidr) {
+    var value = cidr.trim();
+    var slash = value.indexOf('/');
+    var address = slash < 0 ? value : value.substring(0, slash);
+    var key = new long[2];
+    if (!parse(address, key)) {
+      throw new IllegalArgumentException("Invalid address: " + cidr);
+    }
+
+    var v4 = address.indexOf(':') < 0;
+    int length;
+    try {
+      length = slash < 0 ? (v4 ? 32 : 128) : Integer.parseInt(value.substring(slash + 1));
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+    }
+    if (length < 0 || length > (v4 ? 32 : 128)) {
+      throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+    }
+    if (v4) {
+      length += 96;
+    }
+    return new long[] {key[0] & mask(length), key[1] & mask(length - 64), length};
+  }
+
+  private static ByteBuffer build(List<String> cidrs) {
+    List<long[]> parsed = new ArrayList<>(cidrs.size());
+    for (var cidr : cidrs) {
+      parsed.add(parseCidr(cidr));
+    }
+    parsed.sort(Comparator.<long[]>comparingLong(range -> range[0] ^ Long.MIN_VALUE)
+        .thenComparingLong(range -> range[1] ^ Long.MIN_VALUE)
+        .thenComparingLong(range -> range[2]));
+
+    // Sorted by first address, a range covered by another comes right after it or after ranges it also covers.
+    List<long[]> kept = new ArrayList<>(parsed.size());
+    for (var range : parsed) {
+      if (kept.isEmpty() || !covers(kept.getLast(), range)) {
+        kept.add(range);
+      }
+    }
+
+    var count = Math.max(0, 2 * kept.size() - 1);
+    if ((long) HEADER_BYTES + (long) count * NODE_BYTES > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many ranges: " + kept.size());
+    }
+    var buffer = ByteBuffer.allocate(HEADER_BYTES + count * NODE_BYTES);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(kept.size());
+    if (!kept.isEmpty()) {
+      writeNode(buffer, kept.toArray(new long[0][]), 0, kept.size(), 0);
+    }
+    return buffer;
+  }
+
+  private static int writeNode(ByteBuffer buffer, long[][] ranges, int from, int to, int index) {
+    var offset = HEADER_BYTES + index * NODE_BYTES;
+    var first = ranges[from];
+    if (to - from == 1) {
+      buffer.putLong(offset, first[0]).putLong(offset + 8, first[1]).putInt(offset + 16, (int) first[2] | LEAF);
+      return index + 1;
+    }
+
+    // Ranges are disjoint and sorted, so the bits the first and the last share are the bits all of them share.
+    var last = ranges[to - 1];
+    var length = first[0] != last[0]
+        ? Long.numberOfLeadingZeros(first[0] ^ last[0])
+        : 64 + Long.numberOfLeadingZeros(first[1] ^ last[1]);
+    var split = from + 1;
+    while (bit(ranges[split], length) == 0) {
+      split++;
+    }
+
+    buffer.putLong(offset, first[0] & mask(length)).putLong(offset + 8, first[1] & mask(length - 64))
+        .putInt(offset + 16, length);
+    var left = index + 1;
+    var right = writeNode(buffer, ranges, from, split, left);
+    buffer.putInt(offset + 20, left).putInt(offset + 24, right);
+    return writeNode(buffer, ranges, split, to, right);
+  }
+
+  private static boolean covers(long[] outer, long[] inner) {
+    var length = (int) outer[2];
+    return outer[2] <= inner[2] && matches(outer[0], outer[1], length, inner[0], inner[1]);
+  }
+
+  private static boolean matches(long prefixHi, long prefixLo, int length, long hi, long lo) {
+    if (length <= 64) {
+      return ((hi ^ prefixHi) & mask(length)) == 0;
+    }
+    return hi == prefixHi && ((lo ^ prefixLo) & mask(length - 64)) == 0;
+  }
+
+  private static long bit(long[] range, int position) {
+    return position < 64 ? (range[0] >>> (63 - position)) & 1 : (range[1] >>> (127 - position)) & 1;
+  }
+
+  /**
+   * Returns a mask of the first {@code length} bits of a long, none if negative, all from 64.
+   */
+  private static long mask(long length) {
+    if (length <= 0) {
+      return 0;
+    }
+    return length >= 64 ? -1L : -1L << (64 - length);
+  }
+
+  /**
+   * Parses a dotted IPv4 address, or returns {@code -1}.
+   */
+  private static long parseIpv4(String address, int from, int to) {
+    long value = 0;
+    var octets = 0;
+    var octet = -1;
+    for (var i = from; i < to; i++) {
+      var c = address.charAt(i);
+      if (c >= '0' && c <= '9') {
+        octet = octet < 0 ? c - '0' : octet * 10 + c - '0';
+        if (octet > 255) {
+          return -1;
+        }
+      } else if (c == '.' && octet >= 0 && octets < 3) {
+        value = value << 8 | octet;
+        octets++;
+        octet = -1;
+      } else {
+        return -1;
+      }
+    }
+    return octets == 3 && octet >= 0 ? value << 8 | octet : -1;
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import io.helidon.config.Config;
+import java.security.SecureRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Throttles clients by IP address in fixed memory, however many addresses a flood spoofs.
+ *
+ * <p>Most clients send a handful of requests, so they are only counted, in a count-min sketch of the requests seen in
+ * the last second. A client whose count goes over its rate is promoted to an exact token bucket in a fixed table of
+ * hot clients, charged with the requests the sketch counted as if they had all come at once. A bucket only keeps the
+ * time at which it would be full again, so admitting a request is a single compare-and-set, and a bucket that filled
+ * up again can be handed to another client. Should the table be full of active clients, the others are held to the
+ * burst per second by the sketch alone.
+ *
+ * <p>The sketch is kept per one-second window, in three generations: the count of a client is that of the current
+ * window plus the share of the previous window that still overlaps the last second, while a virtual thread clears the
+ * generation of the next window. Addresses are hashed with a random seed, so a flood cannot aim its collisions at the
+ * counters of a given client.
+ */
+public final class RateLimiter implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(RateLimiter.class.getName());
+
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int GENERATIONS = 3;
+  private static final int DEPTH = 4;
+  private static final int PROBES = 8;
+  private static final int MAX_SIZE = 1 << 26;
+  private static final double DEFAULT_REQUESTS_PER_SECOND = 5;
+  private static final int DEFAULT_BURST = 20;
+  private static final int DEFAULT_HOT_CLIENTS = 1 << 16;
+  private static final int DEFAULT_SKETCH_WIDTH = 1 << 16;
+
+  /**
+   * Point-in-time counters of the limiter.
+   *
+   * @param requestsPerSecond the rate a hot client is held to.
+   * @param burst the number of requests a client may send at once.
+   * @param hotCapacity the number of clients that can have a token bucket.
+   * @param hotClients the number of clients whose token bucket is not full.
+   * @param bytes the memory held by the sketch and the token buckets.
+   * @param admitted the number of requests let through.
+   * @param limited the number of requests turned away.
+   * @param promoted the number of clients given a token bucket.
+   * @param saturated the number of requests decided by the sketch alone because every bucket was in use.
+   */
+  public record Stats(double requestsPerSecond, int burst, int hotCapacity, int hotClients, long bytes, long admitted,
+                      long limited, long promoted, long saturated) {
+  }
+
+  private final double requestsPerSecond;
+  private final int burst;
+  private final long promoteAt;
+  private final long interval;
+  private final long tolerance;
+  private final int width;
+  private final Generation[] generations = new Generation[GENERATIONS];
+  private final AtomicLongArray keys;
+  private final AtomicLongArray fullAt;
+  private final long seed;
+  private final LongSupplier nanoClock;
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder limited = new LongAdder();
+  private final LongAdder promoted = new LongAdder();
+  private final LongAdder saturated = new LongAdder();
+  private final ScheduledExecutorService sweeper;
+
+  /**
+   * Creates the limiter and starts rotating its sketch.
+   *
+   * @param config the {@code rate-limit} configuration node.
+   */
+  public RateLimiter(Config config) {
+    this(
+        config.get("requests-per-second").asDouble().orElse(DEFAULT_REQUESTS_PER_SECOND),
+        config.get("burst").asInt().orElse(DEFAULT_BURST),
+        config.get("hot-clients").asInt().orElse(DEFAULT_HOT_CLIENTS),
+        config.get("sketch-width").asInt().orElse(DEFAULT_SKETCH_WIDTH),
+        new SecureRandom().nextLong(),
+        System::nanoTime,
+        true
+    );
+  }
+
+  RateLimiter(double requestsPerSecond, int burst, int hotClients, int sketchWidth, long seed, LongSupplier nanoClock,
+              boolean sweep) {
+    if (requestsPerSecond <= 0 || burst <= 0) {
+      throw new IllegalArgumentException("'requests-per-second' and 'burst' must be positive");
+    }
+    if (hotClients < PROBES || hotClients > MAX_SIZE || sketchWidth < 1 || sketchWidth > MAX_SIZE) {
+      throw new IllegalArgumentException("'hot-clients' must be between " + PROBES + " and " + MAX_SIZE
+          + ", and 'sketch-width' between 1 and " + MAX_SIZE);
+    }
+
+    this.requestsPerSecond = requestsPerSecond;
+    this.burst = burst;
+    this.promoteAt = Math.min(burst, Math.max(1, (long) requestsPerSecond));
+    this.interval = Math.max(1, (long) (WINDOW_NANOS / requestsPerSecond));
+    this.tolerance = (burst - 1) * interval;
+    this.width = powerOfTwo(sketchWidth);
+    var capacity = powerOfTwo(hotClients);
+    this.keys = new AtomicLongArray(capacity);
+    this.fullAt = new AtomicLongArray(capacity);
+    this.seed = seed;
+    this.nanoClock = nanoClock;
+    for (var i = 0; i < GENERATIONS; i++) {
+      generations[i] = new Generation(DEPTH * width);
+    }
+    rotate();
+
+    if (sweep) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("rate-limit-sweeper").factory());
+      var period = WINDOW_NANOS / 4;
+      sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.NANOSECONDS);
+    } else {
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Counts a request of a client.
+   *
+   * @param client the IP address of the client.
+   * @return {@code true} if the request may go on, {@code false} if the client is over its rate.
+   */
+  public boolean tryAcquire(String client) {
+    var now = nanoClock.getAsLong();
+    var key = fingerprint(client);
+
+    var slot = find(key);
+    if (slot < 0) {
+      var count = count(key, now);
+      if (count <= promoteAt) {
+        admitted.increment();
+        return true;
+      }
+      slot = promote(key, now, count);
+      if (slot < 0) {
+        saturated.increment();
+        if (count <= burst) {
+          admitted.increment();
+          return true;
+        }
+        limited.increment();
+        return false;
+      }
+    }
+    return take(slot, now);
+  }
+
+  /**
+   * Returns a point-in-time view of the limiter.
+   */
+  public Stats stats() {
+    var now = nanoClock.getAsLong();
+    var hot = 0;
+    for (var i = 0; i < keys.length(); i++) {
+      if (keys.get(i) != 0 && fullAt.get(i) - now > 0) {
+        hot++;
+      }
+    }
+    var bytes = (long) keys.length() * Long.BYTES * 2 + (long) GENERATIONS * DEPTH * width * Integer.BYTES;
+    return new Stats(requestsPerSecond, burst, keys.length(), hot, bytes, admitted.sum(), limited.sum(),
+        promoted.sum(), saturated.sum());
+  }
+
+  @Override
+  public void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  /**
+   * Makes sure the sketches of the current and the next window are ready, clearing the sketch of the window that ended
+   * before the previous one. Only the sweeper calls this, except for the first call.
+   */
+  void rotate() {
+    var window = Math.floorDiv(nanoClock.getAsLong(), WINDOW_NANOS);
+    for (var w = window; w <= window + 1; w++) {
+      prepare(generations[(int) Math.floorMod(w, GENERATIONS)], w);
+    }
+  }
+
+  private int find(long key) {
+    var mask = keys.length() - 1;
+    var start = (int) key & mask;
+    for (var i = 0; i < PROBES; i++) {
+      var slot = (start + i) & mask;
+      var current = keys.get(slot);
+      if (current == key) {
+        return slot;
+      }
+      if (current == 0) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private int promote(long key, long now, long count) {
+    var mask = keys.length() - 1;
+    var start = (int) key & mask;
+    for (var i = 0; i < PROBES; i++) {
+      var slot = (start + i) & mask;
+      var current = keys.get(slot);
+      // A bucket that filled up again remembers nothing, so it can be handed over.
+      if (current == key
+          || (current == 0 || fullAt.get(slot) - now <= 0) && keys.compareAndSet(slot, current, key)) {
+        if (current != key) {
+          // The sketch can't tell when the earlier requests came, so they are charged as if they had just come, which
+          // may throttle the client a little early but never lets it go above its rate.
+          fullAt.set(slot, now + Math.min(count - 1, burst) * interval);
+          promoted.increment();
+        }
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private boolean take(int slot, long now) {
+    while (true) {
+      var current = fullAt.get(slot);
+      var start = current - now > 0 ? current : now;
+      if (start - now > tolerance) {
+        limited.increment();
+        return false;
+      }
+      if (fullAt.compareAndSet(slot, current, start + interval)) {
+        admitted.increment();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Counts the request in the sketch, with conservative updates, and returns the estimated count of the last second.
+   */
+  private long count(long key, long now) {
+    var window = Math.floorDiv(now, WINDOW_NANOS);
+    var current = generation(window);
+    var previous = generations[(int) Math.floorMod(window - 1, GENERATIONS)];
+    var hasPrevious = previous.window == window - 1;
+
+    var base = (int) (key >>> 32);
+    var step = (int) key | 1;
+    var min = Integer.MAX_VALUE;
+    var previousMin = Integer.MAX_VALUE;
+    for (var row = 0; row < DEPTH; row++) {
+      var index = row * width + ((base + row * step) & (width - 1));
+      min = Math.min(min, current.counters.get(index));
+      if (hasPrevious) {
+        previousMin = Math.min(previousMin, previous.counters.get(index));
+      }
+    }
+
+    // Only raise the counters that are at the minimum, which keeps the overestimate of colliding clients low.
+    var next = min + 1;
+    for (var row = 0; row < DEPTH; row++) {
+      var index = row * width + ((base + row * step) & (width - 1));
+      current.counters.accumulateAndGet(index, next, Math::max);
+    }
+
+    var overlap = 1 - (double) Math.floorMod(now, WINDOW_NANOS) / WINDOW_NANOS;
+    return next + (hasPrevious ? (long) (previousMin * overlap) : 0);
+  }
+
+  private Generation generation(long window) {
+    var generation = generations[(int) Math.floorMod(window, GENERATIONS)];
+    if (generation.window != window) {
+      // The sweeper is behind, so prepare the sketch inline.
+      prepare(generation, window);
+    }
+    return generation;
+  }
+
+  private static void prepare(Generation generation, long window) {
+    if (generation.window >= window) {
+      return;
+    }
+    synchronized (generation) {
+      if (generation.window < window) {
+        for (var i = 0; i < generation.counters.length(); i++) {
+          generation.counters.set(i, 0);
+        }
+        generation.window = window;
+      }
+    }
+  }
+
+  private void sweep() {
+    try {
+      rotate();
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Unable to rotate the rate limit sketch", ex);
+    }
+  }
+
+  private long fingerprint(String client) {
+    // 64-bit FNV-1a from a random basis, finished with a mixer. Zero marks a free bucket, so it is never a key.
+    var hash = 0xcbf29ce484222325L ^ seed;
+    for (var i = 0; i < client.length(); i++) {
+      hash ^= client.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb93fe1a85ec5L;
+    hash ^= hash >>> 33;
+    return hash == 0 ? 1 : hash;
+  }
+
+  private static int powerOfTwo(int value) {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+
+  private static final class Generation {
+
+    private final AtomicIntegerArray counters;
+    private volatile long window = Long.MIN_VALUE;
+
+    private Generation(int counters) {
+      this.counters = new AtomicIntegerArray(counters);
+    }
+  }
+}
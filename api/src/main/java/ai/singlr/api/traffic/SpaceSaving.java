@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Space-Saving summary of a stream: the {@code capacity} most frequent keys, each with its count and the most it
+ * may be overcounted by.
+ *
+ * <p>A key that is not tracked takes the place of the least counted one and inherits its count as error, so any key
+ * seen more often than the stream length divided by the capacity is guaranteed to be tracked. Counters are kept in a
+ * binary min-heap indexed from a hash map, so an update is a lookup and a sift. Not thread safe.
+ */
+final class SpaceSaving {
+
+  private final int capacity;
+  private final Map<String, Counter> counters;
+  private final Counter[] heap;
+  private int size;
+
+  SpaceSaving(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.counters = new HashMap<>(capacity * 2);
+    this.heap = new Counter[capacity];
+  }
+
+  /**
+   * Counts one occurrence of a key.
+   */
+  void add(String key) {
+    var counter = counters.get(key);
+    if (counter == null && size < capacity) {
+      counter = new Counter(key, size);
+      counter.count = 1;
+      heap[size++] = counter;
+      counters.put(key, counter);
+      siftUp(counter.index);
+      return;
+    }
+    if (counter == null) {
+      // Evict the least counted key, whose count the new key may have had without being tracked.
+      counter = heap[0];
+      counters.remove(counter.key);
+      counter.key = key;
+      counter.error = counter.count;
+      counters.put(key, counter);
+    }
+    counter.count++;
+    siftDown(counter.index);
+  }
+
+  /**
+   * Returns the smallest count tracked, the most any untracked key may have been seen, or {@code 0} while the summary
+   * is not full.
+   */
+  long floor() {
+    return size < capacity ? 0 : heap[0].count;
+  }
+
+  /**
+   * Passes every tracked key with its count and error to the visitor.
+   */
+  void forEach(Visitor visitor) {
+    for (var i = 0; i < size; i++) {
+      visitor.visit(heap[i].key, heap[i].count, heap[i].error);
+    }
+  }
+
+  void clear() {
+    counters.clear();
+    for (var i = 0; i < size; i++) {
+      heap[i] = null;
+    }
+    size = 0;
+  }
+
+  private void siftUp(int index) {
+    var counter = heap[index];
+    while (index > 0) {
+      var parent = (index - 1) / 2;
+      if (heap[parent].count <= counter.count) {
+        break;
+      }
+      heap[index] = heap[parent];
+      heap[index].index = index;
+      index = parent;
+    }
+    heap[index] = counter;
+    counter.index = index;
+  }
+
+  private void siftDown(int index) {
+    var counter = heap[index];
+    while (true) {
+      var child = index * 2 + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+        child++;
+      }
+      if (heap[child].count >= counter.count) {
+        break;
+      }
+      heap[index] = heap[child];
+      heap[index].index = index;
+      index = child;
+    }
+    heap[index] = counter;
+    counter.index = index;
+  }
+
+  /**
+   * Receives the tracked keys.
+   */
+  interface Visitor {
+
+    void visit(String key, long count, long error);
+  }
+
+  private static final class Counter {
+
+    private String key;
+    private long count;
+    private long error;
+    private int index;
+
+    private Counter(String key, int index) {
+      this.key = key;
+      this.index = index;
+    }
+  }
+}
@@ -7,26 +7,43 @@ package ai.singlr.api;
 
 import ai.singlr.core.Profile;
 import io.helidon.common.media.type.MediaTypes;
-import io.helidon.config.Config;
 import io.helidon.http.HeaderNames;
 import io.helidon.webclient.api.WebClient;
 import org.junit.jupiter.api.BeforeAll;
+import java.util.HashMap;
 import java.util.Map;
 
 public abstract class BaseServiceTest {
 
+  // The port of the ci profile. The global configuration can't tell, as it is the one of the last server started.
+  private static final int PORT = 50080;
+
   static WebClient webClient;
+  static String origin;
 
   @BeforeAll
   public static void startTheServer() {
-    int port = Config.global().get("server.port").asInt().orElse(50080);
-    Main.overrideConfigSource(v -> Map.of(
-        "wan.id", "localhost",
-        "wan.origin", "localhost:" + port
-    ));
+    webClient = startServer(PORT, Map.of());
+    origin = "http://localhost:" + PORT;
+  }
+
+  /**
+   * Starts a server on its own ports, for tests that need another configuration than the shared one.
+   *
+   * @param port the API port, the observe port being the next one.
+   * @param overrides the configuration to set on top of the ci profile.
+   * @return a client of the API port.
+   */
+  static WebClient startServer(int port, Map<String, String> overrides) {
+    Map<String, String> config = new HashMap<>(overrides);
+    config.put("server.port", String.valueOf(port));
+    config.put("server.hport", String.valueOf(port + 1));
+    config.put("wan.id", "localhost");
+    config.put("wan.origins", "http://localhost:" + port);
+    Main.overrideConfigSource(v -> config);
     Main.main(Profile.ci.name());
 
-    webClient = WebClient.builder()
+    return WebClient.builder()
         .baseUri("http://localhost:" + port)
         .addHeader(HeaderNames.CONTENT_TYPE, MediaTypes.APPLICATION_JSON.text())
         .build();
@@ -8,6 +8,8 @@ package ai.singlr.api;
 import ai.singlr.api.request.PasskeyCaptchaRequest;
 import ai.singlr.core.Utils;
 import com.fasterxml.jackson.databind.JsonNode;
+import io.helidon.common.media.type.MediaTypes;
+import io.helidon.webclient.api.HttpClientResponse;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -31,4 +33,73 @@ public class NoCaptchaServiceTest extends BaseServiceTest {
       assertTrue(result.has(Constants.PUB_KEY_CRED_OPTS));
     }
   }
+
+  @Test
+  @Order(2)
+  public void noCaptchaCompleteWithoutIdTest() throws Exception {
+    var credential = new TestAuthenticator().create("localhost", "http://localhost", "AAAA", "AAAA");
+    try (var response = webClient.put()
+        .path("/v1/nocaptcha/complete").submit(credential.json(null))) {
+      assertEquals(400, response.status().code());
+      assertEquals("ID is required.", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+
+  @Test
+  @Order(3)
+  public void noCaptchaRoundTripTest() throws Exception {
+    var credential = new TestAuthenticator().create(start(), origin);
+    var body = credential.json(credential.userHandle());
+    try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+      assertEquals(202, response.status().code());
+    }
+
+    // The challenge left the store with the first completion.
+    try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+      assertEquals(400, response.status().code());
+      assertEquals("Unable to recognize temporary passkey", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+
+  @Test
+  @Order(4)
+  public void noCaptchaCborRoundTripTest() throws Exception {
+    var credential = new TestAuthenticator().create(start(), origin);
+    try (var response = webClient.put().path("/v1/nocaptcha/complete")
+        .contentType(MediaTypes.create("application/cbor"))
+        .submit(credential.cbor(credential.userHandle()))) {
+      assertEquals(202, response.status().code());
+    }
+
+    try (var response = webClient.put().path("/v1/nocaptcha/complete")
+        .contentType(MediaTypes.create("application/cbor"))
+        .submit(new byte[] {(byte) 0xff})) {
+      assertEquals(400, response.status().code());
+      assertEquals("A valid CBOR should be specified", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+
+  @Test
+  @Order(5)
+  public void disabledFeaturesTest() {
+    assertStatus(404, webClient.post().path("/v1/nocaptcha/siteverify").submit("{\"token\": \"a.b.c\"}"));
+    assertStatus(404, webClient.post().path("/v1/nocaptcha/siteverify/batch").submit("{\"tokens\": [\"a.b.c\"]}"));
+    assertStatus(404, webClient.get().path("/v1/nocaptcha/keys").request());
+    assertStatus(404, webClient.put().path("/v1/nocaptcha/complete/pow").submit("{\"id\": \"AAAA\", \"nonce\": 1}"));
+    assertStatus(404, webClient.post().path("/v1/nocaptcha/start")
+        .submit("{\"id\": \"Anonymous\", \"type\": \"pow\"}"));
+  }
+
+  private static JsonNode start() throws Exception {
+    try (var response = webClient.post().path("/v1/nocaptcha/start").submit("{\"id\": \"test@example.com\"}")) {
+      assertEquals(201, response.status().code());
+      return TestAuthenticator.publicKey(response.as(JsonNode.class));
+    }
+  }
+
+  private static void assertStatus(int status, HttpClientResponse response) {
+    try (response) {
+      assertEquals(status, response.status().code());
+    }
+  }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api;
+
+import ai.singlr.core.Utils;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.helidon.webclient.api.WebClient;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QuotaNoCaptchaServiceTest {
+
+  private static final int PORT = 50100;
+
+  private static WebClient webClient;
+
+  @BeforeAll
+  public static void startTheServer() {
+    webClient = BaseServiceTest.startServer(PORT, Map.of(
+        "tenants.quotas.enabled", "true",
+        "wan.limits.verify-per-second", "0.5",
+        "wan.limits.burst", "1"));
+  }
+
+  @Test
+  public void throttledCompleteKeepsChallengeTest() throws Exception {
+    var start = Utils.newJson().put("id", "test@example.com");
+    JsonNode publicKey;
+    try (var response = webClient.post().path("/v1/nocaptcha/start").submit(start.toString())) {
+      assertEquals(201, response.status().code());
+      publicKey = TestAuthenticator.publicKey(response.as(JsonNode.class));
+    }
+    var credential = new TestAuthenticator().create(publicKey, "http://localhost:" + PORT);
+
+    // Uses up the quota on a challenge that does not exist.
+    try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(credential.json("AAAA"))) {
+      assertEquals(400, response.status().code());
+    }
+
+    var body = credential.json(credential.userHandle());
+    try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+      assertEquals(429, response.status().code());
+    }
+
+    // The throttled attempt left the challenge in the store, so the ceremony completes once the quota refills.
+    var status = 429;
+    for (var i = 0; i < 40 && status == 429; i++) {
+      Thread.sleep(250);
+      try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+        status = response.status().code();
+      }
+    }
+    assertEquals(202, status);
+  }
+}
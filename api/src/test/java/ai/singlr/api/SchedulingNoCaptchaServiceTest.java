@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.helidon.webclient.api.WebClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class SchedulingNoCaptchaServiceTest {
+
+  private static final int PORT = 50130;
+  private static final int CONCURRENCY = 32;
+
+  private static WebClient webClient;
+
+  @BeforeAll
+  public static void startTheServer() {
+    webClient = BaseServiceTest.startServer(PORT, Map.of(
+        "tenants.scheduling.enabled", "true",
+        "tenants.scheduling.workers", "1",
+        "wan.limits.max-queued", "1"));
+  }
+
+  @Test
+  public void fullQueueKeepsChallengeTest() throws Exception {
+    // One worker and room for one more in the queue, so a burst of completions overflows it.
+    List<String> turnedAway = new ArrayList<>();
+    for (var round = 0; round < 10 && turnedAway.isEmpty(); round++) {
+      List<String> bodies = new ArrayList<>();
+      for (var i = 0; i < CONCURRENCY; i++) {
+        bodies.add(ceremony());
+      }
+      try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (var body : bodies) {
+          statuses.add(executor.submit(() -> {
+            try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+              return response.status().code();
+            }
+          }));
+        }
+        for (var i = 0; i < bodies.size(); i++) {
+          var status = statuses.get(i).get();
+          if (status == 429) {
+            turnedAway.add(bodies.get(i));
+          } else {
+            assertEquals(202, status);
+          }
+        }
+      }
+    }
+    assertFalse(turnedAway.isEmpty());
+
+    // The queue is empty again, and the challenges of the turned away completions are still there.
+    for (var body : turnedAway) {
+      try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+        assertEquals(202, response.status().code());
+      }
+    }
+  }
+
+  private static String ceremony() throws Exception {
+    JsonNode publicKey;
+    try (var response = webClient.post().path("/v1/nocaptcha/start").submit("{\"id\": \"test@example.com\"}")) {
+      assertEquals(201, response.status().code());
+      publicKey = TestAuthenticator.publicKey(response.as(JsonNode.class));
+    }
+    var credential = new TestAuthenticator().create(publicKey, "http://localhost:" + PORT);
+    return credential.json(credential.userHandle());
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api;
+
+import ai.singlr.core.Utils;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.helidon.webclient.api.WebClient;
+import java.util.Base64;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SealedNoCaptchaServiceTest {
+
+  private static final int PORT = 50090;
+
+  private static WebClient webClient;
+
+  @BeforeAll
+  public static void startTheServer() {
+    webClient = BaseServiceTest.startServer(PORT, Map.of(
+        "challenges.sealing.enabled", "true",
+        "challenges.sealing.active-key", "1",
+        "challenges.sealing.keys", "1:" + Base64.getEncoder().encodeToString(new byte[32])));
+  }
+
+  @Test
+  public void sealedRoundTripTest() throws Exception {
+    var start = Utils.newJson().put("id", "test@example.com");
+    JsonNode publicKey;
+    try (var response = webClient.post().path("/v1/nocaptcha/start").submit(start.toString())) {
+      assertEquals(201, response.status().code());
+      publicKey = TestAuthenticator.publicKey(response.as(JsonNode.class));
+    }
+
+    // Any node can complete the ceremony, the challenge coming back sealed in the client data.
+    var credential = new TestAuthenticator().create(publicKey, "http://localhost:" + PORT);
+    var body = credential.json(credential.userHandle());
+    try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+      assertEquals(202, response.status().code());
+    }
+
+    // It is only claimed once completed, so a replay is turned away.
+    try (var response = webClient.put().path("/v1/nocaptcha/complete").submit(body)) {
+      assertEquals(400, response.status().code());
+      assertEquals("Temporary passkey has already been used",
+          response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+}
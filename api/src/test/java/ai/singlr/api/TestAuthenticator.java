@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A software platform authenticator, creating the passkeys with {@code none} attestation a browser would send to
+ * {@code /complete}.
+ */
+public final class TestAuthenticator {
+
+  private static final ObjectMapper JSON = new ObjectMapper();
+  private static final ObjectMapper CBOR = new ObjectMapper(new CBORFactory());
+  // User present, user verified and attested credential data included.
+  private static final int FLAGS = 0x45;
+  private static final int COORDINATE_LENGTH = 32;
+
+  /**
+   * A passkey created for a challenge.
+   *
+   * @param userHandle the base64url user handle of the options, which {@code /complete} takes as its id.
+   * @param rawId the credential id.
+   * @param clientDataJson the client data the browser would collect.
+   * @param attestationObject the attestation object of the authenticator.
+   */
+  public record Credential(String userHandle, byte[] rawId, byte[] clientDataJson, byte[] attestationObject) {
+
+    /**
+     * Returns the JSON {@code /complete} body for the credential.
+     *
+     * @param id the id of the request, or {@code null} to leave it out.
+     */
+    public String json(String id) {
+      var body = JSON.createObjectNode();
+      if (id != null) {
+        body.put("id", id);
+      }
+      var credential = body.putObject(Constants.PUB_KEY_CRED_OPTS)
+          .put("id", base64Url(rawId))
+          .put("rawId", base64Url(rawId))
+          .put("type", "public-key")
+          .put("authenticatorAttachment", "platform");
+      credential.putObject("clientExtensionResults");
+      var response = credential.putObject("response")
+          .put("clientDataJSON", base64Url(clientDataJson))
+          .put("attestationObject", base64Url(attestationObject));
+      response.putArray("transports").add("internal");
+      return body.toString();
+    }
+
+    /**
+     * Returns the CBOR {@code /complete} body for the credential, with byte strings instead of base64url text.
+     *
+     * @param id the id of the request, or {@code null} to leave it out.
+     */
+    public byte[] cbor(String id) {
+      Map<String, Object> response = new LinkedHashMap<>();
+      response.put("clientDataJSON", clientDataJson);
+      response.put("attestationObject", attestationObject);
+      response.put("transports", List.of("internal"));
+      Map<String, Object> credential = new LinkedHashMap<>();
+      credential.put("rawId", rawId);
+      credential.put("type", "public-key");
+      credential.put("authenticatorAttachment", "platform");
+      credential.put("clientExtensionResults", Map.of());
+      credential.put("response", response);
+      Map<String, Object> body = new LinkedHashMap<>();
+      if (id != null) {
+        body.put("id", id);
+      }
+      body.put(Constants.PUB_KEY_CRED_OPTS, credential);
+      try {
+        return CBOR.writeValueAsBytes(body);
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+
+  private final KeyPair keyPair;
+  private final SecureRandom random = new SecureRandom();
+
+  /**
+   * Creates an authenticator with a fresh P-256 key pair.
+   */
+  public TestAuthenticator() {
+    try {
+      var generator = KeyPairGenerator.getInstance("EC");
+      generator.initialize(new ECGenParameterSpec("secp256r1"));
+      keyPair = generator.generateKeyPair();
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Returns the {@code publicKey} options of a {@code /start} response, whether they were nested or sent as a string.
+   *
+   * @param startResponse the body of the {@code /start} response.
+   */
+  public static JsonNode publicKey(JsonNode startResponse) throws IOException {
+    var options = startResponse.get(Constants.PUB_KEY_CRED_OPTS);
+    if (options.isTextual()) {
+      options = JSON.readTree(options.asText());
+    }
+    return options.get("publicKey");
+  }
+
+  /**
+   * Creates a passkey for the options returned by {@code /start}.
+   *
+   * @param publicKey the {@code publicKey} options.
+   * @param origin the origin of the page the ceremony runs on.
+   * @return the credential.
+   */
+  public Credential create(JsonNode publicKey, String origin) {
+    return create(publicKey.get("rp").get("id").asText(), origin, publicKey.get("challenge").asText(),
+        publicKey.get("user").get("id").asText());
+  }
+
+  /**
+   * Creates a passkey.
+   *
+   * @param rpId the id of the relying party.
+   * @param origin the origin of the page the ceremony runs on.
+   * @param challenge the base64url challenge.
+   * @param userHandle the base64url user handle.
+   * @return the credential.
+   */
+  public Credential create(String rpId, String origin, String challenge, String userHandle) {
+    var rawId = new byte[16];
+    random.nextBytes(rawId);
+
+    var clientData = JSON.createObjectNode()
+        .put("type", "webauthn.create")
+        .put("challenge", challenge)
+        .put("origin", origin)
+        .put("crossOrigin", false);
+
+    var publicKey = coseKey();
+    var authData = ByteBuffer.allocate(32 + 1 + 4 + 16 + 2 + rawId.length + publicKey.length)
+        .put(sha256(rpId))
+        .put((byte) FLAGS)
+        .putInt(0)
+        .put(new byte[16])
+        .putShort((short) rawId.length)
+        .put(rawId)
+        .put(publicKey)
+        .array();
+
+    var attestationObject = new ByteArrayOutputStream();
+    head(attestationObject, 5, 3);
+    text(attestationObject, "fmt");
+    text(attestationObject, "none");
+    text(attestationObject, "attStmt");
+    head(attestationObject, 5, 0);
+    text(attestationObject, "authData");
+    head(attestationObject, 2, authData.length);
+    attestationObject.writeBytes(authData);
+
+    return new Credential(userHandle, rawId, clientData.toString().getBytes(StandardCharsets.UTF_8),
+        attestationObject.toByteArray());
+  }
+
+  /**
+   * Encodes the public key as a COSE EC2 key for ES256, whose labels are integers.
+   */
+  private byte[] coseKey() {
+    var point = ((ECPublicKey) keyPair.getPublic()).getW();
+    var key = new ByteArrayOutputStream();
+    key.writeBytes(new byte[] {(byte) 0xa5, 0x01, 0x02, 0x03, 0x26, 0x20, 0x01});
+    key.write(0x21);
+    head(key, 2, COORDINATE_LENGTH);
+    key.writeBytes(coordinate(point.getAffineX()));
+    key.write(0x22);
+    head(key, 2, COORDINATE_LENGTH);
+    key.writeBytes(coordinate(point.getAffineY()));
+    return key.toByteArray();
+  }
+
+  private static void head(ByteArrayOutputStream out, int major, int length) {
+    if (length < 24) {
+      out.write(major << 5 | length);
+    } else if (length < 256) {
+      out.write(major << 5 | 24);
+      out.write(length);
+    } else {
+      out.write(major << 5 | 25);
+      out.write(length >>> 8);
+      out.write(length & 0xff);
+    }
+  }
+
+  private static void text(ByteArrayOutputStream out, String text) {
+    var bytes = text.getBytes(StandardCharsets.UTF_8);
+    head(out, 3, bytes.length);
+    out.writeBytes(bytes);
+  }
+
+  private static byte[] coordinate(BigInteger value) {
+    var bytes = value.toByteArray();
+    var fixed = new byte[COORDINATE_LENGTH];
+    var length = Math.min(bytes.length, COORDINATE_LENGTH);
+    System.arraycopy(bytes, bytes.length - length, fixed, COORDINATE_LENGTH - length, length);
+    return fixed;
+  }
+
+  private static byte[] sha256(String text) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static String base64Url(byte[] bytes) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+}
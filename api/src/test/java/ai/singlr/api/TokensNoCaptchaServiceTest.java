@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api;
+
+import ai.singlr.api.service.NoCaptchaService;
+import ai.singlr.core.Utils;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.helidon.http.HeaderNames;
+import io.helidon.webclient.api.WebClient;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokensNoCaptchaServiceTest {
+
+  private static final int PORT = 50110;
+  private static final String SITE_KEY = "example";
+
+  private static WebClient webClient;
+
+  @BeforeAll
+  public static void startTheServer() throws Exception {
+    var generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    var keyPair = generator.generateKeyPair();
+    var encoder = Base64.getEncoder();
+
+    Map<String, String> config = new HashMap<>();
+    config.put("tokens.enabled", "true");
+    config.put("tokens.algorithm", "ES256");
+    config.put("tokens.active-key", "1");
+    config.put("tokens.keys", "1:" + encoder.encodeToString(keyPair.getPrivate().getEncoded()) + ":"
+        + encoder.encodeToString(keyPair.getPublic().getEncoded()));
+    config.put("tokens.single-use.enabled", "true");
+    config.put("tokens.single-use.expected-tokens", "1000");
+    config.put("sites.0.key", SITE_KEY);
+    config.put("sites.0.tenant", "1");
+    config.put("sites.0.id", "localhost");
+    config.put("sites.0.name", "Example");
+    config.put("sites.0.origins", "http://localhost:" + PORT);
+    config.put("proof-of-work.enabled", "true");
+    config.put("proof-of-work.base-difficulty", "8");
+    config.put("proof-of-work.max-difficulty", "8");
+    config.put("proof-of-work.capacity", "2");
+    config.put("challenges.capacity", "2");
+    webClient = BaseServiceTest.startServer(PORT, config);
+  }
+
+  @Test
+  public void siteVerifyTest() throws Exception {
+    var token = complete(null);
+    var verification = siteVerify(null, token);
+    assertTrue(verification.get("success").asBoolean());
+    assertEquals(0, verification.get("tenant").asInt());
+    assertEquals("passkey", verification.get("amr").get(0).asText());
+
+    // Single use, so the same token is turned away the second time.
+    assertEquals("spent-token", siteVerify(null, token).get("error").asText());
+
+    // A token of another site is rejected without being spent, and accepted for its own site.
+    var siteToken = complete(SITE_KEY);
+    assertEquals("wrong-site", siteVerify(null, siteToken).get("error").asText());
+    verification = siteVerify(SITE_KEY, siteToken);
+    assertTrue(verification.get("success").asBoolean());
+    assertEquals(1, verification.get("tenant").asInt());
+
+    try (var response = webClient.post().path("/v1/nocaptcha/siteverify")
+        .header(HeaderNames.create(NoCaptchaService.SITE_HEADER), "unknown")
+        .submit(Utils.newJson().put("token", token).toString())) {
+      assertEquals(400, response.status().code());
+      assertEquals("Unknown site key", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+
+  @Test
+  public void siteVerifyBatchTest() throws Exception {
+    var first = complete(null);
+    var second = complete(null);
+    var body = Utils.newJson();
+    body.putArray("tokens").add(first).add(second).add(first).add("not.a.token");
+
+    try (var response = webClient.post().path("/v1/nocaptcha/siteverify/batch").submit(body.toString())) {
+      assertEquals(200, response.status().code());
+      var results = response.as(JsonNode.class);
+      assertEquals(4, results.size());
+      assertTrue(results.get(0).get("success").asBoolean());
+      assertTrue(results.get(1).get("success").asBoolean());
+      assertEquals("spent-token", results.get(2).get("error").asText());
+      assertEquals("invalid-token", results.get(3).get("error").asText());
+    }
+
+    try (var response = webClient.post().path("/v1/nocaptcha/siteverify/batch").submit("{\"tokens\": []}")) {
+      assertEquals(400, response.status().code());
+      assertEquals("Tokens are required.", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+
+  @Test
+  public void keysTest() {
+    try (var response = webClient.get().path("/v1/nocaptcha/keys").request()) {
+      assertEquals(200, response.status().code());
+      assertEquals("max-age=300", response.headers().get(HeaderNames.CACHE_CONTROL).get());
+      var key = response.as(JsonNode.class).get("keys").get(0);
+      assertEquals("1", key.get("kid").asText());
+      assertEquals("ES256", key.get("alg").asText());
+      assertEquals("P-256", key.get("crv").asText());
+    }
+  }
+
+  @Test
+  public void proofOfWorkTest() throws Exception {
+    // A wrong answer uses up the puzzle.
+    var puzzle = startProofOfWork();
+    var wrongNonce = 0L;
+    while (isSolution(puzzle, wrongNonce)) {
+      wrongNonce++;
+    }
+    var wrong = answer(puzzle, wrongNonce);
+    try (var response = webClient.put().path("/v1/nocaptcha/complete/pow").submit(wrong)) {
+      assertEquals(400, response.status().code());
+      assertEquals("Proof-of-work answer is wrong", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+    try (var response = webClient.put().path("/v1/nocaptcha/complete/pow").submit(wrong)) {
+      assertEquals(400, response.status().code());
+      assertEquals("Unable to recognize proof-of-work challenge",
+          response.as(JsonNode.class).get("errorMessage").asText());
+    }
+
+    puzzle = startProofOfWork();
+    String token;
+    try (var response = webClient.put().path("/v1/nocaptcha/complete/pow").submit(answer(puzzle, solve(puzzle)))) {
+      assertEquals(202, response.status().code());
+      token = response.as(JsonNode.class).get(Constants.TOKEN).asText();
+    }
+    var verification = siteVerify(null, token);
+    assertTrue(verification.get("success").asBoolean());
+    assertEquals("pow", verification.get("amr").get(0).asText());
+
+    try (var response = webClient.put().path("/v1/nocaptcha/complete/pow").submit("{\"id\": \"AAAA\"}")) {
+      assertEquals(400, response.status().code());
+      assertEquals("ID and nonce are required.", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+
+  @Test
+  public void puzzleFloodTest() throws Exception {
+    JsonNode publicKey;
+    try (var response = webClient.post().path("/v1/nocaptcha/start").submit("{\"id\": \"test@example.com\"}")) {
+      assertEquals(201, response.status().code());
+      publicKey = TestAuthenticator.publicKey(response.as(JsonNode.class));
+    }
+
+    // More puzzles than either store holds only push out older puzzles, not the pending passkey challenge.
+    for (var i = 0; i < 4; i++) {
+      startProofOfWork();
+    }
+    var credential = new TestAuthenticator().create(publicKey, "http://localhost:" + PORT);
+    try (var response = webClient.put().path("/v1/nocaptcha/complete")
+        .submit(credential.json(credential.userHandle()))) {
+      assertEquals(202, response.status().code());
+    }
+  }
+
+  private static String complete(String siteKey) throws Exception {
+    var start = webClient.post().path("/v1/nocaptcha/start");
+    var complete = webClient.put().path("/v1/nocaptcha/complete");
+    if (siteKey != null) {
+      start.header(HeaderNames.create(NoCaptchaService.SITE_HEADER), siteKey);
+      complete.header(HeaderNames.create(NoCaptchaService.SITE_HEADER), siteKey);
+    }
+
+    JsonNode publicKey;
+    try (var response = start.submit("{\"id\": \"test@example.com\"}")) {
+      assertEquals(201, response.status().code());
+      publicKey = TestAuthenticator.publicKey(response.as(JsonNode.class));
+    }
+    var credential = new TestAuthenticator().create(publicKey, "http://localhost:" + PORT);
+    try (var response = complete.submit(credential.json(credential.userHandle()))) {
+      assertEquals(202, response.status().code());
+      return response.as(JsonNode.class).get(Constants.TOKEN).asText();
+    }
+  }
+
+  private static JsonNode siteVerify(String siteKey, String token) {
+    var request = webClient.post().path("/v1/nocaptcha/siteverify");
+    if (siteKey != null) {
+      request.header(HeaderNames.create(NoCaptchaService.SITE_HEADER), siteKey);
+    }
+    try (var response = request.submit(Utils.newJson().put("token", token).toString())) {
+      assertEquals(200, response.status().code());
+      return response.as(JsonNode.class);
+    }
+  }
+
+  private static JsonNode startProofOfWork() {
+    try (var response = webClient.post().path("/v1/nocaptcha/start")
+        .submit("{\"id\": \"Anonymous\", \"type\": \"pow\"}")) {
+      assertEquals(201, response.status().code());
+      var puzzle = response.as(JsonNode.class).get(Constants.POW);
+      assertEquals("SHA-256", puzzle.get("algorithm").asText());
+      assertEquals(8, puzzle.get("difficulty").asInt());
+      return puzzle;
+    }
+  }
+
+  private static String answer(JsonNode puzzle, long nonce) {
+    return Utils.newJson().put("id", puzzle.get("id").asText()).put("nonce", nonce).toString();
+  }
+
+  private static long solve(JsonNode puzzle) throws Exception {
+    var nonce = 0L;
+    while (!isSolution(puzzle, nonce)) {
+      nonce++;
+    }
+    return nonce;
+  }
+
+  /**
+   * Hashes the puzzle followed by the nonce as the widget does, and checks the leading zero bits of the hash.
+   */
+  private static boolean isSolution(JsonNode puzzle, long nonce) throws Exception {
+    var digest = MessageDigest.getInstance("SHA-256");
+    digest.update(Base64.getUrlDecoder().decode(puzzle.get("challenge").asText()));
+    for (var shift = 56; shift >= 0; shift -= 8) {
+      digest.update((byte) (nonce >>> shift));
+    }
+    var hash = digest.digest();
+    for (var bit = 0; bit < puzzle.get("difficulty").asInt(); bit++) {
+      if ((hash[bit / 8] & 0x80 >>> bit % 8) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
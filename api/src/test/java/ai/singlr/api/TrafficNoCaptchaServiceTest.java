@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api;
+
+import ai.singlr.api.challenge.NodeAffinity;
+import ai.singlr.api.traffic.BlocklistCompiler;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.helidon.http.HeaderName;
+import io.helidon.http.HeaderNames;
+import io.helidon.webclient.api.HttpClientResponse;
+import io.helidon.webclient.api.WebClient;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the turn-aways that happen before any ceremony: rate limits, blocked networks, foreign origins and challenges
+ * of other nodes. Requests come from loopback, a trusted proxy, so each test picks its client with the forwarding
+ * header.
+ */
+public class TrafficNoCaptchaServiceTest {
+
+  private static final int PORT = 50120;
+  private static final HeaderName ROUTE = HeaderNames.create(NodeAffinity.HEADER);
+  private static final String START = "{\"id\": \"test@example.com\"}";
+
+  private static WebClient webClient;
+
+  @BeforeAll
+  public static void startTheServer() throws Exception {
+    var directory = Files.createTempDirectory("blocklist");
+    var blocklist = directory.resolve("blocklist.bin");
+    BlocklistCompiler.compile(Files.writeString(directory.resolve("blocklist.txt"), "203.0.113.0/24\n"), blocklist);
+
+    webClient = BaseServiceTest.startServer(PORT, Map.of(
+        "rate-limit.enabled", "true",
+        "rate-limit.requests-per-second", "1",
+        "rate-limit.burst", "3",
+        "blocklist.enabled", "true",
+        "blocklist.path", blocklist.toString(),
+        "challenges.affinity.enabled", "true",
+        "challenges.affinity.node", "7"));
+  }
+
+  @Test
+  public void rateLimitedTest() {
+    for (var i = 0; i < 3; i++) {
+      try (var response = start("198.51.100.1")) {
+        assertEquals(201, response.status().code());
+      }
+    }
+    try (var response = start("198.51.100.1")) {
+      assertEquals(429, response.status().code());
+      assertEquals("1", response.headers().get(HeaderNames.RETRY_AFTER).get());
+      assertEquals("Too many requests from this address", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+
+    // Other clients have their own rate.
+    try (var response = start("198.51.100.2")) {
+      assertEquals(201, response.status().code());
+    }
+  }
+
+  @Test
+  public void blockedNetworkTest() {
+    try (var response = start("203.0.113.9")) {
+      assertEquals(403, response.status().code());
+      assertEquals("Requests from this network are not allowed",
+          response.as(JsonNode.class).get("errorMessage").asText());
+    }
+    try (var response = start("198.51.100.3")) {
+      assertEquals(201, response.status().code());
+    }
+  }
+
+  @Test
+  public void forbiddenOriginTest() {
+    // Let through by CORS, which allows the widget development server of the ci profile, but not a site origin.
+    try (var response = startFrom("http://localhost:3080")) {
+      assertEquals(403, response.status().code());
+      assertEquals("Origin is not allowed for this site", response.as(JsonNode.class).get("errorMessage").asText());
+    }
+
+    // Turned away by CORS before it gets to the service.
+    try (var response = startFrom("https://elsewhere.example")) {
+      assertEquals(403, response.status().code());
+    }
+  }
+
+  @Test
+  public void misdirectedTest() {
+    try (var response = start("198.51.100.5")) {
+      assertEquals(201, response.status().code());
+      assertEquals("0.7", response.headers().get(ROUTE).get());
+    }
+
+    // A challenge of node 8 is sent back to it rather than failed.
+    var handle = new byte[19];
+    handle[2] = 8;
+    var id = Base64.getUrlEncoder().withoutPadding().encodeToString(handle);
+    var credential = new TestAuthenticator().create("localhost", "http://localhost:" + PORT, id, id);
+    try (var response = webClient.put().path("/v1/nocaptcha/complete")
+        .header(HeaderNames.X_FORWARDED_FOR, "198.51.100.5")
+        .submit(credential.json(id))) {
+      assertEquals(421, response.status().code());
+      assertEquals("0.8", response.headers().get(ROUTE).get());
+      assertEquals("Temporary passkey was issued by another node",
+          response.as(JsonNode.class).get("errorMessage").asText());
+    }
+  }
+
+  private static HttpClientResponse startFrom(String origin) {
+    return webClient.post().path("/v1/nocaptcha/start")
+        .header(HeaderNames.X_FORWARDED_FOR, "198.51.100.4")
+        .header(HeaderNames.ORIGIN, origin)
+        .submit(START);
+  }
+
+  private static HttpClientResponse start(String client) {
+    return webClient.post().path("/v1/nocaptcha/start")
+        .header(HeaderNames.X_FORWARDED_FOR, client)
+        .submit(START);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.singlr.api.challenge.Challenge;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+public class ChallengePoolTest {
+
+  @Test
+  public void hitAndMissTest() {
+    var clock = new AtomicLong(1_000);
+    var pool = new ChallengePool("Anonymous", minter(clock, new AtomicInteger()), 2, 8, 2000, 50, clock::get, false);
+    pool.refill();
+
+    assertNotNull(pool.take("Anonymous"));
+    assertNull(pool.take("someone@example.com"));
+    assertNotNull(pool.take("Anonymous"));
+    assertNull(pool.take("Anonymous"));
+
+    var stats = pool.stats();
+    assertEquals(2, stats.hits());
+    assertEquals(2, stats.misses());
+  }
+
+  @Test
+  public void staleTest() {
+    var clock = new AtomicLong(1_000);
+    var pool = new ChallengePool("Anonymous", minter(clock, new AtomicInteger()), 4, 8, 2000, 50, clock::get, false);
+    pool.refill();
+
+    clock.addAndGet(2000);
+    assertNull(pool.take("Anonymous"));
+    assertEquals(4, pool.stats().stale());
+
+    pool.refill();
+    assertEquals(pool.stats().target(), pool.stats().size());
+    assertNotNull(pool.take("Anonymous"));
+  }
+
+  @Test
+  public void adaptiveSizeTest() {
+    var clock = new AtomicLong(1_000);
+    var minted = new AtomicInteger();
+    var pool = new ChallengePool("Anonymous", minter(clock, minted), 2, 64, 1000, 50, clock::get, false);
+    pool.refill();
+    assertEquals(2, pool.stats().target());
+
+    // 20 requests per 50ms, about 400 within the maximum age, is capped at the maximum size.
+    for (var round = 0; round < 20; round++) {
+      for (var i = 0; i < 20; i++) {
+        pool.take("Anonymous");
+      }
+      pool.refill();
+    }
+    assertEquals(64, pool.stats().target());
+    assertEquals(64, pool.stats().size());
+
+    // Once requests stop the pool shrinks back to its minimum.
+    for (var round = 0; round < 100; round++) {
+      pool.refill();
+    }
+    assertEquals(2, pool.stats().target());
+    assertTrue(minted.get() > 64);
+  }
+
+  private static Supplier<ChallengePool.Minted> minter(AtomicLong clock, AtomicInteger minted) {
+    return () -> {
+      var handle = ByteBuffer.allocate(4).putInt(minted.incrementAndGet()).array();
+      var challenge = new Challenge(new byte[32], handle, clock.get(), Challenge.DEFAULT_TENANT);
+      return new ChallengePool.Minted(challenge, "{}");
+    };
+  }
+}
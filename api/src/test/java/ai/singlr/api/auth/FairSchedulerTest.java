@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class FairSchedulerTest {
+
+  @Test
+  public void runsWorkTest() throws Exception {
+    try (var scheduler = new FairScheduler(Map.of(0, TenantLimits.UNLIMITED), 2)) {
+      assertEquals("done", scheduler.call(0, () -> "done"));
+      assertThrows(IOException.class, () -> scheduler.call(0, () -> {
+        throw new IOException("failed");
+      }));
+      // Unknown tenants run on the calling thread.
+      assertEquals(Thread.currentThread(), scheduler.call(9, Thread::currentThread));
+
+      var stats = scheduler.stats().getFirst();
+      assertEquals(2, stats.completed());
+      assertEquals(0, stats.queued());
+    }
+  }
+
+  @Test
+  public void weightedShareTest() throws Exception {
+    var limits = Map.of(
+        0, TenantLimits.UNLIMITED,
+        1, new TenantLimits(0, 0, 0, 1, 64),
+        2, new TenantLimits(0, 0, 0, 3, 64)
+    );
+    List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    var release = new CountDownLatch(1);
+    try (var scheduler = new FairScheduler(limits, 1);
+         var callers = Executors.newVirtualThreadPerTaskExecutor()) {
+      // Holds the only worker until both sites have queued their work.
+      callers.submit(() -> scheduler.call(0, () -> release.await(5, TimeUnit.SECONDS)));
+      for (var i = 0; i < 12; i++) {
+        for (var tenant = 1; tenant <= 2; tenant++) {
+          var site = tenant;
+          callers.submit(() -> scheduler.call(site, () -> order.add(site)));
+        }
+      }
+      while (scheduler.stats().get(1).queued() + scheduler.stats().get(2).queued() < 24) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+      while (order.size() < 24) {
+        Thread.sleep(1);
+      }
+    }
+
+    // Three verifications of the heavier site for every one of the other while both are queued.
+    var heavier = order.subList(0, 12).stream().filter(tenant -> tenant == 2).count();
+    assertTrue(heavier >= 8, "Expected about 9 of 12, got " + heavier);
+  }
+
+  @Test
+  public void maxQueuedTest() throws Exception {
+    var limits = Map.of(0, TenantLimits.UNLIMITED, 1, new TenantLimits(0, 0, 0, 1, 2));
+    var release = new CountDownLatch(1);
+    try (var scheduler = new FairScheduler(limits, 1);
+         var callers = Executors.newVirtualThreadPerTaskExecutor()) {
+      callers.submit(() -> scheduler.call(0, () -> release.await(5, TimeUnit.SECONDS)));
+      callers.submit(() -> scheduler.call(1, () -> 1));
+      callers.submit(() -> scheduler.call(1, () -> 2));
+      while (scheduler.stats().get(1).queued() < 2) {
+        Thread.sleep(1);
+      }
+
+      assertThrows(RejectedExecutionException.class, () -> scheduler.call(1, () -> 3));
+      assertEquals(1, scheduler.stats().get(1).rejected());
+      release.countDown();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.singlr.api.challenge.Challenge;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class ProofOfWorkTest {
+
+  @Test
+  public void solveTest() throws Exception {
+    var now = new AtomicLong(1_700_000_000_000L);
+    var proofOfWork = new ProofOfWork(8, 12, 1000, 1000, 16, null, 42, now::get);
+
+    var puzzle = proofOfWork.mint(3, "192.0.2.1");
+    assertTrue(ProofOfWork.isPuzzle(puzzle));
+    assertEquals(8, ProofOfWork.difficulty(puzzle));
+    assertEquals(3, puzzle.tenant());
+
+    var nonce = solve(puzzle);
+    assertTrue(proofOfWork.verify(puzzle, nonce, "192.0.2.1"));
+    var wrong = nonce + 1;
+    while (zeros(puzzle, wrong) >= 8) {
+      wrong++;
+    }
+    assertFalse(proofOfWork.verify(puzzle, wrong, "192.0.2.1"));
+
+    var stats = proofOfWork.stats();
+    assertEquals(1, stats.issued());
+    assertEquals(1, stats.solved());
+    assertEquals(1, stats.failed());
+
+    // Passkey challenges are never taken for puzzles.
+    assertFalse(ProofOfWork.isPuzzle(new Challenge(new byte[32], new byte[16], 0, 0)));
+  }
+
+  @Test
+  public void reputationTest() {
+    var now = new AtomicLong(1_700_000_000_000L);
+    var proofOfWork = new ProofOfWork(10, 16, 1000, 4, 1024, null, 42, now::get);
+
+    // Four free puzzles, then a bit more each time the network doubles its count.
+    for (var i = 0; i < 4; i++) {
+      assertEquals(10, ProofOfWork.difficulty(proofOfWork.mint(0, "198.51.100." + i)));
+    }
+    assertEquals(11, ProofOfWork.difficulty(proofOfWork.mint(0, "198.51.100.9")));
+    for (var i = 0; i < 3; i++) {
+      proofOfWork.mint(0, "198.51.100.9");
+    }
+    assertEquals(12, ProofOfWork.difficulty(proofOfWork.mint(0, "198.51.100.9")));
+
+    // Other networks are not affected.
+    assertEquals(10, ProofOfWork.difficulty(proofOfWork.mint(0, "203.0.113.1")));
+
+    // A wrong answer counts as many puzzles.
+    var puzzle = proofOfWork.mint(0, "203.0.113.1");
+    var wrong = 0L;
+    while (zeros(puzzle, wrong) >= 10) {
+      wrong++;
+    }
+    assertFalse(proofOfWork.verify(puzzle, wrong, "203.0.113.1"));
+    assertEquals(12, ProofOfWork.difficulty(proofOfWork.mint(0, "203.0.113.2")));
+
+    // Counts halve every minute.
+    now.addAndGet(60_000);
+    assertEquals(11, ProofOfWork.difficulty(proofOfWork.mint(0, "198.51.100.9")));
+    now.addAndGet(10 * 60_000);
+    assertEquals(10, ProofOfWork.difficulty(proofOfWork.mint(0, "198.51.100.9")));
+
+    // Never beyond the most difficult.
+    for (var i = 0; i < 10_000; i++) {
+      proofOfWork.mint(0, "2001:db8::" + Integer.toHexString(i));
+    }
+    assertEquals(16, ProofOfWork.difficulty(proofOfWork.mint(0, "2001:db8::1")));
+  }
+
+  @Test
+  public void loadTest() {
+    var now = new AtomicLong(1_700_000_000_000L);
+    var proofOfWork = new ProofOfWork(10, 20, 100, 1_000_000, 16, null, 42, now::get);
+
+    for (var i = 0; i < 100; i++) {
+      assertEquals(10, ProofOfWork.difficulty(proofOfWork.mint(0, "192.0.2." + (i % 250))));
+    }
+    assertEquals(11, ProofOfWork.difficulty(proofOfWork.mint(0, "192.0.2.1")));
+    for (var i = 0; i < 300; i++) {
+      proofOfWork.mint(0, "192.0.2.1");
+    }
+    assertEquals(13, proofOfWork.stats().loadDifficulty());
+
+    // Once the burst is over, puzzles get easy again within seconds.
+    now.addAndGet(10_000);
+    assertEquals(10, proofOfWork.stats().loadDifficulty());
+    assertEquals(10, ProofOfWork.difficulty(proofOfWork.mint(0, "192.0.2.1")));
+  }
+
+  @Test
+  public void bitsTest() {
+    assertEquals(0, ProofOfWork.bits(0, 10));
+    assertEquals(0, ProofOfWork.bits(10, 10));
+    assertEquals(1, ProofOfWork.bits(11, 10));
+    assertEquals(2, ProofOfWork.bits(20, 10));
+    assertEquals(3, ProofOfWork.bits(40, 10));
+  }
+
+  @Test
+  public void invalidConfigTest() {
+    assertThrows(IllegalArgumentException.class, () -> new ProofOfWork(20, 10, 1, 1, 16, null, 0, () -> 0));
+    assertThrows(IllegalArgumentException.class, () -> new ProofOfWork(10, 40, 1, 1, 16, null, 0, () -> 0));
+    assertThrows(IllegalArgumentException.class, () -> new ProofOfWork(10, 20, 0, 1, 16, null, 0, () -> 0));
+    assertThrows(IllegalArgumentException.class, () -> new ProofOfWork(10, 20, 1, 1, 10, null, 0, () -> 0));
+  }
+
+  private static long solve(Challenge puzzle) {
+    var nonce = 0L;
+    while (zeros(puzzle, nonce) < ProofOfWork.difficulty(puzzle)) {
+      nonce++;
+    }
+    return nonce;
+  }
+
+  private static int zeros(Challenge puzzle, long nonce) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      digest.update(puzzle.challenge());
+      digest.update(ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
+      var hash = digest.digest();
+      var zeros = 0;
+      for (var b : hash) {
+        if (b != 0) {
+          return zeros + Integer.numberOfLeadingZeros(b & 0xff) - 24;
+        }
+        zeros += 8;
+      }
+      return zeros;
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.singlr.api.challenge.Challenge;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class RelyingPartyRegistryTest {
+
+  @Test
+  public void resolveTest() {
+    var sites = provider(config(Map.of())).sites();
+
+    var defaultSite = sites.site((String) null);
+    assertSame(defaultSite, sites.defaultSite());
+    assertSame(defaultSite, sites.site(Challenge.DEFAULT_TENANT));
+    assertNull(defaultSite.key());
+
+    var example = sites.site("example");
+    assertEquals(7, example.tenant());
+    assertSame(example, sites.site(7));
+    assertTrue(example.allowsOrigin("https://www.example.com"));
+    assertFalse(example.allowsOrigin("https://localhost"));
+    assertFalse(defaultSite.allowsOrigin("https://example.com"));
+
+    assertNull(sites.site("unknown"));
+    assertNull(sites.site(3));
+    assertNull(sites.site(-1));
+    assertEquals(Set.of("https://localhost", "https://example.com", "https://www.example.com"), sites.origins());
+    assertEquals(2, sites.all().size());
+  }
+
+  @Test
+  public void ceremonyTest() {
+    var provider = provider(config(Map.of()));
+
+    var challenge = provider.mintChallenge(7);
+    var options = provider.reissueCaptcha("Anonymous", challenge);
+    assertEquals("example.com", options.getRp().getId());
+    assertEquals("localhost", provider.startCaptcha("Anonymous").getRp().getId());
+    assertThrows(IllegalArgumentException.class,
+        () -> provider.reissueCaptcha("Anonymous", provider.mintChallenge(3)));
+  }
+
+  @Test
+  public void invalidSitesTest() {
+    assertThrows(IllegalArgumentException.class, () -> provider(config(Map.of("sites.0.tenant", "0"))));
+    assertThrows(IllegalArgumentException.class, () -> provider(config(Map.of(
+        "sites.1.key", "other",
+        "sites.1.tenant", "7",
+        "sites.1.id", "other.com",
+        "sites.1.name", "Other",
+        "sites.1.origins", "https://other.com"))));
+    assertThrows(IllegalArgumentException.class, () -> provider(config(Map.of("wan.site-key", "example"))));
+  }
+
+  private static PasskeyProvider provider(Config config) {
+    return new PasskeyProvider(config.get("wan"), config.get("sites"), null, null);
+  }
+
+  private static Config config(Map<String, String> overrides) {
+    Map<String, String> values = new HashMap<>(Map.of(
+        "wan.id", "localhost",
+        "wan.name", "Singular nocaptcha",
+        "wan.origins", "https://localhost",
+        "sites.0.key", "example",
+        "sites.0.tenant", "7",
+        "sites.0.id", "example.com",
+        "sites.0.name", "Example",
+        "sites.0.origins", "https://example.com, https://www.example.com"));
+    values.putAll(overrides);
+    return Config.just(ConfigSources.create(values));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class SpentTokensTest {
+
+  private static final long TTL = 120_000;
+
+  @Test
+  public void redeemOnceTest() {
+    var now = new AtomicLong(1_000_000_000L);
+    var spent = new SpentTokens(TTL, 1000, 1e-4, now::get, false);
+    var expiresAt = now.get() + TTL;
+
+    assertTrue(spent.redeem("a", expiresAt));
+    assertTrue(spent.redeem("b", expiresAt));
+    assertFalse(spent.redeem("a", expiresAt));
+
+    var stats = spent.stats();
+    assertEquals(2, stats.redeemed());
+    assertEquals(1, stats.rejected());
+  }
+
+  @Test
+  public void rotationTest() {
+    var now = new AtomicLong(1_000_000_000L);
+    var spent = new SpentTokens(TTL, 1000, 1e-4, now::get, false);
+    var expiresAt = now.get() + TTL;
+    assertTrue(spent.redeem("a", expiresAt));
+
+    // Still valid after one window, so it has to be remembered.
+    now.addAndGet(TTL);
+    spent.rotate();
+    assertFalse(spent.redeem("a", expiresAt));
+    assertTrue(spent.redeem("a", now.get() + TTL));
+
+    // Expired: its window is gone and the filter was reused.
+    now.addAndGet(2 * TTL);
+    spent.rotate();
+    assertFalse(spent.redeem("a", expiresAt));
+  }
+
+  @Test
+  public void falsePositiveRateTest() {
+    var now = new AtomicLong(1_000_000_000L);
+    var spent = new SpentTokens(TTL, 100_000, 1e-3, now::get, false);
+    var expiresAt = now.get() + TTL;
+
+    var collisions = 0;
+    for (var i = 0; i < 100_000; i++) {
+      if (!spent.redeem(UUID.randomUUID().toString(), expiresAt)) {
+        collisions++;
+      }
+    }
+
+    // Filling up from empty, the rate stays below the rate at full load on average.
+    assertTrue(collisions < 100, "Too many false positives: " + collisions);
+    var stats = spent.stats();
+    assertTrue(stats.sizedFalsePositiveRate() <= 1e-3);
+    assertTrue(stats.currentFalsePositiveRate() <= stats.sizedFalsePositiveRate() * 1.5);
+  }
+
+  @Test
+  public void concurrentRedeemTest() throws Exception {
+    var now = new AtomicLong(1_000_000_000L);
+    var spent = new SpentTokens(TTL, 1000, 1e-4, now::get, false);
+    var expiresAt = now.get() + TTL;
+
+    var accepted = new AtomicInteger();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var i = 0; i < 64; i++) {
+        executor.submit(() -> {
+          if (spent.redeem("replayed", expiresAt)) {
+            accepted.incrementAndGet();
+          }
+        });
+      }
+    }
+    assertEquals(1, accepted.get());
+  }
+
+  @Test
+  public void invalidConfigTest() {
+    assertThrows(IllegalArgumentException.class, () -> new SpentTokens(TTL, 0, 1e-4, () -> 0, false));
+    assertThrows(IllegalArgumentException.class, () -> new SpentTokens(TTL, 1000, 0, () -> 0, false));
+    assertThrows(IllegalArgumentException.class, () -> new SpentTokens(TTL, 1000, 1e-12, () -> 0, false));
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class TenantQuotasTest {
+
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void burstThenRateTest() {
+    var now = new AtomicLong(System.nanoTime());
+    var quotas = new TenantQuotas(Map.of(0, new TenantLimits(10, 0, 0, 1, 1)), now::get);
+
+    // One second worth of challenges at once, then one every 100 ms.
+    for (var i = 0; i < 10; i++) {
+      assertTrue(quotas.tryIssue(0));
+    }
+    assertFalse(quotas.tryIssue(0));
+
+    now.addAndGet(50 * MILLI);
+    assertFalse(quotas.tryIssue(0));
+    now.addAndGet(50 * MILLI);
+    assertTrue(quotas.tryIssue(0));
+    assertFalse(quotas.tryIssue(0));
+
+    // A quiet period refills the bucket, but never beyond its burst.
+    now.addAndGet(10_000 * MILLI);
+    for (var i = 0; i < 10; i++) {
+      assertTrue(quotas.tryIssue(0));
+    }
+    assertFalse(quotas.tryIssue(0));
+
+    var stats = quotas.stats().getFirst();
+    assertEquals(21, stats.issued());
+    assertEquals(4, stats.issueThrottled());
+  }
+
+  @Test
+  public void tenantsAreIndependentTest() {
+    var now = new AtomicLong(System.nanoTime());
+    var quotas = new TenantQuotas(Map.of(
+        0, TenantLimits.UNLIMITED,
+        3, new TenantLimits(1, 2, 1, 1, 1)
+    ), now::get);
+
+    assertTrue(quotas.tryIssue(3));
+    assertFalse(quotas.tryIssue(3));
+    assertTrue(quotas.tryVerify(3));
+    assertFalse(quotas.tryVerify(3));
+    for (var i = 0; i < 1000; i++) {
+      assertTrue(quotas.tryIssue(0));
+      assertTrue(quotas.tryVerify(0));
+    }
+
+    now.addAndGet(500 * MILLI);
+    assertFalse(quotas.tryIssue(3));
+    assertTrue(quotas.tryVerify(3));
+
+    // Unknown tenants are left to the site lookup.
+    assertTrue(quotas.tryIssue(7));
+
+    var stats = quotas.stats();
+    assertEquals(2, stats.size());
+    assertEquals(3, stats.get(1).tenant());
+    assertEquals(2, stats.get(1).verified());
+    assertEquals(1, stats.get(1).verifyThrottled());
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.singlr.api.challenge.Challenge;
+import io.helidon.config.Config;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class VerificationTokensTest {
+
+  private static final byte[] KEY_1 = secret(1);
+  private static final byte[] KEY_2 = secret(2);
+  private static final int TENANT = 7;
+  private static final Challenge CHALLENGE = new Challenge(new byte[] {1}, new byte[] {2}, 0, TENANT);
+
+  @Test
+  public void roundTripTest() {
+    var tokens = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC());
+
+    var verification = tokens.verify(tokens.issue(CHALLENGE), TENANT);
+    assertTrue(verification.success());
+    assertNotNull(verification.id());
+    assertEquals(7, (int) verification.tenant());
+    assertEquals(List.of(TokenVerification.METHOD_PASSKEY), verification.amr());
+    assertEquals(Duration.ofSeconds(120), Duration.between(verification.issuedAt(), verification.expiresAt()));
+  }
+
+  @Test
+  public void rotationTest() {
+    var old = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC());
+    var rotated = new VerificationTokens(Map.of("1", KEY_1, "2", KEY_2), "2", "nocaptcha", 120_000,
+        Clock.systemUTC());
+    var retired = new VerificationTokens(Map.of("2", KEY_2), "2", "nocaptcha", 120_000, Clock.systemUTC());
+
+    var token = old.issue(CHALLENGE);
+    assertTrue(rotated.verify(token, TENANT).success());
+    assertEquals(TokenVerification.INVALID_TOKEN, retired.verify(token, TENANT).error());
+    assertFalse(old.verify(rotated.issue(CHALLENGE), TENANT).success());
+  }
+
+  @Test
+  public void rejectedTest() {
+    var tokens = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC());
+    var otherIssuer = new VerificationTokens(Map.of("1", KEY_1), "1", "elsewhere", 120_000, Clock.systemUTC());
+    var past = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000,
+        Clock.fixed(Instant.now().minusSeconds(600), ZoneOffset.UTC));
+
+    assertEquals(TokenVerification.MISSING_TOKEN, tokens.verify(" ", TENANT).error());
+    assertEquals(TokenVerification.INVALID_TOKEN, tokens.verify("not.a.token", TENANT).error());
+    assertEquals(TokenVerification.EXPIRED_TOKEN, tokens.verify(past.issue(CHALLENGE), TENANT).error());
+    assertEquals(TokenVerification.INVALID_TOKEN, tokens.verify(otherIssuer.issue(CHALLENGE), TENANT).error());
+
+    var token = tokens.issue(CHALLENGE);
+    var tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+    assertFalse(tokens.verify(tampered, TENANT).success());
+  }
+
+  @Test
+  public void proofOfWorkTest() {
+    var tokens = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC());
+    var puzzle = new ProofOfWork(Config.empty(), null).mint(TENANT, "192.0.2.1");
+
+    assertEquals(List.of(TokenVerification.METHOD_POW), tokens.verify(tokens.issue(puzzle), TENANT).amr());
+  }
+
+  @Test
+  public void wrongSiteTest() {
+    try (var tokens = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC(),
+        new SpentTokens(120_000, 1000, 1e-4, System::currentTimeMillis, false), 100)) {
+      var token = tokens.issue(CHALLENGE);
+      assertEquals(TokenVerification.WRONG_SITE, tokens.verify(token, Challenge.DEFAULT_TENANT).error());
+      assertTrue(tokens.verify(token, TENANT).success());
+    }
+  }
+
+  @Test
+  public void singleUseTest() {
+    try (var tokens = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC(),
+        new SpentTokens(120_000, 1000, 1e-4, System::currentTimeMillis, false), 100)) {
+      var token = tokens.issue(CHALLENGE);
+      assertTrue(tokens.verify(token, TENANT).success());
+      assertEquals(TokenVerification.SPENT_TOKEN, tokens.verify(token, TENANT).error());
+      assertTrue(tokens.verify(tokens.issue(CHALLENGE), TENANT).success());
+    }
+  }
+
+  @Test
+  public void verifyAllTest() {
+    var tokens = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC());
+    var batch = new ArrayList<String>();
+    for (var i = 0; i < 20; i++) {
+      batch.add(i % 5 == 0 ? "not.a.token" : tokens.issue(CHALLENGE));
+    }
+    batch.add(batch.get(1));
+
+    var results = tokens.verifyAll(batch, TENANT);
+    assertEquals(batch.size(), results.length);
+    for (var i = 0; i < 20; i++) {
+      assertEquals(i % 5 != 0, results[i].success());
+    }
+    assertEquals(results[1], results[20]);
+    assertThrows(IllegalArgumentException.class, () -> tokens.verifyAll(Collections.nCopies(101, "not.a.token"), TENANT));
+  }
+
+  @Test
+  public void verifyAllSingleUseTest() {
+    try (var tokens = new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC(),
+        new SpentTokens(120_000, 1000, 1e-4, System::currentTimeMillis, false), 100)) {
+      var token = tokens.issue(CHALLENGE);
+
+      var results = tokens.verifyAll(List.of(token, tokens.issue(CHALLENGE), token), TENANT);
+      assertTrue(results[0].success());
+      assertTrue(results[1].success());
+      assertEquals(TokenVerification.SPENT_TOKEN, results[2].error());
+    }
+  }
+
+  @Test
+  public void ecdsaTest() throws Exception {
+    var generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    var tokens = VerificationTokens.ecdsa(Map.of("1", generator.generateKeyPair()), "1", "nocaptcha", 120_000,
+        Clock.systemUTC());
+
+    assertTrue(tokens.verify(tokens.issue(CHALLENGE), TENANT).success());
+    var jwks = new String(tokens.jwks(), StandardCharsets.UTF_8);
+    assertTrue(jwks.contains("\"kid\":\"1\""));
+    assertTrue(jwks.contains("\"crv\":\"P-256\""));
+    assertNull(new VerificationTokens(Map.of("1", KEY_1), "1", "nocaptcha", 120_000, Clock.systemUTC()).jwks());
+  }
+
+  @Test
+  public void invalidKeysTest() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new VerificationTokens(Map.of("1", KEY_1), "2", "nocaptcha", 120_000, Clock.systemUTC()));
+    assertThrows(IllegalArgumentException.class,
+        () -> new VerificationTokens(Map.of("1", new byte[16]), "1", "nocaptcha", 120_000, Clock.systemUTC()));
+  }
+
+  private static byte[] secret(int seed) {
+    var secret = new byte[32];
+    Arrays.fill(secret, (byte) seed);
+    return secret;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class ChallengeSealerTest {
+
+  private static final byte[] KEY_1 = secret(1);
+  private static final byte[] KEY_2 = secret(2);
+  private static final byte[] HANDLE = {1, 2, 3, 4, 5, 6, 7, 8};
+
+  @Test
+  public void sealAndUnsealTest() {
+    var sealer = new ChallengeSealer(Map.of(1, KEY_1), 1);
+
+    var sealed = sealer.seal(HANDLE, 1000, 7);
+    var challenge = sealer.unseal(sealed);
+
+    assertNotNull(challenge);
+    assertArrayEquals(sealed, challenge.challenge());
+    assertArrayEquals(HANDLE, challenge.userHandle());
+    assertEquals(1000L, challenge.issuedAt());
+    assertEquals(7, challenge.tenant());
+  }
+
+  @Test
+  public void tamperedChallengeTest() {
+    var sealer = new ChallengeSealer(Map.of(1, KEY_1), 1);
+    var sealed = sealer.seal(HANDLE, 1000, 0);
+
+    for (var i = 0; i < sealed.length; i++) {
+      var tampered = Arrays.copyOf(sealed, sealed.length);
+      tampered[i] ^= 0x01;
+      assertNull(sealer.unseal(tampered));
+    }
+    assertNull(sealer.unseal(Arrays.copyOf(sealed, sealed.length - 1)));
+    assertNull(sealer.unseal(new byte[0]));
+  }
+
+  @Test
+  public void keyRotationTest() {
+    var oldSealer = new ChallengeSealer(Map.of(1, KEY_1), 1);
+    var rotated = new ChallengeSealer(Map.of(1, KEY_1, 2, KEY_2), 2);
+    var retired = new ChallengeSealer(Map.of(2, KEY_2), 2);
+
+    var sealedWithOldKey = oldSealer.seal(HANDLE, 1000, 0);
+    assertNotNull(rotated.unseal(sealedWithOldKey));
+    assertNull(retired.unseal(sealedWithOldKey));
+    assertNotNull(retired.unseal(rotated.seal(HANDLE, 1000, 0)));
+  }
+
+  @Test
+  public void invalidKeysTest() {
+    assertThrows(IllegalArgumentException.class, () -> new ChallengeSealer(Map.of(1, KEY_1), 2));
+    assertThrows(IllegalArgumentException.class, () -> new ChallengeSealer(Map.of(1, new byte[16]), 1));
+  }
+
+  private static byte[] secret(int seed) {
+    var secret = new byte[32];
+    Arrays.fill(secret, (byte) seed);
+    return secret;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import static ai.singlr.api.challenge.InMemoryChallengeStoreTest.challenge;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+
+public class ChallengeSnapshotTest {
+
+  private static final long TTL = 10_000;
+
+  @Test
+  public void saveAndRestoreTest() throws IOException {
+    var path = Files.createTempDirectory("snapshot").resolve("challenges.snapshot");
+    var source = new OffHeapChallengeStore(100, 4, TTL, 1000, () -> 20_000L, false);
+    source.put(challenge("fresh", 15_000));
+    source.put(challenge("stale", 12_000));
+    source.claim(challenge("claimed", 16_000));
+
+    assertEquals(3, ChallengeSnapshot.save(source, path));
+
+    // By the time the node is back, "stale" has expired.
+    var target = new InMemoryChallengeStore(100, TTL, 1000, () -> 23_000L, false);
+    assertEquals(2, ChallengeSnapshot.restore(target, path, TTL, 23_000));
+    assertFalse(Files.exists(path));
+
+    var fresh = target.remove(challenge("fresh", 0).key());
+    assertNotNull(fresh);
+    assertEquals(15_000, fresh.issuedAt());
+    assertArrayEquals(challenge("fresh", 0).challenge(), fresh.challenge());
+    assertNull(target.remove(challenge("stale", 0).key()));
+    assertFalse(target.claim(challenge("claimed", 16_000)));
+  }
+
+  @Test
+  public void missingSnapshotTest() throws IOException {
+    var path = Files.createTempDirectory("snapshot").resolve("missing.snapshot");
+    var store = new InMemoryChallengeStore(100, TTL, 1000, () -> 0L, false);
+    assertEquals(0, ChallengeSnapshot.restore(store, path, TTL, 0));
+  }
+
+  @Test
+  public void corruptSnapshotTest() throws IOException {
+    var path = Files.createTempDirectory("snapshot").resolve("corrupt.snapshot");
+    Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    var store = new InMemoryChallengeStore(100, TTL, 1000, () -> 0L, false);
+    assertThrows(IOException.class, () -> ChallengeSnapshot.restore(store, path, TTL, 0));
+    assertFalse(Files.exists(path));
+  }
+}
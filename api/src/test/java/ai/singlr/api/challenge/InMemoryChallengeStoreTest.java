@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryChallengeStoreTest {
+
+  @Test
+  public void putAndRemoveTest() {
+    var clock = new AtomicLong(0);
+    var store = new InMemoryChallengeStore(10, 10_000, 1000, clock::get, false);
+
+    var challenge = challenge("a", 0);
+    store.put(challenge);
+    assertEquals(1, store.stats().live());
+    assertTrue(store.contains(challenge.key()));
+    assertSame(challenge, store.remove(challenge.key()));
+    assertFalse(store.contains(challenge.key()));
+    assertNull(store.remove(challenge.key()));
+    assertEquals(0, store.stats().live());
+
+    // Clients may leave the id out.
+    assertNull(store.remove(null));
+    assertFalse(store.contains(null));
+  }
+
+  @Test
+  public void expiryTest() {
+    var clock = new AtomicLong(0);
+    var store = new InMemoryChallengeStore(10, 10_000, 1000, clock::get, false);
+
+    var first = challenge("a", 0);
+    var second = challenge("b", 5_000);
+    store.put(first);
+    store.put(second);
+
+    clock.set(10_500);
+    store.expire(clock.get());
+    assertEquals(1, store.stats().live());
+    assertEquals(1, store.stats().expirations());
+    assertNull(store.remove(first.key()));
+    assertSame(second, store.remove(second.key()));
+  }
+
+  @Test
+  public void expiredButNotSweptTest() {
+    var clock = new AtomicLong(0);
+    var store = new InMemoryChallengeStore(10, 10_000, 1000, clock::get, false);
+
+    var challenge = challenge("a", 0);
+    store.put(challenge);
+    clock.set(10_000);
+    assertNull(store.remove(challenge.key()));
+    assertEquals(1, store.stats().expirations());
+  }
+
+  @Test
+  public void capacityEvictsOldestTest() {
+    var clock = new AtomicLong(0);
+    var store = new InMemoryChallengeStore(3, 10_000, 1000, clock::get, false);
+
+    for (var i = 0; i < 5; i++) {
+      clock.set(i * 1000L);
+      store.put(challenge("k" + i, clock.get()));
+    }
+
+    var stats = store.stats();
+    assertEquals(3, stats.live());
+    assertEquals(2, stats.evictions());
+    assertNull(store.remove(challenge("k0", 0).key()));
+    assertNull(store.remove(challenge("k1", 0).key()));
+    assertEquals(4000L, store.remove(challenge("k4", 0).key()).issuedAt());
+  }
+
+  static Challenge challenge(String handle, long issuedAt) {
+    return new Challenge(new byte[32], handle.getBytes(StandardCharsets.UTF_8), issuedAt, Challenge.DEFAULT_TENANT);
+  }
+}
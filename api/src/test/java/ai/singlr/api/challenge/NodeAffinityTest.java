@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class NodeAffinityTest {
+
+  @Test
+  public void tagTest() {
+    var affinity = new NodeAffinity(3, 1025);
+    var handle = affinity.tag("handle".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("3.1025", affinity.route());
+    assertEquals("3.1025", NodeAffinity.routeOf(handle));
+    assertTrue(affinity.isLocal(handle));
+  }
+
+  @Test
+  public void foreignHandleTest() {
+    var handle = new NodeAffinity(3, 7).tag("handle".getBytes(StandardCharsets.UTF_8));
+
+    assertFalse(new NodeAffinity(3, 8).isLocal(handle));
+    assertFalse(new NodeAffinity(4, 7).isLocal(handle));
+    assertNull(NodeAffinity.routeOf(new byte[] {1, 2, 3}));
+  }
+
+  @Test
+  public void invalidNodeTest() {
+    assertThrows(IllegalArgumentException.class, () -> new NodeAffinity(256, 1));
+    assertThrows(IllegalArgumentException.class, () -> new NodeAffinity(0, 65536));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import static ai.singlr.api.challenge.InMemoryChallengeStoreTest.challenge;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapChallengeStoreTest {
+
+  @Test
+  public void roundTripTest() {
+    var clock = new AtomicLong(0);
+    var store = new OffHeapChallengeStore(16, 1, 10_000, 1000, clock::get, false);
+
+    var original = new Challenge(new byte[] {1, 2, 3}, new byte[] {9, 8, 7, 6}, 42, 5);
+    store.put(original);
+    assertTrue(store.contains(original.key()));
+    var restored = store.remove(original.key());
+    assertFalse(store.contains(original.key()));
+
+    assertNotNull(restored);
+    assertArrayEquals(original.challenge(), restored.challenge());
+    assertArrayEquals(original.userHandle(), restored.userHandle());
+    assertEquals(42L, restored.issuedAt());
+    assertEquals(5, restored.tenant());
+    assertNull(store.remove(original.key()));
+    assertEquals(0, store.stats().live());
+
+    // Clients may leave the id out or send garbage.
+    assertNull(store.remove(null));
+    assertNull(store.remove("not base64url!"));
+    assertFalse(store.contains(null));
+  }
+
+  @Test
+  public void manyEntriesSurviveDeletesTest() {
+    var clock = new AtomicLong(0);
+    var store = new OffHeapChallengeStore(4000, 4, 10_000, 1000, clock::get, false);
+
+    for (var i = 0; i < 1000; i++) {
+      store.put(challenge("handle-" + i, 0));
+    }
+    assertEquals(1000, store.stats().live());
+
+    // Deleting every other entry shifts clusters around; the remaining ones must still be reachable.
+    for (var i = 0; i < 1000; i += 2) {
+      assertNotNull(store.remove(challenge("handle-" + i, 0).key()));
+    }
+    for (var i = 1; i < 1000; i += 2) {
+      assertNotNull(store.remove(challenge("handle-" + i, 0).key()), "handle-" + i);
+    }
+    assertEquals(0, store.stats().live());
+  }
+
+  @Test
+  public void expiryTest() {
+    var clock = new AtomicLong(0);
+    var store = new OffHeapChallengeStore(100, 2, 10_000, 1000, clock::get, false);
+
+    for (var i = 0; i < 50; i++) {
+      store.put(challenge("old-" + i, 0));
+    }
+    store.put(challenge("new", 5_000));
+
+    store.expire(10_000);
+    assertEquals(1, store.stats().live());
+    assertEquals(50, store.stats().expirations());
+    assertNotNull(store.remove(challenge("new", 0).key()));
+  }
+
+  @Test
+  public void capacityEvictsTest() {
+    var clock = new AtomicLong(0);
+    var store = new OffHeapChallengeStore(8, 1, 10_000, 1000, clock::get, false);
+
+    for (var i = 0; i < 20; i++) {
+      store.put(challenge("k" + i, i));
+    }
+
+    assertEquals(8, store.stats().live());
+    assertEquals(12, store.stats().evictions());
+    assertNotNull(store.remove(challenge("k19", 0).key()));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import static ai.singlr.api.challenge.InMemoryChallengeStoreTest.challenge;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class OutstandingChallengesTest {
+
+  private static final long TTL = 10_000;
+
+  @Test
+  public void reuseTest() {
+    var clock = new AtomicLong(1_000);
+    var outstanding = new OutstandingChallenges(4, 16, TTL, clock::get, false);
+    var challenge = challenge("first", clock.get());
+    outstanding.add("0/10.0.0.1", "widget", challenge);
+
+    assertSame(challenge, outstanding.reuse("0/10.0.0.1", "widget"));
+    assertNull(outstanding.reuse("0/10.0.0.1", "other"));
+    assertNull(outstanding.reuse("0/10.0.0.2", "widget"));
+    assertNull(outstanding.reuse("0/10.0.0.1", null));
+
+    // Past half of the TTL the user may not have time to finish, so a new challenge is minted instead.
+    clock.addAndGet(TTL / 2);
+    assertNull(outstanding.reuse("0/10.0.0.1", "widget"));
+  }
+
+  @Test
+  public void forgetTest() {
+    var outstanding = new OutstandingChallenges(4, 16, TTL, () -> 1_000L, false);
+    var challenge = challenge("forgotten", 1_000);
+    outstanding.add("0/10.0.0.1", "widget", challenge);
+    outstanding.forget(challenge.key());
+
+    assertNull(outstanding.reuse("0/10.0.0.1", "widget"));
+    assertEquals(0, outstanding.clients());
+  }
+
+  @Test
+  public void capTest() {
+    var clock = new AtomicLong(1_000);
+    var outstanding = new OutstandingChallenges(2, 16, TTL, clock::get, false);
+    outstanding.add("0/10.0.0.1", null, challenge("a", clock.get()));
+    assertTrue(outstanding.hasRoom("0/10.0.0.1"));
+    outstanding.add("0/10.0.0.1", null, challenge("b", clock.get()));
+    assertFalse(outstanding.hasRoom("0/10.0.0.1"));
+    assertTrue(outstanding.hasRoom("0/10.0.0.2"));
+
+    // A new challenge for the same widget instance replaces the previous one.
+    var capped = new OutstandingChallenges(1, 16, TTL, clock::get, false);
+    capped.add("0/10.0.0.1", "widget", challenge("c", clock.get()));
+    capped.add("0/10.0.0.1", "widget", challenge("d", clock.get()));
+    capped.forget(challenge("d", 0).key());
+    assertTrue(capped.hasRoom("0/10.0.0.1"));
+
+    clock.addAndGet(TTL);
+    assertTrue(outstanding.hasRoom("0/10.0.0.1"));
+    outstanding.expire(clock.get());
+    assertEquals(0, outstanding.clients());
+  }
+
+  @Test
+  public void boundedTest() {
+    var clock = new AtomicLong(1_000);
+    var outstanding = new OutstandingChallenges(2, 16, TTL, clock::get, false);
+    for (var i = 0; i < 100; i++) {
+      outstanding.add("0/10.0.0." + i, "widget", challenge("flood-" + i, clock.get()));
+    }
+    assertEquals(16, outstanding.clients());
+    assertEquals(84, outstanding.untracked());
+
+    // Tracked clients keep being served, the others are neither deduplicated nor capped.
+    assertNotNull(outstanding.reuse("0/10.0.0.0", "widget"));
+    assertNull(outstanding.reuse("0/10.0.0.99", "widget"));
+    assertTrue(outstanding.hasRoom("0/10.0.0.99"));
+
+    // Room is made as soon as challenges expire.
+    clock.addAndGet(TTL);
+    outstanding.expire(clock.get());
+    outstanding.add("0/10.0.0.99", "widget", challenge("late", clock.get()));
+    assertEquals(1, outstanding.clients());
+  }
+}
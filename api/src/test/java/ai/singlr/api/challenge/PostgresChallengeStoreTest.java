@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.challenge;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+public class PostgresChallengeStoreTest {
+
+  private static final long TTL = 10_000;
+  private static final long PARTITION = 1_000;
+
+  private static PostgreSQLContainer<?> postgres;
+
+  @BeforeAll
+  public static void setUp() {
+    assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+    postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+    postgres.start();
+  }
+
+  @AfterAll
+  public static void tearDown() {
+    if (postgres != null) {
+      postgres.stop();
+    }
+  }
+
+  @Test
+  public void putAndRemoveTest() {
+    var clock = new AtomicLong(1_000_000);
+    try (var store = newStore(clock)) {
+      store.put(challenge("put", clock.get()));
+
+      var removed = store.remove(challenge("put", 0).key());
+      assertNotNull(removed);
+      assertArrayEquals("put".getBytes(StandardCharsets.UTF_8), removed.userHandle());
+      assertArrayEquals(new byte[] {1, 2, 3}, removed.challenge());
+      assertEquals(clock.get(), removed.issuedAt());
+      assertNull(store.remove(challenge("put", 0).key()));
+    }
+  }
+
+  @Test
+  public void putReplacesTest() {
+    var clock = new AtomicLong(1_500_000);
+    try (var store = newStore(clock)) {
+      // Same expiry, same partition.
+      store.put(challenge("replaced", clock.get()));
+      store.put(new Challenge(new byte[] {4, 5, 6}, "replaced".getBytes(StandardCharsets.UTF_8), clock.get(), 7));
+      // Later expiry, next partition.
+      store.put(challenge("moved", clock.get()));
+      store.put(challenge("moved", clock.get() + PARTITION));
+
+      var replaced = store.remove(challenge("replaced", 0).key());
+      assertArrayEquals(new byte[] {4, 5, 6}, replaced.challenge());
+      assertEquals(7, replaced.tenant());
+      assertNull(store.remove(challenge("replaced", 0).key()));
+
+      assertEquals(clock.get() + PARTITION, store.remove(challenge("moved", 0).key()).issuedAt());
+      assertNull(store.remove(challenge("moved", 0).key()));
+    }
+  }
+
+  @Test
+  public void expiryTest() {
+    var clock = new AtomicLong(2_000_000);
+    try (var store = newStore(clock)) {
+      store.put(challenge("expiry", clock.get()));
+      clock.addAndGet(TTL);
+      assertNull(store.remove(challenge("expiry", 0).key()));
+    }
+  }
+
+  @Test
+  public void expiredPartitionsAreDroppedTest() {
+    var clock = new AtomicLong(3_000_000);
+    try (var store = newStore(clock)) {
+      store.put(challenge("dropped", clock.get()));
+      clock.addAndGet(TTL + PARTITION);
+      store.maintain(clock.get());
+
+      clock.set(3_000_000);
+      assertNull(store.remove(challenge("dropped", 0).key()));
+    }
+  }
+
+  @Test
+  public void concurrentClaimsTest() throws Exception {
+    var clock = new AtomicLong(4_000_000);
+    try (var store = newStore(clock); var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var challenge = challenge("claimed", clock.get());
+      List<Future<Boolean>> claims = new ArrayList<>();
+      for (var i = 0; i < 50; i++) {
+        claims.add(executor.submit((Callable<Boolean>) () -> store.claim(challenge)));
+      }
+
+      var wins = 0;
+      for (var claim : claims) {
+        if (claim.get()) {
+          wins++;
+        }
+      }
+      assertEquals(1, wins);
+      assertFalse(store.claim(challenge));
+      assertTrue(store.claim(challenge("other", clock.get())));
+    }
+  }
+
+  private static PostgresChallengeStore newStore(AtomicLong clock) {
+    return new PostgresChallengeStore(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword(), TTL,
+        PARTITION, 64, 0, 1000, clock::get, false);
+  }
+
+  private static Challenge challenge(String handle, long issuedAt) {
+    return new Challenge(new byte[] {1, 2, 3}, handle.getBytes(StandardCharsets.UTF_8), issuedAt,
+        Challenge.DEFAULT_TENANT);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.request;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.singlr.api.TestAuthenticator;
+import ai.singlr.api.auth.PasskeyProvider;
+import ai.singlr.api.challenge.Challenge;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.exc.StreamConstraintsException;
+import com.yubico.webauthn.data.ByteArray;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class PasskeyCaptchaReaderTest {
+
+  private final PasskeyCaptchaReader reader = PasskeyCaptchaReader.json();
+
+  @Test
+  public void notAnObjectTest() {
+    var ex = assertThrows(IllegalArgumentException.class, () -> read("[]"));
+    assertEquals("A JSON object must be specified", ex.getMessage());
+  }
+
+  @Test
+  public void missingCredentialTest() {
+    var ex = assertThrows(IllegalArgumentException.class, () -> read("{\"id\":\"abc\",\"other\":{\"a\":[1,2]}}"));
+    assertEquals("Public key credential is required", ex.getMessage());
+  }
+
+  @Test
+  public void invalidFieldsTest() {
+    assertThrows(IllegalArgumentException.class, () -> read("{\"id\":42}"));
+    assertThrows(IllegalArgumentException.class, () -> read("{\"id\":\"" + "a".repeat(65) + "\"}"));
+    assertThrows(IllegalArgumentException.class, () -> read("{\"pubKeyCredOpts\":\"{}\"}"));
+  }
+
+  @Test
+  public void limitsTest() {
+    assertThrows(StreamConstraintsException.class, () -> read("{\"id\":\"" + "a".repeat(40 * 1024) + "\"}"));
+    assertThrows(StreamConstraintsException.class, () -> read("{\"other\":" + "[".repeat(32) + "]".repeat(32) + "}"));
+    assertThrows(StreamConstraintsException.class,
+        () -> read("{" + "\"other\":\"abcdefgh\",".repeat(8 * 1024) + "\"id\":null}"));
+  }
+
+  @Test
+  public void malformedTest() {
+    assertThrows(JsonParseException.class, () -> read("{\"id\":\"abc\""));
+  }
+
+  @Test
+  public void cborTest() {
+    var cbor = PasskeyCaptchaReader.cbor();
+
+    // {"id": "abc", "pubKeyCredOpts": {"rawId": h'01'}}
+    var missing = new byte[] {(byte) 0xa2, 0x62, 'i', 'd', 0x63, 'a', 'b', 'c', 0x6e, 'p', 'u', 'b', 'K', 'e', 'y', 'C',
+        'r', 'e', 'd', 'O', 'p', 't', 's', (byte) 0xa1, 0x65, 'r', 'a', 'w', 'I', 'd', 0x41, 0x01};
+    var ex = assertThrows(IllegalArgumentException.class, () -> cbor.read(new ByteArrayInputStream(missing)));
+    assertEquals("rawId, clientDataJSON and attestationObject are required", ex.getMessage());
+
+    // {"pubKeyCredOpts": {"rawId": "AQ"}}
+    var text = new byte[] {(byte) 0xa1, 0x6e, 'p', 'u', 'b', 'K', 'e', 'y', 'C', 'r', 'e', 'd', 'O', 'p', 't', 's',
+        (byte) 0xa1, 0x65, 'r', 'a', 'w', 'I', 'd', 0x62, 'A', 'Q'};
+    ex = assertThrows(IllegalArgumentException.class, () -> cbor.read(new ByteArrayInputStream(text)));
+    assertEquals("rawId must be a byte string", ex.getMessage());
+  }
+
+  @Test
+  public void cborMatchesJsonTest() throws Exception {
+    var passkeyProvider = new PasskeyProvider(Config.just(ConfigSources.create(Map.of(
+        "id", "localhost",
+        "name", "Test",
+        "origins", "https://localhost"))));
+    var challenge = passkeyProvider.mintChallenge(Challenge.DEFAULT_TENANT);
+    var credential = new TestAuthenticator().create("localhost", "https://localhost",
+        new ByteArray(challenge.challenge()).getBase64Url(), new ByteArray(challenge.userHandle()).getBase64Url());
+
+    // The same passkey reads the same whichever encoding the widget picked.
+    var json = read(credential.json(credential.userHandle()));
+    var cbor = PasskeyCaptchaReader.cbor().read(new ByteArrayInputStream(credential.cbor(credential.userHandle())));
+    assertEquals(json, cbor);
+
+    // And registers the same key.
+    var jsonResult = passkeyProvider.completeCaptcha(json.credential(), challenge);
+    var cborResult = passkeyProvider.completeCaptcha(cbor.credential(), challenge);
+    assertTrue(jsonResult.isSuccess());
+    assertTrue(cborResult.isSuccess());
+    assertEquals(jsonResult.value().getKeyId(), cborResult.value().getKeyId());
+    assertEquals(jsonResult.value().getPublicKeyCose(), cborResult.value().getPublicKeyCose());
+    assertEquals(jsonResult.value().isUserVerified(), cborResult.value().isUserVerified());
+  }
+
+  private PasskeyCaptcha read(String body) throws Exception {
+    return reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import ai.singlr.core.ErrorCode;
+import ai.singlr.core.result.Result;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+public class ErrorResponseTest {
+
+  @Test
+  public void encodedLikeSharedMapperTest() throws Exception {
+    // Configured like the mapper ApiServer shares with the rest of the service.
+    var mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    var response = new ErrorResponse(ErrorCode.INVALID, "ID is required.");
+    assertArrayEquals(mapper.writeValueAsBytes(new Result<>(ErrorCode.INVALID, "ID is required.", null)),
+        response.body());
+  }
+
+  @Test
+  public void defaultsTest() throws Exception {
+    for (var errorCode : ErrorCode.registered()) {
+      var response = ErrorResponse.of(errorCode);
+      assertSame(response, ErrorResponse.of(errorCode));
+      assertArrayEquals(new ObjectMapper().writeValueAsBytes(new Result<>(errorCode, errorCode.message(), null)),
+          response.body());
+    }
+  }
+}
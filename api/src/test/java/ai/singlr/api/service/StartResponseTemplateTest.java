@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ai.singlr.api.challenge.Challenge;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+public class StartResponseTemplateTest {
+
+  private static final String OPTIONS = "{\"publicKey\":{\"challenge\":\"challengeMarker0\","
+      + "\"user\":{\"name\":\"@@name@@\",\"displayName\":\"@@displayName@@\",\"id\":\"userHandleMarker\"},"
+      + "\"timeout\":60000}}";
+
+  @Test
+  public void renderTest() {
+    var template = new StartResponseTemplate(OPTIONS);
+    var challenge = new Challenge(new byte[] {1, 2, 3, (byte) 0xfb}, new byte[] {(byte) 0xff, 0, 7}, 0, 0);
+    var encoder = Base64.getUrlEncoder().withoutPadding();
+
+    var expected = "{\"pubKeyCredOpts\":" + OPTIONS
+        .replace("challengeMarker0", encoder.encodeToString(challenge.challenge()))
+        .replace("userHandleMarker", encoder.encodeToString(challenge.userHandle()))
+        .replace("@@name@@", "Anonymous")
+        .replace("@@displayName@@", "Anonymous") + "}";
+    assertEquals(expected, new String(template.render("Anonymous", challenge), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void escapeTest() {
+    var template = new StartResponseTemplate(OPTIONS);
+    var challenge = new Challenge(new byte[] {1}, new byte[] {2}, 0, 0);
+
+    var response = new String(template.render("a\"b\\cé", challenge), StandardCharsets.UTF_8);
+    assertEquals(2, response.split("\"a\\\\\"b\\\\\\\\cé\"", -1).length - 1);
+  }
+
+  @Test
+  public void wrapTest() {
+    var template = new StartResponseTemplate(OPTIONS);
+    assertEquals("{\"pubKeyCredOpts\":{\"a\":1}}",
+        new String(template.wrap("{\"a\":1}"), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void missingMarkerTest() {
+    assertThrows(IllegalStateException.class, () -> new StartResponseTemplate("{\"publicKey\":{}}"));
+  }
+}
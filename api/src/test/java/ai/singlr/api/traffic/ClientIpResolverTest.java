@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ClientIpResolverTest {
+
+  private final ClientIpResolver resolver =
+      new ClientIpResolver(List.of("10.0.0.0/8", "2001:db8:ffff::/48"), "X-Forwarded-For", 16);
+
+  @Test
+  public void walkTest() throws Exception {
+    var proxy = InetAddress.getByName("10.0.0.1");
+
+    // The header is ignored unless a trusted proxy sent it.
+    assertEquals(address("203.0.113.9"), resolver.walk(address("203.0.113.9"), List.of("198.51.100.1")));
+
+    // The first untrusted address from the right wins, whatever the client wrote on the left.
+    assertEquals(address("198.51.100.1"), resolver.walk(proxy, List.of("1.2.3.4, 198.51.100.1, 10.0.0.2")));
+    assertEquals(address("198.51.100.1"), resolver.walk(proxy, List.of("1.2.3.4", "198.51.100.1,10.0.0.2")));
+    assertEquals(address("2001:db8::1"), resolver.walk(proxy, List.of("[2001:db8::1]:443, 2001:db8:ffff::7")));
+    assertEquals(address("198.51.100.1"), resolver.walk(proxy, List.of("198.51.100.1:55123")));
+
+    // Without a header, or with only trusted proxies in it, the last address reached is used.
+    assertEquals(proxy, resolver.walk(proxy, List.of()));
+    assertEquals(address("10.0.0.3"), resolver.walk(proxy, List.of("10.0.0.3, 10.0.0.2")));
+
+    // An entry that is not an address stops the walk.
+    assertEquals(address("10.0.0.2"), resolver.walk(proxy, List.of("198.51.100.1, unknown, 10.0.0.2")));
+  }
+
+  @Test
+  public void parseHopTest() {
+    var key = new long[2];
+    assertTrue(ClientIpResolver.parseHop("192.0.2.1", key));
+    assertEquals(0xffff_c000_0201L, key[1]);
+    assertTrue(ClientIpResolver.parseHop("192.0.2.1:8080", key));
+    assertEquals(0xffff_c000_0201L, key[1]);
+    assertTrue(ClientIpResolver.parseHop("[::1]:8080", key));
+    assertEquals(1, key[1]);
+    assertTrue(ClientIpResolver.parseHop("::2", key));
+    assertEquals(2, key[1]);
+    assertFalse(ClientIpResolver.parseHop("unknown", key));
+    assertFalse(ClientIpResolver.parseHop("_hidden", key));
+    assertFalse(ClientIpResolver.parseHop("[::1", key));
+  }
+
+  @Test
+  public void invalidConfigTest() {
+    assertThrows(IllegalArgumentException.class, () -> new ClientIpResolver(List.of(), "X-Forwarded-For", 1000));
+    assertThrows(IllegalArgumentException.class, () -> new ClientIpResolver(List.of("10.0.0.0/33"), "X-Real-IP", 16));
+  }
+
+  private static InetAddress address(String literal) throws Exception {
+    return InetAddress.getByName(literal);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class HeavyHittersTest {
+
+  private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+  @Test
+  public void windowsTest() {
+    var now = new AtomicLong(1000 * MINUTE);
+    var hitters = new HeavyHitters(64, now::get);
+
+    for (var i = 0; i < 100; i++) {
+      hitters.recordAddress("198.51.100.7");
+    }
+    now.addAndGet(10 * MINUTE);
+    for (var i = 0; i < 30; i++) {
+      hitters.recordAddress("203.0.113.9");
+      hitters.recordAddress("203.0.113.10");
+      hitters.recordInstance("widget-1");
+    }
+
+    var lastMinute = hitters.report(HeavyHitters.Window.ONE_MINUTE, 10);
+    assertEquals("1m", lastMinute.window());
+    assertEquals(2, lastMinute.addresses().size());
+    assertEquals("203.0.113.0/24", lastMinute.prefixes().getFirst().key());
+    assertEquals(60, lastMinute.prefixes().getFirst().count());
+    assertEquals("widget-1", lastMinute.instances().getFirst().key());
+
+    var lastHour = hitters.report(HeavyHitters.Window.ONE_HOUR, 1);
+    assertEquals(1, lastHour.addresses().size());
+    assertEquals(new HeavyHitters.Hitter("198.51.100.7", 100, 0), lastHour.addresses().getFirst());
+
+    // Gone once the hour is over.
+    now.addAndGet(51 * MINUTE);
+    assertTrue(hitters.report(HeavyHitters.Window.ONE_HOUR, 10).prefixes().stream()
+        .noneMatch(hitter -> hitter.key().equals("198.51.100.0/24")));
+  }
+
+  @Test
+  public void partialMinuteTest() {
+    var now = new AtomicLong(1000 * MINUTE);
+    var hitters = new HeavyHitters(64, now::get);
+    for (var i = 0; i < 100; i++) {
+      hitters.recordAddress("198.51.100.7");
+    }
+
+    // A quarter of the last minute still overlaps the previous one.
+    now.addAndGet(MINUTE + 3 * MINUTE / 4);
+    assertEquals(25, hitters.report(HeavyHitters.Window.ONE_MINUTE, 1).addresses().getFirst().count());
+    assertEquals(100, hitters.report(HeavyHitters.Window.FIVE_MINUTES, 1).addresses().getFirst().count());
+  }
+
+  @Test
+  public void concurrentTest() throws Exception {
+    var now = new AtomicLong(1000 * MINUTE);
+    var hitters = new HeavyHitters(64, now::get);
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var t = 0; t < 8; t++) {
+        var thread = t;
+        executor.submit(() -> {
+          for (var i = 0; i < 10_000; i++) {
+            hitters.recordAddress(i % 4 == 0 ? "192.0.2.1" : "10.0." + thread + "." + (i % 1000));
+          }
+        });
+      }
+    }
+
+    var top = hitters.report(HeavyHitters.Window.ONE_MINUTE, 1).addresses().getFirst();
+    assertEquals("192.0.2.1", top.key());
+    assertTrue(top.count() >= 20_000 && top.count() - top.error() <= 20_000);
+  }
+
+  @Test
+  public void prefixTest() {
+    assertEquals("192.0.2.0/24", HeavyHitters.prefix("192.0.2.44"));
+    assertEquals("2001:db8:1::/48", HeavyHitters.prefix("2001:0db8:0001:0002::1"));
+    assertEquals("2001:db8:0::/48", HeavyHitters.prefix("2001:db8::7"));
+    assertEquals("0:0:0::/48", HeavyHitters.prefix("::1"));
+    assertEquals("unknown", HeavyHitters.prefix("unknown"));
+    assertNull(HeavyHitters.Window.of("2m"));
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+public class IpBlocklistTest {
+
+  @Test
+  public void reloadTest() throws Exception {
+    var directory = Files.createTempDirectory("blocklist");
+    var source = directory.resolve("blocklist.txt");
+    var target = directory.resolve("blocklist.bin");
+
+    // Nothing is blocked until the file shows up.
+    try (var blocklist = new IpBlocklist(target, 0)) {
+      assertFalse(blocklist.isBlocked("192.0.2.1"));
+      assertNull(blocklist.stats().loadedAt());
+
+      Files.writeString(source, "# Documentation networks\n192.0.2.0/24\n\n2001:db8::/32 # IPv6\n");
+      assertEquals(2, BlocklistCompiler.compile(source, target));
+      assertTrue(blocklist.reload());
+      assertFalse(blocklist.reload());
+      assertTrue(blocklist.isBlocked("192.0.2.1"));
+      assertTrue(blocklist.isBlocked("2001:db8::1"));
+      assertFalse(blocklist.isBlocked("198.51.100.1"));
+
+      Files.writeString(source, "198.51.100.0/24\n");
+      BlocklistCompiler.compile(source, target);
+      Files.setLastModifiedTime(target, FileTime.from(Instant.now().plusSeconds(5)));
+      assertTrue(blocklist.reload());
+      assertFalse(blocklist.isBlocked("192.0.2.1"));
+      assertTrue(blocklist.isBlocked("198.51.100.1"));
+
+      var stats = blocklist.stats();
+      assertEquals(1, stats.ranges());
+      assertEquals(6, stats.lookups());
+      assertEquals(3, stats.blocked());
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class PrefixTrieTest {
+
+  @Test
+  public void lookupTest() throws Exception {
+    var path = Files.createTempDirectory("blocklist").resolve("blocklist.bin");
+    var ranges = PrefixTrie.write(List.of(
+        "192.0.2.0/24",
+        "192.0.2.128/25",
+        "198.51.100.7",
+        "203.0.113.0/28",
+        "2001:db8::/32",
+        "2001:db8:1::/48",
+        "fe80::1"
+    ), path);
+    // The /25 and the /48 are covered by wider ranges.
+    assertEquals(5, ranges);
+
+    var trie = PrefixTrie.map(path);
+    assertEquals(5, trie.ranges());
+    assertEquals(9, trie.nodes());
+    assertTrue(trie.contains("192.0.2.1"));
+    assertTrue(trie.contains("192.0.2.255"));
+    assertFalse(trie.contains("192.0.3.0"));
+    assertTrue(trie.contains("198.51.100.7"));
+    assertFalse(trie.contains("198.51.100.8"));
+    assertTrue(trie.contains("203.0.113.15"));
+    assertFalse(trie.contains("203.0.113.16"));
+    assertTrue(trie.contains("2001:db8:ffff::1"));
+    assertTrue(trie.contains("::ffff:192.0.2.9"));
+    assertFalse(trie.contains("2001:db9::1"));
+    assertTrue(trie.contains("fe80::1%eth0"));
+    assertFalse(trie.contains("fe80::2"));
+    assertFalse(trie.contains("not an address"));
+  }
+
+  @Test
+  public void matchesLinearScanTest() throws Exception {
+    var random = new Random(11);
+    List<String> cidrs = new ArrayList<>();
+    List<long[]> parsed = new ArrayList<>();
+    for (var i = 0; i < 5_000; i++) {
+      var cidr = (random.nextInt(224) + 1) + "." + random.nextInt(256) + "." + random.nextInt(256) + "."
+          + random.nextInt(256) + "/" + (8 + random.nextInt(25));
+      cidrs.add(cidr);
+      parsed.add(PrefixTrie.parseCidr(cidr));
+    }
+    var path = Files.createTempDirectory("blocklist").resolve("blocklist.bin");
+    PrefixTrie.write(cidrs, path);
+    var trie = PrefixTrie.map(path);
+
+    var key = new long[2];
+    for (var i = 0; i < 20_000; i++) {
+      var address = random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "."
+          + random.nextInt(256);
+      assertTrue(PrefixTrie.parse(address, key));
+      var expected = parsed.stream().anyMatch(range -> {
+        var length = range[2];
+        var mask = length >= 128 ? -1L : -1L << (128 - length);
+        return ((key[1] ^ range[1]) & mask) == 0;
+      });
+      assertEquals(expected, trie.contains(address), address);
+    }
+  }
+
+  @Test
+  public void parseTest() {
+    var key = new long[2];
+    assertTrue(PrefixTrie.parse("2001:db8::1", key));
+    assertArrayEquals(new long[] {0x20010db800000000L, 1}, key);
+    assertTrue(PrefixTrie.parse("::", key));
+    assertArrayEquals(new long[] {0, 0}, key);
+    assertTrue(PrefixTrie.parse("1:2:3:4:5:6:7:8", key));
+    assertArrayEquals(new long[] {0x0001000200030004L, 0x0005000600070008L}, key);
+    assertTrue(PrefixTrie.parse("10.1.2.3", key));
+    assertArrayEquals(new long[] {0, 0xffff0a010203L}, key);
+
+    for (var invalid : new String[] {"1:2", "1:::2", ":1", "1:", "1::2::3", "256.0.0.1", "1.2.3", "12345::",
+        "1:2:3:4:5:6:7:8:9", "example.com", ""}) {
+      assertFalse(PrefixTrie.parse(invalid, key), invalid);
+    }
+    assertThrows(IllegalArgumentException.class, () -> PrefixTrie.parseCidr("10.0.0.0/33"));
+  }
+
+  @Test
+  public void corruptFileTest() throws Exception {
+    var path = Files.createTempDirectory("blocklist").resolve("blocklist.bin");
+    PrefixTrie.write(List.of("192.0.2.0/24", "198.51.100.0/24"), path);
+    var bytes = Files.readAllBytes(path);
+
+    // The root pointing back at itself.
+    bytes[16 + 23] = 0;
+    Files.write(path, bytes);
+    assertThrows(IOException.class, () -> PrefixTrie.map(path));
+
+    Files.write(path, new byte[] {1, 2, 3});
+    assertThrows(IOException.class, () -> PrefixTrie.map(path));
+  }
+
+  @Test
+  public void emptyTest() throws Exception {
+    var path = Files.createTempDirectory("blocklist").resolve("blocklist.bin");
+    assertEquals(0, PrefixTrie.write(List.of(), path));
+    assertFalse(PrefixTrie.map(path).contains("192.0.2.1"));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTest {
+
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long START = TimeUnit.SECONDS.toNanos(10);
+
+  @Test
+  public void burstThenRateTest() {
+    var now = new AtomicLong(START);
+    var limiter = new RateLimiter(10, 5, 1024, 1024, 42, now::get, false);
+
+    for (var i = 0; i < 5; i++) {
+      assertTrue(limiter.tryAcquire("10.0.0.1"));
+    }
+    assertFalse(limiter.tryAcquire("10.0.0.1"));
+    assertFalse(limiter.tryAcquire("10.0.0.1"));
+    assertTrue(limiter.tryAcquire("10.0.0.2"));
+
+    // Promoted with an empty bucket, which gets a token every 100 ms.
+    now.addAndGet(100 * MILLI);
+    assertTrue(limiter.tryAcquire("10.0.0.1"));
+    assertFalse(limiter.tryAcquire("10.0.0.1"));
+
+    var stats = limiter.stats();
+    assertEquals(1, stats.promoted());
+    assertEquals(1, stats.hotClients());
+    assertEquals(7, stats.admitted());
+    assertEquals(3, stats.limited());
+  }
+
+  @Test
+  public void sustainedRateTest() {
+    var now = new AtomicLong(START);
+    var limiter = new RateLimiter(5, 20, 1024, 1024, 42, now::get, false);
+
+    // Three times the rate for ten seconds, which never goes over the burst in any one second.
+    var admitted = 0;
+    var admittedLater = 0;
+    for (var i = 0; i < 150; i++) {
+      now.addAndGet(TimeUnit.SECONDS.toNanos(1) / 15);
+      if (limiter.tryAcquire("10.0.0.1")) {
+        admitted++;
+        if (i >= 75) {
+          admittedLater++;
+        }
+      }
+    }
+
+    // The burst is spent within the first seconds, after which the client gets its rate and no more.
+    assertTrue(admitted <= 20 + 5 * 10, "admitted " + admitted);
+    assertTrue(admittedLater >= 24 && admittedLater <= 26, "admitted later " + admittedLater);
+    assertEquals(150 - admitted, limiter.stats().limited());
+    assertEquals(1, limiter.stats().promoted());
+  }
+
+  @Test
+  public void slidingWindowTest() {
+    var now = new AtomicLong(START);
+    var limiter = new RateLimiter(10, 5, 1024, 1024, 42, now::get, false);
+
+    for (var i = 0; i < 4; i++) {
+      assertTrue(limiter.tryAcquire("10.0.0.1"));
+    }
+
+    // Half of the previous window still overlaps the last second.
+    now.addAndGet(1500 * MILLI);
+    assertTrue(limiter.tryAcquire("10.0.0.1"));
+    assertTrue(limiter.tryAcquire("10.0.0.1"));
+    assertTrue(limiter.tryAcquire("10.0.0.1"));
+    assertFalse(limiter.tryAcquire("10.0.0.1"));
+
+    // The sketch forgot everything, the bucket filled up again.
+    now.addAndGet(2000 * MILLI);
+    for (var i = 0; i < 5; i++) {
+      assertTrue(limiter.tryAcquire("10.0.0.1"));
+    }
+  }
+
+  @Test
+  public void longTailTest() {
+    var now = new AtomicLong(START);
+    var limiter = new RateLimiter(1, 5, 1024, 1 << 16, 42, now::get, false);
+
+    // Ten thousand new clients per second, none of them sending more than one request.
+    for (var i = 0; i < 100_000; i++) {
+      now.addAndGet(100_000);
+      assertTrue(limiter.tryAcquire("10." + (i >> 16) + "." + (i >> 8 & 255) + "." + (i & 255)));
+    }
+
+    // At one request per second, a client whose counters all collide looks like it sent two, and gets a bucket it
+    // does not need; the hot table stays all but empty.
+    var stats = limiter.stats();
+    assertTrue(stats.promoted() < 100, "promoted " + stats.promoted());
+    assertEquals(100_000, stats.admitted());
+  }
+
+  @Test
+  public void saturatedTest() {
+    var now = new AtomicLong(START);
+    var limiter = new RateLimiter(10, 5, 8, 1024, 42, now::get, false);
+
+    for (var client = 0; client < 8; client++) {
+      for (var i = 0; i < 6; i++) {
+        limiter.tryAcquire("10.0.0." + client);
+      }
+    }
+    assertEquals(8, limiter.stats().hotClients());
+
+    // No bucket left, so the sketch holds the ninth client to the burst.
+    for (var i = 0; i < 5; i++) {
+      assertTrue(limiter.tryAcquire("10.0.1.0"));
+    }
+    assertFalse(limiter.tryAcquire("10.0.1.0"));
+    assertEquals(1, limiter.stats().saturated());
+
+    // Once the buckets fill up again, they are handed over.
+    now.addAndGet(500 * MILLI);
+    assertFalse(limiter.tryAcquire("10.0.1.0"));
+    assertEquals(9, limiter.stats().promoted());
+    now.addAndGet(100 * MILLI);
+    assertTrue(limiter.tryAcquire("10.0.1.0"));
+  }
+}
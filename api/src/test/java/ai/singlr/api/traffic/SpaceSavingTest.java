@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.api.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class SpaceSavingTest {
+
+  @Test
+  public void exactWhileNotFullTest() {
+    var summary = new SpaceSaving(4);
+    summary.add("a");
+    summary.add("b");
+    summary.add("a");
+
+    Map<String, Long> counts = new HashMap<>();
+    summary.forEach((key, count, error) -> {
+      counts.put(key, count);
+      assertEquals(0, error);
+    });
+    assertEquals(Map.of("a", 2L, "b", 1L), counts);
+    assertEquals(0, summary.floor());
+  }
+
+  @Test
+  public void heavyHittersSurviveTest() {
+    var summary = new SpaceSaving(16);
+    var random = new Random(7);
+    var total = 0;
+    for (var i = 0; i < 100_000; i++) {
+      // A fifth of the stream from two keys, the rest spread over ten thousand.
+      var key = i % 10 == 0 ? "heavy-1" : i % 10 == 5 ? "heavy-2" : "light-" + random.nextInt(10_000);
+      summary.add(key);
+      total++;
+    }
+
+    Map<String, long[]> tracked = new HashMap<>();
+    summary.forEach((key, count, error) -> tracked.put(key, new long[] {count, error}));
+    assertEquals(16, tracked.size());
+    for (var heavy : new String[] {"heavy-1", "heavy-2"}) {
+      var counter = tracked.get(heavy);
+      assertTrue(counter[0] >= 10_000 && counter[0] - counter[1] <= 10_000);
+    }
+    assertTrue(summary.floor() <= total / 16);
+  }
+
+  @Test
+  public void clearTest() {
+    var summary = new SpaceSaving(2);
+    summary.add("a");
+    summary.add("b");
+    summary.add("c");
+    summary.clear();
+    summary.add("d");
+
+    Map<String, Long> counts = new HashMap<>();
+    summary.forEach((key, count, error) -> counts.put(key, count));
+    assertEquals(Map.of("d", 1L), counts);
+  }
+}
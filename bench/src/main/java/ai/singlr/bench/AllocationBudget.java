@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark that has a budget, given as a {@code budget.<benchmark>} system property, with the GC profiler
+ * and fails if any of them allocates more bytes per operation than its budget. A budget that matches no benchmark, or
+ * one that reports no allocation rate, fails the run too, so that renaming a benchmark can't quietly drop its check.
+ */
+public final class AllocationBudget {
+
+  private static final Logger LOGGER = Logger.getLogger(AllocationBudget.class.getName());
+
+  private static final String BUDGET_PREFIX = "budget.";
+
+  private AllocationBudget() {}
+
+  /**
+   * Runs the benchmarks and exits with a non-zero status if a budget is exceeded.
+   *
+   * @param args unused.
+   * @throws RunnerException if the benchmarks can't run.
+   */
+  public static void main(final String... args) throws RunnerException {
+    Map<String, Long> budgets = new TreeMap<>();
+    for (var property : System.getProperties().stringPropertyNames()) {
+      if (property.startsWith(BUDGET_PREFIX)) {
+        var budget = Long.getLong(property);
+        if (budget == null) {
+          LOGGER.severe(property + " is not a number of bytes");
+          System.exit(1);
+        }
+        budgets.put(property.substring(BUDGET_PREFIX.length()), budget);
+      }
+    }
+    if (budgets.isEmpty()) {
+      LOGGER.severe("No allocation budgets given");
+      System.exit(1);
+    }
+
+    var builder = new OptionsBuilder();
+    var benchmarks = "^" + Pattern.quote(AllocationBudget.class.getPackageName()) + "\\.\\w+\\.";
+    budgets.keySet().forEach(name -> builder.include(benchmarks + Pattern.quote(name) + "$"));
+    var options = builder
+        .addProfiler(GCProfiler.class)
+        .build();
+
+    var exceeded = false;
+    for (var result : new Runner(options).run()) {
+      var benchmark = result.getParams().getBenchmark();
+      var name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+      var budget = budgets.remove(name);
+      var allocated = allocatedPerOperation(result);
+      if (budget == null) {
+        LOGGER.severe(benchmark + " ran for a budget that another benchmark already used");
+        exceeded = true;
+        continue;
+      }
+      if (Double.isNaN(allocated)) {
+        LOGGER.severe(name + " reported no allocation rate to check against its budget");
+        exceeded = true;
+        continue;
+      }
+
+      LOGGER.info(String.format("%s allocates %.0f bytes per operation, budget is %d", name, allocated, budget));
+      if (allocated > budget) {
+        LOGGER.severe(name + " is over its allocation budget");
+        exceeded = true;
+      }
+    }
+    for (var name : budgets.keySet()) {
+      LOGGER.severe("No benchmark ran for the budget of " + name);
+      exceeded = true;
+    }
+
+    if (exceeded) {
+      System.exit(1);
+    }
+  }
+
+  private static double allocatedPerOperation(RunResult result) {
+    // The metric lost its leading middle dot in JMH 1.37.
+    for (var key : new String[] {"gc.alloc.rate.norm", "·gc.alloc.rate.norm"}) {
+      var metric = result.getSecondaryResults().get(key);
+      if (metric != null) {
+        return metric.getScore();
+      }
+    }
+    return Double.NaN;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.api.traffic.PrefixTrie;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures blocklist lookups against memory-mapped tries of one hundred thousand to three million random IPv4 and
+ * IPv6 ranges, with the address already parsed and from its text form.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BlocklistBenchmark {
+
+  private static final int SAMPLE = 1 << 16;
+
+  @Param({"100000", "1000000", "3000000"})
+  public int ranges;
+
+  private Path path;
+  private PrefixTrie trie;
+  private long[] his;
+  private long[] los;
+  private String[] addresses;
+  private int next;
+
+  /**
+   * Writes and maps a trie of {@code ranges} random ranges, nine in ten of them IPv4.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    var random = new SplittableRandom(42);
+    List<String> cidrs = new ArrayList<>(ranges);
+    for (var i = 0; i < ranges; i++) {
+      if (i % 10 == 9) {
+        cidrs.add(String.format("2001:%x:%x::/%d", random.nextInt(1 << 16), random.nextInt(1 << 16),
+            32 + random.nextInt(33)));
+      } else {
+        cidrs.add(ipv4(random) + "/" + (16 + random.nextInt(17)));
+      }
+    }
+    path = Files.createTempFile("blocklist", ".bin");
+    PrefixTrie.write(cidrs, path);
+    trie = PrefixTrie.map(path);
+
+    his = new long[SAMPLE];
+    los = new long[SAMPLE];
+    addresses = new String[SAMPLE];
+    for (var i = 0; i < SAMPLE; i++) {
+      addresses[i] = ipv4(random);
+      var address = random.nextInt();
+      los[i] = 0xffff_0000_0000L | (address & 0xffff_ffffL);
+    }
+  }
+
+  /**
+   * Deletes the trie file.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  /**
+   * Looks up an address given as two longs.
+   */
+  @Benchmark
+  public boolean containsParsed() {
+    var i = next++ & (SAMPLE - 1);
+    return trie.contains(his[i], los[i]);
+  }
+
+  /**
+   * Looks up an address given as text, as the service does.
+   */
+  @Benchmark
+  public boolean containsText() {
+    return trie.contains(addresses[next++ & (SAMPLE - 1)]);
+  }
+
+  private static String ipv4(SplittableRandom random) {
+    return random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.api.Constants;
+import ai.singlr.api.auth.PasskeyProvider;
+import ai.singlr.api.request.PasskeyCaptcha;
+import ai.singlr.api.request.PasskeyCaptchaReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.data.AuthenticatorAttestationResponse;
+import com.yubico.webauthn.data.ClientRegistrationExtensionOutputs;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading a {@code /complete} body through a tree and a string, as it used to be, with reading it in a
+ * single pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompleteCaptchaBenchmark {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final PasskeyCaptchaReader reader = PasskeyCaptchaReader.json();
+  private byte[] body;
+
+  /**
+   * Creates the body of a {@code none} attestation by a platform authenticator.
+   */
+  @Setup
+  public void setUp() throws GeneralSecurityException, IOException {
+    body = registrationBody();
+  }
+
+  /**
+   * Binds the body to a tree, writes the credential back to a string and parses that string.
+   */
+  @Benchmark
+  public PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> completeTree()
+      throws IOException {
+    var tree = mapper.readTree(body);
+    var creds = mapper.writeValueAsString(tree.get(Constants.PUB_KEY_CRED_OPTS));
+    return PasskeyProvider.parseCredential(creds);
+  }
+
+  /**
+   * Reads the body in a single pass.
+   */
+  @Benchmark
+  public PasskeyCaptcha completeStreaming() throws IOException {
+    return reader.read(new ByteArrayInputStream(body));
+  }
+
+  static byte[] registrationBody() throws GeneralSecurityException, IOException {
+    var generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    var publicKey = (ECPublicKey) generator.generateKeyPair().getPublic();
+
+    var random = new SecureRandom();
+    var credentialId = new byte[16];
+    random.nextBytes(credentialId);
+    var challenge = new byte[32];
+    random.nextBytes(challenge);
+
+    // COSE_Key {1: 2 (EC2), 3: -7 (ES256), -1: 1 (P-256), -2: x, -3: y}
+    var coseKey = new ByteArrayOutputStream();
+    coseKey.write(new byte[] {(byte) 0xa5, 0x01, 0x02, 0x03, 0x26, 0x20, 0x01, 0x21});
+    writeBytes(coseKey, coordinate(publicKey.getW().getAffineX().toByteArray()));
+    coseKey.write(0x22);
+    writeBytes(coseKey, coordinate(publicKey.getW().getAffineY().toByteArray()));
+
+    // rpIdHash | flags (UP, UV, AT) | signCount | aaguid | credential id length | credential id | public key
+    var authData = new ByteArrayOutputStream();
+    authData.write(MessageDigest.getInstance("SHA-256").digest("localhost".getBytes(StandardCharsets.UTF_8)));
+    authData.write(0x45);
+    authData.write(new byte[4 + 16]);
+    authData.write(new byte[] {0, (byte) credentialId.length});
+    authData.write(credentialId);
+    authData.write(coseKey.toByteArray());
+
+    // {"fmt": "none", "attStmt": {}, "authData": authData}
+    var attestationObject = new ByteArrayOutputStream();
+    attestationObject.write(0xa3);
+    writeText(attestationObject, "fmt");
+    writeText(attestationObject, "none");
+    writeText(attestationObject, "attStmt");
+    attestationObject.write(0xa0);
+    writeText(attestationObject, "authData");
+    writeBytes(attestationObject, authData.toByteArray());
+
+    var encoder = Base64.getUrlEncoder().withoutPadding();
+    var clientData = "{\"type\":\"webauthn.create\",\"challenge\":\"" + encoder.encodeToString(challenge)
+        + "\",\"origin\":\"https://localhost\",\"crossOrigin\":false}";
+    var id = encoder.encodeToString(credentialId);
+    return ("{\"id\":\"" + encoder.encodeToString(Arrays.copyOf(challenge, 16)) + "\","
+        + "\"" + Constants.PUB_KEY_CRED_OPTS + "\":{"
+        + "\"type\":\"public-key\",\"id\":\"" + id + "\",\"rawId\":\"" + id + "\","
+        + "\"authenticatorAttachment\":\"platform\","
+        + "\"response\":{"
+        + "\"clientDataJSON\":\"" + encoder.encodeToString(clientData.getBytes(StandardCharsets.UTF_8)) + "\","
+        + "\"attestationObject\":\"" + encoder.encodeToString(attestationObject.toByteArray()) + "\","
+        + "\"transports\":[\"internal\",\"hybrid\"]},"
+        + "\"clientExtensionResults\":{\"credProps\":{\"rk\":true}}}}").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] coordinate(byte[] value) {
+    // BigInteger may add a sign byte or drop leading zeros, while COSE expects exactly 32 bytes.
+    var coordinate = new byte[32];
+    var length = Math.min(value.length, 32);
+    System.arraycopy(value, value.length - length, coordinate, 32 - length, length);
+    return coordinate;
+  }
+
+  private static void writeText(ByteArrayOutputStream out, String value) {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeHead(out, 0x60, bytes.length);
+    out.writeBytes(bytes);
+  }
+
+  private static void writeBytes(ByteArrayOutputStream out, byte[] value) {
+    writeHead(out, 0x40, value.length);
+    out.writeBytes(value);
+  }
+
+  private static void writeHead(ByteArrayOutputStream out, int majorType, int length) {
+    if (length < 24) {
+      out.write(majorType | length);
+    } else if (length < 256) {
+      out.write(majorType | 24);
+      out.write(length);
+    } else {
+      out.write(majorType | 25);
+      out.write(length >> 8);
+      out.write(length);
+    }
+  }
+}
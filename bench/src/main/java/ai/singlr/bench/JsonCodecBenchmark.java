@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.api.request.PasskeyStartRequest;
+import ai.singlr.core.ErrorCode;
+import ai.singlr.core.result.Result;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares binding the hot request and response types through the shared mapper with binding them through the
+ * readers and writers cached per type, with reflective and with generated accessors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+  @Param({"reflection", "blackbird"})
+  public String accessors;
+
+  private final byte[] startBody =
+      "{\"id\":\"Anonymous\",\"instance\":\"0b6f4e8c-6c2a-4f57-9a8e-2f0d1c3b5a79\",\"format\":\"object\"}"
+          .getBytes(StandardCharsets.UTF_8);
+  private final Result<?> error = new Result<>(ErrorCode.INVALID, "Unable to recognize temporary passkey", null);
+
+  private ObjectMapper mapper;
+  private ObjectReader startReader;
+  private ObjectWriter resultWriter;
+
+  /**
+   * Creates the mapper and caches the reader and writer of the hot types.
+   */
+  @Setup
+  public void setUp() {
+    mapper = new ObjectMapper();
+    if ("blackbird".equals(accessors)) {
+      mapper.registerModule(new BlackbirdModule());
+    }
+    startReader = mapper.readerFor(PasskeyStartRequest.class);
+    resultWriter = mapper.writerFor(Result.class);
+  }
+
+  /**
+   * Reads a {@code /start} body through the mapper.
+   */
+  @Benchmark
+  public PasskeyStartRequest readMapper() throws IOException {
+    return mapper.readValue(startBody, PasskeyStartRequest.class);
+  }
+
+  /**
+   * Reads a {@code /start} body through the cached reader.
+   */
+  @Benchmark
+  public PasskeyStartRequest readCached() throws IOException {
+    return startReader.readValue(startBody);
+  }
+
+  /**
+   * Writes an error result through the mapper.
+   */
+  @Benchmark
+  public byte[] writeMapper() throws IOException {
+    return mapper.writeValueAsBytes(error);
+  }
+
+  /**
+   * Writes an error result through the cached writer.
+   */
+  @Benchmark
+  public byte[] writeCached() throws IOException {
+    return resultWriter.writeValueAsBytes(error);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.api.traffic.RateLimiter;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rate limiter in front of {@code /start} and {@code /complete}, for a flood spread over many addresses
+ * and for a single address over its rate. Addresses are built ahead of time, so the operations only hash and count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+  private static final int ADDRESSES = 1 << 20;
+
+  private RateLimiter limiter;
+  private String[] addresses;
+  private int next;
+
+  /**
+   * Creates the limiter with its default sizes.
+   */
+  @Setup
+  public void setUp() {
+    limiter = new RateLimiter(Config.just(ConfigSources.create(Map.of())));
+    addresses = new String[ADDRESSES];
+    for (var i = 0; i < ADDRESSES; i++) {
+      addresses[i] = (10 + (i >> 16)) + "." + (i >> 8 & 255) + "." + (i & 255) + ".1";
+    }
+  }
+
+  /**
+   * Stops the sweeper.
+   */
+  @TearDown
+  public void tearDown() {
+    limiter.close();
+  }
+
+  /**
+   * Counts a request from one of a million addresses, mostly decided by the sketch.
+   */
+  @Benchmark
+  public boolean spreadFlood() {
+    return limiter.tryAcquire(addresses[next++ & (ADDRESSES - 1)]);
+  }
+
+  /**
+   * Turns away a request from an address that holds a token bucket and is over its rate.
+   */
+  @Benchmark
+  public boolean hotClient() {
+    return limiter.tryAcquire("203.0.113.7");
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.api.auth.SpentTokens;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures redeeming tokens against an index filled up to the number of tokens it is sized for, to check that the cost
+ * stays flat from one to tens of millions of tokens. Fresh ids are built per operation, so {@code redeemFresh} also
+ * includes one string concatenation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SpentTokensBenchmark {
+
+  private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final int SPENT_SAMPLE = 1 << 16;
+
+  @Param({"1000000", "10000000", "30000000"})
+  public int tokens;
+
+  private SpentTokens spent;
+  private long expiresAt;
+  private String[] spentIds;
+  private long next;
+  private int replayed;
+
+  /**
+   * Sizes the index for {@code tokens} and redeems that many.
+   */
+  @Setup
+  public void setUp() {
+    spent = new SpentTokens(Config.just(ConfigSources.create(Map.of(
+        "expected-tokens", Integer.toString(tokens),
+        "false-positive-rate", "0.0001"))), TTL_MILLIS);
+    expiresAt = System.currentTimeMillis() + TTL_MILLIS;
+
+    spentIds = new String[SPENT_SAMPLE];
+    for (var i = 0; i < tokens; i++) {
+      var id = "spent-" + i;
+      spent.redeem(id, expiresAt);
+      if (i < SPENT_SAMPLE) {
+        spentIds[i] = id;
+      }
+    }
+  }
+
+  /**
+   * Stops the sweeper.
+   */
+  @TearDown
+  public void tearDown() {
+    spent.close();
+  }
+
+  /**
+   * Redeems a token seen for the first time.
+   */
+  @Benchmark
+  public boolean redeemFresh() {
+    return spent.redeem("fresh-" + next++, expiresAt);
+  }
+
+  /**
+   * Replays a token that was already redeemed.
+   */
+  @Benchmark
+  public boolean redeemSpent() {
+    return spent.redeem(spentIds[replayed++ & (SPENT_SAMPLE - 1)], expiresAt);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.api.auth.PasskeyProvider;
+import ai.singlr.api.challenge.Challenge;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures minting the options of a new ceremony, the work {@code /start} does on a challenge pool miss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartCaptchaBenchmark {
+
+  private PasskeyProvider passkeyProvider;
+
+  /**
+   * Creates a passkey provider for a local relying party.
+   */
+  @Setup
+  public void setUp() {
+    passkeyProvider = new PasskeyProvider(wanConfig());
+  }
+
+  /**
+   * Mints the options and reduces them to the compact challenge kept in the store.
+   */
+  @Benchmark
+  public Challenge startCaptcha() {
+    var options = passkeyProvider.startCaptcha("Anonymous");
+    return passkeyProvider.toChallenge(options, Challenge.DEFAULT_TENANT);
+  }
+
+  /**
+   * Mints the options and serializes them as sent in the {@code /start} response.
+   */
+  @Benchmark
+  public String startResponse() throws JsonProcessingException {
+    PublicKeyCredentialCreationOptions options = passkeyProvider.startCaptcha("Anonymous");
+    return options.toCredentialsCreateJson();
+  }
+
+  static Config wanConfig() {
+    return Config.just(ConfigSources.create(Map.of(
+        "id", "localhost",
+        "name", "Singular nocaptcha",
+        "origins", "https://localhost"
+    )));
+  }
+}
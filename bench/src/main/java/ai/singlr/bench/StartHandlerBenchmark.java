@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.api.ApiServer;
+import ai.singlr.core.Profile;
+import ai.singlr.core.Utils;
+import io.helidon.common.media.type.MediaTypes;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.http.HeaderNames;
+import io.helidon.webclient.api.WebClient;
+import io.helidon.webserver.accesslog.AccessLogFeature;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code /start} through the server, from routing and reading the body to storing the challenge and writing
+ * the response, over a keep-alive loopback connection.
+ *
+ * <p>The server runs in the benchmark's JVM with the defaults of every optional feature, so the challenge goes to the
+ * in-memory store and nothing is throttled, and without the access log, whose cost depends on where it is written.
+ * The bytes allocated per operation count both ends of the exchange, so {@link #floor()} measures a request the
+ * service turns away at once, to tell the work of {@code /start} apart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartHandlerBenchmark {
+
+  private static final int PORT = 50060;
+  // Held so that the level is not lost with the logger.
+  private static final Logger ACCESS_LOG = Logger.getLogger(AccessLogFeature.DEFAULT_LOGGER_NAME);
+
+  private final byte[] objectBody =
+      "{\"id\":\"Anonymous\",\"instance\":\"0b6f4e8c-6c2a-4f57-9a8e-2f0d1c3b5a79\",\"format\":\"object\"}"
+          .getBytes(StandardCharsets.UTF_8);
+  private final byte[] stringBody = "{\"id\":\"Anonymous\"}".getBytes(StandardCharsets.UTF_8);
+
+  private ApiServer server;
+  private WebClient webClient;
+
+  /**
+   * Starts the server and connects to it.
+   */
+  @Setup
+  public void setUp() {
+    ACCESS_LOG.setLevel(Level.OFF);
+    Config.global(Config.just(ConfigSources.create(Map.of(
+        Utils.PROFILE, Profile.ci.name(),
+        "server.port", String.valueOf(PORT),
+        "server.hport", String.valueOf(PORT + 1),
+        "server.host", "127.0.0.1",
+        "wan.id", "localhost",
+        "wan.name", "Singular nocaptcha",
+        "wan.origins", "http://localhost:" + PORT,
+        "restrictive-cors.allow-origins.0", "http://localhost:" + PORT,
+        "restrictive-cors.allow-methods.0", "POST"
+    ))));
+    server = new ApiServer();
+    server.start();
+
+    webClient = WebClient.builder()
+        .baseUri("http://127.0.0.1:" + PORT)
+        .addHeader(HeaderNames.CONTENT_TYPE, MediaTypes.APPLICATION_JSON.text())
+        .build();
+  }
+
+  /**
+   * Stops the server.
+   */
+  @TearDown
+  public void tearDown() {
+    server.stop();
+  }
+
+  /**
+   * Starts a ceremony as the widget does, the options nested into the response.
+   */
+  @Benchmark
+  public int start() {
+    return post(objectBody);
+  }
+
+  /**
+   * Starts a ceremony as older widgets do, the options sent as a JSON encoded string.
+   */
+  @Benchmark
+  public int startString() {
+    return post(stringBody);
+  }
+
+  /**
+   * Asks for the keys of the disabled verification tokens, which the service answers with a 404 at once.
+   */
+  @Benchmark
+  public int floor() {
+    try (var response = webClient.get().path("/v1/nocaptcha/keys").request()) {
+      response.entity().consume();
+      return response.status().code();
+    }
+  }
+
+  private int post(byte[] body) {
+    try (var response = webClient.post().path("/v1/nocaptcha/start").submit(body)) {
+      var status = response.status().code();
+      if (status != 201) {
+        throw new IllegalStateException("/start answered " + status);
+      }
+      response.entity().consume();
+      return status;
+    }
+  }
+}
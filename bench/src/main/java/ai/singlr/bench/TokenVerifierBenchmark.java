@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.bench;
+
+import ai.singlr.client.KeySet;
+import ai.singlr.client.TokenVerifier;
+import ai.singlr.client.Verification;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares checking an ES256 verification token with the offline client and with java-jwt, the library the service
+ * signs tokens with. Both verify one P-256 signature, so the difference is decoding and reading the claims.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenVerifierBenchmark {
+
+  private static final String ISSUER = "nocaptcha";
+
+  private String token;
+  private TokenVerifier client;
+  private JWTVerifier javaJwt;
+
+  /**
+   * Generates a key pair, signs a token with it and builds both verifiers.
+   */
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    var generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    var keyPair = generator.generateKeyPair();
+    var publicKey = (ECPublicKey) keyPair.getPublic();
+    var algorithm = Algorithm.ECDSA256(publicKey, (ECPrivateKey) keyPair.getPrivate());
+
+    var now = Instant.now();
+    token = JWT.create()
+        .withKeyId("1")
+        .withIssuer(ISSUER)
+        .withJWTId(UUID.randomUUID().toString())
+        .withIssuedAt(now)
+        .withExpiresAt(now.plusSeconds(3600))
+        .withClaim("ten", 0)
+        .sign(algorithm);
+
+    var jwks = "{\"keys\":[{\"kty\":\"EC\",\"crv\":\"P-256\",\"kid\":\"1\",\"x\":\""
+        + coordinate(publicKey.getW().getAffineX()) + "\",\"y\":\"" + coordinate(publicKey.getW().getAffineY())
+        + "\"}]}";
+    client = new TokenVerifier(KeySet.of(jwks.getBytes(StandardCharsets.UTF_8)), ISSUER, 0, null);
+    javaJwt = JWT.require(algorithm).withIssuer(ISSUER).build();
+  }
+
+  /**
+   * Checks the token with the offline client.
+   */
+  @Benchmark
+  public Verification verifyClient() {
+    return client.verify(token);
+  }
+
+  /**
+   * Checks the token with java-jwt.
+   */
+  @Benchmark
+  public DecodedJWT verifyJavaJwt() {
+    return javaJwt.verify(token);
+  }
+
+  private static String coordinate(BigInteger value) {
+    var bytes = value.toByteArray();
+    var fixed = new byte[32];
+    var length = Math.min(bytes.length, 32);
+    System.arraycopy(bytes, bytes.length - length, fixed, 32 - length, length);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+  }
+}
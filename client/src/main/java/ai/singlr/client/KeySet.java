@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The public keys verification tokens are signed with, as published by the service at {@code /v1/nocaptcha/keys}.
+ *
+ * <p>Keys are fetched once when the set is created, then refreshed by a virtual thread. Looking up a key id the set
+ * does not know also triggers a refresh, at most once every ten seconds, so that tokens signed with a newly
+ * rotated key are accepted without waiting for the next scheduled refresh. If a refresh fails, the keys fetched last
+ * are kept.
+ */
+public final class KeySet implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(KeySet.class.getName());
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(5);
+  private static final long DEFAULT_MIN_REFRESH_MILLIS = 10_000;
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final ECParameterSpec P256 = p256();
+
+  private final URI uri;
+  private final HttpClient http;
+  private final long minRefreshMillis;
+  private final AtomicLong lastRefresh = new AtomicLong(Long.MIN_VALUE / 2);
+  private final ScheduledExecutorService refresher;
+
+  private volatile Map<String, PublicKey> keys;
+
+  /**
+   * Fetches the keys and starts refreshing them.
+   *
+   * @param uri where the service publishes its keys, e.g. {@code https://nocaptcha.example.com/v1/nocaptcha/keys}.
+   * @param refreshInterval how often to refresh the keys.
+   */
+  public KeySet(URI uri, Duration refreshInterval) {
+    this(uri, refreshInterval, DEFAULT_MIN_REFRESH_MILLIS);
+  }
+
+  KeySet(URI uri, Duration refreshInterval, long minRefreshMillis) {
+    if (refreshInterval.isNegative() || refreshInterval.isZero()) {
+      throw new IllegalArgumentException("Refresh interval must be positive");
+    }
+
+    this.uri = uri;
+    this.http = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    this.minRefreshMillis = minRefreshMillis;
+    this.keys = Map.of();
+    this.refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("key-set-refresher").factory());
+
+    lastRefresh.set(System.currentTimeMillis());
+    refresh();
+    var period = refreshInterval.toMillis();
+    refresher.scheduleWithFixedDelay(this::refresh, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private KeySet(Map<String, PublicKey> keys) {
+    this.uri = null;
+    this.http = null;
+    this.minRefreshMillis = 0;
+    this.keys = keys;
+    this.refresher = null;
+  }
+
+  /**
+   * Creates a set of fixed keys, never refreshed, for backends that pin the keys they accept.
+   *
+   * @param jwks the JSON Web Key Set served at {@code /v1/nocaptcha/keys}.
+   * @return the keys.
+   * @throws IllegalArgumentException if the key set cannot be read.
+   */
+  public static KeySet of(byte[] jwks) {
+    try {
+      return new KeySet(parse(jwks));
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Unable to read key set", ex);
+    }
+  }
+
+  /**
+   * Looks up a key.
+   *
+   * @param keyId the id of the key, from the header of a token, may be {@code null}.
+   * @return the key or {@code null} if the set does not know it, in which case a refresh may be scheduled.
+   */
+  public PublicKey get(String keyId) {
+    if (keyId == null) {
+      return null;
+    }
+    var key = keys.get(keyId);
+    if (key == null && refresher != null) {
+      var now = System.currentTimeMillis();
+      var last = lastRefresh.get();
+      if (now - last >= minRefreshMillis && lastRefresh.compareAndSet(last, now)) {
+        refresher.execute(this::refresh);
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Returns the number of keys in the set.
+   */
+  public int size() {
+    return keys.size();
+  }
+
+  @Override
+  public void close() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+    }
+  }
+
+  private void refresh() {
+    try {
+      var request = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+      var response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      if (response.statusCode() != 200) {
+        LOGGER.warning("Unable to fetch keys from " + uri + ", got status " + response.statusCode());
+        return;
+      }
+      keys = parse(response.body());
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.log(Level.WARNING, "Unable to fetch keys from " + uri, ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads the P-256 signing keys of a JSON Web Key Set, skipping any other key.
+   */
+  static Map<String, PublicKey> parse(byte[] jwks) throws IOException {
+    Map<String, PublicKey> keys = new HashMap<>();
+    try (var parser = JSON_FACTORY.createParser(jwks)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Key set must be an object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        var field = parser.currentName();
+        parser.nextToken();
+        if (!"keys".equals(field) || parser.currentToken() != JsonToken.START_ARRAY) {
+          parser.skipChildren();
+          continue;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          readKey(parser, keys);
+        }
+      }
+    }
+    return Map.copyOf(keys);
+  }
+
+  private static void readKey(JsonParser parser, Map<String, PublicKey> keys) throws IOException {
+    Map<String, String> fields = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      var field = parser.currentName();
+      if (parser.nextToken() == JsonToken.VALUE_STRING) {
+        fields.put(field, parser.getText());
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    var keyId = fields.get("kid");
+    if (keyId == null || !"EC".equals(fields.get("kty")) || !"P-256".equals(fields.get("crv"))
+        || fields.get("x") == null || fields.get("y") == null) {
+      return;
+    }
+
+    try {
+      var decoder = Base64.getUrlDecoder();
+      var point = new ECPoint(
+          new BigInteger(1, decoder.decode(fields.get("x"))),
+          new BigInteger(1, decoder.decode(fields.get("y"))));
+      keys.put(keyId, KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, P256)));
+    } catch (GeneralSecurityException | IllegalArgumentException ex) {
+      LOGGER.log(Level.WARNING, "Skipping invalid key " + keyId, ex);
+    }
+  }
+
+  private static ECParameterSpec p256() {
+    try {
+      var parameters = AlgorithmParameters.getInstance("EC");
+      parameters.init(new ECGenParameterSpec("secp256r1"));
+      return parameters.getParameterSpec(ECParameterSpec.class);
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException("P-256 is not supported by this JVM", ex);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the ids of the tokens accepted until they expire, so that each token is only accepted once.
+ *
+ * <p>Tokens share one TTL, so the order they are accepted in is close to the order they expire in, and expired ids are
+ * dropped from the head of the cache. The cache holds at most {@code capacity} ids: once full, the oldest id is
+ * dropped even if its token is still valid, so size it for the number of tokens accepted within one TTL.
+ */
+public final class ReplayCache {
+
+  private final int capacity;
+  private final LongSupplier clock;
+  private final LinkedHashMap<String, Long> accepted = new LinkedHashMap<>();
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param capacity the maximum number of ids to hold.
+   */
+  public ReplayCache(int capacity) {
+    this(capacity, System::currentTimeMillis);
+  }
+
+  ReplayCache(int capacity, LongSupplier clock) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.clock = clock;
+  }
+
+  /**
+   * Records a token as accepted.
+   *
+   * @param id the unique id of the token.
+   * @param expiresAtMillis when the token expires, in epoch milliseconds.
+   * @return {@code true} if the token was not accepted before.
+   */
+  public synchronized boolean add(String id, long expiresAtMillis) {
+    var now = clock.getAsLong();
+    Iterator<Long> expiries = accepted.values().iterator();
+    while (expiries.hasNext() && expiries.next() <= now) {
+      expiries.remove();
+    }
+
+    if (accepted.putIfAbsent(id, expiresAtMillis) != null) {
+      return false;
+    }
+    if (accepted.size() > capacity) {
+      var oldest = accepted.entrySet().iterator();
+      oldest.next();
+      oldest.remove();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of ids held.
+   */
+  public synchronized int size() {
+    return accepted.size();
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Checks verification tokens locally, against the public keys of a {@link KeySet}, so that backends do not have to
+ * call {@code /siteverify}.
+ *
+ * <p>A check decodes the token once into bytes, verifies the ES256 signature over them in place and only then reads
+ * the claims, with a streaming parser and without building any tree. Like {@code /siteverify}, a verifier accepts
+ * tokens of one site only, and turns away those of other sites before they are recorded in the optional
+ * {@link ReplayCache}, which makes each token single use within this process.
+ *
+ * <p>Instances are thread safe.
+ */
+public final class TokenVerifier {
+
+  private static final String ALGORITHM = "ES256";
+  private static final String SIGNATURE_ALGORITHM = "SHA256withECDSAinP1363Format";
+  private static final String TENANT_CLAIM = "ten";
+  private static final String METHOD_CLAIM = "amr";
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private final KeySet keys;
+  private final String issuer;
+  private final int tenant;
+  private final ReplayCache replays;
+  private final LongSupplier clock;
+
+  /**
+   * Creates a verifier.
+   *
+   * @param keys the keys tokens are signed with.
+   * @param issuer the issuer the service is configured with, {@code nocaptcha} by default.
+   * @param tenant the tenant of the site tokens are accepted for, {@code 0} for the default site.
+   * @param replays records accepted tokens, or {@code null} to accept a token as often as it is presented.
+   */
+  public TokenVerifier(KeySet keys, String issuer, int tenant, ReplayCache replays) {
+    this(keys, issuer, tenant, replays, System::currentTimeMillis);
+  }
+
+  TokenVerifier(KeySet keys, String issuer, int tenant, ReplayCache replays, LongSupplier clock) {
+    this.keys = keys;
+    this.issuer = issuer;
+    this.tenant = tenant;
+    this.replays = replays;
+    this.clock = clock;
+  }
+
+  /**
+   * Checks a token.
+   *
+   * @param token the token handed to the client by {@code /complete}.
+   * @return the outcome, never {@code null}.
+   */
+  public Verification verify(String token) {
+    if (token == null || token.isBlank()) {
+      return Verification.MISSING;
+    }
+
+    var headerEnd = token.indexOf('.');
+    var payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+    if (payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+      return Verification.INVALID;
+    }
+
+    try {
+      var bytes = token.getBytes(StandardCharsets.US_ASCII);
+
+      var key = keys.get(readKeyId(DECODER.decode(ByteBuffer.wrap(bytes, 0, headerEnd))));
+      if (key == null) {
+        return Verification.INVALID;
+      }
+
+      var signature = DECODER.decode(ByteBuffer.wrap(bytes, payloadEnd + 1, bytes.length - payloadEnd - 1));
+      var verifier = Signature.getInstance(SIGNATURE_ALGORITHM);
+      verifier.initVerify(key);
+      verifier.update(bytes, 0, payloadEnd);
+      if (!verifier.verify(signature.array(), signature.arrayOffset(), signature.remaining())) {
+        return Verification.INVALID;
+      }
+
+      var claims = readClaims(DECODER.decode(ByteBuffer.wrap(bytes, headerEnd + 1, payloadEnd - headerEnd - 1)));
+      if (claims == null || !issuer.equals(claims.issuer)) {
+        return Verification.INVALID;
+      }
+      var expiresAtMillis = claims.expiresAt * 1000;
+      if (expiresAtMillis <= clock.getAsLong()) {
+        return Verification.EXPIRED;
+      }
+      if (claims.tenant == null || claims.tenant != tenant) {
+        return Verification.OTHER_SITE;
+      }
+      if (replays != null && !replays.add(claims.id, expiresAtMillis)) {
+        return Verification.SPENT;
+      }
+
+      return new Verification(
+          true,
+          null,
+          claims.id,
+          Instant.ofEpochSecond(claims.issuedAt),
+          Instant.ofEpochSecond(claims.expiresAt),
+          claims.tenant,
+          claims.methods);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException ex) {
+      return Verification.INVALID;
+    }
+  }
+
+  private static String readKeyId(ByteBuffer header) throws IOException {
+    String algorithm = null;
+    String keyId = null;
+    try (var parser = parser(header)) {
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        var field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "alg" -> algorithm = parser.getValueAsString();
+          case "kid" -> keyId = parser.getValueAsString();
+          default -> parser.skipChildren();
+        }
+      }
+    }
+    // Only the algorithm the keys are meant for, never the one a forged header asks for.
+    return ALGORITHM.equals(algorithm) ? keyId : null;
+  }
+
+  private static Claims readClaims(ByteBuffer payload) throws IOException {
+    var claims = new Claims();
+    var required = 0;
+    try (var parser = parser(payload)) {
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        var field = parser.currentName();
+        var value = parser.nextToken();
+        switch (field) {
+          case "iss" -> claims.issuer = parser.getValueAsString();
+          case "jti" -> {
+            claims.id = parser.getValueAsString();
+            required++;
+          }
+          case "iat" -> {
+            claims.issuedAt = parser.getValueAsLong();
+            required++;
+          }
+          case "exp" -> {
+            claims.expiresAt = parser.getValueAsLong();
+            required += value == JsonToken.VALUE_NUMBER_INT ? 1 : 0;
+          }
+          case TENANT_CLAIM -> claims.tenant = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+          case METHOD_CLAIM -> claims.methods = value == JsonToken.START_ARRAY ? readStrings(parser) : null;
+          default -> parser.skipChildren();
+        }
+      }
+    }
+    return required == 3 && claims.id != null ? claims : null;
+  }
+
+  private static List<String> readStrings(JsonParser parser) throws IOException {
+    List<String> values = new ArrayList<>(1);
+    for (var token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+      if (token == null) {
+        throw new IOException("Unterminated JSON array");
+      }
+      if (token == JsonToken.VALUE_STRING) {
+        values.add(parser.getText());
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return List.copyOf(values);
+  }
+
+  private static JsonParser parser(ByteBuffer json) throws IOException {
+    var parser = JSON_FACTORY.createParser(json.array(), json.arrayOffset() + json.position(), json.remaining());
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      parser.close();
+      throw new IOException("JSON object expected");
+    }
+    return parser;
+  }
+
+  private static final class Claims {
+
+    private String issuer;
+    private String id;
+    private long issuedAt;
+    private long expiresAt;
+    private Integer tenant;
+    private List<String> methods;
+  }
+}
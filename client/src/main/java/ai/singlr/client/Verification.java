@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.client;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The outcome of checking a verification token, with the same fields and errors as {@code /siteverify}.
+ *
+ * @param success whether the token is authentic, unexpired, issued for this site and not replayed.
+ * @param error why the token was rejected, or {@code null} if it was accepted.
+ * @param id the unique id of the token.
+ * @param issuedAt when the CAPTCHA was completed.
+ * @param expiresAt when the token stops being accepted.
+ * @param tenant the tenant the CAPTCHA was completed for.
+ * @param amr how the CAPTCHA was completed, {@value #METHOD_PASSKEY} or {@value #METHOD_POW}, or {@code null} for
+ *     tokens issued before the claim was added.
+ */
+public record Verification(
+    boolean success,
+    String error,
+    String id,
+    Instant issuedAt,
+    Instant expiresAt,
+    Integer tenant,
+    List<String> amr) {
+
+  public static final String MISSING_TOKEN = "missing-token";
+  public static final String INVALID_TOKEN = "invalid-token";
+  public static final String EXPIRED_TOKEN = "expired-token";
+  public static final String SPENT_TOKEN = "spent-token";
+  public static final String WRONG_SITE = "wrong-site";
+
+  public static final String METHOD_PASSKEY = "passkey";
+  public static final String METHOD_POW = "pow";
+
+  static final Verification MISSING = failure(MISSING_TOKEN);
+  static final Verification INVALID = failure(INVALID_TOKEN);
+  static final Verification EXPIRED = failure(EXPIRED_TOKEN);
+  static final Verification SPENT = failure(SPENT_TOKEN);
+  static final Verification OTHER_SITE = failure(WRONG_SITE);
+
+  private static Verification failure(String error) {
+    return new Verification(false, error, null, null, null, null, null);
+  }
+}
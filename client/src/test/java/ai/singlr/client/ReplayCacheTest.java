@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class ReplayCacheTest {
+
+  @Test
+  public void addTest() {
+    var now = new AtomicLong(1000);
+    var cache = new ReplayCache(10, now::get);
+
+    assertTrue(cache.add("a", 2000));
+    assertFalse(cache.add("a", 2000));
+    assertTrue(cache.add("b", 2500));
+
+    // Expired ids are dropped, their tokens are rejected as expired anyway.
+    now.set(2000);
+    assertTrue(cache.add("c", 3000));
+    assertEquals(2, cache.size());
+    assertFalse(cache.add("b", 2500));
+  }
+
+  @Test
+  public void capacityTest() {
+    var cache = new ReplayCache(2, () -> 0);
+
+    assertTrue(cache.add("a", 1000));
+    assertTrue(cache.add("b", 1000));
+    assertTrue(cache.add("c", 1000));
+    assertEquals(2, cache.size());
+    assertTrue(cache.add("a", 1000));
+    assertThrows(IllegalArgumentException.class, () -> new ReplayCache(0));
+  }
+}
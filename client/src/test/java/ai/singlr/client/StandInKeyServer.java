@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.client;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Stands in for the service: publishes a key set the way {@code /v1/nocaptcha/keys} does and signs tokens the way
+ * {@code /complete} issues them.
+ */
+final class StandInKeyServer implements AutoCloseable {
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+  private final HttpServer server;
+  private final Map<String, KeyPair> keyPairs = new ConcurrentHashMap<>();
+  private final AtomicInteger requests = new AtomicInteger();
+
+  StandInKeyServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/v1/nocaptcha/keys", exchange -> {
+      requests.incrementAndGet();
+      var body = jwks();
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (var out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+  }
+
+  URI uri() {
+    return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/nocaptcha/keys");
+  }
+
+  int requests() {
+    return requests.get();
+  }
+
+  void addKey(String keyId) throws GeneralSecurityException {
+    var generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    keyPairs.put(keyId, generator.generateKeyPair());
+  }
+
+  void removeKey(String keyId) {
+    keyPairs.remove(keyId);
+  }
+
+  byte[] jwks() {
+    return keyPairs.entrySet().stream()
+        .map(entry -> {
+          var publicKey = (ECPublicKey) entry.getValue().getPublic();
+          return "{\"kty\":\"EC\",\"crv\":\"P-256\",\"use\":\"sig\",\"alg\":\"ES256\",\"kid\":\"" + entry.getKey()
+              + "\",\"x\":\"" + coordinate(publicKey.getW().getAffineX())
+              + "\",\"y\":\"" + coordinate(publicKey.getW().getAffineY()) + "\"}";
+        })
+        .collect(Collectors.joining(",", "{\"keys\":[", "]}"))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  String token(String keyId, String issuer, String id, long issuedAt, long expiresAt, int tenant)
+      throws GeneralSecurityException {
+    return sign(keyId, "{\"alg\":\"ES256\",\"typ\":\"JWT\",\"kid\":\"" + keyId + "\"}",
+        "{\"iss\":\"" + issuer + "\",\"jti\":\"" + id + "\",\"iat\":" + issuedAt + ",\"exp\":" + expiresAt
+            + ",\"ten\":" + tenant + "}");
+  }
+
+  String sign(String keyId, String header, String payload) throws GeneralSecurityException {
+    var input = ENCODER.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "."
+        + ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    var signer = Signature.getInstance("SHA256withECDSAinP1363Format");
+    signer.initSign(keyPairs.get(keyId).getPrivate());
+    signer.update(input.getBytes(StandardCharsets.US_ASCII));
+    return input + "." + ENCODER.encodeToString(signer.sign());
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  private static String coordinate(BigInteger value) {
+    var bytes = value.toByteArray();
+    var fixed = new byte[32];
+    var length = Math.min(bytes.length, 32);
+    System.arraycopy(bytes, bytes.length - length, fixed, 32 - length, length);
+    return ENCODER.encodeToString(fixed);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class TokenVerifierTest {
+
+  private static final String ISSUER = "nocaptcha";
+
+  @Test
+  public void verifyTest() throws Exception {
+    try (var server = new StandInKeyServer()) {
+      server.addKey("1");
+      try (var keys = new KeySet(server.uri(), Duration.ofMinutes(5))) {
+        var verifier = new TokenVerifier(keys, ISSUER, 7, null);
+        var now = Instant.now().getEpochSecond();
+
+        var verification = verifier.verify(server.token("1", ISSUER, "abc", now, now + 120, 7));
+        assertTrue(verification.success());
+        assertNull(verification.error());
+        assertEquals("abc", verification.id());
+        assertEquals(now + 120, verification.expiresAt().getEpochSecond());
+        assertEquals(7, (int) verification.tenant());
+        assertNull(verification.amr());
+
+        verification = verifier.verify(server.sign("1", "{\"alg\":\"ES256\",\"kid\":\"1\"}",
+            "{\"iss\":\"nocaptcha\",\"jti\":\"b\",\"iat\":" + now + ",\"exp\":" + (now + 120)
+                + ",\"ten\":7,\"amr\":[\"pow\",{\"x\":1}]}"));
+        assertTrue(verification.success());
+        assertEquals(List.of(Verification.METHOD_POW), verification.amr());
+      }
+    }
+  }
+
+  @Test
+  public void rejectedTest() throws Exception {
+    try (var server = new StandInKeyServer()) {
+      server.addKey("1");
+      var verifier = new TokenVerifier(KeySet.of(server.jwks()), ISSUER, 0, null);
+      var now = Instant.now().getEpochSecond();
+
+      assertEquals(Verification.MISSING_TOKEN, verifier.verify(" ").error());
+      assertEquals(Verification.INVALID_TOKEN, verifier.verify("not.a.token").error());
+      assertEquals(Verification.INVALID_TOKEN, verifier.verify("a.b.c.d").error());
+      assertEquals(Verification.EXPIRED_TOKEN, verifier.verify(server.token("1", ISSUER, "a", now - 600, now - 480, 0))
+          .error());
+      assertEquals(Verification.INVALID_TOKEN, verifier.verify(server.token("1", "elsewhere", "a", now, now + 120, 0))
+          .error());
+
+      var token = server.token("1", ISSUER, "a", now, now + 120, 0);
+      var tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+      assertFalse(verifier.verify(tampered).success());
+
+      // A header asking for another algorithm is not trusted, even with a valid signature.
+      var none = server.sign("1", "{\"alg\":\"none\",\"kid\":\"1\"}", "{\"iss\":\"nocaptcha\",\"jti\":\"a\",\"iat\":"
+          + now + ",\"exp\":" + (now + 120) + "}");
+      assertEquals(Verification.INVALID_TOKEN, verifier.verify(none).error());
+    }
+  }
+
+  @Test
+  public void wrongSiteTest() throws Exception {
+    try (var server = new StandInKeyServer()) {
+      server.addKey("1");
+      var replays = new ReplayCache(100);
+      var verifier = new TokenVerifier(KeySet.of(server.jwks()), ISSUER, 0, replays);
+      var now = Instant.now().getEpochSecond();
+
+      // A token of another site is turned away without being recorded, so its own site still accepts it.
+      var token = server.token("1", ISSUER, "a", now, now + 120, 3);
+      assertEquals(Verification.WRONG_SITE, verifier.verify(token).error());
+      assertEquals(Verification.WRONG_SITE, verifier.verify(token).error());
+      assertTrue(new TokenVerifier(KeySet.of(server.jwks()), ISSUER, 3, replays).verify(token).success());
+
+      var untenanted = server.sign("1", "{\"alg\":\"ES256\",\"kid\":\"1\"}", "{\"iss\":\"nocaptcha\",\"jti\":\"b\","
+          + "\"iat\":" + now + ",\"exp\":" + (now + 120) + "}");
+      assertEquals(Verification.WRONG_SITE, verifier.verify(untenanted).error());
+    }
+  }
+
+  @Test
+  public void rotationTest() throws Exception {
+    try (var server = new StandInKeyServer()) {
+      server.addKey("1");
+      try (var keys = new KeySet(server.uri(), Duration.ofMinutes(5), 0)) {
+        var verifier = new TokenVerifier(keys, ISSUER, 0, null);
+        var now = Instant.now().getEpochSecond();
+        assertEquals(1, keys.size());
+
+        // An unknown key id is rejected but triggers a refresh that picks up the new key.
+        server.addKey("2");
+        var token = server.token("2", ISSUER, "a", now, now + 120, 0);
+        assertFalse(verifier.verify(token).success());
+        for (var i = 0; i < 100 && keys.size() < 2; i++) {
+          Thread.sleep(20);
+        }
+        assertTrue(verifier.verify(token).success());
+        assertTrue(server.requests() >= 2);
+      }
+    }
+  }
+
+  @Test
+  public void replayTest() throws Exception {
+    try (var server = new StandInKeyServer()) {
+      server.addKey("1");
+      var verifier = new TokenVerifier(KeySet.of(server.jwks()), ISSUER, 0, new ReplayCache(100));
+      var now = Instant.now().getEpochSecond();
+
+      var token = server.token("1", ISSUER, "a", now, now + 120, 0);
+      assertTrue(verifier.verify(token).success());
+      assertEquals(Verification.SPENT_TOKEN, verifier.verify(token).error());
+      assertTrue(verifier.verify(server.token("1", ISSUER, "b", now, now + 120, 0)).success());
+    }
+  }
+}
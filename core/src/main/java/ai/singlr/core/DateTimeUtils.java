@@ -7,7 +7,6 @@ package ai.singlr.core;
 
 import java.security.SecureRandom;
 import java.time.Clock;
-import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -112,8 +111,27 @@ public final class DateTimeUtils {
    * @return A new UUID v7 instance
    */
   public static UUID newId() {
-    Instant now = Instant.now();
-    long milliseconds = now.toEpochMilli();
+    return new UUID(newMostSignificantBits(), newLeastSignificantBits());
+  }
+
+  /**
+   * Generates a UUID v7 like {@link #newId()}, directly as its 16 big-endian bytes.
+   *
+   * @return the 16 bytes of a new UUID v7
+   */
+  public static byte[] newBinaryId() {
+    var msb = newMostSignificantBits();
+    var lsb = newLeastSignificantBits();
+    var id = new byte[16];
+    for (var i = 0; i < 8; i++) {
+      id[i] = (byte) (msb >>> (56 - 8 * i));
+      id[8 + i] = (byte) (lsb >>> (56 - 8 * i));
+    }
+    return id;
+  }
+
+  private static long newMostSignificantBits() {
+    long milliseconds = System.currentTimeMillis();
 
     // Ensure timestamp monotonicity
     long timestamp = lastTimestamp.updateAndGet(last -> {
@@ -132,12 +150,12 @@ public final class DateTimeUtils {
     long msb = (timestamp << 16) | (subsec & 0xFFF);
 
     // Clear version bits and set to version 7
-    msb = (msb & 0xFFFF_FFFF_FFFF_0FFFL) | (0x7L << 12);
+    return (msb & 0xFFFF_FFFF_FFFF_0FFFL) | (0x7L << 12);
+  }
 
-    // Build LSB with variant bits and random data
-    long lsb = 0x8000_0000_0000_0000L
+  private static long newLeastSignificantBits() {
+    // Variant bits and random data
+    return 0x8000_0000_0000_0000L
         | (SECURE_RANDOM.nextLong() & 0x3FFF_FFFF_FFFF_FFFFL); // Random bits
-
-    return new UUID(msb, lsb);
   }
 }
@@ -6,7 +6,9 @@
 package ai.singlr.core;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,11 +19,13 @@ public final class ErrorCode {
   private static final Map<String, ErrorCode> REGISTRY;
 
   public static final ErrorCode CONFLICT;
+  public static final ErrorCode MISDIRECTED;
   public static final ErrorCode INVALID;
   public static final ErrorCode NOT_AUTHORIZED;
   public static final ErrorCode FORBIDDEN;
   public static final ErrorCode NOT_FOUND;
   public static final ErrorCode TOO_EARLY;
+  public static final ErrorCode TOO_MANY_REQUESTS;
   public static final ErrorCode INTERNAL;
 
   static {
@@ -31,7 +35,9 @@ public final class ErrorCode {
     FORBIDDEN = register("SINGULAR_403", 403, "Forbidden");
     NOT_FOUND = register("SINGULAR_404", 404, "Resource not found");
     CONFLICT = register("SINGULAR_409", 409, "Resource already exists");
+    MISDIRECTED = register("SINGULAR_421", 421, "Request sent to the wrong node");
     TOO_EARLY = register("SINGULAR_425", 425, "Request too early");
+    TOO_MANY_REQUESTS = register("SINGULAR_429", 429, "Too many requests");
     INTERNAL = register("SINGULAR_500", 500, "Internal error");
   }
 
@@ -84,6 +90,13 @@ public final class ErrorCode {
     return code.hashCode();
   }
 
+  /**
+   * Returns every registered {@link ErrorCode}.
+   */
+  public static Collection<ErrorCode> registered() {
+    return List.copyOf(REGISTRY.values());
+  }
+
   /**
    * Registers a new {@link ErrorCode} after ensuring that the {@code code} has not been
    * previously used.
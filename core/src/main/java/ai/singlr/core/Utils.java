@@ -7,6 +7,8 @@ package ai.singlr.core;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.helidon.config.Config;
@@ -24,6 +26,8 @@ public class Utils {
 
   private static ObjectNode emptyJson;
   private static ObjectMapper theMapper;
+  private static ClassValue<ObjectReader> readers;
+  private static ClassValue<ObjectWriter> writers;
   private static Profile profile;
 
   /**
@@ -32,6 +36,18 @@ public class Utils {
   public static void init(ObjectMapper mapper) {
     theMapper = mapper;
     emptyJson = mapper.createObjectNode();
+    readers = new ClassValue<>() {
+      @Override
+      protected ObjectReader computeValue(Class<?> type) {
+        return mapper.readerFor(type);
+      }
+    };
+    writers = new ClassValue<>() {
+      @Override
+      protected ObjectWriter computeValue(Class<?> type) {
+        return mapper.writerFor(type);
+      }
+    };
   }
 
   public static JsonNode emptyJson() {
@@ -42,6 +58,21 @@ public class Utils {
     return theMapper;
   }
 
+  /**
+   * Returns the reader of a type. Readers are created once per type with their root deserializer already resolved,
+   * so unlike {@code mapper().readValue(..)} they don't look the type up again on every call.
+   */
+  public static ObjectReader reader(Class<?> type) {
+    return readers.get(type);
+  }
+
+  /**
+   * Returns the writer of a type. Writers are created once per type with their root serializer already resolved.
+   */
+  public static ObjectWriter writer(Class<?> type) {
+    return writers.get(type);
+  }
+
   public static ObjectNode newJson() {
     return theMapper.createObjectNode();
   }
@@ -8,6 +8,7 @@ package ai.singlr.core;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -134,4 +135,17 @@ public class DateTimeUtilsTest {
     assertTrue(chiSquare < 3.841, // 95% confidence for 1 degree of freedom
         "Random bits distribution should pass chi-square test");
   }
+
+  @Test
+  void testBinaryId() {
+    UUID before = DateTimeUtils.newId();
+    byte[] id = DateTimeUtils.newBinaryId();
+    assertEquals(16, id.length);
+
+    ByteBuffer buffer = ByteBuffer.wrap(id);
+    UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+    assertEquals(7, uuid.version());
+    assertEquals(2, uuid.variant());
+    assertTrue(uuid.compareTo(before) > 0, "Binary ids should be ordered with UUIDs");
+  }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Singular™
+ * SPDX-License-Identifier: MIT
+ */
+
+package ai.singlr.core;
+
+import ai.singlr.core.result.Result;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class UtilsTest {
+
+  @Test
+  public void cachedCodecsTest() throws Exception {
+    Utils.init(new ObjectMapper());
+
+    assertSame(Utils.writer(Result.class), Utils.writer(Result.class));
+    assertSame(Utils.reader(Result.class), Utils.reader(Result.class));
+    assertNotSame(Utils.writer(Result.class), Utils.writer(ErrorCode.class));
+
+    var json = Utils.writer(Result.class).writeValueAsString(new Result<>(ErrorCode.INVALID, "Bad", null));
+    assertEquals(Utils.mapper().writeValueAsString(new Result<>(ErrorCode.INVALID, "Bad", null)), json);
+
+    JsonNode tree = Utils.reader(JsonNode.class).readValue(json);
+    assertEquals(Utils.mapper().readTree(json), tree);
+  }
+
+  @Test
+  public void reinitTest() {
+    Utils.init(new ObjectMapper());
+    var writer = Utils.writer(Result.class);
+
+    Utils.init(new ObjectMapper());
+    assertNotSame(writer, Utils.writer(Result.class));
+  }
+}
@@ -1 +1,743 @@
-!function(){"use strict";!function(e){const t={onInit:null,onVerify:null},n={"Content-Type":"application/json"},r="https://nocaptcha.singlr.ai",s=function(){t.onInit&&t.onInit();sessionStorage.getItem("no-captcha-id")&&t.onVerify&&t.onVerify()};class o{static base64UrlEncode(e){return btoa(String.fromCharCode(...new Uint8Array(e))).replace(/\+/g,"-").replace(/\//g,"_").replace(/=+$/,"")}static base64UrlDecode(e){let t=e.replace(/-/g,"+").replace(/_/g,"/");for(;t.length%4;)t+="=";const n=atob(t);return new Uint8Array([...n].map((e=>e.charCodeAt(0)))).buffer}}class a{constructor(e,t){this.httpCode=e,this.message=t}static fromJson(e){const t=e.errorCode;return new a(t.httpCode,t.message)}}class i{constructor(e,t,n,r){this.value=e,this.code=t,this.errorMessage=n,this.errorCode=r}isSuccess(){return void 0!==this.value}isFailure(){return void 0!==this.errorCode}static success(e){return new i(e)}static failure(e){const t=a.fromJson(e);return new i(void 0,void 0,e.message,t)}static failureSorry(){const e=new a(-1,"Generic Failure");return new i(void 0,void 0,"Sorry, something went wrong. Please try later.",e)}static failureNetwork(){const e=new a(-2,"Network Failure");return new i(void 0,void 0,"Sorry, it looks like your internet connection is unstable. Please try later.",e)}}class d extends HTMLElement{constructor(){super(),this.attachShadow({mode:"open"});const n=document.createElement("style");n.textContent='\n        .flex {\n          display: flex;\n        }\n\n        .flex-1 {\n          flex: 1 1 0%;\n        }\n\n        .flex-col {\n          flex-direction: column;\n        }\n\n        .justify-center {\n          justify-content: center;\n        }\n\n        .items-center {\n          align-items: center;\n        }\n\n        .bg-white {\n          background-color: rgb(255 255 255);\n        }\n\n        .shadow {\n          box-shadow: 0 1px 3px 0 rgb(0 0 0 / 0.1), 0 1px 2px -1px rgb(0 0 0 / 0.1);\n        }\n\n        .border {\n          border-width: 1px;\n        }\n\n        .border-solid {\n          border-style: solid;\n        }\n\n        .border-slate-300 {\n          border-color: #e0e7ee;\n        }\n\n        .rounded-xl {\n          border-radius: 0.75rem;\n        }\n\n        .p-2 {\n          padding: 0.5rem;\n        }\n\n        .py-3 {\n          padding-top: 0.875rem; /* 14px */\n          padding-bottom: 0.875rem; /* 14px */\n        }\n\n        .px-4 {\n          padding-left: 1rem; /* 16px */\n          padding-right: 1rem; /* 16px */\n        }\n\n        .mx-auto {\n          margin-left: auto;\n          margin-right: auto;\n        }\n\n        .my-2 {\n          margin-top: 0.5rem; /* 8px */\n          margin-bottom: 0.5rem; /* 8px */\n        }\n\n        .mr-3 {\n          margin-right: 0.75rem; /* 12px */\n        }\n\n        .text-xl {\n          font-size: 1.25rem; /* 20px */\n          line-height: 1.75rem; /* 28px */\n        }\n\n        .text-2xl {\n          font-size: 1.5rem; /* 24px */\n          line-height: 2rem; /* 32px */\n        }\n\n        .text-xs {\n          font-size: 0.75rem; /* 12px */\n          line-height: 1rem; /* 16px */\n        }\n\n        .text-default {\n          color: #0a2342;\n          font-family: ui-sans-serif, system-ui, -apple-system, BlinkMacSystemFont, "Segoe UI", Roboto, "Helvetica Neue", Arial, sans-serif;\n        }\n\n        .text-gray-500 {\n          color: rgb(107 114 128);\n        }\n\n        .text-center {\n          text-align: center;\n        }\n\n        .underline {\n          text-decoration-line: underline;\n        }\n\n        .w-8 {\n          width: 2rem; /* 32px */\n        }\n\n        .h-8 {\n          height: 2rem; /* 32px */\n        }\n\n        .visited:visited {\n          color: rgb(107 114 128);\n        }\n\n        .max-w-360 {\n          max-width: 360px;\n        }\n\n        .cursor-pointer {\n          cursor: pointer;\n        }\n      ';const r=document.createElement("div");r.className="container",r.innerHTML='\n        <div class="flex flex-1 justify-center items-center bg-white text-default max-w-360 mx-auto">\n            <div class="flex flex-col flex-1">\n              <div class="flex flex-col flex-1 shadow border rounded-xl">\n                <div class="flex items-center py-3 px-4">\n                  <button id="verifyBtn" class="cursor-pointer flex items-center p-2 mr-3 border border-solid border-slate-300 rounded-xl bg-white text-default">\n                    <svg class="w-8 h-8" xmlns="http://www.w3.org/2000/svg" viewBox="0 0 14 14"><g fill="none" stroke="currentColor" stroke-linecap="round" stroke-linejoin="round"><path d="M7 13.39a5 5 0 0 0 5-5V5.61a5 5 0 0 0-1.27-3.33M2 6.72v1.67A5 5 0 0 0 5.06 13M9.5 1.28a5 5 0 0 0-6.83 1.83a4.9 4.9 0 0 0-.57 1.52"/><path d="M6.48 3.51A2.51 2.51 0 0 1 9.5 6v1.61m-.64 2.1A2.5 2.5 0 0 1 4.5 8V6a2.5 2.5 0 0 1 .2-1M7 6.11v1.67"/></g></svg>\n                  </button>\n                  <p class="text-xl"><span class="text-2xl">👈</span> Confirm you are a human.</p>\n                </div>\n              </div>\n              <p class="text-center text-xs text-gray-500 my-2">\n                  Private by <a class="underline visited" href="https://singlr.ai" target="_blank">design</a>. No data is tracked, saved, or shared.\n              </p>\n            </div>\n        </div>\n      ',this.shadowRoot.appendChild(n),this.shadowRoot.appendChild(r),this.shadowRoot.getElementById("verifyBtn").addEventListener("click",(()=>this.startVerification()));this.shadowRoot.getElementById("verifyBtn").innerHTML='\n        <svg class="w-8 h-8 spinner hidden" xmlns="http://www.w3.org/2000/svg" viewBox="0 0 24 24"><g fill="none" stroke="currentColor" stroke-linecap="round" stroke-linejoin="round" stroke-width="2"><path stroke-dasharray="16" stroke-dashoffset="16" d="M12 3c4.97 0 9 4.03 9 9"><animate fill="freeze" attributeName="stroke-dashoffset" dur="0.3s" values="16;0"/><animateTransform attributeName="transform" dur="1.5s" repeatCount="indefinite" type="rotate" values="0 12 12;360 12 12"/></path><path stroke-dasharray="64" stroke-dashoffset="64" stroke-opacity="0.3" d="M12 3c4.97 0 9 4.03 9 9c0 4.97 -4.03 9 -9 9c-4.97 0 -9 -4.03 -9 -9c0 -4.97 4.03 -9 9 -9Z"><animate fill="freeze" attributeName="stroke-dashoffset" dur="1.2s" values="64;0"/></path></g></svg>\n            <svg class="w-8 h-8 default-icon" xmlns="http://www.w3.org/2000/svg" viewBox="0 0 14 14"><g fill="none" stroke="currentColor" stroke-linecap="round" stroke-linejoin="round"><path d="M7 13.39a5 5 0 0 0 5-5V5.61a5 5 0 0 0-1.27-3.33M2 6.72v1.67A5 5 0 0 0 5.06 13M9.5 1.28a5 5 0 0 0-6.83 1.83a4.9 4.9 0 0 0-.57 1.52"/><path d="M6.48 3.51A2.51 2.51 0 0 1 9.5 6v1.61m-.64 2.1A2.5 2.5 0 0 1 4.5 8V6a2.5 2.5 0 0 1 .2-1M7 6.11v1.67"/></g></svg>\n          ';const o=document.createElement("div");o.id="error-message",o.className="error-message hidden text-red-500 text-sm mt-2 text-center",o.textContent="Something went wrong. Please try again.",this.shadowRoot.querySelector(".container").appendChild(o);this.shadowRoot.querySelector("style").textContent+="\n            .hidden {\n              display: none;\n            }\n\n            .spinner {\n              animation: spin 1s linear infinite;\n            }\n\n            @keyframes spin {\n              from {\n                transform: rotate(0deg);\n              }\n              to {\n                transform: rotate(360deg);\n              }\n            }\n\n            .text-red-500 {\n              color: #e53e3e;\n            }\n\n            button:disabled {\n              opacity: 0.5;\n              cursor: not-allowed;\n            }\n          ",this.dataset.init&&(t.onInit=e[this.dataset.init]),this.dataset.verified&&(t.onVerify=e[this.dataset.verified]),s()}setLoading(e){const t=this.shadowRoot.getElementById("verifyBtn"),n=t.querySelector(".spinner"),r=t.querySelector(".default-icon"),s=this.shadowRoot.getElementById("error-message");e?(n.classList.remove("hidden"),r.classList.add("hidden"),t.disabled=!0,s.classList.add("hidden")):(n.classList.add("hidden"),r.classList.remove("hidden"),t.disabled=!1)}setGenericError(){this.shadowRoot.getElementById("error-message").classList.remove("hidden")}async startVerification(){this.setLoading(!0);var n=await e.NoCaptcha.api.captchaStart(!0);if(this.setLoading(!1),n.isFailure())return console.error(n.errorMessage),void this.setGenericError();try{const r=await navigator.credentials.create({publicKey:n.value.credentialsOptions}),s=r.getClientExtensionResults(),a={id:r.id,rawId:o.base64UrlEncode(r.rawId),response:{clientDataJSON:o.base64UrlEncode(r?.response.clientDataJSON),attestationObject:o.base64UrlEncode(r?.response.attestationObject)},authenticatorAttachment:r.authenticatorAttachment,type:r.type,clientExtensionResults:s};this.setLoading(!0);const i=n.value.base64Id;if(n=await e.NoCaptcha.api.captchaComplete(i,a),this.setLoading(!1),n.isFailure())return console.error(n.errorMessage),void this.setGenericError();sessionStorage.setItem("no-captcha-id",i),t.onVerify&&t.onVerify(n)}catch(e){console.error(e)}}}customElements.get("no-captcha")||customElements.define("no-captcha",d),e.NoCaptcha={api:new class{async captchaStart(){const e=r+"/v1/nocaptcha/start";try{const t={id:"Anonymous"},r=await fetch(e,{method:"POST",headers:n,body:JSON.stringify(t)});if(201===r.status){const e=await r.json(),t=JSON.parse(e.pubKeyCredOpts).publicKey,n=t.user.id;if(t.challenge=o.base64UrlDecode(t.challenge),t.user.id=o.base64UrlDecode(t.user.id),t.excludeCredentials)for(let e=0;e<t.excludeCredentials.length;e++)t.excludeCredentials[e].id=o.base64UrlDecode(t.excludeCredentials[e].id);return i.success({credentialsOptions:t,base64Id:n})}return i.failure(await r.json())}catch(e){return console.error(e),i.failureSorry()}}async captchaComplete(e,t){const s=r+"/v1/nocaptcha/complete";try{const r={id:e,pubKeyCredOpts:t},o=await fetch(s,{method:"PUT",headers:n,body:JSON.stringify(r)});if(202===o.status){const e=await o.json();return i.success(e)}return i.failure(await o.json())}catch(e){return i.failureSorry()}}},init:function(e={}){e.onInit&&(t.onInit=e.onInit),e.onVerify&&(t.onVerify=e.onVerify),s()}}}(window)}();
\ No newline at end of file
+(function () {
+	'use strict';
+
+(function (window) {
+  "use strict";
+
+  // Store callbacks in a scope accessible to both the class and the global interface
+  const callbacks = {
+    onInit: null,
+    onVerify: null,
+  };
+
+  // The key of the site this widget is embedded in, none for the default site.
+  let siteKey = null;
+
+  const JSON_HEADERS = {
+    "Content-Type": "application/json",
+  };
+
+  const CBOR_HEADERS = {
+    "Content-Type": "application/cbor",
+  };
+
+  const ROUTE_HEADER = "X-NoCaptcha-Route";
+  const ACCEPT_HEADER = "X-NoCaptcha-Accept";
+  const SITE_HEADER = "X-NoCaptcha-Site";
+  const INSTANCE_KEY = "no-captcha-instance";
+
+  const BASE_URI = "https://nocaptcha.singlr.ai";
+
+  const firstCallback = function () {
+    if (callbacks.onInit) callbacks.onInit();
+
+    const id = sessionStorage.getItem("no-captcha-id");
+    if (id) {
+      if (callbacks.onVerify) callbacks.onVerify();
+    }
+  };
+
+  class Utils {
+    static withSite(headers) {
+      return siteKey ? { ...headers, [SITE_HEADER]: siteKey } : headers;
+    }
+
+    static base64UrlEncode(value) {
+      return btoa(String.fromCharCode(...new Uint8Array(value)))
+        .replace(/\+/g, "-")
+        .replace(/\//g, "_")
+        .replace(/=+$/, "");
+    }
+
+    // Identifies this widget for the browser session, so that repeated starts reuse the pending challenge.
+    static instanceId() {
+      let instance = sessionStorage.getItem(INSTANCE_KEY);
+      if (!instance) {
+        instance = crypto.randomUUID();
+        sessionStorage.setItem(INSTANCE_KEY, instance);
+      }
+      return instance;
+    }
+
+    // Encodes the few CBOR types a credential needs: maps, arrays, text, bytes, numbers, booleans and null.
+    static encodeCbor(value) {
+      const bytes = [];
+      const head = (major, length) => {
+        const type = major << 5;
+        if (length < 24) {
+          bytes.push(type | length);
+        } else if (length < 0x100) {
+          bytes.push(type | 24, length);
+        } else if (length < 0x10000) {
+          bytes.push(type | 25, length >> 8, length & 0xff);
+        } else {
+          bytes.push(
+            type | 26,
+            (length >>> 24) & 0xff,
+            (length >> 16) & 0xff,
+            (length >> 8) & 0xff,
+            length & 0xff,
+          );
+        }
+      };
+      const append = (data) => {
+        for (const b of data) bytes.push(b);
+      };
+      const encode = (item) => {
+        if (item === null || item === undefined) {
+          bytes.push(0xf6);
+        } else if (typeof item === "boolean") {
+          bytes.push(item ? 0xf5 : 0xf4);
+        } else if (typeof item === "number") {
+          if (Number.isSafeInteger(item) && Math.abs(item) < 0x100000000) {
+            item >= 0 ? head(0, item) : head(1, -1 - item);
+          } else {
+            const view = new DataView(new ArrayBuffer(8));
+            view.setFloat64(0, item);
+            bytes.push(0xfb);
+            append(new Uint8Array(view.buffer));
+          }
+        } else if (typeof item === "string") {
+          const utf8 = new TextEncoder().encode(item);
+          head(3, utf8.length);
+          append(utf8);
+        } else if (item instanceof Uint8Array) {
+          head(2, item.length);
+          append(item);
+        } else if (Array.isArray(item)) {
+          head(4, item.length);
+          item.forEach(encode);
+        } else {
+          const entries = Object.entries(item).filter(([, v]) => v !== undefined);
+          head(5, entries.length);
+          for (const [k, v] of entries) {
+            encode(k);
+            encode(v);
+          }
+        }
+      };
+      encode(value);
+      return new Uint8Array(bytes);
+    }
+
+    // Finds a nonce whose SHA-256 hash after the challenge starts with the given number of zero bits, hashing a batch
+    // of nonces at a time since each digest call is asynchronous.
+    static async solveProofOfWork(challenge, difficulty) {
+      const prefix = new Uint8Array(challenge);
+      const batch = 256;
+      for (let start = 0; ; start += batch) {
+        const digests = [];
+        for (let nonce = start; nonce < start + batch; nonce++) {
+          const input = new Uint8Array(prefix.length + 8);
+          input.set(prefix);
+          const view = new DataView(input.buffer);
+          view.setUint32(prefix.length, Math.floor(nonce / 0x100000000));
+          view.setUint32(prefix.length + 4, nonce >>> 0);
+          digests.push(crypto.subtle.digest("SHA-256", input));
+        }
+        const hashes = await Promise.all(digests);
+        for (let i = 0; i < hashes.length; i++) {
+          if (Utils.leadingZeroBits(new Uint8Array(hashes[i])) >= difficulty) {
+            return start + i;
+          }
+        }
+      }
+    }
+
+    static leadingZeroBits(hash) {
+      let zeros = 0;
+      for (const b of hash) {
+        if (b !== 0) {
+          return zeros + Math.clz32(b) - 24;
+        }
+        zeros += 8;
+      }
+      return zeros;
+    }
+
+    // Platform authenticators create passkeys without a security key, which is what the passkey ceremony relies on.
+    static async hasPlatformAuthenticator() {
+      try {
+        return (
+          window.PublicKeyCredential !== undefined &&
+          (await PublicKeyCredential.isUserVerifyingPlatformAuthenticatorAvailable())
+        );
+      } catch (error) {
+        return false;
+      }
+    }
+
+    static base64UrlDecode(value) {
+      let base64 = value.replace(/-/g, "+").replace(/_/g, "/");
+      // Pad the base64 string with "=" to make the string length a multiple of 4
+      while (base64.length % 4) {
+        base64 += "=";
+      }
+      const raw = atob(base64);
+      return new Uint8Array([...raw].map((c) => c.charCodeAt(0))).buffer;
+    }
+  }
+
+  class ErrorCode {
+    constructor(httpCode, message) {
+      this.httpCode = httpCode;
+      this.message = message;
+    }
+
+    static fromJson(json) {
+      const errorCode = json["errorCode"];
+      return new ErrorCode(errorCode["httpCode"], errorCode["message"]);
+    }
+  }
+
+  class Result {
+    constructor(value, code, errorMessage, errorCode) {
+      this.value = value;
+      this.code = code;
+      this.errorMessage = errorMessage;
+      this.errorCode = errorCode;
+    }
+
+    isSuccess() {
+      return this.value !== undefined;
+    }
+
+    isFailure() {
+      return this.errorCode !== undefined;
+    }
+
+    static success(model) {
+      return new Result(model);
+    }
+
+    static failure(json) {
+      const error = ErrorCode.fromJson(json);
+      return new Result(undefined, undefined, json["message"], error);
+    }
+
+    static failureSorry() {
+      const error = new ErrorCode(-1, "Generic Failure");
+      return new Result(
+        undefined,
+        undefined,
+        "Sorry, something went wrong. Please try later.",
+        error,
+      );
+    }
+
+    static failureNetwork() {
+      const error = new ErrorCode(-2, "Network Failure");
+      return new Result(
+        undefined,
+        undefined,
+        "Sorry, it looks like your internet connection is unstable. Please try later.",
+        error,
+      );
+    }
+  }
+
+  class Api {
+    async captchaStart() {
+      const apiUrl = BASE_URI + "/v1/nocaptcha/start";
+
+      try {
+        const body = {
+          id: "Anonymous",
+          instance: Utils.instanceId(),
+          format: "object",
+        };
+
+        const response = await fetch(apiUrl, {
+          method: "POST",
+          headers: Utils.withSite(JSON_HEADERS),
+          body: JSON.stringify(body),
+        });
+
+        if (response.status === 201) {
+          const json = await response.json();
+
+          // Older servers send the options as a JSON encoded string.
+          const rawOpts = json["pubKeyCredOpts"];
+          const pubKeyCredOpts = (
+            typeof rawOpts === "string" ? JSON.parse(rawOpts) : rawOpts
+          ).publicKey;
+          const base64Id = pubKeyCredOpts.user.id;
+          pubKeyCredOpts.challenge = Utils.base64UrlDecode(
+            pubKeyCredOpts.challenge,
+          );
+          pubKeyCredOpts.user.id = Utils.base64UrlDecode(
+            pubKeyCredOpts.user.id,
+          );
+
+          if (pubKeyCredOpts.excludeCredentials) {
+            for (let i = 0; i < pubKeyCredOpts.excludeCredentials.length; i++) {
+              pubKeyCredOpts.excludeCredentials[i].id = Utils.base64UrlDecode(
+                pubKeyCredOpts.excludeCredentials[i].id,
+              );
+            }
+          }
+
+          return Result.success({
+            credentialsOptions: pubKeyCredOpts,
+            base64Id: base64Id,
+            route: response.headers.get(ROUTE_HEADER),
+            cbor: (response.headers.get(ACCEPT_HEADER) || "").includes(
+              "application/cbor",
+            ),
+          });
+        } else {
+          return Result.failure(await response.json());
+        }
+      } catch (error) {
+        console.error(error);
+        return Result.failureSorry();
+      }
+    }
+
+    async proofOfWorkStart() {
+      const apiUrl = BASE_URI + "/v1/nocaptcha/start";
+
+      try {
+        const body = {
+          id: "Anonymous",
+          instance: Utils.instanceId(),
+          type: "pow",
+        };
+
+        const response = await fetch(apiUrl, {
+          method: "POST",
+          headers: Utils.withSite(JSON_HEADERS),
+          body: JSON.stringify(body),
+        });
+
+        if (response.status === 201) {
+          const json = await response.json();
+          const pow = json["pow"];
+          return Result.success({
+            id: pow.id,
+            challenge: Utils.base64UrlDecode(pow.challenge),
+            difficulty: pow.difficulty,
+            route: response.headers.get(ROUTE_HEADER),
+          });
+        } else {
+          return Result.failure(await response.json());
+        }
+      } catch (error) {
+        console.error(error);
+        return Result.failureSorry();
+      }
+    }
+
+    async proofOfWorkComplete(id, nonce, route) {
+      const apiUrl = BASE_URI + "/v1/nocaptcha/complete/pow";
+
+      try {
+        const headers = route
+          ? { ...JSON_HEADERS, [ROUTE_HEADER]: route }
+          : JSON_HEADERS;
+
+        const response = await fetch(apiUrl, {
+          method: "PUT",
+          headers: Utils.withSite(headers),
+          body: JSON.stringify({ id: id, nonce: nonce }),
+        });
+
+        if (response.status === 202) {
+          const json = await response.json();
+          return Result.success(json);
+        } else {
+          return Result.failure(await response.json());
+        }
+      } catch (error) {
+        return Result.failureSorry();
+      }
+    }
+
+    async captchaComplete(id, credential, route, cbor) {
+      const apiUrl = BASE_URI + "/v1/nocaptcha/complete";
+
+      try {
+        const body = {
+          id: id,
+          pubKeyCredOpts: credential,
+        };
+
+        // Lets load balancers send the ceremony back to the node that started it.
+        const mediaHeaders = cbor ? CBOR_HEADERS : JSON_HEADERS;
+        const headers = route
+          ? { ...mediaHeaders, [ROUTE_HEADER]: route }
+          : mediaHeaders;
+
+        const response = await fetch(apiUrl, {
+          method: "PUT",
+          headers: Utils.withSite(headers),
+          body: cbor ? Utils.encodeCbor(body) : JSON.stringify(body),
+        });
+
+        if (response.status === 202) {
+          const json = await response.json();
+          return Result.success(json);
+        } else {
+          return Result.failure(await response.json());
+        }
+      } catch (error) {
+        return Result.failureSorry();
+      }
+    }
+  }
+
+  class NoCaptcha extends HTMLElement {
+    constructor() {
+      super();
+      this.attachShadow({ mode: "open" });
+
+      // Create styles
+      const style = document.createElement("style");
+      style.textContent = `
+        .flex {
+          display: flex;
+        }
+
+        .flex-1 {
+          flex: 1 1 0%;
+        }
+
+        .flex-col {
+          flex-direction: column;
+        }
+
+        .justify-center {
+          justify-content: center;
+        }
+
+        .items-center {
+          align-items: center;
+        }
+
+        .bg-white {
+          background-color: rgb(255 255 255);
+        }
+
+        .shadow {
+          box-shadow: 0 1px 3px 0 rgb(0 0 0 / 0.1), 0 1px 2px -1px rgb(0 0 0 / 0.1);
+        }
+
+        .border {
+          border-width: 1px;
+        }
+
+        .border-solid {
+          border-style: solid;
+        }
+
+        .border-slate-300 {
+          border-color: #e0e7ee;
+        }
+
+        .rounded-xl {
+          border-radius: 0.75rem;
+        }
+
+        .p-2 {
+          padding: 0.5rem;
+        }
+
+        .py-3 {
+          padding-top: 0.875rem; /* 14px */
+          padding-bottom: 0.875rem; /* 14px */
+        }
+
+        .px-4 {
+          padding-left: 1rem; /* 16px */
+          padding-right: 1rem; /* 16px */
+        }
+
+        .mx-auto {
+          margin-left: auto;
+          margin-right: auto;
+        }
+
+        .my-2 {
+          margin-top: 0.5rem; /* 8px */
+          margin-bottom: 0.5rem; /* 8px */
+        }
+
+        .mr-3 {
+          margin-right: 0.75rem; /* 12px */
+        }
+
+        .text-xl {
+          font-size: 1.25rem; /* 20px */
+          line-height: 1.75rem; /* 28px */
+        }
+
+        .text-2xl {
+          font-size: 1.5rem; /* 24px */
+          line-height: 2rem; /* 32px */
+        }
+
+        .text-xs {
+          font-size: 0.75rem; /* 12px */
+          line-height: 1rem; /* 16px */
+        }
+
+        .text-default {
+          color: #0a2342;
+          font-family: ui-sans-serif, system-ui, -apple-system, BlinkMacSystemFont, "Segoe UI", Roboto, "Helvetica Neue", Arial, sans-serif;
+        }
+
+        .text-gray-500 {
+          color: rgb(107 114 128);
+        }
+
+        .text-center {
+          text-align: center;
+        }
+
+        .underline {
+          text-decoration-line: underline;
+        }
+
+        .w-8 {
+          width: 2rem; /* 32px */
+        }
+
+        .h-8 {
+          height: 2rem; /* 32px */
+        }
+
+        .visited:visited {
+          color: rgb(107 114 128);
+        }
+
+        .max-w-360 {
+          max-width: 360px;
+        }
+
+        .cursor-pointer {
+          cursor: pointer;
+        }
+      `;
+
+      // Create HTML structure
+      const container = document.createElement("div");
+      container.className = "container";
+      container.innerHTML = `
+        <div class="flex flex-1 justify-center items-center bg-white text-default max-w-360 mx-auto">
+            <div class="flex flex-col flex-1">
+              <div class="flex flex-col flex-1 shadow border rounded-xl">
+                <div class="flex items-center py-3 px-4">
+                  <button id="verifyBtn" class="cursor-pointer flex items-center p-2 mr-3 border border-solid border-slate-300 rounded-xl bg-white text-default">
+                    <svg class="w-8 h-8" xmlns="http://www.w3.org/2000/svg" viewBox="0 0 14 14"><g fill="none" stroke="currentColor" stroke-linecap="round" stroke-linejoin="round"><path d="M7 13.39a5 5 0 0 0 5-5V5.61a5 5 0 0 0-1.27-3.33M2 6.72v1.67A5 5 0 0 0 5.06 13M9.5 1.28a5 5 0 0 0-6.83 1.83a4.9 4.9 0 0 0-.57 1.52"/><path d="M6.48 3.51A2.51 2.51 0 0 1 9.5 6v1.61m-.64 2.1A2.5 2.5 0 0 1 4.5 8V6a2.5 2.5 0 0 1 .2-1M7 6.11v1.67"/></g></svg>
+                  </button>
+                  <p class="text-xl"><span class="text-2xl">👈</span> Confirm you are a human.</p>
+                </div>
+              </div>
+              <p class="text-center text-xs text-gray-500 my-2">
+                  Private by <a class="underline visited" href="https://singlr.ai" target="_blank">design</a>. No data is tracked, saved, or shared.
+              </p>
+            </div>
+        </div>
+      `;
+
+      this.shadowRoot.appendChild(style);
+      this.shadowRoot.appendChild(container);
+
+      this.shadowRoot
+        .getElementById("verifyBtn")
+        .addEventListener("click", () => this.startVerification());
+
+      // Add spinner SVG (initially hidden)
+      const button = this.shadowRoot.getElementById("verifyBtn");
+      button.innerHTML = `
+        <svg class="w-8 h-8 spinner hidden" xmlns="http://www.w3.org/2000/svg" viewBox="0 0 24 24"><g fill="none" stroke="currentColor" stroke-linecap="round" stroke-linejoin="round" stroke-width="2"><path stroke-dasharray="16" stroke-dashoffset="16" d="M12 3c4.97 0 9 4.03 9 9"><animate fill="freeze" attributeName="stroke-dashoffset" dur="0.3s" values="16;0"/><animateTransform attributeName="transform" dur="1.5s" repeatCount="indefinite" type="rotate" values="0 12 12;360 12 12"/></path><path stroke-dasharray="64" stroke-dashoffset="64" stroke-opacity="0.3" d="M12 3c4.97 0 9 4.03 9 9c0 4.97 -4.03 9 -9 9c-4.97 0 -9 -4.03 -9 -9c0 -4.97 4.03 -9 9 -9Z"><animate fill="freeze" attributeName="stroke-dashoffset" dur="1.2s" values="64;0"/></path></g></svg>
+            <svg class="w-8 h-8 default-icon" xmlns="http://www.w3.org/2000/svg" viewBox="0 0 14 14"><g fill="none" stroke="currentColor" stroke-linecap="round" stroke-linejoin="round"><path d="M7 13.39a5 5 0 0 0 5-5V5.61a5 5 0 0 0-1.27-3.33M2 6.72v1.67A5 5 0 0 0 5.06 13M9.5 1.28a5 5 0 0 0-6.83 1.83a4.9 4.9 0 0 0-.57 1.52"/><path d="M6.48 3.51A2.51 2.51 0 0 1 9.5 6v1.61m-.64 2.1A2.5 2.5 0 0 1 4.5 8V6a2.5 2.5 0 0 1 .2-1M7 6.11v1.67"/></g></svg>
+          `;
+
+      // Add error message element (initially hidden)
+      const errorDiv = document.createElement("div");
+      errorDiv.id = "error-message";
+      errorDiv.className =
+        "error-message hidden text-red-500 text-sm mt-2 text-center";
+      errorDiv.textContent = "Something went wrong. Please try again.";
+      this.shadowRoot.querySelector(".container").appendChild(errorDiv);
+
+      const additionalStyles = `
+            .hidden {
+              display: none;
+            }
+
+            .spinner {
+              animation: spin 1s linear infinite;
+            }
+
+            @keyframes spin {
+              from {
+                transform: rotate(0deg);
+              }
+              to {
+                transform: rotate(360deg);
+              }
+            }
+
+            .text-red-500 {
+              color: #e53e3e;
+            }
+
+            button:disabled {
+              opacity: 0.5;
+              cursor: not-allowed;
+            }
+          `;
+      this.shadowRoot.querySelector("style").textContent += additionalStyles;
+      // Get callback functions from data attributes
+      if (this.dataset.sitekey) siteKey = this.dataset.sitekey;
+      if (this.dataset.init) callbacks.onInit = window[this.dataset.init];
+      if (this.dataset.verified)
+        callbacks.onVerify = window[this.dataset.verified];
+      firstCallback();
+    }
+
+    setLoading(isLoading) {
+      const button = this.shadowRoot.getElementById("verifyBtn");
+      const spinner = button.querySelector(".spinner");
+      const defaultIcon = button.querySelector(".default-icon");
+      const errorMessage = this.shadowRoot.getElementById("error-message");
+
+      if (isLoading) {
+        spinner.classList.remove("hidden");
+        defaultIcon.classList.add("hidden");
+        button.disabled = true;
+        errorMessage.classList.add("hidden");
+      } else {
+        spinner.classList.add("hidden");
+        defaultIcon.classList.remove("hidden");
+        button.disabled = false;
+      }
+    }
+
+    setGenericError() {
+      const errorMessage = this.shadowRoot.getElementById("error-message");
+      errorMessage.classList.remove("hidden");
+    }
+
+    async startVerification() {
+      this.setLoading(true);
+      if (!(await Utils.hasPlatformAuthenticator())) {
+        await this.startProofOfWork();
+        return;
+      }
+      await this.startPasskey();
+    }
+
+    async startPasskey() {
+      var result = await window.NoCaptcha.api.captchaStart(true);
+      this.setLoading(false);
+      if (result.isFailure()) {
+        console.error(result.errorMessage);
+        this.setGenericError();
+        return;
+      }
+
+      try {
+        const credential = await navigator.credentials.create({
+          publicKey: result.value.credentialsOptions,
+        });
+        const extensionResults = credential.getClientExtensionResults();
+
+        // CBOR carries the binary fields as they are, JSON needs them base64url encoded.
+        const cbor = result.value.cbor;
+        const binary = cbor
+          ? (value) => new Uint8Array(value)
+          : Utils.base64UrlEncode;
+
+        const decodedCredentials = {
+          id: credential.id,
+          rawId: binary(credential.rawId),
+          response: {
+            clientDataJSON: binary(credential?.response.clientDataJSON),
+            attestationObject: binary(credential?.response.attestationObject),
+          },
+          authenticatorAttachment: credential.authenticatorAttachment,
+          type: credential.type,
+          clientExtensionResults: extensionResults,
+        };
+
+        this.setLoading(true);
+        const base64Id = result.value.base64Id;
+        result = await window.NoCaptcha.api.captchaComplete(
+          base64Id,
+          decodedCredentials,
+          result.value.route,
+          cbor,
+        );
+        this.setLoading(false);
+        if (result.isFailure()) {
+          console.error(result.errorMessage);
+          this.setGenericError();
+          return;
+        } else {
+          sessionStorage.setItem("no-captcha-id", base64Id);
+          if (callbacks.onVerify) callbacks.onVerify(result);
+        }
+      } catch (e) {
+        console.error(e);
+      }
+    }
+
+    // Without a platform authenticator, the browser proves itself by spending some CPU time instead.
+    async startProofOfWork() {
+      let result = await window.NoCaptcha.api.proofOfWorkStart();
+      if (result.isFailure() && result.errorCode.httpCode === 404) {
+        // Puzzles are turned off on this server, so a passkey on a phone or security key is the only way left.
+        await this.startPasskey();
+        return;
+      }
+      if (result.isFailure()) {
+        this.setLoading(false);
+        console.error(result.errorMessage);
+        this.setGenericError();
+        return;
+      }
+
+      const puzzle = result.value;
+      const nonce = await Utils.solveProofOfWork(
+        puzzle.challenge,
+        puzzle.difficulty,
+      );
+      result = await window.NoCaptcha.api.proofOfWorkComplete(
+        puzzle.id,
+        nonce,
+        puzzle.route,
+      );
+      this.setLoading(false);
+      if (result.isFailure()) {
+        console.error(result.errorMessage);
+        this.setGenericError();
+      } else {
+        sessionStorage.setItem("no-captcha-id", puzzle.id);
+        if (callbacks.onVerify) callbacks.onVerify(result);
+      }
+    }
+  }
+
+  // Register the custom element
+  if (!customElements.get("no-captcha")) {
+    customElements.define("no-captcha", NoCaptcha);
+  }
+
+  window.NoCaptcha = {
+    api: new Api(),
+
+    // Initialize the SDK
+    init: function (options = {}) {
+      if (options.siteKey) siteKey = options.siteKey;
+      if (options.onInit) callbacks.onInit = options.onInit;
+      if (options.onVerify) callbacks.onVerify = options.onVerify;
+
+      firstCallback();
+    },
+  };
+})(window);
+
+})();
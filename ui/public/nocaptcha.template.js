@@ -7,10 +7,22 @@
     onVerify: null,
   };
 
+  // The key of the site this widget is embedded in, none for the default site.
+  let siteKey = null;
+
   const JSON_HEADERS = {
     "Content-Type": "application/json",
   };
 
+  const CBOR_HEADERS = {
+    "Content-Type": "application/cbor",
+  };
+
+  const ROUTE_HEADER = "X-NoCaptcha-Route";
+  const ACCEPT_HEADER = "X-NoCaptcha-Accept";
+  const SITE_HEADER = "X-NoCaptcha-Site";
+  const INSTANCE_KEY = "no-captcha-instance";
+
   const BASE_URI = import.meta.env.VITE_API_URL;
 
   const firstCallback = function () {
@@ -23,6 +35,10 @@
   };
 
   class Utils {
+    static withSite(headers) {
+      return siteKey ? { ...headers, [SITE_HEADER]: siteKey } : headers;
+    }
+
     static base64UrlEncode(value) {
       return btoa(String.fromCharCode(...new Uint8Array(value)))
         .replace(/\+/g, "-")
@@ -30,6 +46,124 @@
         .replace(/=+$/, "");
     }
 
+    // Identifies this widget for the browser session, so that repeated starts reuse the pending challenge.
+    static instanceId() {
+      let instance = sessionStorage.getItem(INSTANCE_KEY);
+      if (!instance) {
+        instance = crypto.randomUUID();
+        sessionStorage.setItem(INSTANCE_KEY, instance);
+      }
+      return instance;
+    }
+
+    // Encodes the few CBOR types a credential needs: maps, arrays, text, bytes, numbers, booleans and null.
+    static encodeCbor(value) {
+      const bytes = [];
+      const head = (major, length) => {
+        const type = major << 5;
+        if (length < 24) {
+          bytes.push(type | length);
+        } else if (length < 0x100) {
+          bytes.push(type | 24, length);
+        } else if (length < 0x10000) {
+          bytes.push(type | 25, length >> 8, length & 0xff);
+        } else {
+          bytes.push(
+            type | 26,
+            (length >>> 24) & 0xff,
+            (length >> 16) & 0xff,
+            (length >> 8) & 0xff,
+            length & 0xff,
+          );
+        }
+      };
+      const append = (data) => {
+        for (const b of data) bytes.push(b);
+      };
+      const encode = (item) => {
+        if (item === null || item === undefined) {
+          bytes.push(0xf6);
+        } else if (typeof item === "boolean") {
+          bytes.push(item ? 0xf5 : 0xf4);
+        } else if (typeof item === "number") {
+          if (Number.isSafeInteger(item) && Math.abs(item) < 0x100000000) {
+            item >= 0 ? head(0, item) : head(1, -1 - item);
+          } else {
+            const view = new DataView(new ArrayBuffer(8));
+            view.setFloat64(0, item);
+            bytes.push(0xfb);
+            append(new Uint8Array(view.buffer));
+          }
+        } else if (typeof item === "string") {
+          const utf8 = new TextEncoder().encode(item);
+          head(3, utf8.length);
+          append(utf8);
+        } else if (item instanceof Uint8Array) {
+          head(2, item.length);
+          append(item);
+        } else if (Array.isArray(item)) {
+          head(4, item.length);
+          item.forEach(encode);
+        } else {
+          const entries = Object.entries(item).filter(([, v]) => v !== undefined);
+          head(5, entries.length);
+          for (const [k, v] of entries) {
+            encode(k);
+            encode(v);
+          }
+        }
+      };
+      encode(value);
+      return new Uint8Array(bytes);
+    }
+
+    // Finds a nonce whose SHA-256 hash after the challenge starts with the given number of zero bits, hashing a batch
+    // of nonces at a time since each digest call is asynchronous.
+    static async solveProofOfWork(challenge, difficulty) {
+      const prefix = new Uint8Array(challenge);
+      const batch = 256;
+      for (let start = 0; ; start += batch) {
+        const digests = [];
+        for (let nonce = start; nonce < start + batch; nonce++) {
+          const input = new Uint8Array(prefix.length + 8);
+          input.set(prefix);
+          const view = new DataView(input.buffer);
+          view.setUint32(prefix.length, Math.floor(nonce / 0x100000000));
+          view.setUint32(prefix.length + 4, nonce >>> 0);
+          digests.push(crypto.subtle.digest("SHA-256", input));
+        }
+        const hashes = await Promise.all(digests);
+        for (let i = 0; i < hashes.length; i++) {
+          if (Utils.leadingZeroBits(new Uint8Array(hashes[i])) >= difficulty) {
+            return start + i;
+          }
+        }
+      }
+    }
+
+    static leadingZeroBits(hash) {
+      let zeros = 0;
+      for (const b of hash) {
+        if (b !== 0) {
+          return zeros + Math.clz32(b) - 24;
+        }
+        zeros += 8;
+      }
+      return zeros;
+    }
+
+    // Platform authenticators create passkeys without a security key, which is what the passkey ceremony relies on.
+    static async hasPlatformAuthenticator() {
+      try {
+        return (
+          window.PublicKeyCredential !== undefined &&
+          (await PublicKeyCredential.isUserVerifyingPlatformAuthenticatorAvailable())
+        );
+      } catch (error) {
+        return false;
+      }
+    }
+
     static base64UrlDecode(value) {
       let base64 = value.replace(/-/g, "+").replace(/_/g, "/");
       // Pad the base64 string with "=" to make the string length a multiple of 4
@@ -106,18 +240,24 @@
       try {
         const body = {
           id: "Anonymous",
+          instance: Utils.instanceId(),
+          format: "object",
         };
 
         const response = await fetch(apiUrl, {
           method: "POST",
-          headers: JSON_HEADERS,
+          headers: Utils.withSite(JSON_HEADERS),
           body: JSON.stringify(body),
         });
 
         if (response.status === 201) {
           const json = await response.json();
 
-          const pubKeyCredOpts = JSON.parse(json["pubKeyCredOpts"]).publicKey;
+          // Older servers send the options as a JSON encoded string.
+          const rawOpts = json["pubKeyCredOpts"];
+          const pubKeyCredOpts = (
+            typeof rawOpts === "string" ? JSON.parse(rawOpts) : rawOpts
+          ).publicKey;
           const base64Id = pubKeyCredOpts.user.id;
           pubKeyCredOpts.challenge = Utils.base64UrlDecode(
             pubKeyCredOpts.challenge,
@@ -137,6 +277,10 @@
           return Result.success({
             credentialsOptions: pubKeyCredOpts,
             base64Id: base64Id,
+            route: response.headers.get(ROUTE_HEADER),
+            cbor: (response.headers.get(ACCEPT_HEADER) || "").includes(
+              "application/cbor",
+            ),
           });
         } else {
           return Result.failure(await response.json());
@@ -147,7 +291,66 @@
       }
     }
 
-    async captchaComplete(id, credential) {
+    async proofOfWorkStart() {
+      const apiUrl = BASE_URI + "/v1/nocaptcha/start";
+
+      try {
+        const body = {
+          id: "Anonymous",
+          instance: Utils.instanceId(),
+          type: "pow",
+        };
+
+        const response = await fetch(apiUrl, {
+          method: "POST",
+          headers: Utils.withSite(JSON_HEADERS),
+          body: JSON.stringify(body),
+        });
+
+        if (response.status === 201) {
+          const json = await response.json();
+          const pow = json["pow"];
+          return Result.success({
+            id: pow.id,
+            challenge: Utils.base64UrlDecode(pow.challenge),
+            difficulty: pow.difficulty,
+            route: response.headers.get(ROUTE_HEADER),
+          });
+        } else {
+          return Result.failure(await response.json());
+        }
+      } catch (error) {
+        console.error(error);
+        return Result.failureSorry();
+      }
+    }
+
+    async proofOfWorkComplete(id, nonce, route) {
+      const apiUrl = BASE_URI + "/v1/nocaptcha/complete/pow";
+
+      try {
+        const headers = route
+          ? { ...JSON_HEADERS, [ROUTE_HEADER]: route }
+          : JSON_HEADERS;
+
+        const response = await fetch(apiUrl, {
+          method: "PUT",
+          headers: Utils.withSite(headers),
+          body: JSON.stringify({ id: id, nonce: nonce }),
+        });
+
+        if (response.status === 202) {
+          const json = await response.json();
+          return Result.success(json);
+        } else {
+          return Result.failure(await response.json());
+        }
+      } catch (error) {
+        return Result.failureSorry();
+      }
+    }
+
+    async captchaComplete(id, credential, route, cbor) {
       const apiUrl = BASE_URI + "/v1/nocaptcha/complete";
 
       try {
@@ -156,10 +359,16 @@
           pubKeyCredOpts: credential,
         };
 
+        // Lets load balancers send the ceremony back to the node that started it.
+        const mediaHeaders = cbor ? CBOR_HEADERS : JSON_HEADERS;
+        const headers = route
+          ? { ...mediaHeaders, [ROUTE_HEADER]: route }
+          : mediaHeaders;
+
         const response = await fetch(apiUrl, {
           method: "PUT",
-          headers: JSON_HEADERS,
-          body: JSON.stringify(body),
+          headers: Utils.withSite(headers),
+          body: cbor ? Utils.encodeCbor(body) : JSON.stringify(body),
         });
 
         if (response.status === 202) {
@@ -379,6 +588,7 @@
           `;
       this.shadowRoot.querySelector("style").textContent += additionalStyles;
       // Get callback functions from data attributes
+      if (this.dataset.sitekey) siteKey = this.dataset.sitekey;
       if (this.dataset.init) callbacks.onInit = window[this.dataset.init];
       if (this.dataset.verified)
         callbacks.onVerify = window[this.dataset.verified];
@@ -410,6 +620,14 @@
 
     async startVerification() {
       this.setLoading(true);
+      if (!(await Utils.hasPlatformAuthenticator())) {
+        await this.startProofOfWork();
+        return;
+      }
+      await this.startPasskey();
+    }
+
+    async startPasskey() {
       var result = await window.NoCaptcha.api.captchaStart(true);
       this.setLoading(false);
       if (result.isFailure()) {
@@ -424,16 +642,18 @@
         });
         const extensionResults = credential.getClientExtensionResults();
 
+        // CBOR carries the binary fields as they are, JSON needs them base64url encoded.
+        const cbor = result.value.cbor;
+        const binary = cbor
+          ? (value) => new Uint8Array(value)
+          : Utils.base64UrlEncode;
+
         const decodedCredentials = {
           id: credential.id,
-          rawId: Utils.base64UrlEncode(credential.rawId),
+          rawId: binary(credential.rawId),
           response: {
-            clientDataJSON: Utils.base64UrlEncode(
-              credential?.response.clientDataJSON,
-            ),
-            attestationObject: Utils.base64UrlEncode(
-              credential?.response.attestationObject,
-            ),
+            clientDataJSON: binary(credential?.response.clientDataJSON),
+            attestationObject: binary(credential?.response.attestationObject),
           },
           authenticatorAttachment: credential.authenticatorAttachment,
           type: credential.type,
@@ -445,6 +665,8 @@
         result = await window.NoCaptcha.api.captchaComplete(
           base64Id,
           decodedCredentials,
+          result.value.route,
+          cbor,
         );
         this.setLoading(false);
         if (result.isFailure()) {
@@ -459,6 +681,41 @@
         console.error(e);
       }
     }
+
+    // Without a platform authenticator, the browser proves itself by spending some CPU time instead.
+    async startProofOfWork() {
+      let result = await window.NoCaptcha.api.proofOfWorkStart();
+      if (result.isFailure() && result.errorCode.httpCode === 404) {
+        // Puzzles are turned off on this server, so a passkey on a phone or security key is the only way left.
+        await this.startPasskey();
+        return;
+      }
+      if (result.isFailure()) {
+        this.setLoading(false);
+        console.error(result.errorMessage);
+        this.setGenericError();
+        return;
+      }
+
+      const puzzle = result.value;
+      const nonce = await Utils.solveProofOfWork(
+        puzzle.challenge,
+        puzzle.difficulty,
+      );
+      result = await window.NoCaptcha.api.proofOfWorkComplete(
+        puzzle.id,
+        nonce,
+        puzzle.route,
+      );
+      this.setLoading(false);
+      if (result.isFailure()) {
+        console.error(result.errorMessage);
+        this.setGenericError();
+      } else {
+        sessionStorage.setItem("no-captcha-id", puzzle.id);
+        if (callbacks.onVerify) callbacks.onVerify(result);
+      }
+    }
   }
 
   // Register the custom element
@@ -471,6 +728,7 @@
 
     // Initialize the SDK
     init: function (options = {}) {
+      if (options.siteKey) siteKey = options.siteKey;
       if (options.onInit) callbacks.onInit = options.onInit;
       if (options.onVerify) callbacks.onVerify = options.onVerify;
 
@@ -11,6 +11,9 @@ import dotenv from "dotenv";
 // Load environment variables
 dotenv.config({ path: ".env.local" });
 
+// Where the API serves the widget from
+const distDir = path.resolve(__dirname, "../api/src/main/resources/dist");
+
 // Custom plugin to minify JS files from public folder
 function minifyPublicJS(): Plugin {
   const processFile = async (file: string, publicDir: string) => {
@@ -52,6 +55,11 @@ function minifyPublicJS(): Plugin {
       const minified = await minify(output[0].code);
 
       await fs.writeFile(outputPath, minified.code);
+
+      // The API serves its own copy of the widget, so keep it in step with the one built here.
+      const distPath = path.join(distDir, path.basename(outputPath));
+      await fs.mkdir(distDir, { recursive: true });
+      await fs.writeFile(distPath, minified.code);
     }
   };
 